@@ -16,7 +16,6 @@
  *****************************************************************************/
 package cern.c2mon.client.core.cache;
 
-import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -191,35 +190,36 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
     final Set<Long> newTags = new HashSet<>();
 
     try {
-      Collection<TagUpdate> tagUpdates = tagRequestHandler.requestTagsByRegex(regexList);
+      // the tags are added to the cache chunk by chunk, as the server replies arrive
+      tagRequestHandler.requestTagsByRegex(regexList, tagUpdates -> {
+        for (TagUpdate tagUpdate : tagUpdates) {
 
-      for (TagUpdate tagUpdate : tagUpdates) {
-
-        try {
-
-          controller.getWriteLock().lock();
           try {
-            if (!liveCache.containsKey(tagUpdate.getId())) {
-              TagController cdt = new TagController(tagUpdate.getId());
 
-              cdt.update(tagUpdate);
-              subscribeToSupervisionManager(cdt);
-              liveCache.put(cdt.getTagImpl().getId(), cdt);
+            controller.getWriteLock().lock();
+            try {
+              if (!liveCache.containsKey(tagUpdate.getId())) {
+                TagController cdt = new TagController(tagUpdate.getId());
+
+                cdt.update(tagUpdate);
+                subscribeToSupervisionManager(cdt);
+                liveCache.put(cdt.getTagImpl().getId(), cdt);
 
-              newTags.add(cdt.getTagImpl().getId());
+                newTags.add(cdt.getTagImpl().getId());
+              }
+            } finally {
+              controller.getWriteLock().unlock();
             }
-          } finally {
-            controller.getWriteLock().unlock();
-          }
 
-          allMatchingTags.add(tagUpdate.getId());
+            allMatchingTags.add(tagUpdate.getId());
 
-        } catch (RuleFormatException e) {
-          LOG.error("Received an incorrect rule tag from the server. Please check tag with id " + tagUpdate.getId(), e);
-          throw new RuntimeException("Received an incorrect rule tag from the server for tag id " + tagUpdate.getId());
-        }
+          } catch (RuleFormatException e) {
+            LOG.error("Received an incorrect rule tag from the server. Please check tag with id " + tagUpdate.getId(), e);
+            throw new RuntimeException("Received an incorrect rule tag from the server for tag id " + tagUpdate.getId());
+          }
 
-      }
+        }
+      });
     } catch (JMSException e) {
       LOG.error("JMS connection lost -> Could not retrieve missing tags from the C2MON server.", e);
     }
@@ -360,29 +360,51 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
 
     LOG.info("synchronizeTags() - Synchronizing " + tagIds.size() + " live cache entries with the server.");
 
-    // Get and update the initial tags
-    final Collection<TagUpdate> tagUpdates = tagRequestHandler.requestTags(tagIds);
-    for (TagUpdate tagUpdate : tagUpdates) {
-      try {
-        TagController liveTag = liveCache.get(tagUpdate.getId());
-        boolean wasUnknown = !liveTag.getTagImpl().getDataTagQuality().isExistingTag();
+    // Get and update the initial tags, chunk by chunk as the server replies arrive
+    tagRequestHandler.requestTags(tagIds, tagUpdates -> {
+      for (TagUpdate tagUpdate : tagUpdates) {
+        try {
+          TagController liveTag = liveCache.get(tagUpdate.getId());
+          boolean wasUnknown = !liveTag.getTagImpl().getDataTagQuality().isExistingTag();
+          String oldTopicName = liveTag.getTagImpl().getTopicName();
 
-        liveTag.update(tagUpdate);
+          liveTag.update(tagUpdate);
 
-        if (wasUnknown) {
-          subscribeToSupervisionManager(liveTag);
-        }
+          if (wasUnknown) {
+            subscribeToSupervisionManager(liveTag);
+          }
+          else if (oldTopicName != null && !oldTopicName.equals(tagUpdate.getTopicName())) {
+            moveSubscription(liveTag);
+          }
 
-        tagsKnownByServer.add(tagUpdate.getId());
-      } catch (RuleFormatException e) {
-        LOG.error("synchronizeCache() - Received an incorrect rule tag from the server. Please check tag with id " + tagUpdate.getId(), e);
-        throw new RuntimeException("Received an incorrect rule tag from the server for tag id " + tagUpdate.getId());
+          tagsKnownByServer.add(tagUpdate.getId());
+        } catch (RuleFormatException e) {
+          LOG.error("synchronizeCache() - Received an incorrect rule tag from the server. Please check tag with id " + tagUpdate.getId(), e);
+          throw new RuntimeException("Received an incorrect rule tag from the server for tag id " + tagUpdate.getId());
+        }
       }
-    }
+    });
 
     return tagsKnownByServer;
   }
 
+  /**
+   * Moves the subscription of a tag which the server now publishes on another
+   * topic, e.g. after a change of the topic granularity of the server.
+   *
+   * @param liveTag the tag with its new topic name
+   */
+  private void moveSubscription(final TagController liveTag) {
+    if (jmsProxy.isRegisteredListener(liveTag)) {
+      try {
+        jmsProxy.registerUpdateListener(liveTag, liveTag.getTagImpl());
+      } catch (JMSException e) {
+        LOG.warn("moveSubscription() - Could not subscribe tag " + liveTag.getTagImpl().getId() + " to topic "
+            + liveTag.getTagImpl().getTopicName() + ", will be done on reconnection. Reason: " + e.getMessage());
+      }
+    }
+  }
+
   /**
    * Subscribes to the tag value update topic and requests the values once
    * again, in a separate thread.
@@ -463,14 +485,14 @@ public class CacheSynchronizerImpl implements CacheSynchronizer, HeartbeatListen
      */
     private void synchronizeTagValues(final Set<Long> newTags) throws JMSException {
       if (!newTags.isEmpty()) {
-        TagController newTag = null;
-        Collection<TagValueUpdate> requestedTagValues = tagRequestHandler.requestTagValues(newTags);
-        for (TagValueUpdate tagValueUpdate : requestedTagValues) {
-          newTag = liveCache.get(tagValueUpdate.getId());
-          if (newTag != null) {
-            newTag.update(tagValueUpdate);
+        tagRequestHandler.requestTagValues(newTags, tagValueUpdates -> {
+          for (TagValueUpdate tagValueUpdate : tagValueUpdates) {
+            TagController newTag = liveCache.get(tagValueUpdate.getId());
+            if (newTag != null) {
+              newTag.update(tagValueUpdate);
+            }
           }
-        }
+        });
       }
     }
 
@@ -40,6 +40,13 @@ public class C2monClientProperties {
    */
   private int maxRequestThreads = 5;
 
+  /**
+   * Maximum number of results per reply message to a request. The server splits
+   * larger replies into several messages, which are processed as they arrive.
+   * Set to 0 to receive every reply in a single message
+   */
+  private int replyChunkSize = 1000;
+
   /**
    * JMS properties
    */
@@ -66,5 +73,25 @@ public class C2monClientProperties {
 
     /** The maximum amount of results that shall be returned from Elasticsearch query */
     private int maxResults = 10_000;
+
+    /**
+     * Use the per-minute and per-hour rollups maintained by the server for the
+     * aggregated tag history, when they cover the requested interval. The raw
+     * tag documents are aggregated otherwise
+     */
+    private boolean rollups = true;
+
+    /**
+     * Maximum number of history points kept by the client-side history cache.
+     * Set to 0 to disable the cache
+     */
+    private int historyCacheSize = 500_000;
+
+    /**
+     * Time in ms after the end of a history time bucket before it is
+     * considered complete and no longer refetched, to cover the indexing
+     * delay of the server
+     */
+    private long historyCacheSettleTime = 60_000;
   }
 }
@@ -27,6 +27,7 @@ import io.searchbox.client.JestClient;
 import io.searchbox.client.JestClientFactory;
 import io.searchbox.client.JestResult;
 import io.searchbox.client.config.HttpClientConfig;
+import io.searchbox.params.Parameters;
 import io.searchbox.core.Search;
 import io.searchbox.core.SearchResult;
 import io.searchbox.core.search.aggregation.AvgAggregation;
@@ -47,6 +48,17 @@ import cern.c2mon.client.core.config.C2monClientProperties;
 @Slf4j
 public class ElasticsearchService {
 
+  private static final long MINUTE = 60 * 1000L;
+
+  private static final long HOUR = 60 * MINUTE;
+
+  /** Length of the cached buckets of the raw tag and alarm history. */
+  private static final long RAW_BUCKET_LENGTH = HOUR;
+
+  /** Number of aggregation intervals per cached bucket of the aggregated history. */
+  private static final int INTERVALS_PER_BUCKET = 360;
+
+
   private final JestClient client;
 
   private final String timeSeriesIndex;
@@ -57,12 +69,25 @@ public class ElasticsearchService {
 
   private final int maxResults;
 
+  private final boolean rollups;
+
+  private final String minuteRollupIndex;
+
+  private final String hourRollupIndex;
+
+  private final HistoryCache historyCache;
+
   @Autowired
   public ElasticsearchService(C2monClientProperties properties, @Value("${c2mon.domain}") String domain) {
     this.timeSeriesIndex = domain + "-tag*";
     this.configIndex = domain + "-tag-config";
     this.alarmIndex = domain + "-alarm*";
     this.maxResults = properties.getElasticsearch().getMaxResults();
+    this.rollups = properties.getElasticsearch().isRollups();
+    this.minuteRollupIndex = domain + "-rollup-1m*";
+    this.hourRollupIndex = domain + "-rollup-1h*";
+    this.historyCache = new HistoryCache(properties.getElasticsearch().getHistoryCacheSize(),
+        properties.getElasticsearch().getHistoryCacheSettleTime(), maxResults);
 
     JestClientFactory factory = new JestClientFactory();
     factory.setHttpClientConfig(new HttpClientConfig.Builder(properties.getElasticsearch().getUrl())
@@ -76,7 +101,8 @@ public class ElasticsearchService {
    * Retrieve aggregated history for the given tag for the specified time period.
    * <p>
    * A suitable average aggregation interval is automatically calculated if
-   * the given aggregate parameter is set to "auto"
+   * the given aggregate parameter is set to "auto". The history is cached per
+   * time bucket, only the buckets not yet complete are queried again.
    *
    * @param id        the id of the tag
    * @param min       the beginning of the requested date range (ms)
@@ -87,16 +113,129 @@ public class ElasticsearchService {
    */
   public List<Object[]> getTagHistory(Long id, Long min, Long max, String aggregate) {
     if (aggregate.equals("none")) {
-      return getRawHistory(id, min, max);
-    } else {
-      return getAggregatedHistory(id, min, max, aggregate);
+      return historyCache.get("tag:" + id, RAW_BUCKET_LENGTH, min, max, (from, to) -> getRawHistory(id, from, to));
     }
-  }
 
-  private List<Object[]> getAggregatedHistory(Long id, Long min, Long max, String aggregate) {
     // Figure out the right interval
     String interval = aggregate.equals("auto") ? getInterval(min, max) : aggregate;
     log.info("Using interval: " + interval);
+
+    // Calendar weeks do not start on an epoch aligned boundary
+    long length = getIntervalLength(interval);
+    if (length <= 0 || interval.endsWith("w")) {
+      return getAggregatedHistory(id, min, max, interval);
+    }
+    return historyCache.get("tag:" + id + ":" + interval, length * INTERVALS_PER_BUCKET,
+        min - Math.floorMod(min, length), max, (from, to) -> getAggregatedHistory(id, from, to, interval));
+  }
+
+  /**
+   * Aggregates the history from the rollups if possible. The parts of the
+   * range not covered by the rollups (e.g. before the rollups were enabled,
+   * during an outage, or not yet flushed) are aggregated from the raw history.
+   */
+  private List<Object[]> getAggregatedHistory(Long id, Long min, Long max, String interval) {
+
+    String rollupIndex = rollups ? getRollupIndex(interval) : null;
+    if (rollupIndex != null) {
+      List<Object[]> rollupResults = getRollupHistory(id, min, max, interval, rollupIndex);
+      if (!rollupResults.isEmpty()) {
+        List<long[]> uncovered = getUncoveredRanges(rollupResults, min, max, getIntervalLength(interval));
+        return merge(rollupResults, uncovered, getRawAggregatedHistory(id, uncovered, interval));
+      }
+      log.debug("No rollups of tag #{} in {}, aggregating the raw history", id, rollupIndex);
+    }
+    return getRawAggregatedHistory(id, Collections.singletonList(new long[]{min, max}), interval);
+  }
+
+  /**
+   * Replaces the rollup buckets of the uncovered ranges by the buckets
+   * aggregated from the raw history.
+   *
+   * @param rollupBuckets the buckets aggregated from the rollups
+   * @param uncovered the ranges not covered by the rollups
+   * @param rawBuckets the buckets aggregated from the raw history over the uncovered ranges
+   * @return the merged buckets, sorted by time
+   */
+  static List<Object[]> merge(List<Object[]> rollupBuckets, List<long[]> uncovered, List<Object[]> rawBuckets) {
+    List<Object[]> results = new ArrayList<>(rollupBuckets.size() + rawBuckets.size());
+    for (Object[] bucket : rollupBuckets) {
+      if (!isIn((Long) bucket[0], uncovered)) {
+        results.add(bucket);
+      }
+    }
+    for (Object[] bucket : rawBuckets) {
+      // the histogram also returns the empty intervals between the uncovered ranges
+      if (bucket[1] != null && isIn((Long) bucket[0], uncovered)) {
+        results.add(bucket);
+      }
+    }
+    results.sort(Comparator.comparing(bucket -> (Long) bucket[0]));
+    return results;
+  }
+
+  private static boolean isIn(long time, List<long[]> ranges) {
+    for (long[] range : ranges) {
+      if (time >= range[0] && time <= range[1]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Determines the parts of the requested range which are not covered by the
+   * rollup buckets: before the first bucket, the gaps between two buckets, and
+   * after the last bucket. The first and last buckets may only be partially
+   * rolled up, so they are considered uncovered as well.
+   *
+   * @param buckets the aggregated rollup buckets, sorted by time
+   * @param min the beginning of the requested range (ms)
+   * @param max the end of the requested range (ms)
+   * @param length the length of an aggregation interval (ms)
+   * @return the uncovered [from, to] ranges, both ends included
+   */
+  static List<long[]> getUncoveredRanges(List<Object[]> buckets, long min, long max, long length) {
+    List<long[]> uncovered = new ArrayList<>();
+    if (buckets.isEmpty() || length <= 0) {
+      uncovered.add(new long[]{min, max});
+      return uncovered;
+    }
+    long first = (Long) buckets.get(0)[0];
+    uncovered.add(new long[]{min, Math.min(first + length - 1, max)});
+
+    for (int i = 1; i < buckets.size(); i++) {
+      long previousEnd = (Long) buckets.get(i - 1)[0] + length;
+      long start = (Long) buckets.get(i)[0];
+      if (start > previousEnd) {
+        uncovered.add(new long[]{previousEnd, start - 1});
+      }
+    }
+
+    long tail = buckets.size() > 1 ? (Long) buckets.get(buckets.size() - 1)[0] : first + length;
+    if (tail <= max) {
+      uncovered.add(new long[]{tail, max});
+    }
+    return uncovered;
+  }
+
+  /**
+   * Aggregates the raw history of the tag over one or several time ranges.
+   */
+  private List<Object[]> getRawAggregatedHistory(Long id, List<long[]> ranges, String interval) {
+    StringJoiner rangeFilters = new StringJoiner(", ");
+    for (long[] range : ranges) {
+      rangeFilters.add(String.format("{\n" +
+          "            \"range\" : {\n" +
+          "              \"timestamp\" : {\n" +
+          "                \"from\" : %d,\n" +
+          "                \"to\" : %d,\n" +
+          "                \"include_lower\" : true,\n" +
+          "                \"include_upper\" : true\n" +
+          "              }\n" +
+          "            }\n" +
+          "          }", range[0], range[1]));
+    }
     String query = String.format("{\n" +
         "  \"size\" : " + maxResults + ",\n" +
         "  \"query\" : {\n" +
@@ -107,13 +246,8 @@ public class ElasticsearchService {
         "  \"aggregations\" : {\n" +
         "    \"time-range\" : {\n" +
         "      \"filter\" : {\n" +
-        "        \"range\" : {\n" +
-        "          \"timestamp\" : {\n" +
-        "            \"from\" : %d,\n" +
-        "            \"to\" : %d,\n" +
-        "            \"include_lower\" : true,\n" +
-        "            \"include_upper\" : true\n" +
-        "          }\n" +
+        "        \"bool\" : {\n" +
+        "          \"should\" : [ %s ]\n" +
         "        }\n" +
         "      },\n" +
         "      \"aggregations\" : {\n" +
@@ -133,7 +267,7 @@ public class ElasticsearchService {
         "      }\n" +
         "    }\n" +
         "  }\n" +
-        "}", id, min, max, aggregate);
+        "}", id, rangeFilters, interval);
     Search search = new Search.Builder(query).addIndex(timeSeriesIndex).build();
     long start = System.currentTimeMillis();
     try {
@@ -151,6 +285,116 @@ public class ElasticsearchService {
     }
   }
 
+  /**
+   * Picks the coarsest rollup whose buckets fit evenly in the requested
+   * interval.
+   *
+   * @param interval the date histogram interval, e.g. "10m"
+   * @return the rollup index pattern, or null if the interval is finer than
+   * the rollups or cannot be parsed
+   */
+  String getRollupIndex(String interval) {
+    long length = getIntervalLength(interval);
+    if (length > 0 && length % HOUR == 0) {
+      return hourRollupIndex;
+    } else if (length > 0 && length % MINUTE == 0) {
+      return minuteRollupIndex;
+    }
+    return null;
+  }
+
+  private static long getIntervalLength(String interval) {
+    if (interval == null || interval.length() < 2) {
+      return -1;
+    }
+    long unit;
+    switch (interval.charAt(interval.length() - 1)) {
+      case 's': unit = 1000L; break;
+      case 'm': unit = MINUTE; break;
+      case 'h': unit = HOUR; break;
+      case 'd': unit = 24 * HOUR; break;
+      case 'w': unit = 7 * 24 * HOUR; break;
+      default: return -1;
+    }
+    try {
+      return Long.parseLong(interval.substring(0, interval.length() - 1)) * unit;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Aggregates the rollup buckets of the tag over the requested interval,
+   * weighting the average of each bucket by its number of values.
+   */
+  private List<Object[]> getRollupHistory(Long id, Long min, Long max, String interval, String rollupIndex) {
+    String query = String.format("{\n" +
+        "  \"size\" : 0,\n" +
+        "  \"query\" : {\n" +
+        "    \"bool\" : {\n" +
+        "      \"must\" : [ {\n" +
+        "        \"term\" : {\n" +
+        "          \"id\" : %d\n" +
+        "        }\n" +
+        "      }, {\n" +
+        "        \"range\" : {\n" +
+        "          \"timestamp\" : {\n" +
+        "            \"from\" : %d,\n" +
+        "            \"to\" : %d,\n" +
+        "            \"include_lower\" : true,\n" +
+        "            \"include_upper\" : true\n" +
+        "          }\n" +
+        "        }\n" +
+        "      } ]\n" +
+        "    }\n" +
+        "  },\n" +
+        "  \"aggregations\" : {\n" +
+        "    \"events-per-interval\" : {\n" +
+        "      \"date_histogram\" : {\n" +
+        "        \"field\" : \"timestamp\",\n" +
+        "        \"interval\" : \"%s\"\n" +
+        "      },\n" +
+        "      \"aggregations\" : {\n" +
+        "        \"sum-value\" : {\n" +
+        "          \"sum\" : {\n" +
+        "            \"field\" : \"sum\"\n" +
+        "          }\n" +
+        "        },\n" +
+        "        \"count-value\" : {\n" +
+        "          \"sum\" : {\n" +
+        "            \"field\" : \"count\"\n" +
+        "          }\n" +
+        "        }\n" +
+        "      }\n" +
+        "    }\n" +
+        "  }\n" +
+        "}", id, min, max, interval);
+    Search search = new Search.Builder(query).addIndex(rollupIndex).setParameter(Parameters.ROUTING, id).build();
+    long start = System.currentTimeMillis();
+    try {
+      List<Object[]> results = new ArrayList<>();
+      SearchResult result = client.execute(search);
+      if (!result.isSucceeded() || result.getAggregations() == null) {
+        return results;
+      }
+      DateHistogramAggregation aggregation = result.getAggregations().getDateHistogramAggregation("events-per-interval");
+      if (aggregation == null) {
+        return results;
+      }
+      for (DateHistogram bucket : aggregation.getBuckets()) {
+        Double sum = bucket.getSumAggregation("sum-value").getSum();
+        Double count = bucket.getSumAggregation("count-value").getSum();
+        if (sum != null && count != null && count > 0) {
+          results.add(new Object[]{Long.parseLong(bucket.getTimeAsString()), sum / count});
+        }
+      }
+      log.info("Loaded {} values from {} in {}ms", results.size(), rollupIndex, System.currentTimeMillis() - start);
+      return results;
+    } catch (IOException e) {
+      throw new RuntimeException("Error querying history for tag #" + id, e);
+    }
+  }
+
   private String getInterval(Long min, Long max) {
     String interval;
     Long range = max - min;
@@ -476,7 +720,23 @@ public class ElasticsearchService {
     return findTagsByQuery(query, converter, alarmIndex,"Error querying top most active alarms");
   }
 
+  /**
+   * Retrieve the history of the given alarm for the specified time period.
+   * The history is cached per time bucket, only the buckets not yet complete
+   * are queried again.
+   *
+   * @param id  the id of the alarm
+   * @param min the beginning of the requested date range (ms)
+   * @param max the end of the requested date range (ms)
+   * @return list of [timestamp (ms), active] pairs, most recent first
+   */
   public List<Object[]> getAlarmHistory(Long id, Long min, Long max) {
+    List<Object[]> history = historyCache.get("alarm:" + id, RAW_BUCKET_LENGTH, min, max, (from, to) -> queryAlarmHistory(id, from, to));
+    Collections.reverse(history);
+    return history;
+  }
+
+  private List<Object[]> queryAlarmHistory(Long id, Long min, Long max) {
     String query = String.format("{\n" +
         "  \"size\" : " + maxResults + ",\n" +
         "  \"query\" : {\n" +
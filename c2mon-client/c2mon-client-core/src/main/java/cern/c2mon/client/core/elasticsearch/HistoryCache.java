@@ -0,0 +1,231 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ * <p/>
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ * <p/>
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.client.core.elasticsearch;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches the history of the tags and alarms in time buckets aligned on the
+ * epoch, so that the trends refreshed periodically only query the last
+ * bucket again.
+ * <p>
+ * A bucket is considered complete once its end is older than the settle time
+ * and is then kept, until it is evicted on a least recently used basis when
+ * the number of cached points exceeds the configured size. The missing
+ * buckets of a request are loaded with a single query per contiguous range,
+ * and a bucket already being loaded for a concurrent request is waited for
+ * instead of being queried twice.
+ * <p>
+ * The cached points are shared between the callers and must not be modified.
+ */
+@Slf4j
+class HistoryCache {
+
+  /** Number of buckets above which a request bypasses the cache. */
+  static final int MAX_BUCKETS_PER_REQUEST = 1000;
+
+  private final int maxPoints;
+
+  private final long settleTime;
+
+  private final int maxLoadSize;
+
+  private final LongSupplier clock;
+
+  private final LinkedHashMap<BucketKey, List<Object[]>> buckets = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final Map<BucketKey, CompletableFuture<List<Object[]>>> loading = new HashMap<>();
+
+  private long size;
+
+  /**
+   * @param maxPoints   maximum number of cached points, 0 to disable the cache
+   * @param settleTime  time in ms after which a bucket is considered complete
+   * @param maxLoadSize number of points from which a load may have been
+   *                    truncated, in which case its buckets are not cached
+   */
+  HistoryCache(int maxPoints, long settleTime, int maxLoadSize) {
+    this(maxPoints, settleTime, maxLoadSize, System::currentTimeMillis);
+  }
+
+  HistoryCache(int maxPoints, long settleTime, int maxLoadSize, LongSupplier clock) {
+    this.maxPoints = maxPoints;
+    this.settleTime = settleTime;
+    this.maxLoadSize = maxLoadSize;
+    this.clock = clock;
+  }
+
+  /**
+   * @param series       identifies the history, e.g. the tag id and the
+   *                     aggregation interval
+   * @param bucketLength length of the buckets in ms
+   * @param min          the beginning of the requested date range (ms)
+   * @param max          the end of the requested date range (ms)
+   * @param loader       queries the [timestamp (ms), value] pairs of the
+   *                     series between two timestamps, both inclusive
+   * @return the [timestamp (ms), value] pairs between min and max, sorted by
+   * timestamp
+   */
+  List<Object[]> get(String series, long bucketLength, long min, long max, BiFunction<Long, Long, List<Object[]>> loader) {
+    long first = bucketStart(min, bucketLength);
+    long last = bucketStart(max, bucketLength);
+    if (maxPoints <= 0 || max < min || (last - first) / bucketLength >= MAX_BUCKETS_PER_REQUEST) {
+      List<Object[]> points = new ArrayList<>(loader.apply(min, max));
+      points.sort(Comparator.comparingLong(HistoryCache::timestamp));
+      return points;
+    }
+
+    Map<Long, List<Object[]>> cached = new HashMap<>();
+    Map<Long, CompletableFuture<List<Object[]>>> pending = new HashMap<>();
+    List<Long> claimed = new ArrayList<>();
+    synchronized (this) {
+      for (long start = first; start <= last; start += bucketLength) {
+        BucketKey key = new BucketKey(series, start);
+        List<Object[]> points = buckets.get(key);
+        if (points != null) {
+          cached.put(start, points);
+          continue;
+        }
+        CompletableFuture<List<Object[]>> future = loading.get(key);
+        if (future == null) {
+          future = new CompletableFuture<>();
+          loading.put(key, future);
+          claimed.add(start);
+        }
+        pending.put(start, future);
+      }
+    }
+
+    if (!claimed.isEmpty()) {
+      log.debug("History of {}: {} buckets cached, loading {}", series, cached.size(), claimed.size());
+      load(series, bucketLength, claimed, loader);
+    }
+
+    List<Object[]> result = new ArrayList<>();
+    for (long start = first; start <= last; start += bucketLength) {
+      List<Object[]> points = cached.containsKey(start) ? cached.get(start) : await(pending.get(start));
+      for (Object[] point : points) {
+        long timestamp = timestamp(point);
+        if (timestamp >= min && timestamp <= max) {
+          result.add(point);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of points currently cached
+   */
+  synchronized long size() {
+    return size;
+  }
+
+  private void load(String series, long bucketLength, List<Long> claimed, BiFunction<Long, Long, List<Object[]>> loader) {
+    int from = 0;
+    try {
+      while (from < claimed.size()) {
+        int to = from;
+        while (to + 1 < claimed.size() && claimed.get(to + 1) == claimed.get(to) + bucketLength) {
+          to++;
+        }
+        long start = claimed.get(from);
+        long end = claimed.get(to) + bucketLength;
+        store(series, bucketLength, start, end, loader.apply(start, end - 1));
+        from = to + 1;
+      }
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        for (int i = from; i < claimed.size(); i++) {
+          CompletableFuture<List<Object[]>> future = loading.remove(new BucketKey(series, claimed.get(i)));
+          if (future != null) {
+            future.completeExceptionally(e);
+          }
+        }
+      }
+      throw e;
+    }
+  }
+
+  private synchronized void store(String series, long bucketLength, long start, long end, List<Object[]> loaded) {
+    Map<Long, List<Object[]>> split = new HashMap<>();
+    for (Object[] point : loaded) {
+      split.computeIfAbsent(bucketStart(timestamp(point), bucketLength), k -> new ArrayList<>()).add(point);
+    }
+    boolean complete = loaded.size() < maxLoadSize;
+    long now = clock.getAsLong();
+    for (long bucket = start; bucket < end; bucket += bucketLength) {
+      BucketKey key = new BucketKey(series, bucket);
+      List<Object[]> points = split.getOrDefault(bucket, Collections.emptyList());
+      points.sort(Comparator.comparingLong(HistoryCache::timestamp));
+      if (complete && bucket + bucketLength + settleTime <= now) {
+        buckets.put(key, points);
+        size += weight(points);
+      }
+      loading.remove(key).complete(points);
+    }
+    evict();
+  }
+
+  private void evict() {
+    Iterator<List<Object[]>> eldest = buckets.values().iterator();
+    while (size > maxPoints && eldest.hasNext()) {
+      size -= weight(eldest.next());
+      eldest.remove();
+    }
+  }
+
+  private static List<Object[]> await(CompletableFuture<List<Object[]>> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /** Empty buckets count as one point, so that they are bounded as well. */
+  private static int weight(List<Object[]> points) {
+    return Math.max(1, points.size());
+  }
+
+  private static long bucketStart(long timestamp, long bucketLength) {
+    return timestamp - Math.floorMod(timestamp, bucketLength);
+  }
+
+  private static long timestamp(Object[] point) {
+    return ((Number) point[0]).longValue();
+  }
+
+  /**
+   * Identifies a time bucket of a history.
+   */
+  @Data
+  private static final class BucketKey {
+    private final String series;
+    private final long start;
+  }
+}
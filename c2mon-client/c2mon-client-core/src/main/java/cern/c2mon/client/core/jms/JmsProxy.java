@@ -34,12 +34,14 @@ package cern.c2mon.client.core.jms;
  * Author: TIM team, tim.support@cern.ch
  *****************************************************************************/
 import java.util.Collection;
+import java.util.function.Consumer;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
 
 import cern.c2mon.client.common.listener.ClientRequestReportListener;
 import cern.c2mon.client.core.listener.TagUpdateListener;
+import cern.c2mon.shared.client.alarm.AlarmFilter;
 import cern.c2mon.shared.client.request.ClientRequestResult;
 import cern.c2mon.shared.client.request.JsonRequest;
 
@@ -87,6 +89,10 @@ public interface JmsProxy {
    * already registered with some Tag", so can safely be called to
    * confirm registration.
    * 
+   * <p>If the listener is already registered, but the topic name of the
+   * details differs from the topic it is subscribed to, the subscription is
+   * moved to the new topic.
+   * 
    * <p>Returns even if JMS connection is down; subscriptions will be
    * done automatically on reconnection.
    * 
@@ -190,6 +196,32 @@ public interface JmsProxy {
   <T extends ClientRequestResult> Collection<T> sendRequest(JsonRequest<T> jsonRequest, String queueName, int timeout,
       ClientRequestReportListener reportListener) throws JMSException;
 
+  /**
+   * Send a request to the server and pass the results to the given consumer
+   * as they arrive. Large replies are split by the server into several
+   * chunks (see <code>c2mon.client.replyChunkSize</code>), each of which is
+   * decoded and passed to the consumer on reception, so that the complete
+   * reply never needs to be held in memory. The progress of a chunked reply
+   * is reported to the report listener.
+   *
+   * <p>Returns once the last chunk has been passed to the consumer.
+   *
+   * @param jsonRequest the request object, convertible to Json format
+   * @param queueName the name of the queue on which to send this request
+   * @param timeout the time to wait for each reply message (in milliseconds)
+   * @param reportListener Receives updates for <code>ClientRequestProgressReport</code>
+   *                       and <code>ClientRequestErrorReport</code>, may be null
+   * @param chunkConsumer receives the results, chunk by chunk
+   * @param <T> the type of the response expected (inside the collection)
+   *
+   * @throws JMSException if not currently connected or
+   *                      if a JMS problem occurs while making the request (reconnection is handled by the JmsProxy)
+   * @throws RuntimeException if no reply is received from the server (probable timeout)
+   * @throws NullPointerException thrown if the request, queue name or consumer is null
+   */
+  <T extends ClientRequestResult> void sendRequest(JsonRequest<T> jsonRequest, String queueName, int timeout,
+      ClientRequestReportListener reportListener, Consumer<Collection<T>> chunkConsumer) throws JMSException;
+
   /**
    * Register a listener for connection/disconnection events.
    * 
@@ -232,9 +264,20 @@ public interface JmsProxy {
    * @throws JMSException 
    */
   void registerAlarmListener(final AlarmListener alarmListener) throws JMSException;
+
+  /**
+   * Register a listener to be notified of the alarm messages matching the
+   * filter. The filter is applied by the broker, so that only the matching
+   * alarms are sent to the client.
+   *
+   * @param alarmListener the listener to register
+   * @param filter the alarms to receive
+   * @throws JMSException if problem subscribing
+   */
+  void registerAlarmListener(final AlarmListener alarmListener, final AlarmFilter filter) throws JMSException;
    
   /**
-   * Unregister the listener from receiving alarm updates.
+   * Unregister the listener, with or without filter, from receiving alarm updates.
    * 
    * @param alarmListener the listener to remove
    * @throws JMSException 
@@ -17,6 +17,7 @@
 package cern.c2mon.client.core.jms;
 
 import java.util.Collection;
+import java.util.function.Consumer;
 
 import javax.jms.JMSException;
 
@@ -124,6 +125,20 @@ public interface RequestHandler {
    */
   Collection<TagUpdate> requestTags(Collection<Long> tagIds) throws JMSException;
 
+  /**
+   * Queries the server for the latest values and configuration
+   * details for the request tags, passing them to the consumer
+   * as the chunks of the server replies arrive. The consumer is
+   * never called concurrently.
+   *
+   * @param tagIds the ids of the tags
+   * @param chunkConsumer receives the transfer objects, chunk by chunk
+   * @throws JMSException if not currently connected or if a JMS problem occurs while making the request
+   * @throws NullPointerException if called with a null argument
+   * @throws RuntimeException if the response from the server is null (probable timeout)
+   */
+  void requestTags(Collection<Long> tagIds, Consumer<Collection<TagUpdate>> chunkConsumer) throws JMSException;
+
   /**
    * Queries the server for the latest values and configuration
    * details for the request tags.
@@ -138,6 +153,21 @@ public interface RequestHandler {
    * @throws RuntimeException if the response from the server is null (probable timeout)
    */
   Collection<TagUpdate> requestTagsByRegex(final Collection<String> regexList) throws JMSException;
+
+  /**
+   * Queries the server for the latest values and configuration
+   * details for the request tags, passing them to the consumer
+   * as the chunks of the server replies arrive. The consumer is
+   * never called concurrently.
+   *
+   * @param regexList list of tag names or regular expressions which shall be used to
+   *                  find the matching tags
+   * @param chunkConsumer receives the transfer objects, chunk by chunk
+   * @throws JMSException if not currently connected or if a JMS problem occurs while making the request
+   * @throws NullPointerException if called with a null argument
+   * @throws RuntimeException if the response from the server is null (probable timeout)
+   */
+  void requestTagsByRegex(Collection<String> regexList, Consumer<Collection<TagUpdate>> chunkConsumer) throws JMSException;
   
   /**
    * Queries the server for the latest values for the request tags.
@@ -152,6 +182,19 @@ public interface RequestHandler {
    */
   Collection<TagValueUpdate> requestTagValues(Collection<Long> tagIds) throws JMSException;
 
+  /**
+   * Queries the server for the latest values for the request tags,
+   * passing them to the consumer as the chunks of the server replies
+   * arrive. The consumer is never called concurrently.
+   *
+   * @param tagIds the ids of the tags
+   * @param chunkConsumer receives the transfer objects, chunk by chunk
+   * @throws JMSException if not currently connected or if a JMS problem occurs while making the request
+   * @throws NullPointerException if called with a null argument
+   * @throws RuntimeException if the response from the server is null (probable timeout)
+   */
+  void requestTagValues(Collection<Long> tagIds, Consumer<Collection<TagValueUpdate>> chunkConsumer) throws JMSException;
+
   /**
    * Queries the server for statistics about the number of configured and invalid tags.
    *
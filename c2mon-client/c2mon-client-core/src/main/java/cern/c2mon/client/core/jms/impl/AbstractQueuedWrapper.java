@@ -17,6 +17,8 @@
 package cern.c2mon.client.core.jms.impl;
 
 import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -92,6 +94,17 @@ public abstract class AbstractQueuedWrapper<U> implements Lifecycle, MessageList
    */
   protected abstract U convertMessage(Message message) throws JMSException;
 
+  /**
+   * Converts the JMS message into the events it holds. By default a message
+   * holds a single event, wrappers receiving batch messages override it.
+   * @param message the JMS message
+   * @return the events
+   * @throws JMSException if error in using the message
+   */
+  protected Collection<U> convertMessages(Message message) throws JMSException {
+    return Collections.singletonList(convertMessage(message));
+  }
+
   /**
    * Return some human-readable version of an event. Used for logging
    * warnings.
@@ -150,17 +163,18 @@ public abstract class AbstractQueuedWrapper<U> implements Lifecycle, MessageList
           log.trace("AbstractQueuedWrapper received message for {}: {}", this.getClass().getSimpleName(), ((TextMessage)message).getText());
         }
 
-        U event = convertMessage(message);
-        long lastNotificationTime = notificationTime.get();
-        if (lastNotificationTime != 0 && (System.currentTimeMillis() - lastNotificationTime) > notificationTimeBeforeWarning.get()) {
-          String warning = "Slow consumer class: " + this.getClass().getSimpleName() + ". "
-                              + "C2MON client is not consuming updates correctly and should be restarted! "
-                              + " Event type: " + getDescription(event);
-          log.warn(warning);
-          log.warn("No returning call from listener since {}", new Timestamp(lastNotificationTime));
-          slowConsumerListener.onSlowConsumer(warning);
+        for (U event : convertMessages(message)) {
+          long lastNotificationTime = notificationTime.get();
+          if (lastNotificationTime != 0 && (System.currentTimeMillis() - lastNotificationTime) > notificationTimeBeforeWarning.get()) {
+            String warning = "Slow consumer class: " + this.getClass().getSimpleName() + ". "
+                                + "C2MON client is not consuming updates correctly and should be restarted! "
+                                + " Event type: " + getDescription(event);
+            log.warn(warning);
+            log.warn("No returning call from listener since {}", new Timestamp(lastNotificationTime));
+            slowConsumerListener.onSlowConsumer(warning);
+          }
+          eventQueue.put(event);
         }
-        eventQueue.put(event);
       } else {
         log.warn("Non-text message received for " + this.getClass().getSimpleName() + " - ignoring event");
       }
@@ -30,6 +30,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 import javax.annotation.PreDestroy;
 import javax.jms.*;
@@ -53,6 +54,8 @@ import cern.c2mon.client.common.listener.ClientRequestReportListener;
 import cern.c2mon.client.core.config.C2monClientProperties;
 import cern.c2mon.client.core.jms.*;
 import cern.c2mon.client.core.listener.TagUpdateListener;
+import cern.c2mon.shared.client.alarm.AlarmFilter;
+import cern.c2mon.shared.client.request.ClientRequest;
 import cern.c2mon.shared.client.request.ClientRequestReport;
 import cern.c2mon.shared.client.request.ClientRequestResult;
 import cern.c2mon.shared.client.request.JsonRequest;
@@ -140,6 +143,13 @@ public final class JmsProxyImpl implements JmsProxy {
    */
   private Map<TagUpdateListener, TopicRegistrationDetails> registeredListeners;
 
+  /**
+   * The topic each registered listener is currently subscribed to. It may
+   * differ from the topic of its registration details, when the server has
+   * moved the tag to another topic.
+   */
+  private Map<TagUpdateListener, String> subscribedTopics;
+
   /**
    * Listener exclusive lock, to prevent concurrent subscription/unsubscription of listeners.
    */
@@ -176,6 +186,12 @@ public final class JmsProxyImpl implements JmsProxy {
    */
   private AlarmListenerWrapper alarmListenerWrapper;
 
+  /**
+   * Subscriptions of the alarm listeners registered with a filter. Each one
+   * has its own consumer, with the selector of its filter.
+   */
+  private final Map<AlarmListener, FilteredAlarmSubscription> filteredAlarmSubscriptions = new ConcurrentHashMap<>();
+
   /**
    * Notified on slow consumer detection.
    */
@@ -244,6 +260,12 @@ public final class JmsProxyImpl implements JmsProxy {
    */
   private ExecutorService topicPollingExecutor;
 
+  /**
+   * Maximum number of results per reply message requested from the server,
+   * 0 for unchunked replies.
+   */
+  private final int replyChunkSize;
+
   @Autowired
   public JmsProxyImpl(@Qualifier("clientJmsConnectionFactory") final ConnectionFactory connectionFactory,
                       final SlowConsumerListener slowConsumerListener,
@@ -252,6 +274,7 @@ public final class JmsProxyImpl implements JmsProxy {
     this.supervisionTopic = new ActiveMQTopic(properties.getJms().getSupervisionTopic());;
     this.heartbeatTopic = new ActiveMQTopic(properties.getJms().getHeartbeatTopic());;
     this.alarmTopic = new ActiveMQTopic(properties.getJms().getAlarmTopic());;
+    this.replyChunkSize = properties.getReplyChunkSize();
     this.adminMessageTopic = null;
     this.slowConsumerListener = slowConsumerListener;
 
@@ -276,6 +299,7 @@ public final class JmsProxyImpl implements JmsProxy {
     sessions = new ConcurrentHashMap<>();
     topicToWrapper = new ConcurrentHashMap<>();
     registeredListeners = new ConcurrentHashMap<>();
+    subscribedTopics = new ConcurrentHashMap<>();
     listenerLock = new ReentrantReadWriteLock().writeLock();
     connectionListeners = new ArrayList<>();
     connectionListenersLock = new ReentrantReadWriteLock();
@@ -449,6 +473,9 @@ public final class JmsProxyImpl implements JmsProxy {
       if (alarmListenerWrapper.getListenerCount() > 0) {
         subscribeToAlarmTopic();
       }
+      for (FilteredAlarmSubscription subscription : filteredAlarmSubscriptions.values()) {
+        subscribeToAlarmTopic(subscription);
+      }
 
       // refresh supervision subscription
       subscribeToSupervisionTopic();
@@ -486,6 +513,35 @@ public final class JmsProxyImpl implements JmsProxy {
     log.debug("Successfully unsubscribed from alarm topic");
   }
 
+  /**
+   * Subscribes a filtered alarm listener to the alarm topic.
+   * @param subscription the subscription of the listener
+   * @throws JMSException if problem subscribing
+   */
+  private void subscribeToAlarmTopic(final FilteredAlarmSubscription subscription) throws JMSException {
+    subscription.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+    MessageConsumer consumer = subscription.session.createConsumer(alarmTopic, subscription.selector);
+    consumer.setMessageListener(subscription.wrapper);
+    log.debug("Successfully subscribed to alarm topic with selector [{}]", subscription.selector);
+  }
+
+  /**
+   * Unsubscribes a filtered alarm listener from the alarm topic.
+   * @param subscription the subscription of the listener
+   * @throws JMSException if problem unsubscribing
+   */
+  private void unsubscribeFromAlarmTopic(final FilteredAlarmSubscription subscription) throws JMSException {
+    try {
+      if (subscription.session != null) {
+        subscription.session.close(); // closes the consumer also
+        subscription.session = null;
+      }
+    } finally {
+      subscription.wrapper.stop();
+    }
+    log.debug("Successfully unsubscribed from alarm topic with selector [{}]", subscription.selector);
+  }
+
   /**
    * Subscribes to the heartbeat topic. Called when refreshing all
    * subscriptions.
@@ -550,25 +606,21 @@ public final class JmsProxyImpl implements JmsProxy {
       listenerLock.lock();
       try {
         boolean refreshSubscriptions = refreshLock.isWriteLocked();
+        String subscribedTopic = subscribedTopics.get(serverUpdateListener);
+        boolean topicChanged = !refreshSubscriptions && subscribedTopic != null
+            && !subscribedTopic.equals(topicRegistrationDetails.getTopicName());
 
-        if (refreshSubscriptions || !isRegisteredListener(serverUpdateListener)) { // throw exception if
+        if (refreshSubscriptions || !isRegisteredListener(serverUpdateListener) || topicChanged) { // throw exception if
           // TagUpdateListener
           // null
           try {
             if (refreshSubscriptions || connected) {
-              String topicName = topicRegistrationDetails.getTopicName();
-              if (topicToWrapper.containsKey(topicName)) {
-                topicToWrapper.get(topicName).addListener(serverUpdateListener, topicRegistrationDetails.getId());
-              } else {
-                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-                Topic topic = session.createTopic(topicRegistrationDetails.getTopicName());
-                MessageConsumer consumer = session.createConsumer(topic);
-                MessageListenerWrapper wrapper = new MessageListenerWrapper(topicRegistrationDetails.getId(), serverUpdateListener, HIGH_LISTENER_QUEUE_SIZE,
-                    slowConsumerListener, topicPollingExecutor);
-                wrapper.start();
-                consumer.setMessageListener(wrapper);
-                topicToWrapper.put(topicName, wrapper);
-                sessions.put(wrapper, session);
+              subscribe(serverUpdateListener, topicRegistrationDetails);
+              if (topicChanged) {
+                // subscribed to the new topic first, so that no update is missed
+                log.debug("Moving the subscription of Tag {} from topic {} to {}", topicRegistrationDetails.getId(), subscribedTopic,
+                    topicRegistrationDetails.getTopicName());
+                unsubscribe(subscribedTopic, topicRegistrationDetails.getId());
               }
 
               if (!refreshSubscriptions) {
@@ -595,6 +647,55 @@ public final class JmsProxyImpl implements JmsProxy {
     }
   }
 
+  /**
+   * Subscribes the listener to the topic of the registration details, sharing
+   * the subscription of the other listeners of that topic.
+   */
+  private void subscribe(final TagUpdateListener serverUpdateListener, final TopicRegistrationDetails topicRegistrationDetails)
+      throws JMSException {
+    String topicName = topicRegistrationDetails.getTopicName();
+    if (topicToWrapper.containsKey(topicName)) {
+      topicToWrapper.get(topicName).addListener(serverUpdateListener, topicRegistrationDetails.getId());
+    } else {
+      Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+      Topic topic = session.createTopic(topicName);
+      MessageConsumer consumer = session.createConsumer(topic);
+      MessageListenerWrapper wrapper = new MessageListenerWrapper(topicRegistrationDetails.getId(), serverUpdateListener, HIGH_LISTENER_QUEUE_SIZE,
+          slowConsumerListener, topicPollingExecutor);
+      wrapper.start();
+      consumer.setMessageListener(wrapper);
+      topicToWrapper.put(topicName, wrapper);
+      sessions.put(wrapper, session);
+    }
+    subscribedTopics.put(serverUpdateListener, topicName);
+  }
+
+  /**
+   * Removes the listener of the tag from the topic, and closes the
+   * subscription if it was the last one.
+   */
+  private void unsubscribe(final String topicName, final Long tagId) {
+    MessageListenerWrapper wrapper = topicToWrapper.get(topicName);
+    if (wrapper == null) {
+      return;
+    }
+    wrapper.removeListener(tagId);
+    if (wrapper.isEmpty()) { // no subscribed listeners, so close session
+      log.trace("No listeners registered to topic " + topicName + " so closing down MessageListenerWrapper");
+      try {
+        Session session = sessions.get(wrapper);
+        session.close();
+      } catch (JMSException ex) {
+        log.error("Failed to unregister properly from a Tag update; subscriptions will be refreshed.");
+        startReconnectThread();
+      } finally {
+        wrapper.stop();
+        sessions.remove(wrapper);
+        topicToWrapper.remove(topicName);
+      }
+    }
+  }
+
   @Override
   public void replaceListener(final TagUpdateListener registeredListener, final TagUpdateListener replacementListener) {
     if (registeredListener == null && replacementListener == null) {
@@ -605,8 +706,10 @@ public final class JmsProxyImpl implements JmsProxy {
       listenerLock.lock();
       try {
         TopicRegistrationDetails tag = registeredListeners.get(registeredListener);
-        topicToWrapper.get(tag.getTopicName()).addListener(replacementListener, tag.getId());
+        String topicName = subscribedTopics.remove(registeredListener);
+        topicToWrapper.get(topicName).addListener(replacementListener, tag.getId());
         registeredListeners.put(replacementListener, registeredListeners.remove(registeredListener));
+        subscribedTopics.put(replacementListener, topicName);
       } finally {
         listenerLock.unlock();
       }
@@ -645,6 +748,34 @@ public final class JmsProxyImpl implements JmsProxy {
       final JsonRequest<T> jsonRequest, final String queueName, final int timeout,
       final ClientRequestReportListener reportListener) throws JMSException {
 
+    return doSendRequest(jsonRequest, queueName, timeout, reportListener, null);
+  }
+
+  @Override
+  public <T extends ClientRequestResult> void sendRequest(
+      final JsonRequest<T> jsonRequest, final String queueName, final int timeout,
+      final ClientRequestReportListener reportListener, final Consumer<Collection<T>> chunkConsumer) throws JMSException {
+
+    if (chunkConsumer == null) {
+      throw new NullPointerException("sendRequest(..) method called with null chunk consumer argument");
+    }
+    doSendRequest(jsonRequest, queueName, timeout, reportListener, chunkConsumer);
+  }
+
+  /**
+   * Sends the request and waits for the reply, which may be split by the
+   * server into several chunks. Each chunk is decoded as soon as it is
+   * received and is passed to the chunk consumer, or is accumulated into the
+   * returned collection if no consumer is given.
+   *
+   * @return the response to the request, or an empty collection if the
+   *         results were passed to the chunk consumer
+   */
+  @SuppressWarnings("unchecked")
+  private <T extends ClientRequestResult> Collection<T> doSendRequest(
+      final JsonRequest<T> jsonRequest, final String queueName, final int timeout,
+      final ClientRequestReportListener reportListener, final Consumer<Collection<T>> chunkConsumer) throws JMSException {
+
     if (queueName == null) {
       throw new NullPointerException("sendRequest(..) method called with null queue name argument");
     }
@@ -670,6 +801,9 @@ public final class JmsProxyImpl implements JmsProxy {
 
           // send the Client Request as a Json Text Message
           message = session.createTextMessage(jsonRequest.toJson());
+          if (replyChunkSize > 0) {
+            message.setIntProperty(ClientRequest.MAX_CHUNK_SIZE_PROPERTY, replyChunkSize);
+          }
         }
 
         TemporaryQueue replyQueue = session.createTemporaryQueue();
@@ -681,6 +815,9 @@ public final class JmsProxyImpl implements JmsProxy {
           producer.setTimeToLive(JMS_MESSAGE_TIMEOUT);
           producer.send(message);
 
+          Collection<T> chunkedResult = null;
+          int receivedChunks = 0;
+
           while (connected && !shutdownRequested) { // until we receive the result
             // (it is possible to receive progress and / or error reports during this process)
 
@@ -690,17 +827,45 @@ public final class JmsProxyImpl implements JmsProxy {
               throw new RuntimeException("No reply received from server - possible timeout?");
             }
 
+            Collection<T> resultCollection;
             if (replyMessage instanceof ObjectMessage) {
-              return (Collection<T>) ((ObjectMessage) replyMessage).getObject();
+              resultCollection = (Collection<T>) ((ObjectMessage) replyMessage).getObject();
+            }
+            else if (replyMessage.propertyExists(ClientRequest.CHUNK_COUNT_PROPERTY)) {
+              // one part of a reply split by the server
+              int chunkCount = replyMessage.getIntProperty(ClientRequest.CHUNK_COUNT_PROPERTY);
+              Collection<T> chunk = jsonRequest.fromJsonResponse(((TextMessage) replyMessage).getText());
+              receivedChunks++;
+              handleChunkProgress(receivedChunks, chunkCount, reportListener);
+
+              if (chunkConsumer != null) {
+                chunkConsumer.accept(chunk);
+              } else if (chunkedResult == null) {
+                chunkedResult = new ArrayList<>(chunk);
+              } else {
+                chunkedResult.addAll(chunk);
+              }
+
+              if (receivedChunks < chunkCount) {
+                continue;
+              }
+              return chunkedResult == null ? new ArrayList<>() : chunkedResult;
             }
             else {
               // replyMessage is an instanceof TextMessage (json)
               TextMessage textMessage = (TextMessage) (replyMessage);
 
-              Collection<T> resultCollection = handleJsonResponse(textMessage, jsonRequest, reportListener);
-              if (resultCollection != null)
-                return resultCollection;
+              resultCollection = handleJsonResponse(textMessage, jsonRequest, reportListener);
+              if (resultCollection == null) {
+                continue;
+              }
+            }
+
+            if (chunkConsumer == null) {
+              return resultCollection;
             }
+            chunkConsumer.accept(resultCollection);
+            return new ArrayList<>();
           }
           throw new RuntimeException("Disconnected from JMS, so unable to process request.");
         } finally {
@@ -762,6 +927,19 @@ public final class JmsProxyImpl implements JmsProxy {
     return resultCollection;
   }
 
+  /**
+   * Informs the listener about the progress of a chunked reply.
+   * @param receivedChunks the number of chunks received so far
+   * @param chunkCount the total number of chunks of the reply
+   * @param reportListener the listener to be informed. Can be null in case no one cares about the progress.
+   */
+  private void handleChunkProgress(final int receivedChunks, final int chunkCount, final ClientRequestReportListener reportListener) {
+    log.debug("Received chunk {} of {} of the reply", receivedChunks, chunkCount);
+    if (reportListener != null) {
+      reportListener.onProgressReportReceived(new ChunkProgressReport(receivedChunks, chunkCount));
+    }
+  }
+
   /**
    * Informs the listener in case a report is received.
    * @param report the received report.
@@ -804,24 +982,11 @@ public final class JmsProxyImpl implements JmsProxy {
       listenerLock.lock();
       try {
         if (isRegisteredListener(serverUpdateListener)) {
-          TopicRegistrationDetails subsribedToTag = registeredListeners.get(serverUpdateListener);
-          MessageListenerWrapper wrapper = topicToWrapper.get(subsribedToTag.getTopicName());
-          wrapper.removeListener(subsribedToTag.getId());
-          if (wrapper.isEmpty()) { // no subscribed listeners, so close session
-            log.trace("No listeners registered to topic " + subsribedToTag.getTopicName() + " so closing down MessageListenerWrapper");
-            try {
-              Session session = sessions.get(wrapper);
-              session.close();
-            } catch (JMSException ex) {
-              log.error("Failed to unregister properly from a Tag update; subscriptions will be refreshed.");
-              startReconnectThread();
-            } finally {
-              wrapper.stop();
-              sessions.remove(wrapper);
-              topicToWrapper.remove(subsribedToTag.getTopicName());
-            }
+          TopicRegistrationDetails subsribedToTag = registeredListeners.remove(serverUpdateListener);
+          String topicName = subscribedTopics.remove(serverUpdateListener);
+          if (topicName != null) {
+            unsubscribe(topicName, subsribedToTag.getId());
           }
-          registeredListeners.remove(serverUpdateListener);
         }
       } finally {
         listenerLock.unlock();
@@ -911,12 +1076,54 @@ public final class JmsProxyImpl implements JmsProxy {
     alarmListenerWrapper.addListener(alarmListener);
   }
 
+  @Override
+  public void registerAlarmListener(final AlarmListener alarmListener, final AlarmFilter filter) throws JMSException {
+    if (alarmListener == null) {
+      throw new NullPointerException("Trying to register null alarm listener with JmsProxy.");
+    }
+    String selector = filter != null ? filter.toSelector() : null;
+    if (selector == null) {
+      registerAlarmListener(alarmListener);
+      return;
+    }
+
+    ensureConnection();
+
+    refreshLock.readLock().lock();
+    try {
+      AlarmListenerWrapper wrapper = new AlarmListenerWrapper(HIGH_LISTENER_QUEUE_SIZE, slowConsumerListener, topicPollingExecutor);
+      wrapper.addListener(alarmListener);
+      wrapper.start();
+      FilteredAlarmSubscription subscription = new FilteredAlarmSubscription(selector, wrapper);
+      try {
+        subscribeToAlarmTopic(subscription);
+      } catch (JMSException e) {
+        wrapper.stop();
+        log.error("Did not manage to subscribe To Alarm Topic with selector [" + selector + "].", e);
+        throw e;
+      }
+
+      FilteredAlarmSubscription previous = filteredAlarmSubscriptions.put(alarmListener, subscription);
+      if (previous != null) {
+        unsubscribeFromAlarmTopic(previous);
+      }
+    } finally {
+      refreshLock.readLock().unlock();
+    }
+  }
+
   @Override
   public void unregisterAlarmListener(final AlarmListener alarmListener) throws JMSException {
     if (alarmListener == null) {
       throw new NullPointerException("Trying to unregister null alarm listener from JmsProxy.");
     }
 
+    FilteredAlarmSubscription subscription = filteredAlarmSubscriptions.remove(alarmListener);
+    if (subscription != null) {
+      unsubscribeFromAlarmTopic(subscription);
+      return;
+    }
+
     if (alarmListenerWrapper.getListenerCount() == 1) { // this is our last
       // listener!
       // -> it's time to unsubscribe from the topic
@@ -980,6 +1187,7 @@ public final class JmsProxyImpl implements JmsProxy {
     shutdownRequested = true;
     supervisionListenerWrapper.stop();
     alarmListenerWrapper.stop();
+    filteredAlarmSubscriptions.values().forEach(subscription -> subscription.wrapper.stop());
     broadcastMessageListenerWrapper.stop();
     heartbeatListenerWrapper.stop();
     topicPollingExecutor.shutdown();
@@ -1002,10 +1210,41 @@ public final class JmsProxyImpl implements JmsProxy {
 
     returnMap.put(supervisionTopic.toString(), supervisionListenerWrapper.getQueueSize());
     returnMap.put(alarmTopic.toString(), alarmListenerWrapper.getQueueSize());
+    for (FilteredAlarmSubscription subscription : filteredAlarmSubscriptions.values()) {
+      returnMap.put(alarmTopic.toString() + " [" + subscription.selector + "]", subscription.wrapper.getQueueSize());
+    }
     if (adminMessageTopic != null) {
       returnMap.put(adminMessageTopic.toString(), broadcastMessageListenerWrapper.getQueueSize());
     }
     returnMap.put(heartbeatTopic.toString(), heartbeatListenerWrapper.getQueueSize());
     return returnMap;
   }
+
+  /**
+   * Consumer of the alarm topic for a listener registered with a filter.
+   */
+  private static final class FilteredAlarmSubscription {
+
+    private final String selector;
+
+    private final AlarmListenerWrapper wrapper;
+
+    /** Session of the consumer, re-created on reconnection */
+    private Session session;
+
+    FilteredAlarmSubscription(final String selector, final AlarmListenerWrapper wrapper) {
+      this.selector = selector;
+      this.wrapper = wrapper;
+    }
+  }
+
+  /**
+   * Progress of a reply received in several chunks.
+   */
+  private static final class ChunkProgressReport extends ClientRequestReport {
+
+    ChunkProgressReport(final int receivedChunks, final int chunkCount) {
+      super(chunkCount, receivedChunks, chunkCount, receivedChunks, "Received part " + receivedChunks + " of " + chunkCount + " of the reply");
+    }
+  }
 }
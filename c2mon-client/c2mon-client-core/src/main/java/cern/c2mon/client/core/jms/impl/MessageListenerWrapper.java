@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.client.core.jms.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -106,6 +108,19 @@ class MessageListenerWrapper extends AbstractQueuedWrapper<TagValueUpdate> {
       return TransferTagSerializer.fromJson(((TextMessage) message).getText(), TransferTagValueImpl.class);
     }
 
+    /**
+     * Unpacks the batch messages holding an array of tag updates, all other
+     * messages hold a single update.
+     */
+    @Override
+    protected Collection<TagValueUpdate> convertMessages(Message message) throws JMSException {
+      if (message.propertyExists(TransferTagSerializer.FORMAT_VERSION_PROPERTY)
+          && message.getIntProperty(TransferTagSerializer.FORMAT_VERSION_PROPERTY) == TransferTagSerializer.BATCH_FORMAT_VERSION) {
+        return new ArrayList<>(TransferTagSerializer.fromJsonArray(((TextMessage) message).getText(), TransferTagValueImpl.class));
+      }
+      return super.convertMessages(message);
+    }
+
     @Override
     protected synchronized void notifyListeners(TagValueUpdate tagValueUpdate) {
       if (listeners.containsKey(tagValueUpdate.getId())) {
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 import javax.jms.JMSException;
 
@@ -126,7 +127,15 @@ public class RequestHandlerImpl implements RequestHandler {
     if (tagIds == null) {
       throw new NullPointerException("requestTags(..) method called with null parameter.");
     }
-    return executeRequest(tagIds, TagUpdate.class, null, defaultRequestQueue);
+    return executeRequest(tagIds, TagUpdate.class, null, defaultRequestQueue, null);
+  }
+
+  @Override
+  public void requestTags(final Collection<Long> tagIds, final Consumer<Collection<TagUpdate>> chunkConsumer) throws JMSException {
+    if (tagIds == null || chunkConsumer == null) {
+      throw new NullPointerException("requestTags(..) method called with null parameter.");
+    }
+    executeRequest(tagIds, TagUpdate.class, null, defaultRequestQueue, synchronizedConsumer(chunkConsumer));
   }
 
   @Override
@@ -134,7 +143,15 @@ public class RequestHandlerImpl implements RequestHandler {
     if (regexList == null) {
       throw new NullPointerException("requestTags(..) method called with null parameter.");
     }
-    return executeNameRequest(regexList, TagUpdate.class, null, defaultRequestQueue);
+    return executeNameRequest(regexList, TagUpdate.class, null, defaultRequestQueue, null);
+  }
+
+  @Override
+  public void requestTagsByRegex(final Collection<String> regexList, final Consumer<Collection<TagUpdate>> chunkConsumer) throws JMSException {
+    if (regexList == null || chunkConsumer == null) {
+      throw new NullPointerException("requestTagsByRegex(..) method called with null parameter.");
+    }
+    executeNameRequest(regexList, TagUpdate.class, null, defaultRequestQueue, synchronizedConsumer(chunkConsumer));
   }
 
   @Override
@@ -142,7 +159,7 @@ public class RequestHandlerImpl implements RequestHandler {
     if (alarmIds == null) {
       throw new NullPointerException("requestAlarms(..) method called with null parameter.");
     }
-    return executeRequest(alarmIds, AlarmValue.class, null, defaultRequestQueue);
+    return executeRequest(alarmIds, AlarmValue.class, null, defaultRequestQueue, null);
   }
 
   @Override
@@ -164,7 +181,7 @@ public class RequestHandlerImpl implements RequestHandler {
     if (commandIds == null) {
       throw new NullPointerException("requestTags(..) method called with null parameter.");
     }
-    return executeRequest(commandIds, CommandTagHandle.class, null, defaultRequestQueue);
+    return executeRequest(commandIds, CommandTagHandle.class, null, defaultRequestQueue, null);
   }
 
   @Override
@@ -178,7 +195,7 @@ public class RequestHandlerImpl implements RequestHandler {
     ArrayList<Long> ids = new ArrayList<>();
     ids.add(configurationId);
 
-    Collection<ConfigurationReport> report = executeRequest(ids, ConfigurationReport.class, reportListener, adminRequestQueue);
+    Collection<ConfigurationReport> report = executeRequest(ids, ConfigurationReport.class, reportListener, adminRequestQueue, null);
 
     if (report.isEmpty()) {
       final String errorMsg = "applyConfiguration returned an empty Collection";
@@ -202,7 +219,7 @@ public class RequestHandlerImpl implements RequestHandler {
     if (tagIds == null) {
       throw new NullPointerException("requestTagConfigurations(..) method called with null parameter.");
     }
-    return executeRequest(tagIds, TagConfig.class, null, defaultRequestQueue);
+    return executeRequest(tagIds, TagConfig.class, null, defaultRequestQueue, null);
   }
 
   @Override
@@ -210,7 +227,15 @@ public class RequestHandlerImpl implements RequestHandler {
     if (tagIds == null) {
       throw new NullPointerException("requestTagValues(..) method called with null parameter.");
     }
-    return executeRequest(tagIds, TagValueUpdate.class, null, defaultRequestQueue);
+    return executeRequest(tagIds, TagValueUpdate.class, null, defaultRequestQueue, null);
+  }
+
+  @Override
+  public void requestTagValues(final Collection<Long> tagIds, final Consumer<Collection<TagValueUpdate>> chunkConsumer) throws JMSException {
+    if (tagIds == null || chunkConsumer == null) {
+      throw new NullPointerException("requestTagValues(..) method called with null parameter.");
+    }
+    executeRequest(tagIds, TagValueUpdate.class, null, defaultRequestQueue, synchronizedConsumer(chunkConsumer));
   }
 
   /**
@@ -223,10 +248,14 @@ public class RequestHandlerImpl implements RequestHandler {
    *          collection of ids to request
    * @param clazz
    *          type of request result
-   * @return the result of the request
+   * @param chunkConsumer
+   *          receives the results as they arrive, may be null
+   * @return the result of the request, or an empty collection if the results
+   *         were passed to the chunk consumer
    */
   private <T extends ClientRequestResult> Collection<T> executeRequest(
-      final Collection<Long> ids, final Class<T> clazz, final ClientRequestReportListener reportListener, final String requestQueue) {
+      final Collection<Long> ids, final Class<T> clazz, final ClientRequestReportListener reportListener, final String requestQueue,
+      final Consumer<Collection<T>> chunkConsumer) {
 
     log.debug("Initiating client request");
     ClientRequestImpl<T> clientRequest = new ClientRequestImpl<>(clazz);
@@ -238,7 +267,7 @@ public class RequestHandlerImpl implements RequestHandler {
         clientRequest.addTagId(it.next());
         counter++;
       }
-      RequestValuesTask<T> task = new RequestValuesTask<>(clientRequest, reportListener, requestQueue);
+      RequestValuesTask<T> task = new RequestValuesTask<>(clientRequest, reportListener, requestQueue, chunkConsumer);
       results.add(executor.submit(task));
       clientRequest = new ClientRequestImpl<>(clazz);
       counter = 0;
@@ -269,10 +298,14 @@ public class RequestHandlerImpl implements RequestHandler {
    *          collection of names or regular expression to request
    * @param clazz
    *          type of request result
-   * @return the result of the request
+   * @param chunkConsumer
+   *          receives the results as they arrive, may be null
+   * @return the result of the request, or an empty collection if the results
+   *         were passed to the chunk consumer
    */
   private <T extends ClientRequestResult> Collection<T> executeNameRequest(
-      final Collection<String> regexList, final Class<T> clazz, final ClientRequestReportListener reportListener, final String requestQueue) {
+      final Collection<String> regexList, final Class<T> clazz, final ClientRequestReportListener reportListener, final String requestQueue,
+      final Consumer<Collection<T>> chunkConsumer) {
 
     log.debug("Initiating client request");
     ClientRequestImpl<T> clientRequest = new ClientRequestImpl<>(clazz);
@@ -284,7 +317,7 @@ public class RequestHandlerImpl implements RequestHandler {
         clientRequest.addRegex(it.next());
         counter++;
       }
-      RequestValuesTask<T> task = new RequestValuesTask<>(clientRequest, reportListener, requestQueue);
+      RequestValuesTask<T> task = new RequestValuesTask<>(clientRequest, reportListener, requestQueue, chunkConsumer);
       results.add(executor.submit(task));
       clientRequest = new ClientRequestImpl<>(clazz);
       counter = 0;
@@ -305,6 +338,22 @@ public class RequestHandlerImpl implements RequestHandler {
     return finalCollection;
   }
 
+  /**
+   * The sub-requests run in parallel, the returned consumer lets one of them
+   * at a time call the given consumer.
+   *
+   * @param chunkConsumer the consumer of the results
+   * @return the consumer to pass to the sub-requests
+   */
+  private static <T> Consumer<Collection<T>> synchronizedConsumer(final Consumer<Collection<T>> chunkConsumer) {
+    Object consumerLock = new Object();
+    return chunk -> {
+      synchronized (consumerLock) {
+        chunkConsumer.accept(chunk);
+      }
+    };
+  }
+
   /**
    * Setter method.
    *
@@ -405,6 +454,9 @@ public class RequestHandlerImpl implements RequestHandler {
     /** The queue to send the request to */
     private String requestQueue;
 
+    /** Receives the results as they arrive, null to return them. */
+    private Consumer<Collection<T>> chunkConsumer;
+
     /**
      * @param clientRequest The request.
      * @param reportListener Receives updates for the progress of the request.
@@ -412,9 +464,22 @@ public class RequestHandlerImpl implements RequestHandler {
     public RequestValuesTask(final ClientRequestImpl<T> clientRequest,
                              final ClientRequestReportListener reportListener,
                              final String requestQueue) {
+      this(clientRequest, reportListener, requestQueue, null);
+    }
+
+    /**
+     * @param clientRequest The request.
+     * @param reportListener Receives updates for the progress of the request.
+     * @param chunkConsumer Receives the results as they arrive, may be null.
+     */
+    public RequestValuesTask(final ClientRequestImpl<T> clientRequest,
+                             final ClientRequestReportListener reportListener,
+                             final String requestQueue,
+                             final Consumer<Collection<T>> chunkConsumer) {
       this.clientRequest = clientRequest;
       this.reportListener = reportListener;
       this.requestQueue = requestQueue;
+      this.chunkConsumer = chunkConsumer;
     }
 
     /**
@@ -427,6 +492,10 @@ public class RequestHandlerImpl implements RequestHandler {
 
     @Override
     public Collection<T> call() throws Exception {
+      if (chunkConsumer != null) {
+        jmsProxy.sendRequest(clientRequest, requestQueue, clientRequest.getTimeout(), reportListener, chunkConsumer);
+        return new ArrayList<>();
+      }
       return jmsProxy.sendRequest(clientRequest, requestQueue, clientRequest.getTimeout(), reportListener);
     }
   }
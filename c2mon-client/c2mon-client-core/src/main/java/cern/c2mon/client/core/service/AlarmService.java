@@ -22,6 +22,7 @@ import java.util.Optional;
 import javax.jms.JMSException;
 
 import cern.c2mon.client.core.jms.AlarmListener;
+import cern.c2mon.shared.client.alarm.AlarmFilter;
 import cern.c2mon.shared.client.alarm.AlarmValue;
 
 public interface AlarmService {
@@ -31,6 +32,17 @@ public interface AlarmService {
    * @throws JMSException
    */
   void addAlarmListener(AlarmListener listener) throws JMSException;
+
+  /**
+   * Registers an <code>AlarmListener</code> to receive updates about the alarms
+   * matching the filter. The alarms are filtered by the JMS broker, so that the
+   * other alarm updates are not sent to the client.
+   *
+   * @param listener the listener to register
+   * @param filter the alarms to receive, e.g. the alarms of some fault families
+   * @throws JMSException
+   */
+  void addAlarmListener(AlarmListener listener, AlarmFilter filter) throws JMSException;
   
   /**
    * Returns an {@link AlarmValue} object for every valid id on the list.
@@ -29,6 +29,7 @@ import cern.c2mon.client.core.jms.AlarmListener;
 import cern.c2mon.client.core.jms.JmsProxy;
 import cern.c2mon.client.core.jms.RequestHandler;
 import cern.c2mon.client.core.service.AlarmService;
+import cern.c2mon.shared.client.alarm.AlarmFilter;
 import cern.c2mon.shared.client.alarm.AlarmValue;
 import lombok.extern.slf4j.Slf4j;
 
@@ -41,6 +42,9 @@ public class AlarmServiceImpl implements AlarmService, AlarmListener {
 
   /** List of subscribed alarm listeners */
   private final Set<AlarmListener> alarmListeners = new HashSet<AlarmListener>();
+
+  /** List of the alarm listeners subscribed with a filter, registered directly to the <code>JmsProxy</code> */
+  private final Set<AlarmListener> filteredAlarmListeners = new HashSet<AlarmListener>();
   
   /** Reference to the <code>JmsProxy</code> singleton instance */
   private final JmsProxy jmsProxy;
@@ -78,10 +82,29 @@ public class AlarmServiceImpl implements AlarmService, AlarmListener {
     }
   }
 
+  @Override
+  public void addAlarmListener(final AlarmListener listener, final AlarmFilter filter) throws JMSException {
+    alarmListenersLock.writeLock().lock();
+
+    try {
+      log.debug("addAlarmListener() : adding alarm listener " + listener.getClass() + " with filter");
+      jmsProxy.registerAlarmListener(listener, filter);
+      filteredAlarmListeners.add(listener);
+    } finally {
+      alarmListenersLock.writeLock().unlock();
+    }
+  }
+
   @Override
   public void removeAlarmListener(final AlarmListener listener) throws JMSException {
     alarmListenersLock.writeLock().lock();
     try {
+      if (filteredAlarmListeners.remove(listener)) {
+        log.debug("removeAlarmListener() : removing filtered alarm listener");
+        jmsProxy.unregisterAlarmListener(listener);
+        return;
+      }
+
       log.debug("removeAlarmListener() : removing alarm listener");
 
       if (alarmListeners.size() == 1) {
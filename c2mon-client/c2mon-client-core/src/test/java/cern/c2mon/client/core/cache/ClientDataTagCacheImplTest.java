@@ -131,8 +131,8 @@ public class ClientDataTagCacheImplTest {
       serverUpdates.add(createValidTransferTag(tagId));
       prepareClientDataTagCreateMock(tagId);
     }
-    EasyMock.expect(requestHandlerMock.requestTags(tagIds)).andReturn(serverUpdates);
-    EasyMock.expect(requestHandlerMock.requestTagValues(tagIds)).andReturn(new ArrayList<>(serverUpdates));
+    RequestHandlerMock.expectTags(requestHandlerMock, tagIds, serverUpdates);
+    RequestHandlerMock.expectTagValues(requestHandlerMock, tagIds, new ArrayList<>(serverUpdates));
     TagListener listener = EasyMock.createMock(TagListener.class);
 
     // run test
@@ -163,8 +163,8 @@ public class ClientDataTagCacheImplTest {
       TagController cdtMock = prepareClientDataTagCreateMock(tagId);
       supervisionManagerMock.removeSupervisionListener(cdtMock);
     }
-    EasyMock.expect(requestHandlerMock.requestTags(tagIds)).andReturn(serverUpdates);
-    EasyMock.expect(requestHandlerMock.requestTagValues(tagIds)).andReturn(new ArrayList<TagValueUpdate>(serverUpdates));
+    RequestHandlerMock.expectTags(requestHandlerMock, tagIds, serverUpdates);
+    RequestHandlerMock.expectTagValues(requestHandlerMock, tagIds, new ArrayList<TagValueUpdate>(serverUpdates));
     TagListener listener1 = EasyMock.createMock(TagListener.class);
     TagListener listener2 = EasyMock.createMock(TagListener.class);
 
@@ -203,8 +203,8 @@ public class ClientDataTagCacheImplTest {
       serverUpdates.add(createValidTransferTag(tagId));
       prepareClientDataTagCreateMock(tagId);
     }
-    EasyMock.expect(requestHandlerMock.requestTags(tagIds)).andReturn(serverUpdates);
-    EasyMock.expect(requestHandlerMock.requestTagValues(tagIds)).andReturn(new ArrayList<>(serverUpdates));
+    RequestHandlerMock.expectTags(requestHandlerMock, tagIds, serverUpdates);
+    RequestHandlerMock.expectTagValues(requestHandlerMock, tagIds, new ArrayList<>(serverUpdates));
     EasyMock.expectLastCall();
     supervisionManagerMock.addSupervisionListener(anyObject(), anyObject(), anyObject(), anyObject());
     EasyMock.expectLastCall().times(2);
@@ -234,8 +234,8 @@ public class ClientDataTagCacheImplTest {
       serverUpdates.add(createValidTransferTag(tagId));
       prepareClientDataTagCreateMock(tagId);
     }
-    EasyMock.expect(requestHandlerMock.requestTags(tagIds)).andReturn(serverUpdates);
-    EasyMock.expect(requestHandlerMock.requestTagValues(tagIds)).andReturn(new ArrayList<>(serverUpdates));
+    RequestHandlerMock.expectTags(requestHandlerMock, tagIds, serverUpdates);
+    RequestHandlerMock.expectTagValues(requestHandlerMock, tagIds, new ArrayList<>(serverUpdates));
     TagListener listener = EasyMock.createMock(TagListener.class);
 
     // run test
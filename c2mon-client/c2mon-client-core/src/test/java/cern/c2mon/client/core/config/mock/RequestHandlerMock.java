@@ -1,6 +1,13 @@
 package cern.c2mon.client.core.config.mock;
 
+import java.util.Collection;
+import java.util.function.Consumer;
+
+import javax.jms.JMSException;
+
 import cern.c2mon.client.core.jms.RequestHandler;
+import cern.c2mon.shared.client.tag.TagUpdate;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
 import org.easymock.EasyMock;
 import org.springframework.context.annotation.Bean;
 
@@ -13,4 +20,31 @@ public class RequestHandlerMock {
   public RequestHandler coreRequestHandler() {
     return EasyMock.createMock(RequestHandler.class);
   }
+
+  /**
+   * Expects a tag request passing the results to a chunk consumer, and
+   * answers it with the given tags as a single chunk.
+   */
+  @SuppressWarnings("unchecked")
+  public static void expectTags(RequestHandler requestHandler, Collection<Long> tagIds, Collection<TagUpdate> tagUpdates) throws JMSException {
+    requestHandler.requestTags(EasyMock.eq(tagIds), EasyMock.<Consumer<Collection<TagUpdate>>>anyObject());
+    EasyMock.expectLastCall().andAnswer(() -> {
+      ((Consumer<Collection<TagUpdate>>) EasyMock.getCurrentArguments()[1]).accept(tagUpdates);
+      return null;
+    });
+  }
+
+  /**
+   * Expects a tag value request passing the results to a chunk consumer, and
+   * answers it with the given values as a single chunk.
+   */
+  @SuppressWarnings("unchecked")
+  public static void expectTagValues(RequestHandler requestHandler, Collection<Long> tagIds, Collection<? extends TagValueUpdate> tagValueUpdates)
+      throws JMSException {
+    requestHandler.requestTagValues(EasyMock.eq(tagIds), EasyMock.<Consumer<Collection<TagValueUpdate>>>anyObject());
+    EasyMock.expectLastCall().andAnswer(() -> {
+      ((Consumer<Collection<TagValueUpdate>>) EasyMock.getCurrentArguments()[1]).accept((Collection<TagValueUpdate>) tagValueUpdates);
+      return null;
+    });
+  }
 }
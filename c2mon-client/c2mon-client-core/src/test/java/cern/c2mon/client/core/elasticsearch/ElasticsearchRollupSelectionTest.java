@@ -0,0 +1,94 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ * <p/>
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ * <p/>
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.client.core.elasticsearch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import cern.c2mon.client.core.config.C2monClientProperties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the choice of the rollup indices by {@link ElasticsearchService}, and
+ * the completion of the rollups with the raw history.
+ */
+public class ElasticsearchRollupSelectionTest {
+
+  private final ElasticsearchService service = new ElasticsearchService(new C2monClientProperties(), "c2mon");
+
+  @Test
+  public void coarsestFittingRollupIsUsed() {
+    assertEquals("c2mon-rollup-1m*", service.getRollupIndex("1m"));
+    assertEquals("c2mon-rollup-1m*", service.getRollupIndex("10m"));
+    assertEquals("c2mon-rollup-1m*", service.getRollupIndex("90m"));
+    assertEquals("c2mon-rollup-1h*", service.getRollupIndex("1h"));
+    assertEquals("c2mon-rollup-1h*", service.getRollupIndex("120m"));
+    assertEquals("c2mon-rollup-1h*", service.getRollupIndex("1d"));
+    assertEquals("c2mon-rollup-1h*", service.getRollupIndex("1w"));
+  }
+
+  @Test
+  public void rawHistoryForFinerIntervals() {
+    assertNull(service.getRollupIndex("1s"));
+    assertNull(service.getRollupIndex("30s"));
+    assertNull(service.getRollupIndex("1M"));
+    assertNull(service.getRollupIndex("none"));
+  }
+
+  @Test
+  public void uncoveredRangesAreAggregatedFromRawHistory() {
+    // rollups from 10 to 50, with the interval 30 missing (e.g. an outage)
+    List<Object[]> rollups = Arrays.asList(bucket(10, 1.0), bucket(20, 2.0), bucket(40, 4.0), bucket(50, 5.0));
+
+    List<long[]> uncovered = ElasticsearchService.getUncoveredRanges(rollups, 0, 69, 10);
+
+    assertEquals(3, uncovered.size());
+    assertArrayEquals(new long[]{0, 19}, uncovered.get(0));
+    assertArrayEquals(new long[]{30, 39}, uncovered.get(1));
+    assertArrayEquals(new long[]{50, 69}, uncovered.get(2));
+
+    List<Object[]> raw = Arrays.asList(bucket(0, 0.5), bucket(10, 1.5), bucket(20, null), bucket(30, 3.0),
+        bucket(40, null), bucket(50, 5.5), bucket(60, 6.0));
+    List<Object[]> merged = ElasticsearchService.merge(rollups, uncovered, raw);
+
+    assertEquals(7, merged.size());
+    assertArrayEquals(new Object[]{0L, 0.5}, merged.get(0));
+    assertArrayEquals(new Object[]{10L, 1.5}, merged.get(1));
+    assertArrayEquals(new Object[]{20L, 2.0}, merged.get(2));
+    assertArrayEquals(new Object[]{30L, 3.0}, merged.get(3));
+    assertArrayEquals(new Object[]{40L, 4.0}, merged.get(4));
+    assertArrayEquals(new Object[]{50L, 5.5}, merged.get(5));
+    assertArrayEquals(new Object[]{60L, 6.0}, merged.get(6));
+  }
+
+  @Test
+  public void wholeRangeUncoveredWithoutRollups() {
+    List<long[]> uncovered = ElasticsearchService.getUncoveredRanges(Collections.emptyList(), 0, 100, 10);
+    assertEquals(1, uncovered.size());
+    assertArrayEquals(new long[]{0, 100}, uncovered.get(0));
+  }
+
+  private static Object[] bucket(long time, Double value) {
+    return new Object[]{time, value};
+  }
+}
@@ -0,0 +1,168 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ * <p/>
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ * <p/>
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.client.core.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the bucketing, eviction and load merging of {@link HistoryCache}.
+ */
+public class HistoryCacheTest {
+
+  private static final long BUCKET = 1000L;
+
+  private long now = 10_000L;
+
+  private final List<long[]> loads = Collections.synchronizedList(new ArrayList<>());
+
+  /** One point every 100ms. */
+  private final BiFunction<Long, Long, List<Object[]>> loader = (from, to) -> {
+    loads.add(new long[]{from, to});
+    List<Object[]> points = new ArrayList<>();
+    for (long timestamp = from + Math.floorMod(-from, 100L); timestamp <= to; timestamp += 100) {
+      points.add(new Object[]{timestamp, (double) timestamp});
+    }
+    return points;
+  };
+
+  @Test
+  public void onlyOpenBucketIsReloaded() {
+    HistoryCache cache = new HistoryCache(1000, 0, 10_000, () -> now);
+
+    List<Object[]> points = cache.get("tag:1", BUCKET, 7050, 10_500, loader);
+    assertEquals(35, points.size());
+    assertEquals(7100L, points.get(0)[0]);
+    assertEquals(10_500L, points.get(34)[0]);
+    assertEquals(1, loads.size());
+    assertEquals(7000L, loads.get(0)[0]);
+    assertEquals(10_999L, loads.get(0)[1]);
+
+    loads.clear();
+    points = cache.get("tag:1", BUCKET, 7050, 10_900, loader);
+    assertEquals(39, points.size());
+    assertEquals(1, loads.size());
+    assertEquals(10_000L, loads.get(0)[0]);
+  }
+
+  @Test
+  public void missingBucketsAreLoadedPerContiguousRange() {
+    HistoryCache cache = new HistoryCache(1000, 0, 10_000, () -> now);
+    cache.get("tag:1", BUCKET, 3000, 3999, loader);
+    cache.get("tag:1", BUCKET, 6000, 6999, loader);
+
+    loads.clear();
+    List<Object[]> points = cache.get("tag:1", BUCKET, 1000, 8999, loader);
+    assertEquals(80, points.size());
+    assertEquals(3, loads.size());
+    assertEquals(1000L, loads.get(0)[0]);
+    assertEquals(2999L, loads.get(0)[1]);
+    assertEquals(4000L, loads.get(1)[0]);
+    assertEquals(5999L, loads.get(1)[1]);
+    assertEquals(7000L, loads.get(2)[0]);
+    assertEquals(8999L, loads.get(2)[1]);
+  }
+
+  @Test
+  public void leastRecentlyUsedBucketsAreEvicted() {
+    HistoryCache cache = new HistoryCache(25, 0, 10_000, () -> now);
+    cache.get("tag:1", BUCKET, 1000, 1999, loader);
+    cache.get("tag:2", BUCKET, 1000, 1999, loader);
+    cache.get("tag:1", BUCKET, 1000, 1999, loader);
+    cache.get("tag:3", BUCKET, 1000, 1999, loader);
+    assertEquals(20, cache.size());
+
+    loads.clear();
+    cache.get("tag:1", BUCKET, 1000, 1999, loader);
+    assertEquals(0, loads.size());
+    cache.get("tag:2", BUCKET, 1000, 1999, loader);
+    assertEquals(1, loads.size());
+  }
+
+  @Test
+  public void truncatedLoadsAreNotCached() {
+    HistoryCache cache = new HistoryCache(1000, 0, 20, () -> now);
+    cache.get("tag:1", BUCKET, 1000, 2999, loader);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void bucketsAreKeptUntilSettled() {
+    HistoryCache cache = new HistoryCache(1000, 5000, 10_000, () -> now);
+    cache.get("tag:1", BUCKET, 1000, 5999, loader);
+    assertEquals(40, cache.size());
+  }
+
+  @Test
+  public void concurrentRequestsShareTheLoad() throws Exception {
+    HistoryCache cache = new HistoryCache(1000, 0, 10_000, () -> now);
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger slowLoads = new AtomicInteger();
+    BiFunction<Long, Long, List<Object[]>> slowLoader = (from, to) -> {
+      slowLoads.incrementAndGet();
+      loading.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return loader.apply(from, to);
+    };
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<Object[]>> first = executor.submit(() -> cache.get("tag:1", BUCKET, 1000, 4999, slowLoader));
+      assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+      Future<List<Object[]>> second = ForkJoinPool.commonPool().submit(() -> cache.get("tag:1", BUCKET, 3000, 6999, slowLoader));
+      Thread.sleep(100);
+      release.countDown();
+
+      assertEquals(40, first.get(5, TimeUnit.SECONDS).size());
+      assertEquals(40, second.get(5, TimeUnit.SECONDS).size());
+      assertEquals(2, slowLoads.get());
+      assertEquals(5000L, loads.get(1)[0]);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void failedLoadsAreNotCached() {
+    HistoryCache cache = new HistoryCache(1000, 0, 10_000, () -> now);
+    try {
+      cache.get("tag:1", BUCKET, 1000, 1999, (from, to) -> {
+        throw new RuntimeException("unavailable");
+      });
+      fail();
+    } catch (RuntimeException e) {
+      assertEquals("unavailable", e.getMessage());
+    }
+    assertEquals(10, cache.get("tag:1", BUCKET, 1000, 1999, loader).size());
+  }
+}
@@ -19,6 +19,8 @@ package cern.c2mon.client.core.jms;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import javax.jms.*;
@@ -40,6 +42,8 @@ import cern.c2mon.client.core.listener.TagUpdateListener;
 import cern.c2mon.client.core.config.C2monClientProperties;
 import cern.c2mon.client.core.config.mock.MockServerConfig;
 import cern.c2mon.client.core.jms.impl.JmsProxyImpl;
+import cern.c2mon.shared.client.alarm.AlarmFilter;
+import cern.c2mon.shared.client.alarm.AlarmValueImpl;
 import cern.c2mon.shared.client.configuration.ConfigurationReport;
 import cern.c2mon.shared.client.request.*;
 import cern.c2mon.shared.client.serializer.TransferTagSerializer;
@@ -157,6 +161,49 @@ public class JmsProxyTest {
     Assert.assertNotNull(response);
   }
 
+  /**
+   * Tests that a reply split by the server into several chunks is passed
+   * chunk by chunk to the consumer, with a progress report per chunk.
+   *
+   * @throws JMSException
+   */
+  @Test
+  public void testSendChunkedRequest() throws JMSException {
+    JsonRequest<SupervisionEvent> jsonRequest = new ClientRequestImpl<>(SupervisionEvent.class);
+    final String queueName = properties.getJms().getRequestQueue() + "-" + System.currentTimeMillis();
+    new Thread(() -> serverTemplate.execute(session -> {
+      MessageConsumer consumer = session.createConsumer(new ActiveMQQueue(queueName));
+      Message message = consumer.receive(10000);
+      Assert.assertNotNull(message);
+      Assert.assertEquals(properties.getReplyChunkSize(), message.getIntProperty(ClientRequest.MAX_CHUNK_SIZE_PROPERTY));
+      MessageProducer producer = session.createProducer(message.getJMSReplyTo());
+      for (int i = 0; i < 3; i++) {
+        Collection<SupervisionEvent> chunk = new ArrayList<>();
+        chunk.add(new SupervisionEventImpl(SupervisionEntity.PROCESS, (long) i, "P_TEST", SupervisionStatus.RUNNING, new Timestamp(System.currentTimeMillis()), "test response"));
+        Message replyMessage = session.createTextMessage(GsonFactory.createGson().toJson(chunk));
+        replyMessage.setIntProperty(ClientRequest.CHUNK_INDEX_PROPERTY, i);
+        replyMessage.setIntProperty(ClientRequest.CHUNK_COUNT_PROPERTY, 3);
+        producer.send(replyMessage);
+      }
+      return null;
+    }, true)).start();
+
+    ClientRequestReportListener reportListener = EasyMock.createMock(ClientRequestReportListener.class);
+    reportListener.onProgressReportReceived(EasyMock.isA(ClientRequestProgressReport.class));
+    EasyMock.expectLastCall().times(3);
+    EasyMock.replay(reportListener);
+
+    List<Collection<SupervisionEvent>> chunks = new ArrayList<>();
+    jmsProxy.sendRequest(jsonRequest, queueName, 10000, reportListener, chunks::add);
+
+    Assert.assertEquals(3, chunks.size());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(1, chunks.get(i).size());
+      Assert.assertEquals(Long.valueOf(i), chunks.get(i).iterator().next().getEntityId());
+    }
+    EasyMock.verify(reportListener);
+  }
+
   /**
    * Tests registration to a topic works.
    * @throws JMSException
@@ -270,6 +317,34 @@ public class JmsProxyTest {
     latch.await();
   }
 
+  /**
+   * Tests that a listener registered with an alarm filter only receives the
+   * matching alarms.
+   */
+  @Test
+  public void testFilteredAlarmNotification() throws InterruptedException, JMSException {
+    List<Long> received = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch latch = new CountDownLatch(1);
+    AlarmListener listener = alarm -> {
+      received.add(alarm.getId());
+      latch.countDown();
+    };
+    jmsProxy.registerAlarmListener(listener, AlarmFilter.builder().faultFamily("PS").activeOnly(true).build());
+
+    String topicName = properties.getJms().getAlarmTopic();
+    sendAlarm(new AlarmValueImpl(1L, 1, "FM", "OTHER", "", 10L, new Timestamp(1000), new Timestamp(1000), true), topicName);
+    sendAlarm(new AlarmValueImpl(2L, 1, "FM", "PS", "", 10L, new Timestamp(1000), new Timestamp(1000), false), topicName);
+    sendAlarm(new AlarmValueImpl(3L, 1, "FM", "PS", "", 10L, new Timestamp(1000), new Timestamp(1000), true), topicName);
+
+    latch.await();
+    Assert.assertEquals(Collections.singletonList(3L), received);
+    jmsProxy.unregisterAlarmListener(listener);
+  }
+
+  private void sendAlarm(AlarmValueImpl alarm, String topicName) {
+    jmsSender.sendToTopic(GsonFactory.createGson().toJson(alarm), topicName, AlarmFilter.toMessageProperties(alarm));
+  }
+
   /**
    * Tests reconnect works when onException is called and that registered
    * connection listeners are notified correctly. Test runs with both supervision and update
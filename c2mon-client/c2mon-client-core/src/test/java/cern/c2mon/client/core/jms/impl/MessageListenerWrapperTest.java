@@ -0,0 +1,111 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.client.core.jms.impl;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.TextMessage;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Test;
+
+import cern.c2mon.shared.client.serializer.TransferTagSerializer;
+import cern.c2mon.shared.client.tag.TagMode;
+import cern.c2mon.shared.client.tag.TagValueUpdate;
+import cern.c2mon.shared.client.tag.TransferTagValueImpl;
+import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the unpacking of the tag update messages by MessageListenerWrapper.
+ */
+public class MessageListenerWrapperTest {
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  private final List<TagValueUpdate> updates = new ArrayList<>();
+
+  private CountDownLatch received;
+
+  private MessageListenerWrapper wrapper;
+
+  @After
+  public void afterTest() {
+    wrapper.stop();
+    executor.shutdown();
+  }
+
+  @Test
+  public void batchMessageNotifiesEachTag() throws Exception {
+    createWrapper(2);
+    TextMessage message = EasyMock.createNiceMock(TextMessage.class);
+    EasyMock.expect(message.propertyExists(TransferTagSerializer.FORMAT_VERSION_PROPERTY)).andReturn(true);
+    EasyMock.expect(message.getIntProperty(TransferTagSerializer.FORMAT_VERSION_PROPERTY)).andReturn(TransferTagSerializer.BATCH_FORMAT_VERSION);
+    EasyMock.expect(message.getText()).andReturn(TransferTagSerializer.toJsonArray(Arrays.asList(createTag(1L), createTag(2L), createTag(3L)))).anyTimes();
+    EasyMock.replay(message);
+
+    wrapper.onMessage(message);
+
+    assertTrue(received.await(5, TimeUnit.SECONDS));
+    assertEquals(Long.valueOf(1L), updates.get(0).getId());
+    assertEquals(Long.valueOf(2L), updates.get(1).getId());
+  }
+
+  @Test
+  public void singleMessageNotifiesTag() throws Exception {
+    createWrapper(1);
+    TextMessage message = EasyMock.createNiceMock(TextMessage.class);
+    EasyMock.expect(message.getText()).andReturn(TransferTagSerializer.toJson(createTag(2L))).anyTimes();
+    EasyMock.replay(message);
+
+    wrapper.onMessage(message);
+
+    assertTrue(received.await(5, TimeUnit.SECONDS));
+    assertEquals(Long.valueOf(2L), updates.get(0).getId());
+  }
+
+  private void createWrapper(int expectedUpdates) {
+    received = new CountDownLatch(expectedUpdates);
+    wrapper = new MessageListenerWrapper(1L, this::onUpdate, 10, warning -> { }, executor);
+    wrapper.addListener(this::onUpdate, 2L);
+    wrapper.start();
+  }
+
+  private synchronized boolean onUpdate(TagValueUpdate update) {
+    updates.add(update);
+    received.countDown();
+    return true;
+  }
+
+  private static TransferTagValueImpl createTag(Long id) {
+    Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+    TransferTagValueImpl tag = new TransferTagValueImpl(id, 1.5f, "", new DataTagQualityImpl(), TagMode.OPERATIONAL,
+        timestamp, timestamp, timestamp, "test tag");
+    tag.setValueClassName(Float.class.getName());
+    return tag;
+  }
+}
@@ -20,12 +20,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.function.Consumer;
 
 import javax.jms.JMSException;
 
 import cern.c2mon.client.core.config.C2monClientProperties;
 import cern.c2mon.shared.client.request.ClientRequestResult;
 import cern.c2mon.shared.client.tag.TagConfigImpl;
+import cern.c2mon.shared.client.tag.TagUpdate;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.math.LongRange;
 import org.easymock.EasyMock;
@@ -164,6 +166,30 @@ public class RequestHandlerImplTest {
     EasyMock.verify(jmsProxy);
   }
 
+  /**
+   * Tests that the results of a split request are passed to the chunk consumer.
+   * @throws JMSException
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void getManyTagsInChunks() throws JMSException {
+    jmsProxy.sendRequest(EasyMock.isA(JsonRequest.class), EasyMock.eq("c2mon.client.request"), EasyMock.eq(10000),
+        EasyMock.isNull(), EasyMock.anyObject(Consumer.class));
+    EasyMock.expectLastCall().andAnswer(() -> {
+      ((Consumer<Collection<ClientRequestResult>>) EasyMock.getCurrentArguments()[4]).accept(Arrays.asList(new TagConfigImpl(1), new TagConfigImpl(1)));
+      return null;
+    }).times(20);
+
+    EasyMock.replay(jmsProxy);
+
+    Collection<Long> ids = Arrays.asList(ArrayUtils.toObject(new LongRange(1, 10000).toArray()));
+    Collection<TagUpdate> result = new ArrayList<>();
+    requestHandlerImpl.requestTags(ids, result::addAll);
+    Assert.assertEquals(40, result.size());
+
+    EasyMock.verify(jmsProxy);
+  }
+
   /**
    * Tests correct exception is thrown.
    */
@@ -100,8 +100,8 @@ public class TagServiceTest {
     Collection<TagUpdate> serverUpdates1 = tagIds1.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
     Collection<TagValueUpdate> serverUpdateValues1 = tagIds1.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
 
-    EasyMock.expect(requestHandlerMock.requestTags(tagIds1)).andReturn(serverUpdates1);
-    EasyMock.expect(requestHandlerMock.requestTagValues(tagIds1)).andReturn(serverUpdateValues1);
+    RequestHandlerMock.expectTags(requestHandlerMock, tagIds1, serverUpdates1);
+    RequestHandlerMock.expectTagValues(requestHandlerMock, tagIds1, serverUpdateValues1);
 
     // listener 2
     Set<Long> tagIds2 = new HashSet<>();
@@ -116,8 +116,8 @@ public class TagServiceTest {
     Collection<TagUpdate> serverUpdates2 = tagIds2.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
     Collection<TagValueUpdate> serverUpdateValues2 = tagIds2.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
 
-    EasyMock.expect(requestHandlerMock.requestTags(tagIds2)).andReturn(serverUpdates2);
-    EasyMock.expect(requestHandlerMock.requestTagValues(tagIds2)).andReturn(serverUpdateValues2);
+    RequestHandlerMock.expectTags(requestHandlerMock, tagIds2, serverUpdates2);
+    RequestHandlerMock.expectTagValues(requestHandlerMock, tagIds2, serverUpdateValues2);
 
     // Run the test
     EasyMock.replay(requestHandlerMock, jmsProxyMock);
@@ -172,8 +172,8 @@ public class TagServiceTest {
     Collection<TagUpdate> serverUpdates1 = tagIds1.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
     Collection<TagValueUpdate> serverUpdateValues1 = tagIds1.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
 
-    EasyMock.expect(requestHandlerMock.requestTags(tagIds1)).andReturn(serverUpdates1);
-    EasyMock.expect(requestHandlerMock.requestTagValues(tagIds1)).andReturn(serverUpdateValues1);
+    RequestHandlerMock.expectTags(requestHandlerMock, tagIds1, serverUpdates1);
+    RequestHandlerMock.expectTagValues(requestHandlerMock, tagIds1, serverUpdateValues1);
 
     // listener 2
     final Set<Long> tagIds2 = new HashSet<Long>();
@@ -199,8 +199,8 @@ public class TagServiceTest {
     Collection<TagUpdate> serverUpdates2 = tagIds2.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
     Collection<TagValueUpdate> serverUpdateValues2 = tagIds2.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
 
-    EasyMock.expect(requestHandlerMock.requestTags(tagIds2)).andReturn(serverUpdates2);
-    EasyMock.expect(requestHandlerMock.requestTagValues(tagIds2)).andReturn(serverUpdateValues2);
+    RequestHandlerMock.expectTags(requestHandlerMock, tagIds2, serverUpdates2);
+    RequestHandlerMock.expectTagValues(requestHandlerMock, tagIds2, serverUpdateValues2);
 
     EasyMock.replay(requestHandlerMock, jmsProxyMock);
 
@@ -236,8 +236,8 @@ public class TagServiceTest {
     Collection<TagUpdate> serverUpdates1 = tagIds1.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
     Collection<TagValueUpdate> serverUpdateValues1 = tagIds1.stream().map(this::createValidTransferTag).collect(Collectors.toCollection(ArrayList::new));
 
-    EasyMock.expect(requestHandlerMock.requestTags(tagIds1)).andReturn(serverUpdates1);
-    EasyMock.expect(requestHandlerMock.requestTagValues(tagIds1)).andReturn(serverUpdateValues1);
+    RequestHandlerMock.expectTags(requestHandlerMock, tagIds1, serverUpdates1);
+    RequestHandlerMock.expectTagValues(requestHandlerMock, tagIds1, serverUpdateValues1);
 
     EasyMock.replay(requestHandlerMock, jmsProxyMock);
 
@@ -277,7 +277,7 @@ public class TagServiceTest {
 
     Set<Long> tagId = new HashSet<>();
     tagId.add(1L);
-    EasyMock.expect(requestHandlerMock.requestTags(tagId)).andReturn(new ArrayList<>(0));
+    RequestHandlerMock.expectTags(requestHandlerMock, tagId, new ArrayList<>(0));
     TagController tagController = new TagController(1L, true);
     EasyMock.replay(requestHandlerMock, jmsProxyMock);
 
@@ -130,6 +130,16 @@ public interface CommonTagFacade<T extends Tag> extends ConfigurableCacheFacade<
    */
   TagWithAlarms getTagWithAlarms(Long id);
 
+  /**
+   * Return the Tags with associated evaluated Alarms for many Tag ids at
+   * once, e.g. for bulk client requests. Frozen copies are returned; the
+   * ids which are not in the cache are skipped.
+   *
+   * @param ids the Tag ids
+   * @return Tags and Alarms, with corresponding values (no longer residing in cache)
+   */
+  List<TagWithAlarms> getTagsWithAlarms(Collection<Long> ids);
+
   /**
    * Given a tag, get it's alarms.
    *
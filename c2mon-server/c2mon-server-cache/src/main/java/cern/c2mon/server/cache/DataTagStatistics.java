@@ -0,0 +1,75 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache;
+
+import java.util.Map;
+
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+/**
+ * Number of data tags, and of invalid ones, per process, equipment and
+ * quality status. The statistics are maintained in memory from the updates
+ * of the {@link DataTagCache}, so reading them is cheap.
+ *
+ * <p>Tags of sub-equipments are counted under the sub-equipment id, which
+ * shares the id space of the equipments.
+ */
+public interface DataTagStatistics {
+
+  /**
+   * @param processId id of the process
+   * @return the number of data tags of the process
+   */
+  int getNumTags(Long processId);
+
+  /**
+   * @param processId id of the process
+   * @return the number of data tags of the process with an invalid quality
+   */
+  int getNumInvalidTags(Long processId);
+
+  /**
+   * @param equipmentId id of the equipment or sub-equipment
+   * @return the number of data tags of the equipment
+   */
+  int getNumEquipmentTags(Long equipmentId);
+
+  /**
+   * @param equipmentId id of the equipment or sub-equipment
+   * @return the number of data tags of the equipment with an invalid quality
+   */
+  int getNumInvalidEquipmentTags(Long equipmentId);
+
+  /**
+   * @return the number of invalid data tags per quality status; a tag
+   *         invalidated for several reasons is counted for each of them
+   */
+  Map<TagQualityStatus, Integer> getNumInvalidTagsByStatus();
+
+  /**
+   * Must be called when a data tag is removed from the cache, as the cache
+   * listeners are not notified of removals.
+   *
+   * @param tagId id of the removed tag
+   */
+  void notifyTagRemoved(Long tagId);
+
+  /**
+   * Recounts the statistics from the cache content.
+   */
+  void refresh();
+}
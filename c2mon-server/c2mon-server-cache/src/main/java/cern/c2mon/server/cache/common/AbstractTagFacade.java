@@ -26,6 +26,7 @@ import cern.c2mon.server.cache.AlarmCache;
 import cern.c2mon.server.cache.AlarmFacade;
 import cern.c2mon.server.cache.C2monCacheWithListeners;
 import cern.c2mon.server.cache.CommonTagFacade;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.cache.util.MetadataUtils;
 import cern.c2mon.server.common.alarm.Alarm;
 import cern.c2mon.server.common.alarm.TagWithAlarms;
@@ -371,6 +372,60 @@ public abstract class AbstractTagFacade<T extends Tag> extends AbstractFacade<T>
     }
   }
 
+  /**
+   * Locks the Tags one at a time, in id order, and copies them with their
+   * alarms by cloning, which is much cheaper than the serialization used by
+   * {@link #getTagWithAlarms(Long)}. An alarm shared by several tags is
+   * copied once.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<TagWithAlarms> getTagsWithAlarms(Collection<Long> ids) {
+    List<Long> sortedIds = new ArrayList<>(ids);
+    Collections.sort(sortedIds);
+    List<TagWithAlarms> tagsWithAlarms = new ArrayList<>(sortedIds.size());
+    Map<Long, Alarm> alarmCopies = new HashMap<>();
+
+    for (Long id : sortedIds) {
+      tagCache.acquireReadLockOnKey(id);
+      try {
+        T tag = (T) tagCache.get(id).clone();
+        List<Alarm> alarms = new ArrayList<>(tag.getAlarmIds().size());
+        for (Long alarmId : tag.getAlarmIds()) {
+          Alarm alarm = alarmCopies.computeIfAbsent(alarmId, this::cloneAlarm);
+          if (alarm != null) {
+            alarms.add(alarm);
+          }
+        }
+        tagsWithAlarms.add(new TagWithAlarmsImpl(tag, alarms));
+      } catch (CacheElementNotFoundException e) {
+        log.debug("getTagsWithAlarms() - Tag {} is not in the cache", id);
+      } catch (CloneNotSupportedException e) {
+        throw new UnsupportedOperationException("Unable to clone tag " + id, e);
+      } finally {
+        tagCache.releaseReadLockOnKey(id);
+      }
+    }
+    return tagsWithAlarms;
+  }
+
+  /**
+   * @return a clone of the alarm, null if it is not in the cache
+   */
+  private Alarm cloneAlarm(Long alarmId) {
+    alarmCache.acquireReadLockOnKey(alarmId);
+    try {
+      return (Alarm) alarmCache.get(alarmId).clone();
+    } catch (CacheElementNotFoundException e) {
+      log.warn("getTagsWithAlarms() - Alarm {} is not in the cache", alarmId);
+      return null;
+    } catch (CloneNotSupportedException e) {
+      throw new UnsupportedOperationException("Unable to clone alarm " + alarmId, e);
+    } finally {
+      alarmCache.releaseReadLockOnKey(alarmId);
+    }
+  }
+
   @Override
   public List<Alarm> getAlarms(Tag tag) {
     List<Alarm> alarms = new ArrayList<>();
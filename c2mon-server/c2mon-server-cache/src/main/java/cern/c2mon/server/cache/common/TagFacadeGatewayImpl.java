@@ -156,9 +156,11 @@ public class TagFacadeGatewayImpl implements TagFacadeGateway {
     
     if (isRegex) {
       Collection<Tag> tags = tagLocationService.findByNameWildcard(regex);
+      List<Long> ids = new ArrayList<>(tags.size());
       for (Tag tag : tags) {
-        tagWithAlarms.add(getFacade(tag).getTagWithAlarms(tag.getId()));
+        ids.add(tag.getId());
       }
+      tagWithAlarms.addAll(getTagsWithAlarms(ids));
     }
     else {
       Tag tag = tagLocationService.get(regex);
@@ -168,6 +170,37 @@ public class TagFacadeGatewayImpl implements TagFacadeGateway {
     return tagWithAlarms;
   }
 
+  /**
+   * Groups the ids per tag cache, and fetches each group in one pass.
+   */
+  @Override
+  public List<TagWithAlarms> getTagsWithAlarms(Collection<Long> ids) {
+    List<Long> ruleTagIds = new ArrayList<>();
+    List<Long> controlTagIds = new ArrayList<>();
+    List<Long> dataTagIds = new ArrayList<>();
+    for (Long id : ids) {
+      if (ruleTagFacade.isInTagCache(id)) {
+        ruleTagIds.add(id);
+      } else if (controlTagFacade.isInTagCache(id)) {
+        controlTagIds.add(id);
+      } else {
+        dataTagIds.add(id);
+      }
+    }
+
+    List<TagWithAlarms> tagsWithAlarms = new ArrayList<>(ids.size());
+    if (!dataTagIds.isEmpty()) {
+      tagsWithAlarms.addAll(dataTagFacade.getTagsWithAlarms(dataTagIds));
+    }
+    if (!ruleTagIds.isEmpty()) {
+      tagsWithAlarms.addAll(ruleTagFacade.getTagsWithAlarms(ruleTagIds));
+    }
+    if (!controlTagIds.isEmpty()) {
+      tagsWithAlarms.addAll(controlTagFacade.getTagsWithAlarms(controlTagIds));
+    }
+    return tagsWithAlarms;
+  }
+
   @Override
   public void setQuality(Long tagId, Collection<TagQualityStatus> flagsToAdd,
       Collection<TagQualityStatus> flagsToRemove, Map<TagQualityStatus, String> qualityDescriptions, Timestamp timestamp) {
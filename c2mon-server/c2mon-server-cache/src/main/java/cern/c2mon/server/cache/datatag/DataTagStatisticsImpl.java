@@ -0,0 +1,278 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.datatag;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import cern.c2mon.server.cache.C2monCacheListener;
+import cern.c2mon.server.cache.DataTagCache;
+import cern.c2mon.server.cache.DataTagStatistics;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.shared.common.datatag.DataTagQuality;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+/**
+ * Maintains the {@link DataTagStatistics} as a synchronous listener of the
+ * DataTag cache. The process, equipment and invalid statuses of each tag are
+ * kept, and the counters are adjusted by the difference when a tag update
+ * changes them. The cache content is counted once at start up, as the
+ * preloading does not notify the listeners.
+ */
+@Slf4j
+@Service("dataTagStatistics")
+@ManagedResource(objectName = "cern.c2mon:type=cache,name=dataTagStatistics")
+public class DataTagStatisticsImpl implements DataTagStatistics, C2monCacheListener<DataTag> {
+
+  private final DataTagCache dataTagCache;
+
+  /** Counted state per tag id */
+  private final ConcurrentHashMap<Long, TagState> tagStates = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<Long, Counter> processCounters = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<Long, Counter> equipmentCounters = new ConcurrentHashMap<>();
+
+  private final Map<TagQualityStatus, AtomicInteger> statusCounters = new EnumMap<>(TagQualityStatus.class);
+
+  /**
+   * @param dataTagCache the cache of which the tags are counted
+   */
+  @Autowired
+  public DataTagStatisticsImpl(final DataTagCache dataTagCache) {
+    this.dataTagCache = dataTagCache;
+    for (TagQualityStatus status : TagQualityStatus.values()) {
+      statusCounters.put(status, new AtomicInteger());
+    }
+  }
+
+  /**
+   * Registers to the cache updates and counts the cache content.
+   */
+  @PostConstruct
+  public void init() {
+    dataTagCache.registerSynchronousListener(this);
+    refresh();
+  }
+
+  @Override
+  public void notifyElementUpdated(final DataTag dataTag) {
+    update(dataTag.getId(), TagState.of(dataTag));
+  }
+
+  @Override
+  public void confirmStatus(final DataTag dataTag) {
+    // the state of the tag is unchanged
+  }
+
+  @Override
+  public void notifyTagRemoved(final Long tagId) {
+    update(tagId, null);
+  }
+
+  @ManagedOperation(description = "Recounts the data tag statistics from the cache content")
+  @Override
+  public void refresh() {
+    Set<Long> keys = new HashSet<>();
+    for (Long key : dataTagCache.getKeys()) {
+      try {
+        notifyElementUpdated(dataTagCache.get(key));
+        keys.add(key);
+      } catch (CacheElementNotFoundException e) {
+        log.debug("Data tag {} was removed while counting", key);
+      }
+    }
+    for (Long tagId : tagStates.keySet()) {
+      if (!keys.contains(tagId)) {
+        notifyTagRemoved(tagId);
+      }
+    }
+    log.info("Counted {} data tags", tagStates.size());
+  }
+
+  /**
+   * Replaces the counted state of the tag, atomically per tag.
+   *
+   * @param tagId id of the tag
+   * @param state the new state, null if the tag is removed
+   */
+  private void update(final Long tagId, final TagState state) {
+    tagStates.compute(tagId, (id, previous) -> {
+      if (!Objects.equals(previous, state)) {
+        if (previous != null) {
+          count(previous, -1);
+        }
+        if (state != null) {
+          count(state, 1);
+        }
+      }
+      return state;
+    });
+  }
+
+  private void count(final TagState state, final int delta) {
+    boolean invalid = !state.invalidStatuses.isEmpty();
+    if (state.processId != null) {
+      processCounters.computeIfAbsent(state.processId, id -> new Counter()).add(delta, invalid);
+    }
+    if (state.equipmentId != null) {
+      equipmentCounters.computeIfAbsent(state.equipmentId, id -> new Counter()).add(delta, invalid);
+    }
+    for (TagQualityStatus status : state.invalidStatuses) {
+      statusCounters.get(status).addAndGet(delta);
+    }
+  }
+
+  @Override
+  public int getNumTags(final Long processId) {
+    Counter counter = processCounters.get(processId);
+    return counter != null ? counter.total.get() : 0;
+  }
+
+  @Override
+  public int getNumInvalidTags(final Long processId) {
+    Counter counter = processCounters.get(processId);
+    return counter != null ? counter.invalid.get() : 0;
+  }
+
+  @Override
+  public int getNumEquipmentTags(final Long equipmentId) {
+    Counter counter = equipmentCounters.get(equipmentId);
+    return counter != null ? counter.total.get() : 0;
+  }
+
+  @Override
+  public int getNumInvalidEquipmentTags(final Long equipmentId) {
+    Counter counter = equipmentCounters.get(equipmentId);
+    return counter != null ? counter.invalid.get() : 0;
+  }
+
+  @ManagedOperation(description = "Returns the number of invalid data tags per quality status")
+  @Override
+  public Map<TagQualityStatus, Integer> getNumInvalidTagsByStatus() {
+    Map<TagQualityStatus, Integer> counts = new EnumMap<>(TagQualityStatus.class);
+    statusCounters.forEach((status, counter) -> {
+      if (counter.get() > 0) {
+        counts.put(status, counter.get());
+      }
+    });
+    return counts;
+  }
+
+  @ManagedOperation(description = "Returns the number of data tags")
+  public int getNumTags() {
+    return tagStates.size();
+  }
+
+  @ManagedOperation(description = "Returns the number of data tags per process id")
+  public Map<Long, Integer> getNumTagsPerProcess() {
+    return totals(processCounters, false);
+  }
+
+  @ManagedOperation(description = "Returns the number of invalid data tags per process id")
+  public Map<Long, Integer> getNumInvalidTagsPerProcess() {
+    return totals(processCounters, true);
+  }
+
+  @ManagedOperation(description = "Returns the number of data tags per equipment id")
+  public Map<Long, Integer> getNumTagsPerEquipment() {
+    return totals(equipmentCounters, false);
+  }
+
+  @ManagedOperation(description = "Returns the number of invalid data tags per equipment id")
+  public Map<Long, Integer> getNumInvalidTagsPerEquipment() {
+    return totals(equipmentCounters, true);
+  }
+
+  private static Map<Long, Integer> totals(final Map<Long, Counter> counters, final boolean invalid) {
+    Map<Long, Integer> totals = new TreeMap<>();
+    counters.forEach((id, counter) -> totals.put(id, invalid ? counter.invalid.get() : counter.total.get()));
+    return totals;
+  }
+
+  /**
+   * The attributes of a tag which are counted.
+   */
+  private static final class TagState {
+    private final Long processId;
+    private final Long equipmentId;
+    private final Set<TagQualityStatus> invalidStatuses;
+
+    private TagState(final Long processId, final Long equipmentId, final Set<TagQualityStatus> invalidStatuses) {
+      this.processId = processId;
+      this.equipmentId = equipmentId;
+      this.invalidStatuses = invalidStatuses;
+    }
+
+    private static TagState of(final DataTag dataTag) {
+      DataTagQuality quality = dataTag.getDataTagQuality();
+      Set<TagQualityStatus> invalidStatuses = Collections.emptySet();
+      if (quality != null && !quality.isValid()) {
+        invalidStatuses = EnumSet.copyOf(quality.getInvalidQualityStates().keySet());
+      }
+      Long equipmentId = dataTag.getEquipmentId() != null ? dataTag.getEquipmentId() : dataTag.getSubEquipmentId();
+      return new TagState(dataTag.getProcessId(), equipmentId, invalidStatuses);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof TagState)) {
+        return false;
+      }
+      TagState other = (TagState) o;
+      return Objects.equals(processId, other.processId) && Objects.equals(equipmentId, other.equipmentId)
+          && invalidStatuses.equals(other.invalidStatuses);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(processId, equipmentId, invalidStatuses);
+    }
+  }
+
+  /**
+   * Number of tags, and of invalid ones.
+   */
+  private static final class Counter {
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger invalid = new AtomicInteger();
+
+    private void add(final int delta, final boolean isInvalid) {
+      total.addAndGet(delta);
+      if (isInvalid) {
+        invalid.addAndGet(delta);
+      }
+    }
+  }
+}
@@ -17,6 +17,8 @@
 package cern.c2mon.server.cache.datatag;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 import org.easymock.EasyMock;
@@ -25,6 +27,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import cern.c2mon.server.cache.*;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
+import cern.c2mon.server.common.alarm.AlarmCacheObject;
+import cern.c2mon.server.common.alarm.TagWithAlarms;
 import cern.c2mon.server.common.datatag.DataTag;
 import cern.c2mon.server.common.datatag.DataTagCacheObject;
 import cern.c2mon.server.test.CacheObjectCreation;
@@ -34,6 +39,7 @@ import org.springframework.mock.env.MockEnvironment;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -79,6 +85,46 @@ public class DataTagFacadeImplTest {
         alarmFacade, alarmCache, equipmentFacade, subEquipmentFacade);
   }
 
+  /**
+   * The tags are fetched in id order with cloned tags and alarms; unknown
+   * tags are skipped and shared alarms copied once.
+   */
+  @Test
+  public void testGetTagsWithAlarms() throws Exception {
+    DataTagCacheObject tag1 = CacheObjectCreation.createTestDataTag();
+    DataTagCacheObject tag2 = CacheObjectCreation.createTestDataTag2();
+    AlarmCacheObject alarm = CacheObjectCreation.createTestAlarm1();
+    tag1.getAlarmIds().add(alarm.getId());
+    tag2.getAlarmIds().add(alarm.getId());
+
+    dataTagCache.acquireReadLockOnKey(tag1.getId());
+    EasyMock.expect(dataTagCache.get(tag1.getId())).andReturn(tag1);
+    dataTagCache.releaseReadLockOnKey(tag1.getId());
+    dataTagCache.acquireReadLockOnKey(tag2.getId());
+    EasyMock.expect(dataTagCache.get(tag2.getId())).andReturn(tag2);
+    dataTagCache.releaseReadLockOnKey(tag2.getId());
+    dataTagCache.acquireReadLockOnKey(5L);
+    EasyMock.expect(dataTagCache.get(5L)).andThrow(new CacheElementNotFoundException("unknown"));
+    dataTagCache.releaseReadLockOnKey(5L);
+    alarmCache.acquireReadLockOnKey(alarm.getId());
+    EasyMock.expect(alarmCache.get(alarm.getId())).andReturn(alarm);
+    alarmCache.releaseReadLockOnKey(alarm.getId());
+
+    control.replay();
+
+    List<TagWithAlarms> tagsWithAlarms = dataTagFacade.getTagsWithAlarms(Arrays.asList(tag2.getId(), 5L, tag1.getId()));
+
+    assertEquals(2, tagsWithAlarms.size());
+    assertEquals(tag1.getId(), tagsWithAlarms.get(0).getTag().getId());
+    assertEquals(tag2.getId(), tagsWithAlarms.get(1).getTag().getId());
+    assertNotSame(tag1, tagsWithAlarms.get(0).getTag());
+    assertEquals(1, tagsWithAlarms.get(0).getAlarms().size());
+    assertNotSame(alarm, tagsWithAlarms.get(0).getAlarms().iterator().next());
+    assertEquals(alarm.getId(), tagsWithAlarms.get(1).getAlarms().iterator().next().getId());
+
+    control.verify();
+  }
+
   /**
    * Null valid updates should result in invalidation of Tag with UNKNOWN_REASON flag.
    * Source & DAQ timestamps are NOT updated (correspond to value still). Cache time
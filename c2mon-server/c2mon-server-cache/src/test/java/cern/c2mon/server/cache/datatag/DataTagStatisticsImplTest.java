@@ -0,0 +1,105 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.datatag;
+
+import java.util.Arrays;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.cache.DataTagCache;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.test.CacheObjectCreation;
+import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link DataTagStatisticsImpl}.
+ */
+public class DataTagStatisticsImplTest {
+
+  private DataTagCache dataTagCache;
+
+  private DataTagStatisticsImpl statistics;
+
+  private DataTagCacheObject tag1;
+
+  private DataTagCacheObject tag2;
+
+  @Before
+  public void setUp() {
+    tag1 = CacheObjectCreation.createTestDataTag();
+    tag1.setProcessId(50L);
+    tag2 = CacheObjectCreation.createTestDataTag2();
+    tag2.setProcessId(50L);
+    tag2.setDataTagQuality(new DataTagQualityImpl(TagQualityStatus.EQUIPMENT_DOWN));
+
+    dataTagCache = EasyMock.createNiceMock(DataTagCache.class);
+    EasyMock.expect(dataTagCache.getKeys()).andReturn(Arrays.asList(tag1.getId(), tag2.getId()));
+    EasyMock.expect(dataTagCache.get(tag1.getId())).andReturn(tag1);
+    EasyMock.expect(dataTagCache.get(tag2.getId())).andReturn(tag2);
+    EasyMock.replay(dataTagCache);
+
+    statistics = new DataTagStatisticsImpl(dataTagCache);
+    statistics.init();
+  }
+
+  @Test
+  public void cacheContentIsCountedAtStartUp() {
+    assertEquals(2, statistics.getNumTags(50L));
+    assertEquals(1, statistics.getNumInvalidTags(50L));
+    assertEquals(2, statistics.getNumEquipmentTags(100L));
+    assertEquals(1, statistics.getNumInvalidEquipmentTags(100L));
+    assertEquals(Integer.valueOf(1), statistics.getNumInvalidTagsByStatus().get(TagQualityStatus.EQUIPMENT_DOWN));
+    assertEquals(0, statistics.getNumTags(60L));
+  }
+
+  @Test
+  public void updatesAdjustTheCounters() {
+    tag2.getDataTagQuality().validate();
+    statistics.notifyElementUpdated(tag2);
+    assertEquals(2, statistics.getNumTags(50L));
+    assertEquals(0, statistics.getNumInvalidTags(50L));
+    assertTrue(statistics.getNumInvalidTagsByStatus().isEmpty());
+
+    tag1.setProcessId(60L);
+    tag1.setEquipmentId(200L);
+    tag1.setDataTagQuality(new DataTagQualityImpl(TagQualityStatus.INACCESSIBLE));
+    tag1.getDataTagQuality().addInvalidStatus(TagQualityStatus.PROCESS_DOWN);
+    statistics.notifyElementUpdated(tag1);
+    statistics.notifyElementUpdated(tag1);
+    assertEquals(1, statistics.getNumTags(50L));
+    assertEquals(1, statistics.getNumTags(60L));
+    assertEquals(1, statistics.getNumInvalidTags(60L));
+    assertEquals(1, statistics.getNumEquipmentTags(100L));
+    assertEquals(1, statistics.getNumInvalidEquipmentTags(200L));
+    assertEquals(2, statistics.getNumInvalidTagsByStatus().size());
+  }
+
+  @Test
+  public void removedTagsAreNotCounted() {
+    statistics.notifyTagRemoved(tag2.getId());
+    statistics.notifyTagRemoved(tag2.getId());
+    assertEquals(1, statistics.getNumTags(50L));
+    assertEquals(0, statistics.getNumInvalidTags(50L));
+    assertEquals(1, statistics.getNumTags());
+  }
+}
@@ -26,7 +26,7 @@ import cern.c2mon.server.common.datatag.DataTagCacheObject;
  * @author Mark Brightwell
  *
  */
-public interface DataTagMapper extends PersistenceMapper<DataTag>, LoaderMapper<DataTag>, 
+public interface DataTagMapper extends TagPersistenceMapper<DataTag>, LoaderMapper<DataTag>, 
                                             BatchLoaderMapper<DataTag>, ConfigurableMapper<DataTag> {
   
   void insertDataTag(DataTag dataTag);
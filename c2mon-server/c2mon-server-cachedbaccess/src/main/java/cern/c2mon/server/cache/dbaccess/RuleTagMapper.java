@@ -26,7 +26,7 @@ import cern.c2mon.server.common.rule.RuleTagCacheObject;
  * @author Mark Brightwell
  *
  */
-public interface RuleTagMapper extends PersistenceMapper<RuleTag>, LoaderMapper<RuleTag>, 
+public interface RuleTagMapper extends TagPersistenceMapper<RuleTag>, LoaderMapper<RuleTag>, 
                                             BatchLoaderMapper<RuleTag>, ConfigurableMapper<RuleTag> {
  
   void insertRuleTag(RuleTagCacheObject ruleTagCacheObject);
@@ -0,0 +1,47 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.dbaccess;
+
+import lombok.Data;
+
+/**
+ * Groups of runtime columns of the DATATAG table to update with
+ * {@link TagPersistenceMapper#updateCacheableColumns}. Updates with
+ * the same groups share the same SQL statement.
+ */
+@Data
+public class TagColumns {
+
+  /** TAGVALUE and TAGVALUEDESC */
+  private final boolean value;
+
+  /** TAGTIMESTAMP, TAGDAQTIMESTAMP and TAGSRVTIMESTAMP */
+  private final boolean timestamps;
+
+  /** TAGQUALITYDESC */
+  private final boolean quality;
+
+  /** TAGSIMULATED */
+  private final boolean simulated;
+
+  /**
+   * @return true if no column needs to be updated
+   */
+  public boolean isEmpty() {
+    return !value && !timestamps && !quality && !simulated;
+  }
+}
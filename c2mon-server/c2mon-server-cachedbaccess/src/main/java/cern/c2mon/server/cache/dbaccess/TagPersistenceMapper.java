@@ -0,0 +1,38 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cache.dbaccess;
+
+import org.apache.ibatis.annotations.Param;
+
+import cern.c2mon.server.common.tag.Tag;
+
+/**
+ * {@link PersistenceMapper} of the tag caches, which can also update
+ * only the runtime columns that have changed.
+ *
+ * @param <T> the tag type
+ */
+public interface TagPersistenceMapper<T extends Tag> extends PersistenceMapper<T> {
+
+  /**
+   * Updates the given groups of runtime columns of the tag.
+   *
+   * @param tag the tag to persist
+   * @param columns the column groups to update, not empty
+   */
+  void updateCacheableColumns(@Param("tag") T tag, @Param("columns") TagColumns columns);
+}
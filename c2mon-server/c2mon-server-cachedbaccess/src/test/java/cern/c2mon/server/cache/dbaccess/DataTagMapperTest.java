@@ -218,6 +218,40 @@ public class DataTagMapperTest extends AbstractMapperTest {
     dataTagMapper.deleteDataTag(cacheObject.getId());
   }
 
+  @Test
+  public void testUpdateCacheableColumns() {
+    DataTagCacheObject cacheObject = new DataTagCacheObject();
+    cacheObject.setId(150002L);
+    cacheObject.setName("Junit_test_tag_columns");
+    cacheObject.setMode(DataTagConstants.MODE_TEST);
+    cacheObject.setDataType("Integer");
+    cacheObject.setEquipmentId(150L);
+    cacheObject.setValue(1);
+    cacheObject.setValueDescription("first description");
+    dataTagMapper.insertDataTag(cacheObject);
+    Timestamp insertedTimestamp = ((DataTagCacheObject) dataTagMapper.getItem(150002L)).getCacheTimestamp();
+
+    cacheObject.setValue(2);
+    cacheObject.setValueDescription("second description");
+    cacheObject.setCacheTimestamp(new Timestamp(System.currentTimeMillis()));
+    cacheObject.setDataTagQuality(new DataTagQualityImpl(TagQualityStatus.UNDEFINED_VALUE, "undefined value"));
+    dataTagMapper.updateCacheableColumns(cacheObject, new TagColumns(true, false, false, false));
+
+    DataTagCacheObject retrievedObject = (DataTagCacheObject) dataTagMapper.getItem(150002L);
+    // only the value columns are updated
+    assertEquals(2, retrievedObject.getValue());
+    assertEquals("second description", retrievedObject.getValueDescription());
+    assertEquals(insertedTimestamp, retrievedObject.getCacheTimestamp());
+    assertFalse(retrievedObject.getDataTagQuality().isInvalidStatusSet(TagQualityStatus.UNDEFINED_VALUE));
+
+    dataTagMapper.updateCacheableColumns(cacheObject, new TagColumns(false, true, true, true));
+    retrievedObject = (DataTagCacheObject) dataTagMapper.getItem(150002L);
+    assertEquals(cacheObject.getCacheTimestamp(), retrievedObject.getCacheTimestamp());
+    assertEquals(cacheObject.getDataTagQuality(), retrievedObject.getDataTagQuality());
+
+    dataTagMapper.deleteDataTag(cacheObject.getId());
+  }
+
   @Test
   public void testIsInDB() {
     assertTrue(dataTagMapper.isInDb(200000L));
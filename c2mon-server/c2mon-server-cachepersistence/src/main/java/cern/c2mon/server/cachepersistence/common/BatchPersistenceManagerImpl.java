@@ -18,12 +18,13 @@ package cern.c2mon.server.cachepersistence.common;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ibatis.exceptions.PersistenceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -38,7 +39,14 @@ import cern.c2mon.shared.common.Cacheable;
  * Standard implementation of a {@link BatchPersistenceManager}.
  *
  * <p>This implementation saves the values of the indicated tags
- * in batches using a {@link CachePersistenceDAO}.
+ * in batches using a {@link CachePersistenceDAO}. The keys waiting
+ * to be persisted are kept in a {@link DirtyKeySet} and persisted
+ * in ascending key order, so that concurrent transactions always
+ * lock the rows in the same order.
+ *
+ * <p>The batch size adapts to the measured DB latency: it is doubled
+ * while the batches commit in less than half of the target latency,
+ * and halved when they take longer than the target or fail.
  *
  * <p>If an exception occurs during the DB persistence, the class
  * will attempt to save them next time around. If the server is
@@ -57,7 +65,7 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
   private static final Logger LOGGER = LoggerFactory.getLogger(BatchPersistenceManagerImpl.class);
 
   /**
-   * Size of the batches between database commits. Also corresponds
+   * Initial size of the batches between database commits. Also corresponds
    * to the size of the tasks executed by the ExecutorService.
    */
   private static final int RECORDS_PER_BATCH = 500;
@@ -67,6 +75,23 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
    */
   private int timeoutPerBatch = 8000;
 
+  /**
+   * Bounds of the adaptive batch size.
+   */
+  private int minBatchSize = 100;
+
+  private int maxBatchSize = 5000;
+
+  /**
+   * Time in milliseconds a batch should take to commit.
+   */
+  private int targetBatchLatency = 1000;
+
+  /**
+   * Current number of records per batch.
+   */
+  private volatile int batchSize = RECORDS_PER_BATCH;
+
   /**
    * Reference to DAO.
    */
@@ -80,10 +105,12 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
   private C2monCache<Long, T> cache;
 
   /**
-   * Set of tags that the server failed to persist successfully and
-   * need persisting when the connection is back. This set should
-   * not grow indefinitely since it only keeps the ids of the
-   * elements to persist (so max size is size of cache).
+   * Keys of the cache objects that were not yet persisted, either
+   * because they were added with {@link #addElementToPersist(Long)}
+   * or because the server failed to persist them and they need
+   * persisting when the connection is back. This set should not
+   * grow indefinitely since it only keeps the keys of the elements
+   * to persist (so max size is size of cache).
    *
    * <p>In the case of a server crash or forced shutdown, or if
    * shutting down the server while the DB is unavailable, these
@@ -96,15 +123,21 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
    * be done at later stage to avoid inconsistencies, with server updating
    * DB once it is back).
    */
-  private Set<Long> toBePersisted = new HashSet<>();
+  private final DirtyKeySet toBePersisted = new DirtyKeySet();
 
   /**
-   * Lock for accessing toBePersisted collection, used only
-   * within this class. The lock is to make the bean thread-safe,
-   * in case it gets called on multiple threads (which is not
-   * currently the case).
+   * Time since epoch at which the oldest key of the running persistence
+   * was marked dirty, or 0 when no persistence is running.
    */
-  private ReentrantReadWriteLock toBePersistedLock = new ReentrantReadWriteLock();
+  private volatile long inFlightSince = 0;
+
+  private volatile long lastRunDuration = 0;
+
+  private volatile long lastBatchLatency = 0;
+
+  private final AtomicLong persistedElements = new AtomicLong();
+
+  private final AtomicLong failedBatches = new AtomicLong();
 
   /**
    * Executor running the persistence tasks.
@@ -130,51 +163,44 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
     try {
       LOGGER.debug("Submitting new persistence task (currently " + cachePersistenceThreadPoolTaskExecutor.getThreadPoolExecutor().getQueue().size() + " tasks in queue)");
 
-      //local set, no synch needed; removes duplicates from collection (though unnecessary with current SynchroBuffer)
-      Set<Long> localToBePersisted = new HashSet<>(keyCollection);
-
-      toBePersistedLock.writeLock().lock();
-      try {
-        localToBePersisted.addAll(toBePersisted);  //gets rid of all duplicates
-        toBePersisted.clear();
-      } finally {
-        toBePersistedLock.writeLock().unlock();
+      long runStart = System.currentTimeMillis();
+      long[] keys;
+      //the set removes all duplicates and sorts the keys
+      synchronized (toBePersisted) {
+        toBePersisted.addAll(keyCollection);
+        inFlightSince = toBePersisted.getDirtySince();
+        keys = toBePersisted.drain();
       }
 
-      int size = localToBePersisted.size();
+      int size = keys.length;
+      int currentBatchSize = batchSize;
 
       LOGGER.debug("Persisting " + size + " cache object(s) to the database (" + cache.getClass() + ")");
 
       LinkedList<Future< ? >> taskResults = new LinkedList<>();
-      Map<Future< ? >, Collection<Long>> submittedSets = new HashMap<>();
-
-      Iterator<Long> it = localToBePersisted.iterator();
-      while (it.hasNext()) {
-        PersistenceTask task = new PersistenceTask();
-        LinkedList<Long> persistedIds = new LinkedList<>();
-        int counter = 0;
-        while (it.hasNext() && counter < RECORDS_PER_BATCH) {
-          Long currentId = it.next();
-          task.put(currentId);
-          counter++;
-          persistedIds.push(currentId);
-        }
+      Map<Future< ? >, PersistenceTask> submittedTasks = new HashMap<>();
+
+      for (int from = 0; from < size; from += currentBatchSize) {
+        PersistenceTask task = new PersistenceTask(keys, from, Math.min(from + currentBatchSize, size));
         Future< ? > result = cachePersistenceThreadPoolTaskExecutor.submit(task);
         taskResults.offerLast(result);
-        submittedSets.put(result, persistedIds);
+        submittedTasks.put(result, task);
       }
 
-      //wait for all to complete; if wait longer than 5s for a single
-      //then all tasks will be rerun
-
+      //wait for all to complete; if wait longer than timeoutPerBatch for
+      //a single one, its elements will be persisted with the next run
 
       int count = 0;
       int exceptionCount = 0;
+      long maxLatency = 0;
       for (Future< ? > result : taskResults) {
         boolean exceptionCaught = false;
+        PersistenceTask task = submittedTasks.get(result);
         count++;
         try {
           result.get(timeoutPerBatch, TimeUnit.MILLISECONDS);
+          maxLatency = Math.max(maxLatency, task.latency);
+          persistedElements.addAndGet(task.keyList.size());
           LOGGER.debug("Persistence batch number " + count + " completed.");
         } catch (InterruptedException e) {
           LOGGER.error("Interrupted exception caught when waiting for persistence task " + count + " to complete", e);
@@ -184,40 +210,60 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
           exceptionCaught = true;
         } catch (TimeoutException e) {
           LOGGER.warn("Timeout while waiting for persistence task " + count + " to "
-              + "complete (timeout per batch of " + RECORDS_PER_BATCH + " is set at " + timeoutPerBatch + " milliseconds; cancelling batch)"
+              + "complete (timeout per batch of " + currentBatchSize + " is set at " + timeoutPerBatch + " milliseconds; cancelling batch)"
               + "Cache elements will be persisted during next persistence task.", e);
           result.cancel(true);
           exceptionCaught = true;
         } finally {
           if (exceptionCaught) {
             exceptionCount++;
-            toBePersistedLock.writeLock().lock();
-            try {
-              toBePersisted.addAll(submittedSets.get(result));
-            } finally {
-              toBePersistedLock.writeLock().unlock();
-            }
+            toBePersisted.addAll(task.keyList);
           }
         }
       }
+      failedBatches.addAndGet(exceptionCount);
+      lastRunDuration = System.currentTimeMillis() - runStart;
+      if (count > 0) {
+        lastBatchLatency = maxLatency;
+        adaptBatchSize(currentBatchSize, maxLatency, exceptionCount > 0, size > currentBatchSize);
+      }
       if (exceptionCount == 0) {
         LOGGER.debug("Completed persistence of all " + count + " batches");
       } else {
         LOGGER.debug(exceptionCount + " out of " + count + " persistence batches failed and will be resubmitted.");
       }
     } finally {
+      inFlightSince = 0;
       clusterCache.releaseWriteLockOnKey(cachePersistenceLock);
     }
   }
 
+  /**
+   * Doubles the batch size while the batches are fast, and halves
+   * it when they are slow or fail.
+   *
+   * @param current the batch size used by the last run
+   * @param latency the longest commit time of the last run
+   * @param failed whether a batch of the last run failed
+   * @param full whether the last run filled more than one batch
+   */
+  private void adaptBatchSize(final int current, final long latency, final boolean failed, final boolean full) {
+    int adapted = current;
+    if (failed || latency > targetBatchLatency) {
+      adapted = Math.max(minBatchSize, current / 2);
+    } else if (full && latency < targetBatchLatency / 2) {
+      adapted = Math.min(maxBatchSize, current * 2);
+    }
+    if (adapted != current) {
+      LOGGER.debug("Changing persistence batch size from " + current + " to " + adapted + " ("
+          + cache.getClass().getSimpleName() + ", last batch latency " + latency + "ms)");
+      batchSize = adapted;
+    }
+  }
+
   @Override
   public void addElementToPersist(Long key) {
-    toBePersistedLock.writeLock().lock();
-    try {
-      toBePersisted.add(key);
-    } finally {
-      toBePersistedLock.writeLock().unlock();
-    }
+    toBePersisted.add(key);
   }
 
   @ManagedOperation(description = "Persists the current cache contents to the DB (cache persistence). Ensures cache object runtime values & DB are synchronized.")
@@ -225,6 +271,44 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
     persistList(cache.getKeys());
   }
 
+  @ManagedAttribute(description = "Number of cache objects waiting to be persisted")
+  public int getPendingElements() {
+    return toBePersisted.size();
+  }
+
+  @ManagedAttribute(description = "Age in milliseconds of the oldest cache update not yet persisted")
+  public long getPersistenceLag() {
+    long dirtySince = toBePersisted.getDirtySince();
+    long running = inFlightSince;
+    long oldest = dirtySince == 0 ? running : (running == 0 ? dirtySince : Math.min(dirtySince, running));
+    return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+  }
+
+  @ManagedAttribute(description = "Current number of cache objects persisted per batch")
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  @ManagedAttribute(description = "Commit time in milliseconds of the slowest batch of the last persistence run")
+  public long getLastBatchLatency() {
+    return lastBatchLatency;
+  }
+
+  @ManagedAttribute(description = "Duration in milliseconds of the last persistence run")
+  public long getLastRunDuration() {
+    return lastRunDuration;
+  }
+
+  @ManagedAttribute(description = "Number of cache objects persisted since startup")
+  public long getPersistedElements() {
+    return persistedElements.get();
+  }
+
+  @ManagedAttribute(description = "Number of persistence batches that failed or timed out since startup")
+  public long getFailedBatches() {
+    return failedBatches.get();
+  }
+
   /**
    * Sets the timeout in milliseconds for a single batch to persist.
    * Default is 8s.
@@ -236,8 +320,30 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
   }
 
   /**
-   * Task persisting a collection of RECORDS_PER_BATCH cache
-   * objects to the database, by calling a CachePersistenceDAO.
+   * Sets the bounds of the adaptive batch size. Default is 100 to 5000.
+   *
+   * @param minBatchSize the smallest number of records per batch
+   * @param maxBatchSize the largest number of records per batch
+   */
+  public void setBatchSizes(final int minBatchSize, final int maxBatchSize) {
+    this.minBatchSize = Math.max(1, minBatchSize);
+    this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+    this.batchSize = Math.min(this.maxBatchSize, Math.max(this.minBatchSize, batchSize));
+  }
+
+  /**
+   * Sets the time in milliseconds a batch should take to commit,
+   * to which the batch size is adapted. Default is 1s.
+   *
+   * @param targetBatchLatency in milliseconds
+   */
+  public void setTargetBatchLatency(final int targetBatchLatency) {
+    this.targetBatchLatency = targetBatchLatency;
+  }
+
+  /**
+   * Task persisting a range of sorted cache keys to the
+   * database, by calling a CachePersistenceDAO.
    *
    * <p>Exceptions are caught by the ExecutorService, and wrapped and thrown
    * when calling get on the Future.
@@ -248,16 +354,25 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
   class PersistenceTask implements Callable<Object> {
 
     /**
-     * Keys of cache elements to persist.
+     * Keys of cache elements to persist, in ascending order.
      */
-    private ArrayList<Long> keyList = new ArrayList<>(RECORDS_PER_BATCH);
+    private final List<Long> keyList;
 
     /**
-     * Add the key to the task, prior to execution.
-     * @param key the cache element key
+     * Time in milliseconds taken by the commit.
      */
-    public void put(final Long key) {
-      keyList.add(key);
+    private volatile long latency;
+
+    /**
+     * @param keys the sorted keys of the run
+     * @param from index of the first key of this task
+     * @param to index after the last key of this task
+     */
+    PersistenceTask(final long[] keys, final int from, final int to) {
+      keyList = new ArrayList<>(to - from);
+      for (int i = from; i < to; i++) {
+        keyList.add(keys[i]);
+      }
     }
 
     /**
@@ -266,7 +381,9 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
      */
     @Override
     public Object call() {
+      long start = System.currentTimeMillis();
       cachePersistenceDAO.persistBatch(keyList);
+      latency = System.currentTimeMillis() - start;
       return null;
     }
 
@@ -307,19 +424,19 @@ public class BatchPersistenceManagerImpl<T extends Cacheable> implements BatchPe
     //may be none-empty if added using addElementToPersist
     while (!toBePersisted.isEmpty()) {
       LOGGER.debug("Detected cache objects that need persisting... trying to persist them.");
-      toBePersistedLock.writeLock().lock();
+      long[] keys = toBePersisted.drain();
       try {
-        cachePersistenceDAO.persistBatch(new ArrayList<>(toBePersisted));
-        toBePersisted.clear();
+        for (int from = 0; from < keys.length; from += batchSize) {
+          new PersistenceTask(keys, from, Math.min(from + batchSize, keys.length)).call();
+        }
       } catch (PersistenceException e) {
         LOGGER.error("Exception caught while persisting final batch of cache objects - will try again in 1s", e);
+        toBePersisted.addAll(keys);
         try {
           Thread.sleep(1000);
         } catch (InterruptedException e1) {
           LOGGER.error("Interrupted during sleep", e1);
         }
-      } finally {
-        toBePersistedLock.writeLock().unlock();
       }
     }
   }
@@ -0,0 +1,128 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cachepersistence.common;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Set of the keys of the cache objects waiting to be persisted.
+ *
+ * <p>Cache keys are clustered in ranges, so the set is stored as a bitmap
+ * split into pages of {@value #PAGE_SIZE} keys. Adding a key that is already
+ * in the set costs no memory, and the keys are always drained in ascending
+ * order, so that the rows of a batch are locked in the same order by all
+ * transactions.
+ *
+ * <p>All methods are thread-safe.
+ */
+class DirtyKeySet {
+
+  private static final int PAGE_BITS = 16;
+
+  static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+  /**
+   * Bitmap pages, by key >> PAGE_BITS.
+   */
+  private final TreeMap<Long, BitSet> pages = new TreeMap<>();
+
+  private int size = 0;
+
+  /**
+   * Time in milliseconds since epoch of the oldest key added since the
+   * set was last drained, or 0 if the set is empty.
+   */
+  private long dirtySince = 0;
+
+  /**
+   * Marks a key as dirty.
+   *
+   * @param key the cache key
+   */
+  synchronized void add(final long key) {
+    BitSet page = pages.computeIfAbsent(key >> PAGE_BITS, p -> new BitSet());
+    int bit = (int) (key & (PAGE_SIZE - 1));
+    if (!page.get(bit)) {
+      page.set(bit);
+      if (size++ == 0) {
+        dirtySince = System.currentTimeMillis();
+      }
+    }
+  }
+
+  /**
+   * Marks all keys of the collection as dirty.
+   *
+   * @param keys the cache keys
+   */
+  synchronized void addAll(final Collection<Long> keys) {
+    for (Long key : keys) {
+      add(key);
+    }
+  }
+
+  /**
+   * Marks all keys of the array as dirty.
+   *
+   * @param keys the cache keys
+   */
+  synchronized void addAll(final long[] keys) {
+    for (long key : keys) {
+      add(key);
+    }
+  }
+
+  /**
+   * Removes all keys from the set.
+   *
+   * @return the removed keys, in ascending order
+   */
+  synchronized long[] drain() {
+    long[] keys = new long[size];
+    int i = 0;
+    for (Map.Entry<Long, BitSet> entry : pages.entrySet()) {
+      long base = entry.getKey() << PAGE_BITS;
+      BitSet page = entry.getValue();
+      for (int bit = page.nextSetBit(0); bit >= 0; bit = page.nextSetBit(bit + 1)) {
+        keys[i++] = base + bit;
+      }
+    }
+    pages.clear();
+    size = 0;
+    dirtySince = 0;
+    return keys;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the time in milliseconds since epoch at which the oldest key
+   *         of the set was added, or 0 if the set is empty
+   */
+  synchronized long getDirtySince() {
+    return dirtySince;
+  }
+}
@@ -2,7 +2,9 @@ package cern.c2mon.server.cachepersistence.config;
 
 import cern.c2mon.server.cache.ClusterCache;
 import cern.c2mon.server.cache.config.CacheProperties;
+import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 /**
@@ -21,4 +23,19 @@ public abstract class AbstractPersistenceConfig {
 
   @Autowired
   protected ThreadPoolTaskExecutor cachePersistenceThreadPoolTaskExecutor;
+
+  @Autowired
+  @Qualifier("cacheBatchSqlSession")
+  protected SqlSessionTemplate cacheBatchSqlSession;
+
+  /**
+   * @return whether the tag caches only persist the columns that changed,
+   *         by default only if this server is the only one writing them
+   */
+  protected boolean isDeltaUpdates() {
+    if (properties.getDeltaUpdates() != null) {
+      return properties.getDeltaUpdates();
+    }
+    return cacheProperties.getMode().startsWith("single");
+  }
 }
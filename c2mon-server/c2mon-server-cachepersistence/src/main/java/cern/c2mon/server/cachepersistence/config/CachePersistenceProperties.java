@@ -15,6 +15,24 @@ public class CachePersistenceProperties {
   /** Timeout (in milliseconds) for a single batch to persist */
   private int timeoutPerBatch = 30000;
 
+  /**
+   * Bounds of the number of cache objects persisted per batch. The batch size
+   * adapts to the DB latency, starting at 500
+   */
+  private int minBatchSize = 100;
+
+  private int maxBatchSize = 5000;
+
+  /** Time (in milliseconds) a single batch should take to persist */
+  private int targetBatchLatency = 1000;
+
+  /**
+   * Only update the runtime columns of a tag that changed since this server
+   * last persisted it. When not set, enabled in the single server cache modes
+   * only, as a column written by another server is not detected as changed
+   */
+  private Boolean deltaUpdates;
+
   /** Set the ThreadPoolExecutor's core pool size */
   private int numExecutorThreads = 1;
 
@@ -6,8 +6,11 @@ import cern.c2mon.server.cachepersistence.CachePersistenceDAO;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManager;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManagerImpl;
 import cern.c2mon.server.cachepersistence.impl.CachePersistenceDAOImpl;
+import cern.c2mon.server.cachepersistence.impl.TagCachePersistenceDAOImpl;
 import cern.c2mon.server.cachepersistence.listener.PersistenceSynchroListener;
+import cern.c2mon.server.cachepersistence.listener.TagPersistenceConfigurationListener;
 import cern.c2mon.server.common.control.ControlTag;
+import cern.c2mon.server.common.listener.ConfigurationEventListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,12 +29,20 @@ public class ControlTagPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<ControlTag> controlTagPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(controlTagMapper, controlTagCache);
+    if (isDeltaUpdates()) {
+      return new TagCachePersistenceDAOImpl<>(controlTagMapper, controlTagCache, cacheBatchSqlSession, ControlTagMapper.class);
+    }
+    return new CachePersistenceDAOImpl<>(controlTagMapper, controlTagCache, cacheBatchSqlSession, ControlTagMapper.class);
   }
 
   @Bean
   public BatchPersistenceManager controlTagPersistenceManager() {
-    return new BatchPersistenceManagerImpl<>(controlTagPersistenceDAO(), controlTagCache, clusterCache, cachePersistenceThreadPoolTaskExecutor);
+    BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(controlTagPersistenceDAO(), controlTagCache,
+        clusterCache, cachePersistenceThreadPoolTaskExecutor);
+    manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setBatchSizes(properties.getMinBatchSize(), properties.getMaxBatchSize());
+    manager.setTargetBatchLatency(properties.getTargetBatchLatency());
+    return manager;
   }
 
   @Bean
@@ -39,4 +50,9 @@ public class ControlTagPersistenceConfig extends AbstractPersistenceConfig {
     Integer pullFrequency = cacheProperties.getBufferedListenerPullFrequency();
     return new PersistenceSynchroListener(controlTagCache, controlTagPersistenceManager(), pullFrequency);
   }
+
+  @Bean
+  public ConfigurationEventListener controlTagPersistenceConfigurationListener() {
+    return new TagPersistenceConfigurationListener(controlTagPersistenceDAO());
+  }
 }
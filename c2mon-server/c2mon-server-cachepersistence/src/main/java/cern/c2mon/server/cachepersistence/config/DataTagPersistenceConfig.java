@@ -6,8 +6,11 @@ import cern.c2mon.server.cachepersistence.CachePersistenceDAO;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManager;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManagerImpl;
 import cern.c2mon.server.cachepersistence.impl.CachePersistenceDAOImpl;
+import cern.c2mon.server.cachepersistence.impl.TagCachePersistenceDAOImpl;
 import cern.c2mon.server.cachepersistence.listener.PersistenceSynchroListener;
+import cern.c2mon.server.cachepersistence.listener.TagPersistenceConfigurationListener;
 import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.listener.ConfigurationEventListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,7 +29,10 @@ public class DataTagPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<DataTag> dataTagPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(dataTagMapper, dataTagCache);
+    if (isDeltaUpdates()) {
+      return new TagCachePersistenceDAOImpl<>(dataTagMapper, dataTagCache, cacheBatchSqlSession, DataTagMapper.class);
+    }
+    return new CachePersistenceDAOImpl<>(dataTagMapper, dataTagCache, cacheBatchSqlSession, DataTagMapper.class);
   }
 
   @Bean
@@ -34,6 +40,8 @@ public class DataTagPersistenceConfig extends AbstractPersistenceConfig {
     BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(dataTagPersistenceDAO(), dataTagCache,
         clusterCache, cachePersistenceThreadPoolTaskExecutor);
     manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setBatchSizes(properties.getMinBatchSize(), properties.getMaxBatchSize());
+    manager.setTargetBatchLatency(properties.getTargetBatchLatency());
     return manager;
   }
 
@@ -42,4 +50,9 @@ public class DataTagPersistenceConfig extends AbstractPersistenceConfig {
     Integer pullFrequency = cacheProperties.getBufferedListenerPullFrequency();
     return new PersistenceSynchroListener(dataTagCache, dataTagPersistenceManager(), pullFrequency);
   }
+
+  @Bean
+  public ConfigurationEventListener dataTagPersistenceConfigurationListener() {
+    return new TagPersistenceConfigurationListener(dataTagPersistenceDAO());
+  }
 }
@@ -26,7 +26,7 @@ public class EquipmentPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<Equipment> equipmentPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(equipmentMapper, equipmentCache);
+    return new CachePersistenceDAOImpl<>(equipmentMapper, equipmentCache, cacheBatchSqlSession, EquipmentMapper.class);
   }
 
   @Bean
@@ -34,6 +34,8 @@ public class EquipmentPersistenceConfig extends AbstractPersistenceConfig {
     BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(equipmentPersistenceDAO(), equipmentCache,
         clusterCache, cachePersistenceThreadPoolTaskExecutor);
     manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setBatchSizes(properties.getMinBatchSize(), properties.getMaxBatchSize());
+    manager.setTargetBatchLatency(properties.getTargetBatchLatency());
     return manager;
   }
 
@@ -6,8 +6,11 @@ import cern.c2mon.server.cachepersistence.CachePersistenceDAO;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManager;
 import cern.c2mon.server.cachepersistence.common.BatchPersistenceManagerImpl;
 import cern.c2mon.server.cachepersistence.impl.CachePersistenceDAOImpl;
+import cern.c2mon.server.cachepersistence.impl.TagCachePersistenceDAOImpl;
 import cern.c2mon.server.cachepersistence.listener.PersistenceSynchroListener;
+import cern.c2mon.server.cachepersistence.listener.TagPersistenceConfigurationListener;
 import cern.c2mon.server.common.rule.RuleTag;
+import cern.c2mon.server.common.listener.ConfigurationEventListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,12 +29,20 @@ public class RuleTagPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<RuleTag> ruleTagPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(ruleTagMapper, ruleTagCache);
+    if (isDeltaUpdates()) {
+      return new TagCachePersistenceDAOImpl<>(ruleTagMapper, ruleTagCache, cacheBatchSqlSession, RuleTagMapper.class);
+    }
+    return new CachePersistenceDAOImpl<>(ruleTagMapper, ruleTagCache, cacheBatchSqlSession, RuleTagMapper.class);
   }
 
   @Bean
   public BatchPersistenceManager ruleTagPersistenceManager() {
-    return new BatchPersistenceManagerImpl<>(ruleTagPersistenceDAO(), ruleTagCache, clusterCache, cachePersistenceThreadPoolTaskExecutor);
+    BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(ruleTagPersistenceDAO(), ruleTagCache,
+        clusterCache, cachePersistenceThreadPoolTaskExecutor);
+    manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setBatchSizes(properties.getMinBatchSize(), properties.getMaxBatchSize());
+    manager.setTargetBatchLatency(properties.getTargetBatchLatency());
+    return manager;
   }
 
   @Bean
@@ -39,4 +50,9 @@ public class RuleTagPersistenceConfig extends AbstractPersistenceConfig {
     Integer pullFrequency = cacheProperties.getBufferedListenerPullFrequency();
     return new PersistenceSynchroListener(ruleTagCache, ruleTagPersistenceManager(), pullFrequency);
   }
+
+  @Bean
+  public ConfigurationEventListener ruleTagPersistenceConfigurationListener() {
+    return new TagPersistenceConfigurationListener(ruleTagPersistenceDAO());
+  }
 }
@@ -26,7 +26,7 @@ public class SubEquipmentPersistenceConfig extends AbstractPersistenceConfig {
 
   @Bean
   public CachePersistenceDAO<SubEquipment> subEquipmentPersistenceDAO() {
-    return new CachePersistenceDAOImpl<>(subEquipmentMapper, subEquipmentCache);
+    return new CachePersistenceDAOImpl<>(subEquipmentMapper, subEquipmentCache, cacheBatchSqlSession, SubEquipmentMapper.class);
   }
 
   @Bean
@@ -34,6 +34,8 @@ public class SubEquipmentPersistenceConfig extends AbstractPersistenceConfig {
     BatchPersistenceManagerImpl manager = new BatchPersistenceManagerImpl<>(subEquipmentPersistenceDAO(), subEquipmentCache,
         clusterCache, cachePersistenceThreadPoolTaskExecutor);
     manager.setTimeoutPerBatch(properties.getTimeoutPerBatch());
+    manager.setBatchSizes(properties.getMinBatchSize(), properties.getMaxBatchSize());
+    manager.setTargetBatchLatency(properties.getTargetBatchLatency());
     return manager;
   }
 
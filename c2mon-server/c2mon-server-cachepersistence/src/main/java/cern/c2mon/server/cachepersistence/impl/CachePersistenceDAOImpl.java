@@ -19,6 +19,7 @@ package cern.c2mon.server.cachepersistence.impl;
 import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.SqlSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
@@ -35,6 +36,9 @@ import cern.c2mon.shared.common.Cacheable;
  * to the database. The cache object needs to have a corresponding
  * {@link PersistenceMapper}.
  *
+ * <p>The updates of a batch are sent through a session using the MyBatis
+ * batch executor, so that they are sent to the DB in a single round trip.
+ *
  * @author Mark Brightwell
  *
  * @param <T> the type of the cache object
@@ -55,16 +59,31 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
    */
   private C2monCache<Long, T> cache;
 
+  /**
+   * Session with batch executor, used for persisting the batches.
+   */
+  private SqlSession batchSqlSession;
+
+  /**
+   * Mapper bound to the batch session.
+   */
+  private PersistenceMapper<T> batchPersistenceMapper;
+
   /**
    * Constructor required cache and the persistence bean for this cache.
    *
    * @param persistenceMapper the mapper bean for this cache
    * @param cache the cache that is being persisted
+   * @param batchSqlSession session with batch executor, taking part in the Spring transactions
+   * @param mapperType interface of the mapper, to bind it to the batch session
    */
-  public CachePersistenceDAOImpl(final PersistenceMapper<T> persistenceMapper, final C2monCache<Long, T> cache) {
+  public CachePersistenceDAOImpl(final PersistenceMapper<T> persistenceMapper, final C2monCache<Long, T> cache,
+                                 final SqlSession batchSqlSession, final Class<? extends PersistenceMapper<T>> mapperType) {
     super();
     this.persistenceMapper = persistenceMapper;
     this.cache = cache;
+    this.batchSqlSession = batchSqlSession;
+    this.batchPersistenceMapper = batchSqlSession.getMapper(mapperType);
   }
 
   /**
@@ -78,7 +97,8 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
   }
 
   /**
-   * Used to persist a batch of cache objects in a single transaction.
+   * Used to persist a batch of cache objects in a single transaction and
+   * JDBC batch, in the order of the keys (sorted by the caller).
    * An object that is not found in the cache will not be persisted and skipped.
    * @param keyList keys of the elements that need persisting
    */
@@ -91,13 +111,21 @@ public class CachePersistenceDAOImpl<T extends Cacheable> implements CachePersis
         cacheObject = cache.getCopy(key);
         //do not persist unconfigured tags TODO could remove as unconfigured not used
         if (cacheObject != null && (!(cacheObject instanceof Tag) || !((Tag) cacheObject).isInUnconfigured())) {
-          persistenceMapper.updateCacheable(cacheObject);
+          batchPersistenceMapper.updateCacheable(cacheObject);
         }
       } catch (CacheElementNotFoundException ex) {
         log.warn("Cache element with id {} could not be persisted as not found in cache " +
             "(may have been removed in the meantime by a re-configuration). Cache is {}", key, cache.getClass().getSimpleName(), ex);
       }
     }
+    flushBatch();
+  }
+
+  /**
+   * Sends the updates queued in the batch session to the DB.
+   */
+  protected void flushBatch() {
+    batchSqlSession.flushStatements();
   }
 
 
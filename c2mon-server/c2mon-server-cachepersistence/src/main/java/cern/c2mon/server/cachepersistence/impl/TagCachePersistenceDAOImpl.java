@@ -0,0 +1,216 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cachepersistence.impl;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.SqlSession;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import cern.c2mon.server.cache.C2monCache;
+import cern.c2mon.server.cache.dbaccess.TagColumns;
+import cern.c2mon.server.cache.dbaccess.TagPersistenceMapper;
+import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.shared.common.datatag.DataTagQuality;
+
+/**
+ * Persistence DAO for the tag caches, which only updates the groups of
+ * runtime columns that changed since the tag was last persisted by this
+ * server.
+ *
+ * <p>The values last written for each tag are kept in memory and only
+ * recorded once the transaction has committed, so a failed batch is
+ * persisted in full with the next run. The updates of a batch are grouped
+ * by column set, so that all updates of a group use the same statement.
+ * Tags that did not change at all are skipped.
+ *
+ * <p>The groups are written in the order of their lowest tag id, and the
+ * tags of a group in ascending id order, so the row locks of a batch are
+ * not taken in globally ascending order. Two batches cannot wait on each
+ * other though: the runs of a persistence manager are serialized by the
+ * cluster persistence lock and split the sorted dirty keys into disjoint
+ * batches, and {@link #updateCacheable} only locks a single row. The
+ * remaining case, a timed out batch still executing when the next run
+ * writes the same keys, ends in the DB rolling back one of the batches,
+ * whose keys are then persisted by the following run.
+ *
+ * <p>When several servers persist the same cache, a column written by
+ * another server is not detected as changed. Full updates should then
+ * be used instead, see {@link CachePersistenceDAOImpl}.
+ *
+ * @param <T> the type of the cache object
+ */
+@Slf4j
+public class TagCachePersistenceDAOImpl<T extends Tag> extends CachePersistenceDAOImpl<T> {
+
+  /**
+   * Mapper bound to the batch session.
+   */
+  private final TagPersistenceMapper<T> batchPersistenceMapper;
+
+  private final C2monCache<Long, T> cache;
+
+  /**
+   * Runtime values last persisted, by tag id.
+   */
+  private final Map<Long, PersistedColumns> persisted = new ConcurrentHashMap<>();
+
+  /**
+   * @param persistenceMapper the mapper bean for this cache
+   * @param cache the cache that is being persisted
+   * @param batchSqlSession session with batch executor, taking part in the Spring transactions
+   * @param mapperType interface of the mapper, to bind it to the batch session
+   */
+  public TagCachePersistenceDAOImpl(final TagPersistenceMapper<T> persistenceMapper, final C2monCache<Long, T> cache,
+                                    final SqlSession batchSqlSession, final Class<? extends TagPersistenceMapper<T>> mapperType) {
+    super(persistenceMapper, cache, batchSqlSession, mapperType);
+    this.batchPersistenceMapper = batchSqlSession.getMapper(mapperType);
+    this.cache = cache;
+  }
+
+  @Transactional("cacheTransactionManager")
+  @Override
+  public void updateCacheable(final T cacheable) {
+    super.updateCacheable(cacheable);
+    recordAfterCommit(new PersistedColumns(cacheable));
+  }
+
+  /**
+   * Persists the changed columns of a batch of tags in a single transaction
+   * and JDBC batch.
+   * A tag that is not found in the cache will not be persisted and skipped.
+   * @param keyList keys of the elements that need persisting
+   */
+  @Transactional(value = "cacheTransactionManager")
+  @Override
+  public void persistBatch(final List<Long> keyList) {
+    Map<TagColumns, List<T>> groups = new LinkedHashMap<>();
+    List<PersistedColumns> written = new ArrayList<>(keyList.size());
+    for (Long key : keyList) {
+      try {
+        T tag = cache.getCopy(key);
+        //do not persist unconfigured tags
+        if (tag == null || tag.isInUnconfigured()) {
+          continue;
+        }
+        PersistedColumns current = new PersistedColumns(tag);
+        TagColumns columns = current.changedSince(persisted.get(key));
+        if (!columns.isEmpty()) {
+          groups.computeIfAbsent(columns, c -> new ArrayList<>()).add(tag);
+          written.add(current);
+        }
+      } catch (CacheElementNotFoundException ex) {
+        persisted.remove(key);
+        log.warn("Cache element with id {} could not be persisted as not found in cache " +
+            "(may have been removed in the meantime by a re-configuration). Cache is {}", key, cache.getClass().getSimpleName(), ex);
+      }
+    }
+    List<Map.Entry<TagColumns, List<T>>> ordered = new ArrayList<>(groups.entrySet());
+    ordered.sort(Comparator.comparing(group -> group.getValue().get(0).getId()));
+    for (Map.Entry<TagColumns, List<T>> group : ordered) {
+      for (T tag : group.getValue()) {
+        batchPersistenceMapper.updateCacheableColumns(tag, group.getKey());
+      }
+    }
+    flushBatch();
+    log.trace("Persisted {} of {} tags in {} column groups", written.size(), keyList.size(), groups.size());
+    recordAfterCommit(written.toArray(new PersistedColumns[0]));
+  }
+
+  /**
+   * Forgets the values last persisted for a tag, so that all its columns
+   * are written with the next update. Called when the tag is created or
+   * removed by a configuration.
+   * @param tagId the id of the tag
+   */
+  public void forget(final Long tagId) {
+    persisted.remove(tagId);
+  }
+
+  private void recordAfterCommit(final PersistedColumns... written) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          record(written);
+        }
+      });
+    } else {
+      record(written);
+    }
+  }
+
+  private void record(final PersistedColumns[] written) {
+    for (PersistedColumns columns : written) {
+      persisted.put(columns.id, columns);
+    }
+  }
+
+  /**
+   * Runtime values of a tag as written to the DB.
+   */
+  private static final class PersistedColumns {
+
+    private final Long id;
+    private final Object value;
+    private final String valueDescription;
+    private final Timestamp cacheTimestamp;
+    private final Timestamp sourceTimestamp;
+    private final Timestamp daqTimestamp;
+    private final DataTagQuality quality;
+    private final boolean simulated;
+
+    PersistedColumns(final Tag tag) {
+      id = tag.getId();
+      value = tag.getValue();
+      valueDescription = tag.getValueDescription();
+      cacheTimestamp = tag.getCacheTimestamp();
+      sourceTimestamp = tag instanceof DataTag ? ((DataTag) tag).getSourceTimestamp() : null;
+      daqTimestamp = tag instanceof DataTag ? ((DataTag) tag).getDaqTimestamp() : null;
+      quality = tag.getDataTagQuality();
+      simulated = tag.isSimulated();
+    }
+
+    /**
+     * @param previous the values last persisted, or null if unknown
+     * @return the column groups that differ from the previous values
+     */
+    TagColumns changedSince(final PersistedColumns previous) {
+      if (previous == null) {
+        return new TagColumns(true, true, true, true);
+      }
+      return new TagColumns(
+          !Objects.equals(value, previous.value) || !Objects.equals(valueDescription, previous.valueDescription),
+          !Objects.equals(cacheTimestamp, previous.cacheTimestamp) || !Objects.equals(sourceTimestamp, previous.sourceTimestamp)
+              || !Objects.equals(daqTimestamp, previous.daqTimestamp),
+          !Objects.equals(quality, previous.quality),
+          simulated != previous.simulated);
+    }
+  }
+}
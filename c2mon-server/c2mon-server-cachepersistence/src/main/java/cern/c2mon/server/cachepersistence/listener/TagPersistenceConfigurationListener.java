@@ -0,0 +1,54 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cachepersistence.listener;
+
+import cern.c2mon.server.cachepersistence.CachePersistenceDAO;
+import cern.c2mon.server.cachepersistence.impl.TagCachePersistenceDAOImpl;
+import cern.c2mon.server.common.alarm.Alarm;
+import cern.c2mon.server.common.listener.ConfigurationEventListener;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.shared.client.configuration.ConfigConstants.Action;
+
+/**
+ * Makes the delta persistence of a tag cache forget the values it last
+ * persisted for a tag that is created or removed by a configuration, so
+ * that the DB row written next for that id is complete.
+ */
+public class TagPersistenceConfigurationListener implements ConfigurationEventListener {
+
+  private final CachePersistenceDAO<?> persistenceDAO;
+
+  /**
+   * @param persistenceDAO the persistence DAO of the tag cache; only
+   *                       delta persistence keeps values to forget
+   */
+  public TagPersistenceConfigurationListener(final CachePersistenceDAO<?> persistenceDAO) {
+    this.persistenceDAO = persistenceDAO;
+  }
+
+  @Override
+  public void onConfigurationEvent(final Tag tag, final Action action) {
+    if ((action == Action.CREATE || action == Action.REMOVE) && persistenceDAO instanceof TagCachePersistenceDAOImpl) {
+      ((TagCachePersistenceDAOImpl<?>) persistenceDAO).forget(tag.getId());
+    }
+  }
+
+  @Override
+  public void onConfigurationEvent(final Alarm alarm, final Action action) {
+    // alarms are persisted in full
+  }
+}
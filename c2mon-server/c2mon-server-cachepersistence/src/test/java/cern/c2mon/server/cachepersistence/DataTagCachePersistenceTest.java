@@ -44,6 +44,7 @@ import cern.c2mon.shared.common.datatag.DataTagConstants;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Integration test of the cache-persistence and cache modules.
@@ -120,6 +121,33 @@ public class DataTagCachePersistenceTest {
     dataTagCache.remove(originalObject.getId());
 }
 
+  /**
+   * Tests that only the changed runtime columns are written once a tag
+   * has been persisted.
+   */
+  @Test
+  public void testOnlyChangedColumnsPersisted() {
+    dataTagCache.put(originalObject.getId(), originalObject);
+    dataTagPersistenceManager.persistAllCacheToDatabase();
+
+    //change a column behind the back of the cache
+    DataTagCacheObject external = (DataTagCacheObject) dataTagMapper.getItem(originalObject.getId());
+    external.setSimulated(true);
+    dataTagMapper.updateCacheable(external);
+
+    DataTagCacheObject cacheObject = (DataTagCacheObject) dataTagCache.get(originalObject.getId());
+    cacheObject.setValue(0);
+    dataTagCache.notifyListenersOfUpdate(cacheObject);
+    dataTagPersistenceManager.persistAllCacheToDatabase();
+
+    DataTagCacheObject objectInDB = (DataTagCacheObject) dataTagMapper.getItem(originalObject.getId());
+    assertEquals(0, objectInDB.getValue());
+    //the simulated column has not changed in the cache, so is not written
+    assertTrue(objectInDB.isSimulated());
+
+    dataTagCache.remove(originalObject.getId());
+  }
+
   /**
    * Tests that if 2 updates for the same tag are written to the cache at roughly
    * the same time, that only the most recent one ends up in the DB. This is testing
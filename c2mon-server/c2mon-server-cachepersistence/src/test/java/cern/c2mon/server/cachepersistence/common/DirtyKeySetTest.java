@@ -0,0 +1,42 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.cachepersistence.common;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DirtyKeySetTest {
+
+  @Test
+  public void testDrainReturnsSortedDistinctKeys() {
+    DirtyKeySet keys = new DirtyKeySet();
+    keys.addAll(Arrays.asList(200_000L, 5L, -3L, DirtyKeySet.PAGE_SIZE + 1L, 5L, 0L));
+    keys.add(200_000L);
+
+    assertEquals(5, keys.size());
+    assertTrue(keys.getDirtySince() > 0);
+    assertArrayEquals(new long[] {-3L, 0L, 5L, DirtyKeySet.PAGE_SIZE + 1L, 200_000L}, keys.drain());
+    assertTrue(keys.isEmpty());
+    assertEquals(0, keys.getDirtySince());
+    assertEquals(0, keys.drain().length);
+  }
+}
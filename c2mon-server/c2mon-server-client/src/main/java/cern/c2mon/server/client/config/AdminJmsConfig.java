@@ -20,6 +20,9 @@ import java.util.concurrent.ThreadPoolExecutor;
 @Configuration
 public class AdminJmsConfig {
 
+  /** Maximum number of concurrent consumers of the admin request queue */
+  static final int MAX_CONSUMERS = 2;
+
   @Autowired
   private ClientProperties properties;
 
@@ -55,7 +58,7 @@ public class AdminJmsConfig {
     container.setConnectionFactory(adminSingleConnectionFactory());
     container.setMessageListener(delegator);
     container.setConcurrentConsumers(1);
-    container.setMaxConcurrentConsumers(2);
+    container.setMaxConcurrentConsumers(MAX_CONSUMERS);
     container.setMaxMessagesPerTask(1);
     container.setReceiveTimeout(1000);
     container.setIdleTaskExecutionLimit(600);
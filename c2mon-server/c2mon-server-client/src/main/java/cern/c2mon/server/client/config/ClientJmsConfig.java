@@ -15,7 +15,7 @@ import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.listener.DefaultMessageListenerContainer;
 
 import java.util.Collections;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -82,8 +82,16 @@ public class ClientJmsConfig {
     return container;
   }
 
+  /**
+   * Runs the consumers of the client, admin and configuration request queues:
+   * one thread per consumer. The client requests are processed by the
+   * ClientRequestExecutor.
+   */
   @Bean
   public ThreadPoolExecutor clientExecutor() {
-    return new ThreadPoolExecutor(1, 1000, 60000, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+    int threads = properties.getJms().getMaxConsumers() + AdminJmsConfig.MAX_CONSUMERS + ConfigRequestJmsConfig.CONSUMERS;
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60000, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 }
@@ -26,10 +26,123 @@ public class ClientProperties {
      */
     private String tagTopicPrefix = "c2mon.client.tag";
 
+    /**
+     * Granularity of the tag topics: PROCESS for one topic per process,
+     * EQUIPMENT for one topic per equipment (and one for the rules of each
+     * process) or SHARD for tagTopicShards topics per process. The clients
+     * subscribe to the topic given with each tag
+     */
+    private TopicGranularity tagTopicGranularity = TopicGranularity.PROCESS;
+
+    /** Number of topics per process with the SHARD granularity */
+    private int tagTopicShards = 16;
+
+    /**
+     * Also publish the tag updates on the per-process topics, for the clients
+     * which subscribed before the granularity was changed, until they have
+     * refreshed their tags
+     */
+    private boolean tagTopicLegacyPublication = false;
+
     /** Specify the initial number of concurrent consumers to receive client requests */
     private int initialConsumers = 5;
 
     /** Specify the maximum number of concurrent consumers to receive client requests */
     private int maxConsumers = 10;
+
+    /** Number of threads processing the small client requests */
+    private int requestLookupThreads = 8;
+
+    /**
+     * Number of threads processing the client requests for many tags or for
+     * tag names, and the parts of the split requests
+     */
+    private int requestBulkThreads = 4;
+
+    /** Number of threads processing the configuration and DAQ XML requests */
+    private int requestConfigurationThreads = 2;
+
+    /** Number of threads processing the command requests */
+    private int requestCommandThreads = 4;
+
+    /**
+     * Number of client requests waiting for processing per class of request,
+     * above which they are processed by the consumer receiving them
+     */
+    private int requestQueueSize = 1000;
+
+    /**
+     * Requests for more tags are processed in parts of this size, in parallel
+     */
+    private int requestSplitSize = 5000;
+
+    /**
+     * Publish the tag updates in batches, one message per topic holding all
+     * the updates received within the batch window of their priority
+     */
+    private boolean tagBatchingEnabled = false;
+
+    /** Maximum number of tag updates per batch message */
+    private int tagBatchSize = 200;
+
+    /**
+     * Time in ms the tag updates with low priority are held to be batched.
+     * 0 publishes them immediately
+     */
+    private long tagBatchWindowLow = 100;
+
+    /**
+     * Time in ms the tag updates with medium priority are held to be batched.
+     * 0 publishes them immediately
+     */
+    private long tagBatchWindowMedium = 20;
+
+    /**
+     * Time in ms the tag updates with high priority are held to be batched.
+     * 0 publishes them immediately
+     */
+    private long tagBatchWindowHigh = 0;
+
+    /**
+     * Limit the rate at which the updates of a tag are published. The updates
+     * of high priority tags, and the ones changing the quality or the alarms
+     * of the tag, are always published immediately
+     */
+    private boolean tagConflationEnabled = false;
+
+    /**
+     * Minimum time in ms between two publications of a tag when the
+     * conflation is enabled. Only the latest update is published
+     */
+    private long tagConflationInterval = 1000;
+
+    /**
+     * Maximum number of tags whose latest serialized value is kept for the
+     * publications and the client requests. 0 disables the cache
+     */
+    private int tagTransferCacheSize = 200_000;
+
+    /**
+     * Maximum number of failed publications kept in memory per publisher for
+     * re-publication (only the latest one per tag, alarm or supervised
+     * entity). Beyond, they are spilled to republicationSpillDirectory
+     */
+    private int republicationMaxPending = 100_000;
+
+    /**
+     * Maximum number of failed publications re-published per second and per
+     * publisher once the broker is reachable again. 0 for no limit
+     */
+    private int republicationMaxRate = 5000;
+
+    /** Directory of the files holding the spilled failed publications */
+    private String republicationSpillDirectory = "/tmp/c2mon-republication";
+  }
+
+  /**
+   * Granularity of the topics on which the tag updates are published.
+   */
+  public enum TopicGranularity {
+    PROCESS, EQUIPMENT, SHARD
   }
 }
@@ -19,6 +19,9 @@ public class ConfigRequestJmsConfig {
   @Autowired
   private ClientProperties properties;
 
+  /** Number of consumers of the configuration request queue */
+  static final int CONSUMERS = 1;
+
   @Autowired
   private SingleConnectionFactory clientSingleConnectionFactory;
 
@@ -34,8 +37,8 @@ public class ConfigRequestJmsConfig {
 
     container.setConnectionFactory(clientSingleConnectionFactory);
     container.setMessageListener(requestHandler);
-    container.setConcurrentConsumers(1);
-    container.setMaxConcurrentConsumers(1);
+    container.setConcurrentConsumers(CONSUMERS);
+    container.setMaxConcurrentConsumers(CONSUMERS);
     container.setSessionTransacted(false);
     container.setTaskExecutor(clientExecutor);
     container.setPhase(ServerConstants.PHASE_START_LAST);
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.client.publish;
 
+import java.io.File;
+
 import javax.annotation.PostConstruct;
 
 import com.google.gson.Gson;
@@ -31,6 +33,7 @@ import org.springframework.stereotype.Service;
 import cern.c2mon.server.cache.C2monCacheListener;
 import cern.c2mon.server.cache.CacheRegistrationService;
 import cern.c2mon.server.cache.TagLocationService;
+import cern.c2mon.server.client.config.ClientProperties;
 import cern.c2mon.server.client.util.TransferObjectFactory;
 import cern.c2mon.server.common.alarm.Alarm;
 import cern.c2mon.server.common.component.Lifecycle;
@@ -39,6 +42,7 @@ import cern.c2mon.server.common.republisher.Publisher;
 import cern.c2mon.server.common.republisher.Republisher;
 import cern.c2mon.server.common.republisher.RepublisherFactory;
 import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.shared.client.alarm.AlarmFilter;
 import cern.c2mon.shared.client.alarm.AlarmValue;
 import cern.c2mon.shared.util.jms.JmsSender;
 import cern.c2mon.shared.util.json.GsonFactory;
@@ -48,6 +52,11 @@ import cern.c2mon.shared.util.json.GsonFactory;
  * alarm publication topic, specified using the property
  * jms.client.alarm.topic
  *
+ * <p>The fault family, fault member, fault code, priority, active and
+ * oscillating state of every alarm are set as message properties, so that
+ * the clients can subscribe to a subset of the alarms with a selector (see
+ * {@link AlarmFilter}).
+ *
  * <p>Will attempt re-publication of alarms if JMS connection fails.
  *
  *
@@ -68,6 +77,9 @@ public class AlarmPublisher implements C2monCacheListener<Alarm>, SmartLifecycle
   /** Reference to the tag location service to check whether a tag exists */
   private final TagLocationService tagLocationService;
 
+  /** Name of the alarm topic */
+  private final String alarmTopic;
+
   /** Json message serializer/deserializer */
   private static final Gson GSON = GsonFactory.createGson();
 
@@ -86,16 +98,22 @@ public class AlarmPublisher implements C2monCacheListener<Alarm>, SmartLifecycle
    * @param pCacheRegistrationService Used to register to Alarm updates.
    * @param pTagLocationService Reference to the tag location service singleton.
    * Used to add tag information to the AlarmValue object.
+   * @param properties the client communication properties
    */
   @Autowired
   public AlarmPublisher(@Qualifier("alarmTopicPublisher") final JmsSender pJmsSender
       , final CacheRegistrationService pCacheRegistrationService
-      , final TagLocationService pTagLocationService) {
+      , final TagLocationService pTagLocationService
+      , final ClientProperties properties) {
 
     jmsSender = pJmsSender;
     cacheRegistrationService = pCacheRegistrationService;
     tagLocationService = pTagLocationService;
-    republisher = RepublisherFactory.createRepublisher(this, "Alarm");
+    alarmTopic = properties.getJms().getAlarmTopic();
+    republisher = RepublisherFactory.createRepublisher(this, "Alarm", AlarmValue::getId);
+    republisher.setMaxPendingEvents(properties.getJms().getRepublicationMaxPending());
+    republisher.setMaxReplayRate(properties.getJms().getRepublicationMaxRate());
+    republisher.setSpillDirectory(new File(properties.getJms().getRepublicationSpillDirectory()));
   }
 
   /**
@@ -180,7 +198,7 @@ public class AlarmPublisher implements C2monCacheListener<Alarm>, SmartLifecycle
   public void publish(final AlarmValue alarmValue) {
     String jsonAlarm = GSON.toJson(alarmValue);
     log.debug("Publishing alarm: " + jsonAlarm);
-    jmsSender.send(jsonAlarm);
+    jmsSender.sendToTopic(jsonAlarm, alarmTopic, AlarmFilter.toMessageProperties(alarmValue));
   }
 
   /**
@@ -198,4 +216,20 @@ public class AlarmPublisher implements C2monCacheListener<Alarm>, SmartLifecycle
   public int getSizeUnpublishedList() {
     return republisher.getSizeUnpublishedList();
   }
+
+  /**
+   * @return the number of alarms awaiting re-publication which are spilled to disk
+   */
+  @ManagedOperation(description = "Returns the current number of alarms awaiting re-publication which are spilled to disk")
+  public int getSizeSpilledList() {
+    return republisher.getSizeSpilledList();
+  }
+
+  /**
+   * @return the number of alarms re-published during the last second
+   */
+  @ManagedOperation(description = "Returns the number of alarms re-published during the last second")
+  public int getReplayRate() {
+    return republisher.getReplayRate();
+  }
 }
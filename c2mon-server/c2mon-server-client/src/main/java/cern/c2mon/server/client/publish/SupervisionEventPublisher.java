@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.client.publish;
 
+import java.io.File;
+
 import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
@@ -30,6 +32,7 @@ import org.springframework.stereotype.Service;
 
 import com.google.gson.Gson;
 
+import cern.c2mon.server.client.config.ClientProperties;
 import cern.c2mon.server.common.component.Lifecycle;
 import cern.c2mon.server.common.config.ServerConstants;
 import cern.c2mon.server.common.republisher.Publisher;
@@ -77,13 +80,19 @@ public class SupervisionEventPublisher implements SupervisionListener, SmartLife
    * Default Constructor
    * @param pJmsSender Used for sending JMS messages and waiting for a response
    * @param pSupervisionNotifier Used for registering this class as listener
+   * @param properties the client communication properties
    */
   @Autowired
   public SupervisionEventPublisher(@Qualifier("supervisionTopicPublisher") final JmsSender pJmsSender,
-                                   final SupervisionNotifier pSupervisionNotifier) {
+                                   final SupervisionNotifier pSupervisionNotifier,
+                                   final ClientProperties properties) {
     jmsSender = pJmsSender;
     supervisionNotifier = pSupervisionNotifier;
-    republisher = RepublisherFactory.createRepublisher(this, "Supervision Event");
+    republisher = RepublisherFactory.createRepublisher(this, "Supervision Event",
+        event -> event.getEntity() + ":" + event.getEntityId());
+    republisher.setMaxPendingEvents(properties.getJms().getRepublicationMaxPending());
+    republisher.setMaxReplayRate(properties.getJms().getRepublicationMaxRate());
+    republisher.setSpillDirectory(new File(properties.getJms().getRepublicationSpillDirectory()));
   }
 
 
@@ -164,4 +173,20 @@ public class SupervisionEventPublisher implements SupervisionListener, SmartLife
   public int getSizeUnpublishedList() {
     return republisher.getSizeUnpublishedList();
   }
+
+  /**
+   * @return the number of supervision events awaiting re-publication which are spilled to disk
+   */
+  @ManagedOperation(description = "Returns the current number of supervision events awaiting re-publication which are spilled to disk")
+  public int getSizeSpilledList() {
+    return republisher.getSizeSpilledList();
+  }
+
+  /**
+   * @return the number of supervision events re-published during the last second
+   */
+  @ManagedOperation(description = "Returns the number of supervision events re-published during the last second")
+  public int getReplayRate() {
+    return republisher.getReplayRate();
+  }
 }
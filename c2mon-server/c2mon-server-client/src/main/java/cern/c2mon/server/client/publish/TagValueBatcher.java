@@ -0,0 +1,237 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jms.JmsException;
+
+import cern.c2mon.server.client.config.ClientProperties;
+import cern.c2mon.server.client.util.TransferTagValueCache;
+import cern.c2mon.server.common.alarm.TagWithAlarms;
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.shared.client.serializer.TransferTagSerializer;
+import cern.c2mon.shared.common.datatag.DataTagConstants;
+import cern.c2mon.shared.util.jms.JmsSender;
+
+/**
+ * Groups the tag updates published on the same topic into a single message.
+ * <p>
+ * The updates are held at most the batch window configured for the priority
+ * of the tag, or until the batch is full. An update with a window of 0 is
+ * sent immediately, together with the updates already waiting on its topic
+ * to keep their order. A batch holding a single update is sent as a plain
+ * tag update message, larger batches as a JSON array of the serialized
+ * values of the {@link TransferTagValueCache} with the
+ * {@link TransferTagSerializer#FORMAT_VERSION_PROPERTY} property set.
+ */
+@Slf4j
+class TagValueBatcher {
+
+  private static final Map<String, Object> BATCH_PROPERTIES =
+      Collections.singletonMap(TransferTagSerializer.FORMAT_VERSION_PROPERTY, TransferTagSerializer.BATCH_FORMAT_VERSION);
+
+  private final JmsSender jmsSender;
+
+  private final ClientProperties properties;
+
+  /** Provides the serialized values of the tags */
+  private final TransferTagValueCache transferTagValueCache;
+
+  /** Called with the updates of a batch which could not be sent */
+  private final Consumer<TagWithAlarms> failureHandler;
+
+  /** Batches being filled, per topic. Accesses are synchronized on the map */
+  private final Map<String, Batch> batches = new HashMap<>();
+
+  private final ScheduledExecutorService scheduler;
+
+  private final AtomicLong publishedBatches = new AtomicLong();
+
+  /** Once closed, the updates are sent immediately */
+  private volatile boolean closed = false;
+
+  private final AtomicLong publishedUpdates = new AtomicLong();
+
+  /**
+   * @param jmsSender used to send the batches
+   * @param properties the batch size and windows
+   * @param transferTagValueCache provides the serialized values of the tags
+   * @param failureHandler called with the updates of a batch which could not be sent
+   */
+  TagValueBatcher(JmsSender jmsSender, ClientProperties properties, TransferTagValueCache transferTagValueCache,
+                  Consumer<TagWithAlarms> failureHandler) {
+    this.jmsSender = jmsSender;
+    this.properties = properties;
+    this.transferTagValueCache = transferTagValueCache;
+    this.failureHandler = failureHandler;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "TagValueBatcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Adds the update to the batch of each of its topics.
+   *
+   * @param tagWithAlarms the updated tag with its alarms
+   */
+  void add(TagWithAlarms tagWithAlarms) {
+    String tagValue = transferTagValueCache.refresh(tagWithAlarms).toJson();
+    long window = closed ? 0 : getBatchWindow(tagWithAlarms.getTag());
+    for (String topic : TopicProvider.topicsFor(tagWithAlarms.getTag(), properties)) {
+      add(topic, tagWithAlarms, tagValue, window);
+    }
+  }
+
+  private void add(String topic, TagWithAlarms tagWithAlarms, String tagValue, long window) {
+    Batch ready = null;
+    synchronized (batches) {
+      Batch batch = batches.get(topic);
+      if (batch == null) {
+        batch = new Batch(topic);
+        batches.put(topic, batch);
+      }
+      batch.add(tagWithAlarms, tagValue);
+      if (window <= 0 || batch.size() >= properties.getJms().getTagBatchSize()) {
+        batches.remove(topic);
+        ready = batch;
+      } else if (batch.shortenDeadline(System.currentTimeMillis() + window)) {
+        Batch scheduled = batch;
+        scheduler.schedule(() -> flush(scheduled), window, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (ready != null) {
+      send(ready);
+    }
+  }
+
+  /**
+   * Sends the batches waiting for their window to expire and stops the
+   * scheduling of the batches.
+   */
+  void close() {
+    closed = true;
+    scheduler.shutdownNow();
+    List<Batch> remaining;
+    synchronized (batches) {
+      remaining = new ArrayList<>(batches.values());
+      batches.clear();
+    }
+    remaining.forEach(this::send);
+  }
+
+  /**
+   * @return the number of batch messages sent
+   */
+  long getPublishedBatches() {
+    return publishedBatches.get();
+  }
+
+  /**
+   * @return the number of tag updates sent
+   */
+  long getPublishedUpdates() {
+    return publishedUpdates.get();
+  }
+
+  private void flush(Batch batch) {
+    synchronized (batches) {
+      if (!batches.remove(batch.topic, batch)) {
+        return;
+      }
+    }
+    send(batch);
+  }
+
+  private void send(Batch batch) {
+    try {
+      if (batch.tagValues.size() == 1) {
+        jmsSender.sendToTopic(batch.tagValues.get(0), batch.topic);
+      } else {
+        jmsSender.sendToTopic("[" + String.join(",", batch.tagValues) + "]", batch.topic, BATCH_PROPERTIES);
+        publishedBatches.incrementAndGet();
+      }
+      publishedUpdates.addAndGet(batch.tagValues.size());
+    } catch (JmsException e) {
+      log.error("Error publishing a batch of " + batch.size() + " tag updates to topic " + batch.topic + " - submitting for republication", e);
+      batch.tags.forEach(failureHandler);
+    } catch (RuntimeException e) {
+      log.error("Error publishing a batch of " + batch.size() + " tag updates to topic " + batch.topic, e);
+    }
+  }
+
+  private long getBatchWindow(Tag tag) {
+    int priority = DataTagConstants.PRIORITY_MEDIUM;
+    if (tag instanceof DataTag && ((DataTag) tag).getAddress() != null) {
+      priority = ((DataTag) tag).getAddress().getPriority();
+    }
+    if (priority >= DataTagConstants.PRIORITY_HIGH) {
+      return properties.getJms().getTagBatchWindowHigh();
+    } else if (priority <= DataTagConstants.PRIORITY_LOW) {
+      return properties.getJms().getTagBatchWindowLow();
+    }
+    return properties.getJms().getTagBatchWindowMedium();
+  }
+
+  /**
+   * Tag updates waiting to be sent on a topic.
+   */
+  private static final class Batch {
+    private final String topic;
+    private final List<TagWithAlarms> tags = new ArrayList<>();
+    private final List<String> tagValues = new ArrayList<>();
+    private long deadline = Long.MAX_VALUE;
+
+    Batch(String topic) {
+      this.topic = topic;
+    }
+
+    void add(TagWithAlarms tagWithAlarms, String tagValue) {
+      tags.add(tagWithAlarms);
+      tagValues.add(tagValue);
+    }
+
+    int size() {
+      return tags.size();
+    }
+
+    /**
+     * @return true if the deadline was brought forward, in which case a
+     * flush must be scheduled
+     */
+    boolean shortenDeadline(long newDeadline) {
+      if (newDeadline < deadline) {
+        deadline = newDeadline;
+        return true;
+      }
+      return false;
+    }
+  }
+}
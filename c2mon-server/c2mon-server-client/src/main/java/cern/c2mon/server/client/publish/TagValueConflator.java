@@ -0,0 +1,206 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.server.common.alarm.Alarm;
+import cern.c2mon.server.common.alarm.TagWithAlarms;
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.shared.common.datatag.DataTagConstants;
+import cern.c2mon.shared.common.datatag.DataTagQuality;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+/**
+ * Limits the rate at which the updates of a tag are published to the
+ * clients.
+ * <p>
+ * An update arriving less than the conflation interval after the previous
+ * publication of its tag is kept in the slot of the tag, replacing any
+ * update already waiting there, and the latest one is published once the
+ * interval has elapsed. The updates of tags with high priority, and the
+ * updates changing the quality of the tag or the state of one of its alarms,
+ * are always published immediately.
+ */
+@Slf4j
+class TagValueConflator {
+
+  /** Receives the updates to publish */
+  private final Consumer<TagWithAlarms> publisher;
+
+  /** Minimum time in ms between two publications of a tag */
+  private final long interval;
+
+  private final Map<Long, Slot> slots = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService scheduler;
+
+  private final AtomicLong receivedUpdates = new AtomicLong();
+
+  private final AtomicLong conflatedUpdates = new AtomicLong();
+
+  /**
+   * @param publisher receives the updates to publish
+   * @param interval minimum time in ms between two publications of a tag
+   */
+  TagValueConflator(Consumer<TagWithAlarms> publisher, long interval) {
+    this.publisher = publisher;
+    this.interval = interval;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "TagValueConflator");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Publishes the update, or keeps it until the conflation interval of its
+   * tag has elapsed.
+   *
+   * @param tagWithAlarms the updated tag with its alarms
+   */
+  void add(TagWithAlarms tagWithAlarms) {
+    receivedUpdates.incrementAndGet();
+    Slot slot = slots.computeIfAbsent(tagWithAlarms.getTag().getId(), id -> new Slot());
+    TagWithAlarms ready = null;
+    synchronized (slot) {
+      long now = System.currentTimeMillis();
+      if (scheduler.isShutdown() || now - slot.lastPublication >= interval || mustPassImmediately(slot, tagWithAlarms)) {
+        if (slot.pending != null) {
+          conflatedUpdates.incrementAndGet();
+          slot.pending = null;
+        }
+        slot.published(tagWithAlarms, now);
+        ready = tagWithAlarms;
+      } else {
+        if (slot.pending != null) {
+          conflatedUpdates.incrementAndGet();
+        }
+        slot.pending = tagWithAlarms;
+        if (!slot.scheduled) {
+          slot.scheduled = true;
+          scheduler.schedule(() -> flush(slot), slot.lastPublication + interval - now, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+    if (ready != null) {
+      publisher.accept(ready);
+    }
+  }
+
+  /**
+   * Publishes the updates waiting in the slots and stops the conflation.
+   */
+  void close() {
+    scheduler.shutdownNow();
+    slots.values().forEach(this::flush);
+  }
+
+  /**
+   * @return the number of updates received
+   */
+  long getReceivedUpdates() {
+    return receivedUpdates.get();
+  }
+
+  /**
+   * @return the number of updates replaced by a more recent one of the same
+   * tag before being published
+   */
+  long getConflatedUpdates() {
+    return conflatedUpdates.get();
+  }
+
+  private void flush(Slot slot) {
+    TagWithAlarms ready;
+    synchronized (slot) {
+      slot.scheduled = false;
+      ready = slot.pending;
+      if (ready == null) {
+        return;
+      }
+      slot.pending = null;
+      slot.published(ready, System.currentTimeMillis());
+    }
+    try {
+      publisher.accept(ready);
+    } catch (RuntimeException e) {
+      log.error("Error publishing the conflated update of tag " + ready.getTag().getId(), e);
+    }
+  }
+
+  private static boolean mustPassImmediately(Slot slot, TagWithAlarms tagWithAlarms) {
+    Tag tag = tagWithAlarms.getTag();
+    if (tag instanceof DataTag && ((DataTag) tag).getAddress() != null
+        && ((DataTag) tag).getAddress().getPriority() >= DataTagConstants.PRIORITY_HIGH) {
+      return true;
+    }
+    if (!qualityOf(tag).equals(slot.quality)) {
+      return true;
+    }
+    for (Alarm alarm : alarmsOf(tagWithAlarms)) {
+      if (!Boolean.valueOf(alarm.isActive()).equals(slot.alarmStates.get(alarm.getId()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Set<TagQualityStatus> qualityOf(Tag tag) {
+    DataTagQuality quality = tag.getDataTagQuality();
+    if (quality == null || quality.getInvalidQualityStates() == null) {
+      return Collections.emptySet();
+    }
+    return new HashSet<>(quality.getInvalidQualityStates().keySet());
+  }
+
+  private static Iterable<Alarm> alarmsOf(TagWithAlarms tagWithAlarms) {
+    return tagWithAlarms.getAlarms() != null ? tagWithAlarms.getAlarms() : Collections.<Alarm>emptyList();
+  }
+
+  /**
+   * Publication state of a tag. Accesses are synchronized on the slot.
+   */
+  private static final class Slot {
+    private long lastPublication = Long.MIN_VALUE / 2;
+    private Set<TagQualityStatus> quality;
+    private final Map<Long, Boolean> alarmStates = new HashMap<>();
+    private TagWithAlarms pending;
+    private boolean scheduled;
+
+    void published(TagWithAlarms tagWithAlarms, long now) {
+      lastPublication = now;
+      quality = qualityOf(tagWithAlarms.getTag());
+      for (Alarm alarm : alarmsOf(tagWithAlarms)) {
+        alarmStates.put(alarm.getId(), alarm.isActive());
+      }
+    }
+  }
+}
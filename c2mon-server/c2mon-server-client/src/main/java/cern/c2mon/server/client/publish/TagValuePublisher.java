@@ -16,6 +16,7 @@
  *****************************************************************************/
 package cern.c2mon.server.client.publish;
 
+import java.io.File;
 import java.util.List;
 
 import javax.annotation.PostConstruct;
@@ -38,6 +39,7 @@ import cern.c2mon.server.cache.TagLocationService;
 import cern.c2mon.server.cache.alarm.AlarmAggregator;
 import cern.c2mon.server.cache.alarm.AlarmAggregatorListener;
 import cern.c2mon.server.client.util.TransferObjectFactory;
+import cern.c2mon.server.client.util.TransferTagValueCache;
 import cern.c2mon.server.common.alarm.Alarm;
 import cern.c2mon.server.common.alarm.TagWithAlarms;
 import cern.c2mon.server.common.alarm.TagWithAlarmsImpl;
@@ -49,7 +51,6 @@ import cern.c2mon.server.configuration.ConfigurationUpdate;
 import cern.c2mon.server.configuration.ConfigurationUpdateListener;
 import cern.c2mon.shared.client.tag.TagValueUpdate;
 import cern.c2mon.shared.client.tag.TransferTagImpl;
-import cern.c2mon.shared.client.tag.TransferTagValueImpl;
 import cern.c2mon.shared.util.jms.JmsSender;
 
 /**
@@ -103,6 +104,15 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
 
   private ClientProperties properties;
 
+  /** Latest serialized value of the tags */
+  private final TransferTagValueCache transferTagValueCache;
+
+  /** Groups the tag updates per topic, null if the batching is disabled */
+  private TagValueBatcher batcher;
+
+  /** Limits the publication rate of the tags, null if the conflation is disabled */
+  private TagValueConflator conflator;
+
   /**
    * Default Constructor
    * @param jmsSender Used for sending JMS messages and waiting for a response
@@ -111,6 +121,7 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
    * @param configurationUpdate Used to register this <code>ConfigurationUpdateListener</code>
    * @param pTagFacadeGateway Reference to the tag facade gateway singleton
    * @param tagLocationService Reference to the tag location service
+   * @param transferTagValueCache Cache of the serialized tag values
    */
   @Autowired
   public TagValuePublisher(@Qualifier("clientTopicPublisher") final JmsSender jmsSender,
@@ -119,15 +130,17 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
                            final ConfigurationUpdate configurationUpdate,
                            final TagFacadeGateway pTagFacadeGateway,
                            final TagLocationService tagLocationService,
-                           final ClientProperties properties) {
+                           final ClientProperties properties,
+                           final TransferTagValueCache transferTagValueCache) {
     this.aliveTimerFacade = aliveTimerFacade;
     this.jmsSender = jmsSender;
     this.alarmAggregator = alarmAggregator;
     this.configurationUpdate = configurationUpdate;
     this.tagFacadeGateway = pTagFacadeGateway;
     this.tagLocationService = tagLocationService;
-    this.republisher = RepublisherFactory.createRepublisher(this, "Tag");
+    this.republisher = RepublisherFactory.createRepublisher(this, "Tag", tagWithAlarms -> tagWithAlarms.getTag().getId());
     this.properties = properties;
+    this.transferTagValueCache = transferTagValueCache;
   }
 
   /**
@@ -146,7 +159,20 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
 
     if (republicationDelay != 0)
       republisher.setRepublicationDelay(republicationDelay);
+    republisher.setMaxPendingEvents(properties.getJms().getRepublicationMaxPending());
+    republisher.setMaxReplayRate(properties.getJms().getRepublicationMaxRate());
+    republisher.setSpillDirectory(new File(properties.getJms().getRepublicationSpillDirectory()));
     republisher.start();
+
+    if (properties.getJms().isTagBatchingEnabled()) {
+      log.info("init - Publishing tag updates in batches of up to {} updates", properties.getJms().getTagBatchSize());
+      batcher = new TagValueBatcher(jmsSender, properties, transferTagValueCache, republisher::publicationFailed);
+    }
+
+    if (properties.getJms().isTagConflationEnabled()) {
+      log.info("init - Publishing tag updates at most every {}ms per tag", properties.getJms().getTagConflationInterval());
+      conflator = new TagValueConflator(this::send, properties.getJms().getTagConflationInterval());
+    }
   }
 
   /**
@@ -155,13 +181,22 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
   @PreDestroy
   public void shutdown() {
     log.info("shutdown - Stopping tag publisher.");
+    if (conflator != null) {
+      conflator.close();
+    }
+    if (batcher != null) {
+      batcher.close();
+    }
     republisher.stop();
   }
 
   /**
    * Generates for every notification a <code>TransferTagValue</code>
    * object which is then sent as serialized GSON message trough the
-   * dedicated JMS client tag topic.
+   * dedicated JMS client tag topic. If the batching is enabled, the
+   * update is sent with the other updates of the topic within its
+   * batch window. If the conflation is enabled, only the latest update of
+   * a tag within the conflation interval is sent.
    * @param tag the updated Tag
    * @param alarms the new values of the associated alarms; this list
    *               is null if no alarms are associated to the tag
@@ -169,6 +204,18 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
   @Override
   public void notifyOnUpdate(final Tag tag, final List<Alarm> alarms) {
     TagWithAlarms tagWithAlarms = new TagWithAlarmsImpl(tag, alarms);
+    if (conflator != null) {
+      conflator.add(tagWithAlarms);
+    } else {
+      send(tagWithAlarms);
+    }
+  }
+
+  private void send(final TagWithAlarms tagWithAlarms) {
+    if (batcher != null) {
+      batcher.add(tagWithAlarms);
+      return;
+    }
     try {
       publish(tagWithAlarms);
     } catch (JmsException e) {
@@ -179,14 +226,17 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
 
   @Override
   public void publish(final TagWithAlarms tagWithAlarms) {
-    TransferTagValueImpl tagValue = TransferObjectFactory.createTransferTagValue(tagWithAlarms);
-    log.trace("publish - Publishing tag update to client: " + TransferTagSerializer.toJson(tagValue));
+    String tagValue = transferTagValueCache.refresh(tagWithAlarms).toJson();
+    log.trace("publish - Publishing tag update to client: {}", tagValue);
 
-    jmsSender.sendToTopic(TransferTagSerializer.toJson(tagValue), TopicProvider.topicFor(tagWithAlarms.getTag(), properties));
+    for (String topic : TopicProvider.topicsFor(tagWithAlarms.getTag(), properties)) {
+      jmsSender.sendToTopic(tagValue, topic);
+    }
   }
 
   @Override
   public void notifyOnConfigurationUpdate(Long tagId) {
+    transferTagValueCache.invalidate(tagId);
     tagLocationService.acquireReadLockOnKey(tagId);
     try {
       TagWithAlarms tagWithAlarms = this.tagFacadeGateway.getTagWithAlarms(tagId);
@@ -194,9 +244,12 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
         String topic = TopicProvider.topicFor(tagWithAlarms.getTag(), properties);
         TransferTagImpl tag = TransferObjectFactory.createTransferTag(tagWithAlarms, aliveTimerFacade.isRegisteredAliveTimer(tagId), topic);
 
-        log.trace("notifyOnConfigurationUpdate - Publishing configuration update to client: " + TransferTagSerializer.toJson(tag));
+        String json = TransferTagSerializer.toJson(tag);
+        log.trace("notifyOnConfigurationUpdate - Publishing configuration update to client: {}", json);
 
-        jmsSender.sendToTopic(TransferTagSerializer.toJson(tag), topic);
+        for (String publicationTopic : TopicProvider.topicsFor(tagWithAlarms.getTag(), properties)) {
+          jmsSender.sendToTopic(json, publicationTopic);
+        }
       } catch (JmsException e) {
         log.error("notifyOnConfigurationUpdate - Error publishing configuration update to topic for tag " + tagWithAlarms.getTag().getId()
             + " - submitting for republication", e);
@@ -222,4 +275,55 @@ public class TagValuePublisher implements AlarmAggregatorListener, Configuration
   public int getSizeUnpublishedList() {
     return republisher.getSizeUnpublishedList();
   }
+
+  /**
+   * @return the number of tag updates awaiting re-publication which are spilled to disk
+   */
+  @ManagedOperation(description = "Returns the current number of tag updates awaiting re-publication which are spilled to disk")
+  public int getSizeSpilledList() {
+    return republisher.getSizeSpilledList();
+  }
+
+  /**
+   * @return the number of tag updates re-published during the last second
+   */
+  @ManagedOperation(description = "Returns the number of tag updates re-published during the last second")
+  public int getReplayRate() {
+    return republisher.getReplayRate();
+  }
+
+  /**
+   * @return the number of batch messages sent since the publisher start
+   */
+  @ManagedOperation(description = "Returns the number of tag update batches published since the application started")
+  public long getNumberPublishedBatches() {
+    return batcher != null ? batcher.getPublishedBatches() : 0;
+  }
+
+  /**
+   * @return the number of tag updates sent through the batching since the publisher start
+   */
+  @ManagedOperation(description = "Returns the number of tag updates published through the batching since the application started")
+  public long getNumberBatchedUpdates() {
+    return batcher != null ? batcher.getPublishedUpdates() : 0;
+  }
+
+  /**
+   * @return the number of tag updates replaced by a more recent update of the same tag before being published
+   */
+  @ManagedOperation(description = "Returns the number of tag updates dropped by the conflation since the application started")
+  public long getNumberConflatedUpdates() {
+    return conflator != null ? conflator.getConflatedUpdates() : 0;
+  }
+
+  /**
+   * @return the fraction of the tag updates dropped by the conflation
+   */
+  @ManagedOperation(description = "Returns the fraction of the tag updates dropped by the conflation since the application started")
+  public double getConflationRatio() {
+    if (conflator == null || conflator.getReceivedUpdates() == 0) {
+      return 0;
+    }
+    return (double) conflator.getConflatedUpdates() / conflator.getReceivedUpdates();
+  }
 }
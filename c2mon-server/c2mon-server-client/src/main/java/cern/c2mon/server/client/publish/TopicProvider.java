@@ -1,5 +1,9 @@
 package cern.c2mon.server.client.publish;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import cern.c2mon.server.client.config.ClientProperties;
 import cern.c2mon.server.common.control.ControlTag;
 import cern.c2mon.server.common.datatag.DataTag;
@@ -7,16 +11,62 @@ import cern.c2mon.server.common.rule.RuleTag;
 import cern.c2mon.server.common.tag.Tag;
 
 /**
+ * Maps the tags to the topics on which their updates are published, with the
+ * configured granularity.
+ *
  * @author Justin Lewis Salmon
  */
 public class TopicProvider {
 
+  /**
+   * @return the topic of the tag, which is advertised to the clients
+   */
   public static String topicFor(Tag tag, ClientProperties properties) {
-    String trunk = properties.getJms().getTagTopicPrefix();
-
     if (tag instanceof ControlTag) {
       return properties.getJms().getControlTagTopic();
-    } else if (tag instanceof RuleTag) {
+    }
+
+    String processTopic = processTopicFor(tag, properties);
+    switch (properties.getJms().getTagTopicGranularity()) {
+      case EQUIPMENT:
+        if (tag instanceof RuleTag) {
+          return processTopic + ".rules";
+        }
+        DataTag dataTag = (DataTag) tag;
+        if (dataTag.getEquipmentId() != null) {
+          return processTopic + ".equipment." + dataTag.getEquipmentId();
+        } else if (dataTag.getSubEquipmentId() != null) {
+          return processTopic + ".subequipment." + dataTag.getSubEquipmentId();
+        }
+        return processTopic;
+      case SHARD:
+        long shards = Math.max(1, properties.getJms().getTagTopicShards());
+        return processTopic + ".shard." + Math.floorMod(tag.getId(), shards);
+      default:
+        return processTopic;
+    }
+  }
+
+  /**
+   * @return the topics on which the updates of the tag are published: the
+   *         topic of the tag and, while the legacy publication is enabled,
+   *         the topic of its process
+   */
+  public static List<String> topicsFor(Tag tag, ClientProperties properties) {
+    String topic = topicFor(tag, properties);
+    if (properties.getJms().isTagTopicLegacyPublication() && !(tag instanceof ControlTag)) {
+      String processTopic = processTopicFor(tag, properties);
+      if (!processTopic.equals(topic)) {
+        return Arrays.asList(topic, processTopic);
+      }
+    }
+    return Collections.singletonList(topic);
+  }
+
+  private static String processTopicFor(Tag tag, ClientProperties properties) {
+    String trunk = properties.getJms().getTagTopicPrefix();
+
+    if (tag instanceof RuleTag) {
       return trunk + "." + ((RuleTag) tag).getLowestProcessId();
     } else {
       return trunk + "." + ((DataTag) tag).getProcessId();
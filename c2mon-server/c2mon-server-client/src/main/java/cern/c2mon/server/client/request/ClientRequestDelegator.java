@@ -17,18 +17,24 @@
 package cern.c2mon.server.client.request;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 import javax.jms.*;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.listener.SessionAwareMessageListener;
 import org.springframework.jms.support.converter.MessageConversionException;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.gson.Gson;
 
 import cern.c2mon.server.supervision.SupervisionFacade;
@@ -73,6 +79,12 @@ public class ClientRequestDelegator implements SessionAwareMessageListener<Messa
    */
   private final SupervisionFacade supervisionFacade;
 
+  /** Processes the requests on the executor of their class */
+  private final ClientRequestExecutor clientRequestExecutor;
+
+  /** Provides the sessions on which the replies are sent */
+  private final JmsTemplate replyTemplate;
+
   /** Json message serializer/deserializer */
   private static final Gson GSON = GsonFactory.createGson();
 
@@ -91,7 +103,9 @@ public class ClientRequestDelegator implements SessionAwareMessageListener<Messa
                                 final ClientTagRequestHelper tagrequestHelper,
                                 final ClientDeviceRequestHelper clientDeviceRequestHelper,
                                 final ClientConfigurationRequestHandler clientConfigurationRequestHandler,
-                                final ClientProcessRequestHandler clientProcessRequestHandler) {
+                                final ClientProcessRequestHandler clientProcessRequestHandler,
+                                final ClientRequestExecutor clientRequestExecutor,
+                                @Qualifier("clientSingleConnectionFactory") final ConnectionFactory connectionFactory) {
 
     this.supervisionFacade = supervisionFacade;
     this.clientAlarmRequestHandler = clientAlarmRequestHandler;
@@ -100,13 +114,15 @@ public class ClientRequestDelegator implements SessionAwareMessageListener<Messa
     this.clientDeviceRequestHelper = clientDeviceRequestHelper;
     this.clientConfigurationRequestHandler = clientConfigurationRequestHandler;
     this.clientProcessRequestHandler = clientProcessRequestHandler;
+    this.clientRequestExecutor = clientRequestExecutor;
+    this.replyTemplate = new JmsTemplate(connectionFactory);
   }
 
   /**
    * This method is called when a C2MON client is sending a
-   * <code>ClientRequest</code> to the server. The server retrieves the request
-   * Tag and associated alarms information from the cache and sends them back
-   * through the reply topic
+   * <code>ClientRequest</code> to the server. The request is handed over to
+   * the executor of its class, which retrieves the requested information and
+   * sends it back through the reply topic on its own session.
    *
    * @param message the JMS message which contains the Json
    *          <code>ClientRequest</code>
@@ -130,8 +146,38 @@ public class ClientRequestDelegator implements SessionAwareMessageListener<Messa
         throw jmse;
       }
 
-      ClientRequest clientRequest = ClientRequestMessageConverter.fromMessage(message);
-      Collection<? extends ClientRequestResult> response = handleClientRequest(clientRequest, session, replyDestination);
+      final Destination destination = replyDestination;
+      final ClientRequest clientRequest = ClientRequestMessageConverter.fromMessage(message);
+      final int maxChunkSize = getMaxChunkSize(message);
+
+      clientRequestExecutor.execute(clientRequest, () -> {
+        try {
+          replyTemplate.execute(replySession -> {
+            processRequest(clientRequest, maxChunkSize, replySession, destination);
+            return null;
+          }, false);
+        } catch (Exception e) {
+          LOG.error("Exception caught while processing client request - unable to process it; request will time out", e);
+        }
+      });
+    } catch (Exception e) {
+      LOG.error("Exception caught while processing client request - unable to process it; request will time out", e);
+    }
+  }
+
+  /**
+   * Handles the request and sends the response to the reply destination.
+   *
+   * @param clientRequest the request
+   * @param maxChunkSize maximum number of results per reply message, 0 for a single reply
+   * @param session the session on which the reply is sent
+   * @param replyDestination the reply destination
+   */
+  private void processRequest(final ClientRequest clientRequest, final int maxChunkSize,
+                              final Session session, final Destination replyDestination) {
+    try {
+      Collection<? extends ClientRequestResult> response = clientRequestExecutor.handleInParts(clientRequest,
+          request -> handleClientRequest(request, session, replyDestination));
 
       if (replyDestination != null) {
 
@@ -140,31 +186,23 @@ public class ClientRequestDelegator implements SessionAwareMessageListener<Messa
           messageProducer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
           messageProducer.setTimeToLive(DEFAULT_REPLY_TTL);
 
-          Message replyMessage = null;
-
           if (clientRequest.requiresObjectResponse()) {
 
             // Send response as an Object message
-            replyMessage = session.createObjectMessage((Serializable) response);
+            messageProducer.send(session.createObjectMessage((Serializable) response));
 
           } else {
 
-            // Send response as Json message
-            // use the Jackson parser for TransferTagValues
-            switch (clientRequest.getResultType()){
-              case TRANSFER_TAG_LIST:
-              case TRANSFER_TAG_VALUE_LIST:
-                replyMessage = session.createTextMessage(TransferTagSerializer.getJacksonParser().writeValueAsString(response));
-                break;
-              default:
-                replyMessage = session.createTextMessage(GSON.toJson(response));
+            if (maxChunkSize > 0 && response != null && response.size() > maxChunkSize) {
+              sendChunks(clientRequest, response, maxChunkSize, session, messageProducer);
+            } else {
+              messageProducer.send(session.createTextMessage(toJson(clientRequest, response)));
             }
           }
 
           if (LOG.isDebugEnabled()) {
             LOG.debug("onMessage() : Responded to ClientRequest.");
           }
-          messageProducer.send(replyMessage);
         } finally {
           messageProducer.close();
         }
@@ -177,6 +215,70 @@ public class ClientRequestDelegator implements SessionAwareMessageListener<Messa
     }
   }
 
+  /**
+   * @param message the request message
+   * @return the maximum number of results per reply message accepted by the
+   *         client, or 0 if the client expects a single reply
+   * @throws JMSException if the property cannot be read
+   */
+  private static int getMaxChunkSize(final Message message) throws JMSException {
+    if (message.propertyExists(ClientRequest.MAX_CHUNK_SIZE_PROPERTY)) {
+      return message.getIntProperty(ClientRequest.MAX_CHUNK_SIZE_PROPERTY);
+    }
+    return 0;
+  }
+
+  /**
+   * Sends the response in several messages of at most <code>maxChunkSize</code>
+   * results each, so that neither the server nor the client have to hold the
+   * complete serialized reply in memory.
+   *
+   * @param clientRequest the request
+   * @param response the results to send
+   * @param maxChunkSize maximum number of results per message
+   * @param session the JMS session
+   * @param messageProducer producer sending to the reply destination
+   */
+  private static void sendChunks(final ClientRequest clientRequest,
+                                 final Collection<? extends ClientRequestResult> response,
+                                 final int maxChunkSize,
+                                 final Session session,
+                                 final MessageProducer messageProducer) throws JMSException, JsonProcessingException {
+    int chunkCount = (response.size() + maxChunkSize - 1) / maxChunkSize;
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("onMessage() : Sending %d results in %d chunks.", response.size(), chunkCount));
+    }
+
+    List<ClientRequestResult> chunk = new ArrayList<>(maxChunkSize);
+    int chunkIndex = 0;
+    Iterator<? extends ClientRequestResult> it = response.iterator();
+    while (it.hasNext()) {
+      chunk.add(it.next());
+      if (chunk.size() == maxChunkSize || !it.hasNext()) {
+        TextMessage replyMessage = session.createTextMessage(toJson(clientRequest, chunk));
+        replyMessage.setIntProperty(ClientRequest.CHUNK_INDEX_PROPERTY, chunkIndex++);
+        replyMessage.setIntProperty(ClientRequest.CHUNK_COUNT_PROPERTY, chunkCount);
+        messageProducer.send(replyMessage);
+        chunk.clear();
+      }
+    }
+  }
+
+  /**
+   * @return the Json representation of the results, using the Jackson parser
+   *         for TransferTagValues
+   */
+  private static String toJson(final ClientRequest clientRequest,
+                               final Collection<? extends ClientRequestResult> results) throws JsonProcessingException {
+    switch (clientRequest.getResultType()) {
+      case TRANSFER_TAG_LIST:
+      case TRANSFER_TAG_VALUE_LIST:
+        return TransferTagSerializer.getJacksonParser().writeValueAsString(results);
+      default:
+        return GSON.toJson(results);
+    }
+  }
+
   /**
    * Inner method for handling requests. Therefore it has to get for all tag ids
    * mentioned in that request the tag and alarm referenses.
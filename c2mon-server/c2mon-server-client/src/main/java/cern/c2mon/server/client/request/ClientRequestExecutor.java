@@ -0,0 +1,295 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.request;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.server.client.config.ClientProperties;
+import cern.c2mon.shared.client.request.ClientRequest;
+import cern.c2mon.shared.client.request.ClientRequest.RequestType;
+import cern.c2mon.shared.client.request.ClientRequestImpl;
+import cern.c2mon.shared.client.request.ClientRequestResult;
+
+/**
+ * Processes the client requests on bounded executors, one per class of
+ * request, so that large tag requests, configurations and commands do not
+ * hold up the small lookups, and a burst of requests queues up instead of
+ * creating new threads.
+ * <p>
+ * Requests for more tags than the split size are processed in parts, in
+ * parallel, and the partial results are merged in the order of the parts.
+ * When the queue of a class is full, the request is processed by the thread
+ * submitting it, which slows down the consumption of the request queue.
+ */
+@Slf4j
+@Component
+@ManagedResource(description = "Executors processing the client requests")
+public class ClientRequestExecutor {
+
+  /**
+   * Classes of requests, each processed on its own executor.
+   */
+  enum RequestClass {
+    /** Small requests, answered from the caches. */
+    LOOKUP,
+    /** Tag and alarm requests for many ids, or by name. */
+    BULK,
+    /** Applying and retrieving configurations, DAQ XML. */
+    CONFIGURATION,
+    /** Command handles and command executions. */
+    COMMAND
+  }
+
+  private final Map<RequestClass, ThreadPoolExecutor> executors = new EnumMap<>(RequestClass.class);
+
+  /** Processes the parts of split requests. */
+  private final ThreadPoolExecutor partExecutor;
+
+  private final int splitSize;
+
+  private final Map<RequestType, Latency> latencies = new EnumMap<>(RequestType.class);
+
+  /**
+   * @param properties the number of threads per class of request and the split size
+   */
+  @Autowired
+  public ClientRequestExecutor(final ClientProperties properties) {
+    ClientProperties.Jms jms = properties.getJms();
+    this.splitSize = Math.max(1, jms.getRequestSplitSize());
+    executors.put(RequestClass.LOOKUP, createExecutor("Lookup", jms.getRequestLookupThreads(), jms.getRequestQueueSize()));
+    executors.put(RequestClass.BULK, createExecutor("Bulk", jms.getRequestBulkThreads(), jms.getRequestQueueSize()));
+    executors.put(RequestClass.CONFIGURATION, createExecutor("Configuration", jms.getRequestConfigurationThreads(), jms.getRequestQueueSize()));
+    executors.put(RequestClass.COMMAND, createExecutor("Command", jms.getRequestCommandThreads(), jms.getRequestQueueSize()));
+    this.partExecutor = createExecutor("Part", jms.getRequestBulkThreads(), jms.getRequestQueueSize());
+    for (RequestType requestType : RequestType.values()) {
+      latencies.put(requestType, new Latency());
+    }
+  }
+
+  private static ThreadPoolExecutor createExecutor(String name, int threads, int queueSize) {
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+          Thread thread = new Thread(r, "ClientRequest" + name + "-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * @param clientRequest the request
+   * @return the class of the request
+   */
+  RequestClass classify(final ClientRequest clientRequest) {
+    switch (clientRequest.getRequestType()) {
+      case TAG_REQUEST:
+      case TAG_CONFIGURATION_REQUEST:
+      case ALARM_REQUEST:
+        if (!clientRequest.getRegexList().isEmpty() || clientRequest.getIds().size() > splitSize) {
+          return RequestClass.BULK;
+        }
+        return RequestClass.LOOKUP;
+      case APPLY_CONFIGURATION_REQUEST:
+      case RETRIEVE_CONFIGURATION_REQUEST:
+      case DAQ_XML_REQUEST:
+        return RequestClass.CONFIGURATION;
+      case COMMAND_HANDLE_REQUEST:
+      case EXECUTE_COMMAND_REQUEST:
+        return RequestClass.COMMAND;
+      default:
+        return RequestClass.LOOKUP;
+    }
+  }
+
+  /**
+   * Processes the request on the executor of its class.
+   *
+   * @param clientRequest the request
+   * @param task processing the request and sending the reply
+   */
+  void execute(final ClientRequest clientRequest, final Runnable task) {
+    final RequestType requestType = clientRequest.getRequestType();
+    final long start = System.nanoTime();
+    executors.get(classify(clientRequest)).execute(() -> {
+      try {
+        task.run();
+      } finally {
+        latencies.get(requestType).add(System.nanoTime() - start);
+      }
+    });
+  }
+
+  /**
+   * Processes a request for many ids in parts of at most the split size, in
+   * parallel. Other requests are processed by the calling thread.
+   *
+   * @param clientRequest the request
+   * @param handler processing a request or a part of it
+   * @return the merged results of the parts
+   */
+  Collection<? extends ClientRequestResult> handleInParts(final ClientRequest clientRequest,
+                                                          final RequestHandler handler) {
+    if (!isSplittable(clientRequest)) {
+      return handler.handle(clientRequest);
+    }
+
+    List<Future<Collection<? extends ClientRequestResult>>> parts = new ArrayList<>();
+    for (ClientRequest part : split(clientRequest)) {
+      parts.add(partExecutor.submit((Callable<Collection<? extends ClientRequestResult>>) () -> handler.handle(part)));
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Processing {} of {} ids in {} parts", clientRequest.getRequestType(), clientRequest.getIds().size(), parts.size());
+    }
+
+    List<ClientRequestResult> results = new ArrayList<>(clientRequest.getIds().size());
+    try {
+      for (Future<Collection<? extends ClientRequestResult>> part : parts) {
+        results.addAll(part.get());
+      }
+    } catch (InterruptedException e) {
+      parts.forEach(part -> part.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while processing the request", e);
+    } catch (ExecutionException e) {
+      parts.forEach(part -> part.cancel(true));
+      throw new IllegalStateException("Error processing a part of the request", e.getCause());
+    }
+    return results;
+  }
+
+  private boolean isSplittable(final ClientRequest clientRequest) {
+    switch (clientRequest.getRequestType()) {
+      case TAG_REQUEST:
+      case TAG_CONFIGURATION_REQUEST:
+      case ALARM_REQUEST:
+        return clientRequest.getRegexList().isEmpty() && clientRequest.getIds().size() > splitSize;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return requests for the ids of the given one, at most the split size each
+   */
+  List<ClientRequest> split(final ClientRequest clientRequest) {
+    List<ClientRequest> parts = new ArrayList<>();
+    List<Long> ids = new ArrayList<>(splitSize);
+    for (Long id : clientRequest.getIds()) {
+      ids.add(id);
+      if (ids.size() == splitSize) {
+        parts.add(createPart(clientRequest, ids));
+        ids.clear();
+      }
+    }
+    if (!ids.isEmpty()) {
+      parts.add(createPart(clientRequest, ids));
+    }
+    return parts;
+  }
+
+  private static ClientRequest createPart(final ClientRequest clientRequest, final Collection<Long> ids) {
+    ClientRequestImpl<ClientRequestResult> part = new ClientRequestImpl<>(clientRequest.getResultType(),
+        clientRequest.getRequestType(), clientRequest.getTimeout());
+    part.addTagIds(ids);
+    return part;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executors.values().forEach(ThreadPoolExecutor::shutdown);
+    partExecutor.shutdown();
+  }
+
+  @ManagedOperation(description = "Returns the number of requests waiting for processing, per class of request")
+  public Map<String, Integer> getQueueSizes() {
+    Map<String, Integer> queueSizes = new TreeMap<>();
+    executors.forEach((requestClass, executor) -> queueSizes.put(requestClass.name(), executor.getQueue().size()));
+    return queueSizes;
+  }
+
+  @ManagedOperation(description = "Returns the number of requests processed since the application started, per request type")
+  public Map<String, Long> getRequestCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    latencies.forEach((requestType, latency) -> counts.put(requestType.name(), latency.count.sum()));
+    return counts;
+  }
+
+  @ManagedOperation(description = "Returns the average time in ms between the reception of a request and its reply, per request type")
+  public Map<String, Long> getAverageLatencies() {
+    Map<String, Long> averages = new TreeMap<>();
+    latencies.forEach((requestType, latency) -> {
+      long count = latency.count.sum();
+      averages.put(requestType.name(), count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(latency.total.sum() / count));
+    });
+    return averages;
+  }
+
+  @ManagedOperation(description = "Returns the longest time in ms between the reception of a request and its reply, per request type")
+  public Map<String, Long> getMaxLatencies() {
+    Map<String, Long> maxima = new TreeMap<>();
+    latencies.forEach((requestType, latency) -> maxima.put(requestType.name(), TimeUnit.NANOSECONDS.toMillis(latency.max.get())));
+    return maxima;
+  }
+
+  /**
+   * Processes a request, or a part of it.
+   */
+  @FunctionalInterface
+  interface RequestHandler {
+    Collection<? extends ClientRequestResult> handle(ClientRequest clientRequest);
+  }
+
+  /**
+   * Latency statistics of a request type.
+   */
+  private static final class Latency {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void add(long nanos) {
+      count.increment();
+      total.add(nanos);
+      max.accumulateAndGet(nanos, Math::max);
+    }
+  }
+}
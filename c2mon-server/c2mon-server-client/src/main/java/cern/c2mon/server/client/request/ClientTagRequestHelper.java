@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import cern.c2mon.server.client.config.ClientProperties;
 import cern.c2mon.server.client.publish.TopicProvider;
@@ -32,11 +33,12 @@ import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
 import cern.c2mon.server.cache.AliveTimerFacade;
+import cern.c2mon.server.cache.DataTagStatistics;
 import cern.c2mon.server.cache.ProcessCache;
 import cern.c2mon.server.cache.TagFacadeGateway;
-import cern.c2mon.server.cache.TagLocationService;
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
 import cern.c2mon.server.client.util.TransferObjectFactory;
+import cern.c2mon.server.client.util.TransferTagValueCache;
 import cern.c2mon.server.common.alarm.TagWithAlarms;
 import cern.c2mon.server.common.process.Process;
 import cern.c2mon.shared.client.request.ClientRequest;
@@ -65,9 +67,6 @@ class ClientTagRequestHelper {
    */
   private final TagFacadeGateway tagFacadeGateway;
   
-  /** Reference to the tag location service to check whether a tag exists */
-  private final TagLocationService tagLocationService;
-  
   /** Used to determine whether a Control Tag is an Alive tag */
   private final AliveTimerFacade aliveTimerFacade;
   
@@ -77,27 +76,36 @@ class ClientTagRequestHelper {
    */
   private final ProcessCache processCache;
 
+  /** Provides the number of tags per process, maintained in memory */
+  private final DataTagStatistics dataTagStatistics;
+
   private final ClientProperties properties;
 
+  /** Provides the serialized values of the tags */
+  private final TransferTagValueCache transferTagValueCache;
+
   /**
    * Default Constructor
    *
    * @param aliveTimerFacade Used to determine whether a given tag is an Alive tag
-   * @param tagLocationService Reference to the tag location service singleton
    * @param tagFacadeGateway Reference to the tag facade gateway singleton
    * @param processCache Reference to the ProcessCache
+   * @param dataTagStatistics Reference to the data tag statistics
+   * @param transferTagValueCache Reference to the cache of the serialized tag values
    */
   @Autowired
   public ClientTagRequestHelper(final AliveTimerFacade aliveTimerFacade,
-                                final TagLocationService tagLocationService,
                                 final TagFacadeGateway tagFacadeGateway,
                                 final ProcessCache processCache,
-                                final ClientProperties properties) {
+                                final DataTagStatistics dataTagStatistics,
+                                final ClientProperties properties,
+                                final TransferTagValueCache transferTagValueCache) {
     this.aliveTimerFacade = aliveTimerFacade;
-    this.tagLocationService = tagLocationService;
     this.tagFacadeGateway = tagFacadeGateway;
     this.processCache = processCache;
+    this.dataTagStatistics = dataTagStatistics;
     this.properties = properties;
+    this.transferTagValueCache = transferTagValueCache;
   }
   
   /**
@@ -108,7 +116,7 @@ class ClientTagRequestHelper {
    */
   Collection<? extends ClientRequestResult> handleTagRequest(final ClientRequest tagRequest) {
 
-    final Collection<TagValueUpdate> transferTags = new ArrayList<>(tagRequest.getIds().size());
+    final Collection<ClientRequestResult> transferTags = new ArrayList<>(tagRequest.getIds().size());
 
     transferTags.addAll(getTagsById(tagRequest));
     transferTags.addAll(getTagsByRegex(tagRequest));
@@ -121,44 +129,29 @@ class ClientTagRequestHelper {
   }
   
   /**
-   * Retrieves all tags specified by the tag id list in the tag request
+   * Retrieves all tags specified by the tag id list in the tag request, in
+   * one pass over the tag caches
    * @param tagRequest request containing the list of tag ids to return
-   * @return List of {@link TagValueUpdate}
+   * @return List of {@link TagValueUpdate}, as serialized values for the value only requests
    */
-  private Collection<TagValueUpdate> getTagsById(final ClientRequest tagRequest) {
-    final Collection<TagValueUpdate> transferTags = new ArrayList<>(tagRequest.getIds().size());
-    
-    for (Long tagId : tagRequest.getIds()) {
-      if (tagLocationService.isInTagCache(tagId)) {
-        final TagWithAlarms tagWithAlarms = tagFacadeGateway.getTagWithAlarms(tagId);
-
-        switch (tagRequest.getResultType()) {
-        case TRANSFER_TAG_LIST:
-          TransferTagImpl transferTag = TransferObjectFactory.createTransferTag(tagWithAlarms,
-              aliveTimerFacade.isRegisteredAliveTimer(tagId), TopicProvider.topicFor(tagWithAlarms.getTag(), properties));
-          transferTags.add(transferTag);
-          break;
-        case TRANSFER_TAG_VALUE_LIST:
-          transferTags.add(TransferObjectFactory.createTransferTagValue(tagWithAlarms));
-          break;
-        default:
-          LOG.error("getTagsById() - Could not generate response message. Unknown enum ResultType " + tagRequest.getResultType());
-        }
-      } else {
-        LOG.warn("getTagsById() - Received client request (TagRequest) for unrecognized Tag with id " + tagId);
-      }
-    } // end while
-    
+  private Collection<ClientRequestResult> getTagsById(final ClientRequest tagRequest) {
+    final Collection<TagWithAlarms> tagsWithAlarms = getTagsWithAlarms(tagRequest.getIds(), "getTagsById()");
+    final Collection<ClientRequestResult> transferTags = new ArrayList<>(tagsWithAlarms.size());
+
+    for (TagWithAlarms tagWithAlarms : tagsWithAlarms) {
+      addTransferObject(transferTags, tagRequest, tagWithAlarms, "getTagsById()");
+    }
+
     return transferTags;
   }
-  
+
   /**
    * Retrieves all tags which are matching the given regular expressions
    * @param tagRequest the request containing the regular expressions
    * @return List of tag updates matching the provided regular expressions
    */
-  private Collection<TagValueUpdate> getTagsByRegex(final ClientRequest tagRequest) {
-    final Collection<TagValueUpdate> transferTags = new ArrayList<>(tagRequest.getRegexList().size());
+  private Collection<ClientRequestResult> getTagsByRegex(final ClientRequest tagRequest) {
+    final Collection<ClientRequestResult> transferTags = new ArrayList<>(tagRequest.getRegexList().size());
     
     for (String regex : tagRequest.getRegexList()) {
 
@@ -166,18 +159,7 @@ class ClientTagRequestHelper {
         final Collection<TagWithAlarms> tagsWithAlarms = tagFacadeGateway.getTagsWithAlarms(regex);
 
         for (TagWithAlarms tagWithAlarms : tagsWithAlarms) {
-          switch (tagRequest.getResultType()) {
-          case TRANSFER_TAG_LIST:
-            transferTags.add(TransferObjectFactory.createTransferTag(tagWithAlarms,
-                aliveTimerFacade.isRegisteredAliveTimer(tagWithAlarms.getTag().getId()),
-                TopicProvider.topicFor(tagWithAlarms.getTag(), properties)));
-            break;
-          case TRANSFER_TAG_VALUE_LIST:
-            transferTags.add(TransferObjectFactory.createTransferTagValue(tagWithAlarms));
-            break;
-          default:
-            LOG.error("getTagsByRegex() - Could not generate response message. Unknown enum ResultType " + tagRequest.getResultType());
-          }
+          addTransferObject(transferTags, tagRequest, tagWithAlarms, "getTagsByRegex()");
         }
       }
       catch (CacheElementNotFoundException ex) {
@@ -188,6 +170,43 @@ class ClientTagRequestHelper {
     
     return transferTags;
   }
+
+  /**
+   * Adds the transfer object of the tag requested by the result type of the request.
+   */
+  private void addTransferObject(final Collection<ClientRequestResult> transferTags, final ClientRequest tagRequest,
+                                 final TagWithAlarms tagWithAlarms, final String caller) {
+    switch (tagRequest.getResultType()) {
+    case TRANSFER_TAG_LIST:
+      transferTags.add(TransferObjectFactory.createTransferTag(tagWithAlarms,
+          aliveTimerFacade.isRegisteredAliveTimer(tagWithAlarms.getTag().getId()),
+          TopicProvider.topicFor(tagWithAlarms.getTag(), properties)));
+      break;
+    case TRANSFER_TAG_VALUE_LIST:
+      transferTags.add(transferTagValueCache.get(tagWithAlarms));
+      break;
+    default:
+      LOG.error(caller + " - Could not generate response message. Unknown enum ResultType " + tagRequest.getResultType());
+    }
+  }
+
+  /**
+   * Fetches the tags with their alarms in one pass, and warns about the
+   * unknown tags.
+   */
+  private Collection<TagWithAlarms> getTagsWithAlarms(final Collection<Long> tagIds, final String caller) {
+    final Collection<TagWithAlarms> tagsWithAlarms = tagFacadeGateway.getTagsWithAlarms(tagIds);
+    if (tagsWithAlarms.size() < tagIds.size()) {
+      Set<Long> unknownIds = new HashSet<>(tagIds);
+      for (TagWithAlarms tagWithAlarms : tagsWithAlarms) {
+        unknownIds.remove(tagWithAlarms.getTag().getId());
+      }
+      for (Long tagId : unknownIds) {
+        LOG.warn(caller + " - Received client request for unrecognized Tag with id " + tagId);
+      }
+    }
+    return tagsWithAlarms;
+  }
   
   /**
    * Handles the Tag Configuration Requests
@@ -200,25 +219,19 @@ class ClientTagRequestHelper {
     
     final Collection<TagConfig> transferTags = new ArrayList<TagConfig>(tagConfigurationRequest.getIds().size());
     
-    for (Long tagId : tagConfigurationRequest.getIds()) {
-
-      if (tagLocationService.isInTagCache(tagId)) {
-        final TagWithAlarms tagWithAlarms = tagFacadeGateway.getTagWithAlarms(tagId);
-        HashSet<Process> tagProcesses = new HashSet<Process>();
-        for (Long procId : tagWithAlarms.getTag().getProcessIds()) {
-          tagProcesses.add(processCache.get(procId));
-        }
-        switch (tagConfigurationRequest.getResultType()) {
-        case TRANSFER_TAG_CONFIGURATION_LIST:
-          transferTags.add(TransferObjectFactory.createTagConfiguration(tagWithAlarms, tagProcesses));
-          break;
-        default:
-          LOG.error("handleConfigurationRequest() - Could not generate response message. Unknown enum ResultType " + tagConfigurationRequest.getResultType());
-        }
-      } else {
-        LOG.warn("handleConfigurationRequest() - Received client request (TagConfigRequest) for unrecognized Tag with id " + tagId);
+    for (TagWithAlarms tagWithAlarms : getTagsWithAlarms(tagConfigurationRequest.getIds(), "handleConfigurationRequest()")) {
+      HashSet<Process> tagProcesses = new HashSet<Process>();
+      for (Long procId : tagWithAlarms.getTag().getProcessIds()) {
+        tagProcesses.add(processCache.get(procId));
+      }
+      switch (tagConfigurationRequest.getResultType()) {
+      case TRANSFER_TAG_CONFIGURATION_LIST:
+        transferTags.add(TransferObjectFactory.createTagConfiguration(tagWithAlarms, tagProcesses));
+        break;
+      default:
+        LOG.error("handleConfigurationRequest() - Could not generate response message. Unknown enum ResultType " + tagConfigurationRequest.getResultType());
       }
-    } // end while
+    } // end for
     if (LOG.isDebugEnabled()) {
       LOG.debug("handleConfigurationRequest() - Finished processing Tag request (with config info): returning " + transferTags.size() + " Tags");
     }
@@ -238,7 +251,7 @@ class ClientTagRequestHelper {
     int invalid = 0;
 
     for (Long processId : processCache.getKeys()) {
-      ProcessTagStatistics processStatistics = new ProcessTagStatistics(processCache.getNumTags(processId), processCache.getNumInvalidTags(processId));
+      ProcessTagStatistics processStatistics = new ProcessTagStatistics(dataTagStatistics.getNumTags(processId), dataTagStatistics.getNumInvalidTags(processId));
 
       total += processStatistics.getTotal();
       invalid += processStatistics.getInvalid();
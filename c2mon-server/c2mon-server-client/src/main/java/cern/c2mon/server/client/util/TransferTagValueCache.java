@@ -0,0 +1,242 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.server.client.config.ClientProperties;
+import cern.c2mon.server.common.alarm.Alarm;
+import cern.c2mon.server.common.alarm.TagWithAlarms;
+import cern.c2mon.shared.client.request.ClientRequestResult;
+import cern.c2mon.shared.client.serializer.TransferTagSerializer;
+import cern.c2mon.shared.client.tag.TransferTagValueImpl;
+
+/**
+ * Keeps the latest serialized <code>TransferTagValue</code> of each tag, so
+ * that a tag update is converted to JSON once and the result reused by the
+ * topic publication, the republication and the client tag requests.
+ * <p>
+ * The update path calls {@link #refresh(TagWithAlarms)}, which always
+ * serializes the tag and replaces the cached entry, so that updates sharing
+ * a cache timestamp (e.g. a quality change) are never answered with a stale
+ * value. The client requests call {@link #get(TagWithAlarms)}, which reuses
+ * the entry as long as the cache timestamp of the tag and the state of its
+ * alarms are unchanged.
+ * <p>
+ * At most <code>tagTransferCacheSize</code> tags are kept, the least
+ * recently used ones being evicted first. The entries are kept as UTF-8
+ * bytes to halve their footprint.
+ */
+@Slf4j
+@Component
+@ManagedResource(description = "Cache of the serialized tag values sent to the clients")
+public class TransferTagValueCache {
+
+  private final Map<Long, SerializedTagValue> cache;
+
+  private final int maxSize;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param properties the maximum number of cached tags
+   */
+  @Autowired
+  public TransferTagValueCache(final ClientProperties properties) {
+    this.maxSize = properties.getJms().getTagTransferCacheSize();
+    this.cache = new LinkedHashMap<Long, SerializedTagValue>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Long, SerializedTagValue> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the serialized value of the tag, converting it only if the cached
+   * one is for another version of the tag.
+   *
+   * @param tagWithAlarms the tag with its alarms
+   * @return the serialized <code>TransferTagValue</code> of the tag
+   */
+  public SerializedTagValue get(final TagWithAlarms tagWithAlarms) {
+    Long tagId = tagWithAlarms.getTag().getId();
+    long timestamp = timestampOf(tagWithAlarms.getTag().getCacheTimestamp());
+    int alarmState = alarmStateOf(tagWithAlarms);
+
+    SerializedTagValue cached;
+    synchronized (cache) {
+      cached = cache.get(tagId);
+    }
+    if (cached != null && cached.timestamp == timestamp && cached.alarmState == alarmState) {
+      hits.incrementAndGet();
+      return cached;
+    }
+    // an entry of the same timestamp may only be replaced by the update path
+    return store(tagId, serialize(tagWithAlarms, timestamp, alarmState), false);
+  }
+
+  /**
+   * Serializes the tag and replaces its cached value, unless the cached one
+   * is for a more recent version of the tag. To be called on each tag update.
+   *
+   * @param tagWithAlarms the updated tag with its alarms
+   * @return the serialized <code>TransferTagValue</code> of the tag
+   */
+  public SerializedTagValue refresh(final TagWithAlarms tagWithAlarms) {
+    Long tagId = tagWithAlarms.getTag().getId();
+    long timestamp = timestampOf(tagWithAlarms.getTag().getCacheTimestamp());
+    return store(tagId, serialize(tagWithAlarms, timestamp, alarmStateOf(tagWithAlarms)), true);
+  }
+
+  private SerializedTagValue serialize(final TagWithAlarms tagWithAlarms, final long timestamp, final int alarmState) {
+    misses.incrementAndGet();
+    return new SerializedTagValue(timestamp, alarmState, serialize(TransferObjectFactory.createTransferTagValue(tagWithAlarms)));
+  }
+
+  private SerializedTagValue store(final Long tagId, final SerializedTagValue serialized, final boolean replaceSameTimestamp) {
+    if (maxSize > 0) {
+      synchronized (cache) {
+        cache.merge(tagId, serialized, (old, latest) ->
+            latest.timestamp > old.timestamp || (replaceSameTimestamp && latest.timestamp == old.timestamp) ? latest : old);
+      }
+    }
+    return serialized;
+  }
+
+  /**
+   * Removes the cached value of a tag, to be called when the tag is
+   * reconfigured or removed.
+   *
+   * @param tagId the id of the tag
+   */
+  public void invalidate(final Long tagId) {
+    synchronized (cache) {
+      cache.remove(tagId);
+    }
+  }
+
+  /**
+   * @return the number of cached tags
+   */
+  @ManagedOperation(description = "Returns the number of cached serialized tag values")
+  public int getSize() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * @return the number of serializations saved since the application started
+   */
+  @ManagedOperation(description = "Returns the number of tag values served from the cache since the application started")
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of serializations done since the application started
+   */
+  @ManagedOperation(description = "Returns the number of tag values serialized since the application started")
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private static byte[] serialize(final TransferTagValueImpl tagValue) {
+    try {
+      return TransferTagSerializer.getJacksonParser().writeValueAsBytes(tagValue);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Serializing of tag " + tagValue.getId() + " failed", e);
+    }
+  }
+
+  private static long timestampOf(final Timestamp timestamp) {
+    return timestamp != null ? timestamp.getTime() : 0;
+  }
+
+  private static int alarmStateOf(final TagWithAlarms tagWithAlarms) {
+    int state = 1;
+    if (tagWithAlarms.getAlarms() != null) {
+      for (Alarm alarm : tagWithAlarms.getAlarms()) {
+        state = 31 * state + alarm.getId().hashCode();
+        state = 31 * state + Boolean.hashCode(alarm.isActive());
+        state = 31 * state + Long.hashCode(timestampOf(alarm.getTimestamp()));
+      }
+    }
+    return state;
+  }
+
+  /**
+   * The serialized <code>TransferTagValue</code> of a tag. It is written as
+   * is when it is part of a client request result.
+   */
+  public static final class SerializedTagValue implements ClientRequestResult, JsonSerializable {
+
+    private final long timestamp;
+
+    private final int alarmState;
+
+    private final byte[] json;
+
+    SerializedTagValue(final long timestamp, final int alarmState, final byte[] json) {
+      this.timestamp = timestamp;
+      this.alarmState = alarmState;
+      this.json = json;
+    }
+
+    /**
+     * @return the JSON representation of the <code>TransferTagValue</code>
+     */
+    public String toJson() {
+      return new String(json, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void serialize(final JsonGenerator generator, final SerializerProvider serializers) throws IOException {
+      generator.writeRawValue(toJson());
+    }
+
+    @Override
+    public void serializeWithType(final JsonGenerator generator, final SerializerProvider serializers,
+                                  final TypeSerializer typeSerializer) throws IOException {
+      serialize(generator, serializers);
+    }
+
+    @Override
+    public String toString() {
+      return toJson();
+    }
+  }
+}
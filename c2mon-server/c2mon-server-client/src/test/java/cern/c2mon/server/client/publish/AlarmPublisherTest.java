@@ -0,0 +1,100 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.util.Map;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.cache.CacheRegistrationService;
+import cern.c2mon.server.cache.TagLocationService;
+import cern.c2mon.server.client.config.ClientProperties;
+import cern.c2mon.server.common.alarm.AlarmCacheObject;
+import cern.c2mon.server.test.CacheObjectCreation;
+import cern.c2mon.shared.client.alarm.AlarmFilter;
+import cern.c2mon.shared.client.alarm.AlarmValueImpl;
+import cern.c2mon.shared.util.jms.JmsSender;
+import cern.c2mon.shared.util.json.GsonFactory;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit test of the {@link AlarmPublisher}.
+ */
+public class AlarmPublisherTest {
+
+  private JmsSender jmsSender;
+
+  private TagLocationService tagLocationService;
+
+  private ClientProperties properties;
+
+  private AlarmPublisher publisher;
+
+  @Before
+  public void setUp() {
+    jmsSender = EasyMock.createMock(JmsSender.class);
+    tagLocationService = EasyMock.createMock(TagLocationService.class);
+    properties = new ClientProperties();
+    publisher = new AlarmPublisher(jmsSender, EasyMock.createMock(CacheRegistrationService.class), tagLocationService, properties);
+  }
+
+  @Test
+  public void alarmIsPublishedWithFilterProperties() {
+    AlarmCacheObject alarm = CacheObjectCreation.createTestAlarm1();
+    alarm.setActive(true);
+    alarm.getMetadata().addMetadata(AlarmFilter.PRIORITY_METADATA_KEY, 2);
+
+    Capture<String> text = newCapture();
+    Capture<Map<String, Object>> messageProperties = newCapture();
+    expect(tagLocationService.isInTagCache(alarm.getTagId())).andReturn(false);
+    jmsSender.sendToTopic(capture(text), eq(properties.getJms().getAlarmTopic()), capture(messageProperties));
+    replay(jmsSender, tagLocationService);
+
+    publisher.notifyElementUpdated(alarm);
+
+    verify(jmsSender, tagLocationService);
+    assertEquals(alarm.getId(), GsonFactory.createGson().fromJson(text.getValue(), AlarmValueImpl.class).getId());
+    Map<String, Object> sent = messageProperties.getValue();
+    assertEquals("fault family", sent.get(AlarmFilter.FAULT_FAMILY_PROPERTY));
+    assertEquals("fault member", sent.get(AlarmFilter.FAULT_MEMBER_PROPERTY));
+    assertEquals(0, sent.get(AlarmFilter.FAULT_CODE_PROPERTY));
+    assertEquals(2, sent.get(AlarmFilter.PRIORITY_PROPERTY));
+    assertEquals(true, sent.get(AlarmFilter.ACTIVE_PROPERTY));
+    assertEquals(false, sent.get(AlarmFilter.OSCILLATING_PROPERTY));
+  }
+
+  @Test
+  public void alarmWithoutPriorityHasNoPriorityProperty() {
+    AlarmCacheObject alarm = CacheObjectCreation.createTestAlarm1();
+
+    Capture<Map<String, Object>> messageProperties = newCapture();
+    expect(tagLocationService.isInTagCache(alarm.getTagId())).andReturn(false);
+    jmsSender.sendToTopic(anyString(), eq(properties.getJms().getAlarmTopic()), capture(messageProperties));
+    replay(jmsSender, tagLocationService);
+
+    publisher.notifyElementUpdated(alarm);
+
+    verify(jmsSender, tagLocationService);
+    assertFalse(messageProperties.getValue().containsKey(AlarmFilter.PRIORITY_PROPERTY));
+  }
+}
@@ -0,0 +1,147 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.UncategorizedJmsException;
+
+import cern.c2mon.server.client.config.ClientProperties;
+import cern.c2mon.server.client.util.TransferTagValueCache;
+import cern.c2mon.server.common.alarm.TagWithAlarms;
+import cern.c2mon.server.common.alarm.TagWithAlarmsImpl;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.test.CacheObjectCreation;
+import cern.c2mon.shared.client.serializer.TransferTagSerializer;
+import cern.c2mon.shared.client.tag.TransferTagValueImpl;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.util.jms.JmsSender;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of the {@link TagValueBatcher}.
+ */
+public class TagValueBatcherTest {
+
+  private static final String TOPIC = "c2mon.client.tag.50";
+
+  private JmsSender jmsSender;
+
+  private ClientProperties properties;
+
+  private List<TagWithAlarms> failed = new ArrayList<>();
+
+  private TagValueBatcher batcher;
+
+  @Before
+  public void setUp() {
+    jmsSender = EasyMock.createMock(JmsSender.class);
+    properties = new ClientProperties();
+    properties.getJms().setTagBatchSize(3);
+    properties.getJms().setTagBatchWindowLow(60_000);
+    properties.getJms().setTagBatchWindowHigh(0);
+    batcher = new TagValueBatcher(jmsSender, properties, new TransferTagValueCache(properties), failed::add);
+  }
+
+  @After
+  public void tearDown() {
+    batcher.close();
+  }
+
+  @Test
+  public void fullBatchIsSentAsArray() {
+    Capture<String> text = newCapture();
+    Capture<Map<String, Object>> messageProperties = newCapture();
+    jmsSender.sendToTopic(capture(text), eq(TOPIC), capture(messageProperties));
+    replay(jmsSender);
+
+    batcher.add(createTag(1L, DataTagAddress.PRIORITY_LOW));
+    batcher.add(createTag(2L, DataTagAddress.PRIORITY_LOW));
+    batcher.add(createTag(3L, DataTagAddress.PRIORITY_LOW));
+
+    verify(jmsSender);
+    List<TransferTagValueImpl> tags = TransferTagSerializer.fromJsonArray(text.getValue(), TransferTagValueImpl.class);
+    assertEquals(3, tags.size());
+    assertEquals(Long.valueOf(3L), tags.get(2).getId());
+    assertEquals(TransferTagSerializer.BATCH_FORMAT_VERSION, messageProperties.getValue().get(TransferTagSerializer.FORMAT_VERSION_PROPERTY));
+    assertEquals(3, batcher.getPublishedUpdates());
+  }
+
+  @Test
+  public void highPriorityUpdateFlushesItsTopic() {
+    Capture<String> text = newCapture();
+    jmsSender.sendToTopic(capture(text), eq(TOPIC), anyObject());
+    replay(jmsSender);
+
+    batcher.add(createTag(1L, DataTagAddress.PRIORITY_LOW));
+    batcher.add(createTag(2L, DataTagAddress.PRIORITY_HIGH));
+
+    verify(jmsSender);
+    List<TransferTagValueImpl> tags = TransferTagSerializer.fromJsonArray(text.getValue(), TransferTagValueImpl.class);
+    assertEquals(Long.valueOf(1L), tags.get(0).getId());
+    assertEquals(Long.valueOf(2L), tags.get(1).getId());
+  }
+
+  @Test
+  public void singleUpdateIsSentAsPlainMessage() {
+    Capture<String> text = newCapture(CaptureType.ALL);
+    jmsSender.sendToTopic(capture(text), eq(TOPIC));
+    expectLastCall().times(2);
+    replay(jmsSender);
+
+    batcher.add(createTag(1L, DataTagAddress.PRIORITY_HIGH));
+    batcher.add(createTag(2L, DataTagAddress.PRIORITY_LOW));
+    batcher.close();
+
+    verify(jmsSender);
+    assertEquals(Long.valueOf(1L), TransferTagSerializer.fromJson(text.getValues().get(0), TransferTagValueImpl.class).getId());
+    assertEquals(Long.valueOf(2L), TransferTagSerializer.fromJson(text.getValues().get(1), TransferTagValueImpl.class).getId());
+  }
+
+  @Test
+  public void failedBatchIsHandedBack() {
+    jmsSender.sendToTopic(anyString(), eq(TOPIC), anyObject());
+    expectLastCall().andThrow(new UncategorizedJmsException("broker down"));
+    replay(jmsSender);
+
+    batcher.add(createTag(1L, DataTagAddress.PRIORITY_LOW));
+    batcher.add(createTag(2L, DataTagAddress.PRIORITY_LOW));
+    batcher.add(createTag(3L, DataTagAddress.PRIORITY_LOW));
+
+    verify(jmsSender);
+    assertEquals(3, failed.size());
+    assertEquals(0, batcher.getPublishedUpdates());
+  }
+
+  private static TagWithAlarms createTag(Long id, int priority) {
+    DataTagCacheObject tag = CacheObjectCreation.createTestDataTag();
+    tag.setId(id);
+    tag.setProcessId(50L);
+    tag.getAddress().setPriority(priority);
+    return new TagWithAlarmsImpl(tag, new ArrayList<>());
+  }
+}
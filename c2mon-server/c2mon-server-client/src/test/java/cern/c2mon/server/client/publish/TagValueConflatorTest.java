@@ -0,0 +1,112 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Test;
+
+import cern.c2mon.server.common.alarm.Alarm;
+import cern.c2mon.server.common.alarm.AlarmCacheObject;
+import cern.c2mon.server.common.alarm.TagWithAlarms;
+import cern.c2mon.server.common.alarm.TagWithAlarmsImpl;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.test.CacheObjectCreation;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit test of the {@link TagValueConflator}.
+ */
+public class TagValueConflatorTest {
+
+  private final List<TagWithAlarms> published = new CopyOnWriteArrayList<>();
+
+  private final TagValueConflator conflator = new TagValueConflator(published::add, 300);
+
+  @After
+  public void tearDown() {
+    conflator.close();
+  }
+
+  @Test
+  public void latestUpdateIsPublishedAfterInterval() throws InterruptedException {
+    conflator.add(createTag(1L, DataTagAddress.PRIORITY_LOW));
+    conflator.add(createTag(1L, DataTagAddress.PRIORITY_LOW));
+    TagWithAlarms latest = createTag(1L, DataTagAddress.PRIORITY_LOW);
+    conflator.add(latest);
+    conflator.add(createTag(2L, DataTagAddress.PRIORITY_LOW));
+    assertEquals(2, published.size());
+
+    Thread.sleep(600);
+    assertEquals(3, published.size());
+    assertSame(latest, published.get(2));
+    assertEquals(4, conflator.getReceivedUpdates());
+    assertEquals(1, conflator.getConflatedUpdates());
+  }
+
+  @Test
+  public void highPriorityUpdatesAreNotConflated() {
+    conflator.add(createTag(1L, DataTagAddress.PRIORITY_HIGH));
+    conflator.add(createTag(1L, DataTagAddress.PRIORITY_HIGH));
+    assertEquals(2, published.size());
+  }
+
+  @Test
+  public void qualityChangesAreNotConflated() {
+    conflator.add(createTag(1L, DataTagAddress.PRIORITY_LOW));
+    TagWithAlarms invalid = createTag(1L, DataTagAddress.PRIORITY_LOW);
+    ((DataTagCacheObject) invalid.getTag()).setDataTagQuality(new DataTagQualityImpl(TagQualityStatus.PROCESS_DOWN));
+    conflator.add(invalid);
+    conflator.add(createTag(1L, DataTagAddress.PRIORITY_LOW));
+    assertEquals(3, published.size());
+  }
+
+  @Test
+  public void alarmChangesAreNotConflated() {
+    AlarmCacheObject alarm = (AlarmCacheObject) CacheObjectCreation.createTestAlarm1();
+    alarm.setActive(false);
+    conflator.add(createTag(1L, DataTagAddress.PRIORITY_LOW, alarm));
+    conflator.add(createTag(1L, DataTagAddress.PRIORITY_LOW, alarm));
+
+    AlarmCacheObject activeAlarm = (AlarmCacheObject) CacheObjectCreation.createTestAlarm1();
+    activeAlarm.setActive(true);
+    TagWithAlarms update = createTag(1L, DataTagAddress.PRIORITY_LOW, activeAlarm);
+    conflator.add(update);
+
+    assertEquals(2, published.size());
+    assertSame(update, published.get(1));
+    assertEquals(1, conflator.getConflatedUpdates());
+  }
+
+  private static TagWithAlarms createTag(Long id, int priority, Alarm... alarms) {
+    DataTagCacheObject tag = CacheObjectCreation.createTestDataTag();
+    tag.setId(id);
+    tag.getAddress().setPriority(priority);
+    List<Alarm> alarmList = new ArrayList<>();
+    Collections.addAll(alarmList, alarms);
+    return new TagWithAlarmsImpl(tag, alarmList);
+  }
+}
@@ -0,0 +1,82 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.publish;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import cern.c2mon.server.client.config.ClientProperties;
+import cern.c2mon.server.client.config.ClientProperties.TopicGranularity;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.rule.RuleTagCacheObject;
+import cern.c2mon.server.test.CacheObjectCreation;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of the {@link TopicProvider}.
+ */
+public class TopicProviderTest {
+
+  private final ClientProperties properties = new ClientProperties();
+
+  private final DataTagCacheObject dataTag = CacheObjectCreation.createTestDataTag();
+
+  private final RuleTagCacheObject ruleTag = CacheObjectCreation.createTestRuleTag();
+
+  public TopicProviderTest() {
+    dataTag.setProcessId(50L);
+    ruleTag.setProcessIds(Collections.singleton(50L));
+  }
+
+  @Test
+  public void processGranularity() {
+    assertEquals("c2mon.client.tag.50", TopicProvider.topicFor(dataTag, properties));
+    assertEquals("c2mon.client.tag.50", TopicProvider.topicFor(ruleTag, properties));
+    assertEquals(properties.getJms().getControlTagTopic(),
+        TopicProvider.topicFor(CacheObjectCreation.createTestControlTag(), properties));
+  }
+
+  @Test
+  public void equipmentGranularity() {
+    properties.getJms().setTagTopicGranularity(TopicGranularity.EQUIPMENT);
+    assertEquals("c2mon.client.tag.50.equipment.100", TopicProvider.topicFor(dataTag, properties));
+    assertEquals("c2mon.client.tag.50.rules", TopicProvider.topicFor(ruleTag, properties));
+  }
+
+  @Test
+  public void shardGranularity() {
+    properties.getJms().setTagTopicGranularity(TopicGranularity.SHARD);
+    properties.getJms().setTagTopicShards(7);
+    assertEquals("c2mon.client.tag.50.shard." + (100000 % 7), TopicProvider.topicFor(dataTag, properties));
+    assertEquals("c2mon.client.tag.50.shard." + (130 % 7), TopicProvider.topicFor(ruleTag, properties));
+  }
+
+  @Test
+  public void legacyTopicIsAddedDuringMigration() {
+    properties.getJms().setTagTopicGranularity(TopicGranularity.EQUIPMENT);
+    assertEquals(Collections.singletonList("c2mon.client.tag.50.equipment.100"), TopicProvider.topicsFor(dataTag, properties));
+
+    properties.getJms().setTagTopicLegacyPublication(true);
+    assertEquals(Arrays.asList("c2mon.client.tag.50.equipment.100", "c2mon.client.tag.50"), TopicProvider.topicsFor(dataTag, properties));
+
+    properties.getJms().setTagTopicGranularity(TopicGranularity.PROCESS);
+    assertEquals(Collections.singletonList("c2mon.client.tag.50"), TopicProvider.topicsFor(dataTag, properties));
+  }
+}
@@ -0,0 +1,142 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.request;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.client.config.ClientProperties;
+import cern.c2mon.shared.client.alarm.AlarmValue;
+import cern.c2mon.shared.client.command.CommandTagHandle;
+import cern.c2mon.shared.client.request.ClientRequest;
+import cern.c2mon.shared.client.request.ClientRequestImpl;
+import cern.c2mon.shared.client.request.ClientRequestResult;
+import cern.c2mon.shared.client.supervision.SupervisionEvent;
+import cern.c2mon.shared.client.tag.TagUpdate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test of the {@link ClientRequestExecutor}.
+ */
+public class ClientRequestExecutorTest {
+
+  private ClientRequestExecutor executor;
+
+  @Before
+  public void setUp() {
+    ClientProperties properties = new ClientProperties();
+    properties.getJms().setRequestSplitSize(10);
+    executor = new ClientRequestExecutor(properties);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void requestsAreClassified() {
+    assertEquals(ClientRequestExecutor.RequestClass.LOOKUP, executor.classify(tagRequest(10)));
+    assertEquals(ClientRequestExecutor.RequestClass.BULK, executor.classify(tagRequest(11)));
+
+    ClientRequestImpl<TagUpdate> regexRequest = new ClientRequestImpl<>(TagUpdate.class);
+    regexRequest.addRegex("tag.*");
+    assertEquals(ClientRequestExecutor.RequestClass.BULK, executor.classify(regexRequest));
+
+    assertEquals(ClientRequestExecutor.RequestClass.LOOKUP, executor.classify(new ClientRequestImpl<>(SupervisionEvent.class)));
+    assertEquals(ClientRequestExecutor.RequestClass.LOOKUP, executor.classify(new ClientRequestImpl<>(AlarmValue.class)));
+    assertEquals(ClientRequestExecutor.RequestClass.COMMAND, executor.classify(new ClientRequestImpl<>(CommandTagHandle.class)));
+  }
+
+  @Test
+  public void largeRequestIsProcessedInParallelParts() {
+    ClientRequest request = tagRequest(25);
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    List<Collection<Long>> parts = new ArrayList<>();
+
+    Collection<? extends ClientRequestResult> results = executor.handleInParts(request, part -> {
+      threads.add(Thread.currentThread().getName());
+      synchronized (parts) {
+        parts.add(part.getIds());
+      }
+      assertEquals(request.getRequestType(), part.getRequestType());
+      assertEquals(request.getResultType(), part.getResultType());
+      return part.getIds().stream().map(Result::new).collect(Collectors.toList());
+    });
+
+    assertEquals(3, parts.size());
+    assertTrue(parts.stream().allMatch(ids -> ids.size() <= 10));
+    assertTrue(threads.stream().allMatch(name -> name.startsWith("ClientRequestPart")));
+    assertEquals(25, results.size());
+    assertEquals(request.getIds(), results.stream().map(result -> ((Result) result).id).collect(Collectors.toSet()));
+  }
+
+  @Test
+  public void smallRequestIsProcessedByCaller() {
+    String caller = Thread.currentThread().getName();
+    Collection<? extends ClientRequestResult> results = executor.handleInParts(tagRequest(5), part -> {
+      assertEquals(caller, Thread.currentThread().getName());
+      return part.getIds().stream().map(Result::new).collect(Collectors.toList());
+    });
+    assertEquals(5, results.size());
+  }
+
+  @Test
+  public void latencyIsRecordedPerRequestType() throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(2);
+    executor.execute(tagRequest(5), done::countDown);
+    executor.execute(new ClientRequestImpl<>(SupervisionEvent.class), done::countDown);
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+
+    // the latency is recorded once the task has returned
+    long deadline = System.currentTimeMillis() + 1000;
+    while (executor.getRequestCounts().values().stream().mapToLong(Long::longValue).sum() < 2
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(Long.valueOf(1), executor.getRequestCounts().get(ClientRequest.RequestType.TAG_REQUEST.name()));
+    assertEquals(Long.valueOf(1), executor.getRequestCounts().get(ClientRequest.RequestType.SUPERVISION_REQUEST.name()));
+    assertEquals(Long.valueOf(0), executor.getRequestCounts().get(ClientRequest.RequestType.ALARM_REQUEST.name()));
+  }
+
+  private static ClientRequest tagRequest(int size) {
+    ClientRequestImpl<TagUpdate> request = new ClientRequestImpl<>(TagUpdate.class);
+    for (long id = 1; id <= size; id++) {
+      request.addTagId(id);
+    }
+    return request;
+  }
+
+  private static final class Result implements ClientRequestResult {
+    private final Long id;
+
+    Result(Long id) {
+      this.id = id;
+    }
+  }
+}
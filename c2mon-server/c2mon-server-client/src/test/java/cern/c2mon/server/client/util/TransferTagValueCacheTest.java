@@ -0,0 +1,141 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.client.util;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.Test;
+
+import cern.c2mon.server.client.config.ClientProperties;
+import cern.c2mon.server.common.alarm.AlarmCacheObject;
+import cern.c2mon.server.common.alarm.TagWithAlarmsImpl;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.test.CacheObjectCreation;
+import cern.c2mon.shared.client.request.ClientRequestResult;
+import cern.c2mon.shared.client.serializer.TransferTagSerializer;
+import cern.c2mon.shared.client.tag.TransferTagValueImpl;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test of the {@link TransferTagValueCache}.
+ */
+public class TransferTagValueCacheTest {
+
+  private final TransferTagValueCache cache = new TransferTagValueCache(new ClientProperties());
+
+  @Test
+  public void valueIsSerializedOncePerVersion() {
+    DataTagCacheObject tag = CacheObjectCreation.createTestDataTag();
+    TransferTagValueCache.SerializedTagValue first = cache.get(new TagWithAlarmsImpl(tag, new ArrayList<>()));
+    assertSame(first, cache.get(new TagWithAlarmsImpl(tag, new ArrayList<>())));
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+
+    tag.setValue(Boolean.FALSE);
+    tag.setCacheTimestamp(new Timestamp(tag.getCacheTimestamp().getTime() + 1));
+    TransferTagValueCache.SerializedTagValue second = cache.get(new TagWithAlarmsImpl(tag, new ArrayList<>()));
+    assertNotSame(first, second);
+    assertEquals(Boolean.FALSE, TransferTagSerializer.fromJson(second.toJson(), TransferTagValueImpl.class).getValue());
+
+    cache.invalidate(tag.getId());
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void updatesOfTheSameTimestampAreRefreshed() {
+    DataTagCacheObject tag = CacheObjectCreation.createTestDataTag();
+    cache.refresh(new TagWithAlarmsImpl(tag, new ArrayList<>()));
+
+    tag.getDataTagQuality().addInvalidStatus(TagQualityStatus.INACCESSIBLE, "test");
+    TransferTagValueCache.SerializedTagValue refreshed = cache.refresh(new TagWithAlarmsImpl(tag, new ArrayList<>()));
+    assertFalse(TransferTagSerializer.fromJson(refreshed.toJson(), TransferTagValueImpl.class).getDataTagQuality().isValid());
+    assertSame(refreshed, cache.get(new TagWithAlarmsImpl(tag, new ArrayList<>())));
+  }
+
+  @Test
+  public void requestsDoNotReplaceUpdatesOfTheSameTimestamp() {
+    DataTagCacheObject tag = CacheObjectCreation.createTestDataTag();
+    DataTagCacheObject stale = CacheObjectCreation.createTestDataTag();
+    tag.getDataTagQuality().addInvalidStatus(TagQualityStatus.INACCESSIBLE, "test");
+    TransferTagValueCache.SerializedTagValue refreshed = cache.refresh(new TagWithAlarmsImpl(tag, new ArrayList<>()));
+
+    cache.invalidate(tag.getId());
+    cache.get(new TagWithAlarmsImpl(stale, new ArrayList<>()));
+    cache.refresh(new TagWithAlarmsImpl(tag, new ArrayList<>()));
+    cache.get(new TagWithAlarmsImpl(stale, new ArrayList<>()));
+    assertEquals(refreshed.toJson(), cache.get(new TagWithAlarmsImpl(tag, new ArrayList<>())).toJson());
+  }
+
+  @Test
+  public void leastRecentlyUsedTagsAreEvicted() {
+    ClientProperties properties = new ClientProperties();
+    properties.getJms().setTagTransferCacheSize(2);
+    TransferTagValueCache smallCache = new TransferTagValueCache(properties);
+    TagWithAlarmsImpl first = new TagWithAlarmsImpl(CacheObjectCreation.createTestDataTag(), new ArrayList<>());
+    TagWithAlarmsImpl second = new TagWithAlarmsImpl(CacheObjectCreation.createTestDataTag2(), new ArrayList<>());
+    TagWithAlarmsImpl third = new TagWithAlarmsImpl(CacheObjectCreation.createTestDataTag3(), new ArrayList<>());
+
+    smallCache.get(first);
+    smallCache.get(second);
+    smallCache.get(first);
+    smallCache.get(third);
+    assertEquals(2, smallCache.getSize());
+    assertEquals(3, smallCache.getMisses());
+
+    smallCache.get(first);
+    smallCache.get(third);
+    assertEquals(3, smallCache.getMisses());
+    smallCache.get(second);
+    assertEquals(4, smallCache.getMisses());
+  }
+
+  @Test
+  public void alarmChangesAreSerialized() {
+    DataTagCacheObject tag = CacheObjectCreation.createTestDataTag();
+    AlarmCacheObject alarm = (AlarmCacheObject) CacheObjectCreation.createTestAlarm1();
+    alarm.setActive(false);
+    TransferTagValueCache.SerializedTagValue first = cache.get(new TagWithAlarmsImpl(tag, Arrays.asList(alarm)));
+
+    AlarmCacheObject activeAlarm = (AlarmCacheObject) CacheObjectCreation.createTestAlarm1();
+    activeAlarm.setActive(true);
+    assertNotSame(first, cache.get(new TagWithAlarmsImpl(tag, Arrays.asList(activeAlarm))));
+  }
+
+  @Test
+  public void serializedValuesAreEmbeddedInRequestResults() throws Exception {
+    DataTagCacheObject tag = CacheObjectCreation.createTestDataTag();
+    TagWithAlarmsImpl tagWithAlarms = new TagWithAlarmsImpl(tag, new ArrayList<>());
+    List<ClientRequestResult> results = Arrays.asList(cache.get(tagWithAlarms), TransferObjectFactory.createTransferTagValue(tagWithAlarms));
+
+    String json = TransferTagSerializer.getJacksonParser().writeValueAsString(results);
+    Collection<TransferTagValueImpl> tags = TransferTagSerializer.fromCollectionJson(json, new TypeReference<Collection<TransferTagValueImpl>>() { });
+
+    assertEquals(2, tags.size());
+    TransferTagValueImpl[] received = tags.toArray(new TransferTagValueImpl[0]);
+    assertEquals(received[1].getId(), received[0].getId());
+    assertEquals(received[1].getValue(), received[0].getValue());
+    assertEquals(received[1].getDescription(), received[0].getDescription());
+    assertEquals(received[1].getServerTimestamp(), received[0].getServerTimestamp());
+  }
+}
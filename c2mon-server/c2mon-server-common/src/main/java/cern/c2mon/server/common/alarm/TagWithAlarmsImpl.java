@@ -16,6 +16,7 @@
  *****************************************************************************/
 package cern.c2mon.server.common.alarm;
 
+import java.io.Serializable;
 import java.util.Collection;
 
 import cern.c2mon.server.common.tag.Tag;
@@ -27,7 +28,9 @@ import cern.c2mon.server.common.tag.Tag;
  * @author Mark Brightwell
  *
  */
-public class TagWithAlarmsImpl implements TagWithAlarms {
+public class TagWithAlarmsImpl implements TagWithAlarms, Serializable {
+
+  private static final long serialVersionUID = -1528392826146379217L;
 
   /**
    * A tag.
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.common.republisher;
 
+import java.io.File;
+
 import cern.c2mon.server.common.component.Lifecycle;
 
 /**
@@ -42,6 +44,26 @@ public interface Republisher<T> extends Lifecycle {
    * @param republicationDelay in milliseconds
    */
   void setRepublicationDelay(int republicationDelay);
+
+  /**
+   * Override the number of events kept in memory (default is 100000), above
+   * which the new events are spilled to disk
+   * @param maxPendingEvents maximum number of events in memory
+   */
+  void setMaxPendingEvents(int maxPendingEvents);
+
+  /**
+   * Limit the number of events re-published per second (default is no limit)
+   * @param maxReplayRate events per second, 0 for no limit
+   */
+  void setMaxReplayRate(int maxReplayRate);
+
+  /**
+   * Set the directory of the spill files (default is none: all events are
+   * kept in memory)
+   * @param spillDirectory directory of the spill files
+   */
+  void setSpillDirectory(File spillDirectory);
   
   /**
    * @return returns the total number of failed publication attempts since the
@@ -53,4 +75,15 @@ public interface Republisher<T> extends Lifecycle {
    * @return returns the current number of events waiting for re-publication
    */
   int getSizeUnpublishedList();
+
+  /**
+   * @return returns the current number of events waiting for re-publication
+   * which are spilled to disk
+   */
+  int getSizeSpilledList();
+
+  /**
+   * @return returns the number of events re-published during the last second
+   */
+  int getReplayRate();
 }
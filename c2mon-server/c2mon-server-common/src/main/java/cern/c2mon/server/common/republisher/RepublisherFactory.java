@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.server.common.republisher;
 
+import java.util.function.Function;
+
 /**
  * Factory for creating a Republisher.
  * 
@@ -36,6 +38,21 @@ public class RepublisherFactory {
   public static <T extends Object> Republisher<T> createRepublisher(Publisher<T> publisher, String eventName) {
     return new RepublisherImpl<T>(publisher, eventName);
   }
+
+  /**
+   * Creates a Republisher for use by the past publisher, which only
+   * re-publishes the latest failed event per key.
+   *
+   * <p>Life-cycle needs managing externally using Lifecycle methods.
+   *
+   * @param publisher
+   * @param eventName the name of the event type, used for logging
+   * @param keyFunction returns the key of an event, e.g. its id
+   * @return a republisher for this publisher
+   */
+  public static <T extends Object> Republisher<T> createRepublisher(Publisher<T> publisher, String eventName, Function<T, ?> keyFunction) {
+    return new RepublisherImpl<T>(publisher, eventName, keyFunction);
+  }
   
   
   
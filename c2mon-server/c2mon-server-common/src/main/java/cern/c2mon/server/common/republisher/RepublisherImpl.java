@@ -16,11 +16,29 @@
  *****************************************************************************/
 package cern.c2mon.server.common.republisher;
 
-import java.util.Collections;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +54,16 @@ import org.springframework.jmx.export.annotation.ManagedResource;
  * <p>To use this class, implement the associated Publisher interface
  * and instantiate a Republisher in your code.
  *
+ * <p>Only the latest event per key is kept for re-publication. Once the
+ * maximum number of pending events is reached, the events of new keys are
+ * spilled in order to files in the spill directory, which are read back once
+ * the events in memory have been re-published. An event whose key is pending
+ * in memory replaces the pending event instead. The spill files are indexed
+ * by key, so that only the latest spilled event of a key is re-published,
+ * once, and no spilled event once a more recent one is kept in memory.
+ * Events which are not {@link Serializable} are always kept in memory. The re-publication rate
+ * can be limited, so that a recovering broker is not flooded.
+ *
  * @see TagValuePublisher for an example.
  *
  * @author Mark Brightwell
@@ -48,116 +76,347 @@ class RepublisherImpl<T> implements Republisher<T> {
 
   private int republicationDelay = 10000;
 
+  /** Number of events kept in memory, above which they are spilled */
+  private int maxPendingEvents = 100000;
+
+  /** Maximum number of events re-published per second, 0 for no limit */
+  private int maxReplayRate = 0;
+
+  /** Directory of the spill files, null if the events are never spilled */
+  private File spillDirectory;
+
   /** For statistics */
   private AtomicLong totalRepublicationAttempts = new AtomicLong(0);
 
   /** Bean that republishes */
   private Publisher<T> publisher;
 
+  /** Returns the key of an event, under which only the latest event is kept */
+  private Function<T, ?> keyFunction;
+
   /** Used to describe events in log */
   private String eventName;
 
   /** For re-publication */
-  private Timer timer;
+  private ScheduledExecutorService executor;
 
-  /** For re-publication */
-  private PublicationTask publicationTask;
+  /** Whether a re-publication task is scheduled */
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
 
   /**
-   * Ids of tags that need re-publishing as publication failed (local collection not shared across cluster)
-   * (map used as set, with value set as constant).
+   * Latest event per key that needs re-publishing as publication failed (local collection not shared across cluster).
    */
-  private ConcurrentHashMap<T, Long> toBePublished = new ConcurrentHashMap<T, Long>();
+  private ConcurrentHashMap<Object, T> toBePublished = new ConcurrentHashMap<>();
+
+  /** Guards the spill files */
+  private final Object spillLock = new Object();
 
-  /** For scheduling re-publication task */
-  private Object republicatonLock = new Object();
+  /** Spill files in order, the last one is the one being written */
+  private final Deque<SpillFile> spillFiles = new ArrayDeque<>();
+
+  /** Output of the last spill file, null if closed */
+  private ObjectOutputStream spillOutput;
+
+  /** Used for naming the spill files */
+  private long spillFileSequence;
 
   /**
-   * Constructs a Republisher for the provided Publisher.
+   * True while events are spilled: all new events are then spilled too, so that they are re-published in order
+   */
+  private volatile boolean spilling = false;
+
+  /** Number of events in the spill files, including the outdated ones */
+  private final AtomicInteger spilledEvents = new AtomicInteger(0);
+
+  /** Sequence number of the latest spilled event of each key on disk */
+  private final ConcurrentHashMap<Object, Long> spilledKeys = new ConcurrentHashMap<>();
+
+  /** Sequence number of the last spilled event */
+  private long spillSequence;
+
+  /** Start of the current second of re-publication, only used by the re-publication thread */
+  private volatile long replayWindowStart;
+
+  /** Number of events re-published in the current second */
+  private volatile int replayWindowCount;
+
+  /** Number of events re-published in the last complete second */
+  private volatile int lastReplayWindowCount;
+
+  /**
+   * Constructs a Republisher for the provided Publisher, with the events as keys.
    *
    * @param publisher publisher for which re-publication is needed
    * @param eventName used to describe the events in log
    */
   public RepublisherImpl(Publisher<T> publisher, String eventName) {
+    this(publisher, eventName, event -> event);
+  }
+
+  /**
+   * Constructs a Republisher for the provided Publisher.
+   *
+   * @param publisher publisher for which re-publication is needed
+   * @param eventName used to describe the events in log
+   * @param keyFunction returns the key of an event, e.g. the tag id; only the latest event per key is re-published
+   */
+  public RepublisherImpl(Publisher<T> publisher, String eventName, Function<T, ?> keyFunction) {
     super();
     this.publisher = publisher;
     this.eventName = eventName;
+    this.keyFunction = keyFunction;
   }
 
   @Override
   public void publicationFailed(T event) {
     if (isRunning()) {
       totalRepublicationAttempts.incrementAndGet();
-      synchronized (republicatonLock) { //lock required for if logic, to make sure the added publication is picked up in other thread
-        toBePublished.put(event, Long.valueOf(1));
-        if (publicationTask == null) {
-          LOGGER.debug("Unpublished " + eventName + " detected: scheduling new republication task in " + republicationDelay + " milliseconds");
-          publicationTask = new PublicationTask();
-          timer.schedule(publicationTask, republicationDelay);
-        }
+      Object key = keyFunction.apply(event);
+      // an event pending in memory is replaced, whatever the spilling state
+      if (toBePublished.replace(key, event) == null && (!mustSpill(event) || !spill(key, event))) {
+        toBePublished.put(key, event);
+        // the spilled events of the key, if any, are outdated
+        spilledKeys.remove(key);
       }
+      schedule(republicationDelay);
     } else {
       throw new IllegalStateException("Event submitted to Republisher before it has been started up!");
     }
 
   }
 
+  private boolean mustSpill(T event) {
+    return spillDirectory != null && event instanceof Serializable
+        && (spilling || toBePublished.size() >= maxPendingEvents);
+  }
+
+  /**
+   * Schedules the re-publication task, unless it is already scheduled.
+   */
+  private void schedule(long delay) {
+    if (scheduled.compareAndSet(false, true)) {
+      LOGGER.debug("Scheduling " + eventName + " republication task in " + delay + " milliseconds");
+      try {
+        executor.schedule(this::republish, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        LOGGER.warn("Republisher of " + eventName + " events is stopped: the events will not be re-published");
+        scheduled.set(false);
+      }
+    }
+  }
+
   @Override
   public boolean isRunning() {
-    return timer != null;
+    return executor != null;
   }
 
   @Override
   public void start() {
-    if (!isRunning())
-      timer = new Timer(eventName + "-republication-thread");
+    if (!isRunning()) {
+      deleteSpillFiles();
+      executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, eventName + "-republication-thread");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
   }
 
   @Override
   public void stop() {
-    if (isRunning())
-      timer.cancel();
+    if (isRunning()) {
+      executor.shutdownNow();
+      synchronized (spillLock) {
+        closeSpillOutput();
+        spillFiles.clear();
+        spilledEvents.set(0);
+        spilledKeys.clear();
+        spilling = false;
+      }
+      deleteSpillFiles();
+    }
   }
 
   /**
-   * Checks if un-published evemts need publishing. If so, will publish them.
-   *
-   * @author Mark Brightwell
+   * Re-publishes the pending events, within the rate limit. Stops at the
+   * first failure, and is rescheduled until no event is left.
+   */
+  private void republish() {
+    long nextDelay = 0;
+    try {
+      if (toBePublished.isEmpty()) {
+        loadSpillFile();
+      }
+      if (!toBePublished.isEmpty()) {
+        LOGGER.debug("Re-publishing " + toBePublished.size() + " " + eventName + " events");
+      }
+      for (Map.Entry<Object, T> entry : toBePublished.entrySet()) {
+        long throttle = acquireReplayPermit();
+        if (throttle > 0) {
+          nextDelay = throttle;
+          break;
+        }
+        T event = entry.getValue();
+        if (!toBePublished.remove(entry.getKey(), event)) {
+          continue; // replaced in the meantime, the new event is re-published later
+        }
+        try {
+          publisher.publish(event);
+        } catch (JmsException e) {
+          LOGGER.error("JMS exception caught while attempting re-publication. Will retry shortly.");
+          totalRepublicationAttempts.incrementAndGet();
+          // unless a more recent event was submitted in the meantime
+          toBePublished.putIfAbsent(entry.getKey(), event);
+          nextDelay = republicationDelay;
+          break;
+        } catch (Exception e) {
+          LOGGER.error("Unexpected exception caught while checking for failed " + eventName + " publications: this event will not be re-published", e);
+          totalRepublicationAttempts.incrementAndGet();
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.error("Unexpected exception caught while re-publishing " + eventName + " events", e);
+      nextDelay = republicationDelay;
+    } finally {
+      scheduled.set(false);
+      if (!toBePublished.isEmpty() || spilledEvents.get() > 0) {
+        schedule(nextDelay);
+      }
+    }
+  }
+
+  /**
+   * @return 0 if an event can be re-published now, else the time in ms until the next permit
+   */
+  private long acquireReplayPermit() {
+    long now = System.currentTimeMillis();
+    if (now - replayWindowStart >= 1000) {
+      lastReplayWindowCount = now - replayWindowStart < 2000 ? replayWindowCount : 0;
+      replayWindowStart = now;
+      replayWindowCount = 0;
+    }
+    if (maxReplayRate > 0 && replayWindowCount >= maxReplayRate) {
+      return Math.max(1, replayWindowStart + 1000 - now);
+    }
+    replayWindowCount++;
+    return 0;
+  }
+
+  /**
+   * Writes the event to the last spill file, starting a new file when the
+   * last one holds the maximum number of pending events, and indexes it as
+   * the latest spilled event of its key.
    *
+   * @return false if the event could not be written
    */
-  private class PublicationTask extends TimerTask {
-
-    @Override
-    public void run() {
-
-        LOGGER.debug("Checking for " + eventName + " re-publications");
-        if (!toBePublished.isEmpty()) {
-          LOGGER.info("Detected " + eventName +  " events that failed to be published - will attempt republication of these");
-          for (T event : Collections.list(toBePublished.keys())) {  //take copy as these tasks also add to this map if publication fails again
-            try {
-              publisher.publish(event);
-              toBePublished.remove(event);
-            } catch (JmsException e) {
-              LOGGER.error("JMS exception caught while attempting re-publication. Will retry shortly.");
-              totalRepublicationAttempts.incrementAndGet();
-            } catch (Exception e) {
-              LOGGER.error("Unexpected exception caught while checking for failed " + eventName + " publications: this event will not be re-published", e);
-              totalRepublicationAttempts.incrementAndGet();
-              toBePublished.remove(event);
-            }
-          }
+  private boolean spill(Object key, T event) {
+    synchronized (spillLock) {
+      try {
+        SpillFile current = spillFiles.peekLast();
+        if (spillOutput == null || current.events >= maxPendingEvents) {
+          closeSpillOutput();
+          current = new SpillFile(new File(spillDirectory, spillFilePrefix() + (spillFileSequence++) + ".ser"));
+          spillDirectory.mkdirs();
+          spillOutput = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(current.file)));
+          spillFiles.addLast(current);
+          LOGGER.info("Spilling " + eventName + " events awaiting re-publication to " + current.file);
         }
-      synchronized (republicatonLock) {
-        if (toBePublished.isEmpty()) {
-          publicationTask = null;
-        } else {
-          LOGGER.debug("Rescheduling " + eventName + " republication task in " + republicationDelay + " milliseconds");
-          timer.schedule(new PublicationTask(), republicationDelay);
+        long sequence = ++spillSequence;
+        spillOutput.writeLong(sequence);
+        spillOutput.writeObject(event);
+        // forget the written objects, which would otherwise be kept in memory
+        spillOutput.reset();
+        current.events++;
+        current.lastSequence = sequence;
+        spilledEvents.incrementAndGet();
+        spilledKeys.put(key, sequence);
+        spilling = true;
+        return true;
+      } catch (IOException e) {
+        LOGGER.error("Unable to spill " + eventName + " event awaiting re-publication - keeping it in memory", e);
+        closeSpillOutput();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Moves the events of the oldest spill file to memory. Only the events which
+   * are still indexed as the latest spilled event of their key are moved, so
+   * that a key spilled to several files is re-published once, with its
+   * latest event.
+   */
+  @SuppressWarnings("unchecked")
+  private void loadSpillFile() {
+    SpillFile spillFile;
+    synchronized (spillLock) {
+      spillFile = spillFiles.pollFirst();
+      if (spillFile == null) {
+        return;
+      }
+      if (spillFiles.isEmpty()) {
+        closeSpillOutput();
+        spilling = false;
+      }
+    }
+
+    Map<Object, T> events = new LinkedHashMap<>();
+    try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(spillFile.file)))) {
+      for (int i = 0; i < spillFile.events; i++) {
+        long sequence = input.readLong();
+        T event = (T) input.readObject();
+        Object key = keyFunction.apply(event);
+        if (spilledKeys.remove(key, sequence)) {
+          events.put(key, event);
         }
       }
+    } catch (EOFException e) {
+      LOGGER.warn("Spill file " + spillFile.file + " is truncated, some " + eventName + " events will not be re-published");
+    } catch (IOException | ClassNotFoundException e) {
+      LOGGER.error("Unable to read spill file " + spillFile.file + ", some " + eventName + " events will not be re-published", e);
+    } finally {
+      spilledEvents.addAndGet(-spillFile.events);
+      // forget the keys of the events which could not be read
+      spilledKeys.values().removeIf(sequence -> sequence <= spillFile.lastSequence);
+      if (!spillFile.file.delete()) {
+        LOGGER.warn("Unable to delete spill file " + spillFile.file);
+      }
+    }
+    // events received in the meantime are more recent
+    events.forEach(toBePublished::putIfAbsent);
+  }
+
+  private void closeSpillOutput() {
+    if (spillOutput != null) {
+      try {
+        spillOutput.close();
+      } catch (IOException e) {
+        LOGGER.warn("Error closing spill file of " + eventName + " events", e);
+      }
+      spillOutput = null;
     }
   }
 
+  /**
+   * Deletes the spill files left by a previous run, whose events are outdated.
+   */
+  private void deleteSpillFiles() {
+    if (spillDirectory == null) {
+      return;
+    }
+    File[] files = spillDirectory.listFiles((dir, name) -> name.startsWith(spillFilePrefix()));
+    if (files != null) {
+      for (File file : files) {
+        LOGGER.debug("Deleting spill file " + file);
+        file.delete();
+      }
+    }
+  }
+
+  private String spillFilePrefix() {
+    return eventName.replaceAll("\\W", "-").toLowerCase() + "-spill-";
+  }
+
   /**
    * @param republicationDelay the republication_delay to set
    */
@@ -166,6 +425,21 @@ class RepublisherImpl<T> implements Republisher<T> {
     this.republicationDelay = republicationDelay;
   }
 
+  @Override
+  public void setMaxPendingEvents(int maxPendingEvents) {
+    this.maxPendingEvents = maxPendingEvents;
+  }
+
+  @Override
+  public void setMaxReplayRate(int maxReplayRate) {
+    this.maxReplayRate = maxReplayRate;
+  }
+
+  @Override
+  public void setSpillDirectory(File spillDirectory) {
+    this.spillDirectory = spillDirectory;
+  }
+
   @ManagedOperation(description = "Returns the total number of failed publication attempts since the application started")
   @Override
   public long getNumberFailedPublications() {
@@ -175,7 +449,32 @@ class RepublisherImpl<T> implements Republisher<T> {
   @ManagedOperation(description = "Returns the current number of events awaiting re-publication (should be 0 in normal operation)")
   @Override
   public int getSizeUnpublishedList() {
-    return toBePublished.size();
+    return toBePublished.size() + spilledKeys.size();
+  }
+
+  @ManagedOperation(description = "Returns the current number of events awaiting re-publication which are spilled to disk")
+  @Override
+  public int getSizeSpilledList() {
+    return spilledKeys.size();
+  }
+
+  @ManagedOperation(description = "Returns the number of events re-published during the last second")
+  @Override
+  public int getReplayRate() {
+    return System.currentTimeMillis() - replayWindowStart < 2000 ? lastReplayWindowCount : 0;
   }
 
+  /**
+   * A file holding spilled events.
+   */
+  private static final class SpillFile {
+    private final File file;
+    private int events;
+    /** Sequence number of the last event written to the file */
+    private long lastSequence;
+
+    private SpillFile(File file) {
+      this.file = file;
+    }
+  }
 }
@@ -30,7 +30,16 @@ import org.springframework.jms.UncategorizedJmsException;
 import cern.c2mon.server.common.republisher.Publisher;
 import cern.c2mon.server.common.republisher.RepublisherImpl;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
 
 
 /**
@@ -41,6 +50,9 @@ import java.util.concurrent.CountDownLatch;
  */
 public class RepublisherImplTest {
 
+  @Rule
+  public TemporaryFolder spillFolder = new TemporaryFolder();
+
   private IMocksControl control = EasyMock.createNiceControl();
 
   //mocks
@@ -311,5 +323,132 @@ public class RepublisherImplTest {
     control.verify();
   }
 
+  /**
+   * Only the latest failed event per key is re-published.
+   */
+  @Test
+  public void testCoalescing() throws InterruptedException {
+    List<String> published = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch latch = new CountDownLatch(2);
+    RepublisherImpl<String> coalescing = new RepublisherImpl<>(event -> { published.add(event); latch.countDown(); },
+        "coalescing", event -> event.substring(0, 1));
+    coalescing.setRepublicationDelay(100);
+    coalescing.start();
+    try {
+      coalescing.publicationFailed("a1");
+      coalescing.publicationFailed("b1");
+      coalescing.publicationFailed("a2");
+      coalescing.publicationFailed("a3");
+      assertEquals(2, coalescing.getSizeUnpublishedList());
+
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertEquals(2, published.size());
+      assertTrue(published.contains("a3"));
+      assertTrue(published.contains("b1"));
+      assertEquals(0, coalescing.getSizeUnpublishedList());
+    } finally {
+      coalescing.stop();
+    }
+  }
+
+  /**
+   * The events beyond the maximum in memory are spilled, and re-published
+   * after the ones in memory.
+   */
+  @Test
+  public void testSpill() throws Exception {
+    File directory = spillFolder.newFolder();
+    List<Integer> published = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch latch = new CountDownLatch(10);
+    RepublisherImpl<Integer> spilling = new RepublisherImpl<>(event -> { published.add(event); latch.countDown(); }, "spilling");
+    spilling.setRepublicationDelay(200);
+    spilling.setMaxPendingEvents(3);
+    spilling.setSpillDirectory(directory);
+    spilling.start();
+    try {
+      for (int i = 0; i < 10; i++) {
+        spilling.publicationFailed(i);
+      }
+      assertEquals(10, spilling.getSizeUnpublishedList());
+      assertEquals(7, spilling.getSizeSpilledList());
+      assertEquals(3, directory.listFiles().length);
+
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertEquals(10, published.size());
+      assertTrue(published.subList(0, 3).containsAll(Arrays.asList(0, 1, 2)));
+      assertEquals(Arrays.asList(3, 4, 5), published.subList(3, 6));
+      assertEquals(0, spilling.getSizeUnpublishedList());
+      assertEquals(0, spilling.getSizeSpilledList());
+      assertEquals(0, directory.listFiles().length);
+    } finally {
+      spilling.stop();
+    }
+  }
+
+  /**
+   * While events are spilled, an event whose key is pending in memory
+   * replaces it, and a key spilled to several files is re-published once
+   * with its latest event.
+   */
+  @Test
+  public void testSpillCoalescing() throws Exception {
+    File directory = spillFolder.newFolder();
+    List<String> published = Collections.synchronizedList(new ArrayList<>());
+    RepublisherImpl<String> spilling = new RepublisherImpl<>(published::add, "spill-coalescing", event -> event.substring(0, 1));
+    spilling.setRepublicationDelay(200);
+    spilling.setMaxPendingEvents(2);
+    spilling.setSpillDirectory(directory);
+    spilling.start();
+    try {
+      spilling.publicationFailed("a1");
+      spilling.publicationFailed("b1");
+      // spilled to the first file
+      spilling.publicationFailed("c1");
+      spilling.publicationFailed("d1");
+      // kept in memory
+      spilling.publicationFailed("a2");
+      // spilled to the second and third files
+      spilling.publicationFailed("c2");
+      spilling.publicationFailed("c3");
+      spilling.publicationFailed("e1");
+      assertEquals(5, spilling.getSizeUnpublishedList());
+      assertEquals(3, spilling.getSizeSpilledList());
+      assertEquals(3, directory.listFiles().length);
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (spilling.getSizeUnpublishedList() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      Thread.sleep(300);
+      assertEquals(5, published.size());
+      assertTrue(published.subList(0, 2).containsAll(Arrays.asList("a2", "b1")));
+      assertEquals(Arrays.asList("d1", "c3", "e1"), published.subList(2, 5));
+      assertEquals(0, directory.listFiles().length);
+    } finally {
+      spilling.stop();
+    }
+  }
 
+  /**
+   * The re-publication is spread over several seconds when limited.
+   */
+  @Test
+  public void testReplayRateLimit() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(6);
+    RepublisherImpl<Integer> limited = new RepublisherImpl<>(event -> latch.countDown(), "limited");
+    limited.setRepublicationDelay(10);
+    limited.setMaxReplayRate(3);
+    limited.start();
+    try {
+      for (int i = 0; i < 6; i++) {
+        limited.publicationFailed(i);
+      }
+      Thread.sleep(500);
+      assertEquals(3, latch.getCount());
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertEquals(0, limited.getSizeUnpublishedList());
+    } finally {
+      limited.stop();
+    }
+  }
 }
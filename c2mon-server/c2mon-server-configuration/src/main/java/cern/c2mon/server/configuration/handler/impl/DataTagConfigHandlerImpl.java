@@ -25,6 +25,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.UnexpectedRollbackException;
 
 import cern.c2mon.server.cache.DataTagCache;
+import cern.c2mon.server.cache.DataTagStatistics;
 import cern.c2mon.server.cache.EquipmentFacade;
 import cern.c2mon.server.cache.SubEquipmentFacade;
 import cern.c2mon.server.cache.exception.CacheElementNotFoundException;
@@ -71,6 +72,9 @@ public class DataTagConfigHandlerImpl implements DataTagConfigHandler {
    */
   private DataTagCache dataTagCache;
 
+  /** Informed of the removed tags */
+  private DataTagStatistics dataTagStatistics;
+
   private EquipmentFacade equipmentFacade;
   private SubEquipmentFacade subEquipmentFacade;
 
@@ -80,11 +84,13 @@ public class DataTagConfigHandlerImpl implements DataTagConfigHandler {
    * @param equipmentFacade
    * @param subEquipmentFacade
    * @param configurationUpdateImpl
+   * @param dataTagStatistics
    */
   @Autowired
   public DataTagConfigHandlerImpl(DataTagCache dataTagCache, EquipmentFacade equipmentFacade, SubEquipmentFacade subEquipmentFacade,
-      ConfigurationUpdateImpl configurationUpdateImpl) {
+      ConfigurationUpdateImpl configurationUpdateImpl, DataTagStatistics dataTagStatistics) {
     this.dataTagCache = dataTagCache;
+    this.dataTagStatistics = dataTagStatistics;
     this.equipmentFacade = equipmentFacade;
     this.subEquipmentFacade = subEquipmentFacade;
     this.configurationUpdateImpl = configurationUpdateImpl;
@@ -108,6 +114,7 @@ public class DataTagConfigHandlerImpl implements DataTagConfigHandler {
       DataTag tagCopy = dataTagCache.getCopy(id);
       ProcessChange change = dataTagConfigTransacted.doRemoveDataTag(id, tagReport);
       dataTagCache.remove(id); //only removed from cache if no exception is thrown
+      dataTagStatistics.notifyTagRemoved(id);
 
       return change;
     } catch (CacheElementNotFoundException e) {
@@ -0,0 +1,166 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.server.common.config.ServerConstants;
+import cern.c2mon.server.elasticsearch.alarm.AlarmDocument;
+import cern.c2mon.server.elasticsearch.config.ElasticsearchProperties;
+import cern.c2mon.server.elasticsearch.domain.IndexMetadata;
+import cern.c2mon.server.elasticsearch.supervision.SupervisionEventDocument;
+import cern.c2mon.server.elasticsearch.tag.TagDocument;
+
+/**
+ * Manages the time series indices written by the document indexers.
+ * <p>
+ * The existence of an index is only checked against Elasticsearch the first
+ * time a document is written to it, see {@link IndexManager}. The indices of
+ * the next period are created with their mappings ahead of time, before the
+ * documents roll over to them.
+ */
+@Slf4j
+@Component
+public class IndexLifecycleManager implements SmartLifecycle {
+
+  /**
+   * Interval in minutes between two checks for upcoming indices.
+   */
+  private static final long CHECK_INTERVAL = 5;
+
+  private final ElasticsearchProperties properties;
+
+  private final IndexNameManager indexNameManager;
+
+  private final IndexManager indexManager;
+
+  private ScheduledExecutorService scheduler;
+
+  private volatile boolean running = false;
+
+  /**
+   * @param properties Elasticsearch properties
+   * @param indexNameManager to determine index names
+   * @param indexManager to execute index-related operations
+   */
+  @Autowired
+  public IndexLifecycleManager(ElasticsearchProperties properties, IndexNameManager indexNameManager, IndexManager indexManager) {
+    this.properties = properties;
+    this.indexNameManager = indexNameManager;
+    this.indexManager = indexManager;
+  }
+
+  /**
+   * @param tag the tag to index
+   * @return the name of the existing index for the tag
+   */
+  public String getOrCreateIndex(TagDocument tag) {
+    return getOrCreateIndex(indexNameManager.indexFor(tag), MappingFactory::createTagMapping);
+  }
+
+  /**
+   * @param alarm the alarm to index
+   * @return the name of the existing index for the alarm
+   */
+  public String getOrCreateIndex(AlarmDocument alarm) {
+    return getOrCreateIndex(indexNameManager.indexFor(alarm), MappingFactory::createAlarmMapping);
+  }
+
+  /**
+   * @param supervisionEvent the supervision event to index
+   * @return the name of the existing index for the supervision event
+   */
+  public String getOrCreateIndex(SupervisionEventDocument supervisionEvent) {
+    return getOrCreateIndex(indexNameManager.indexFor(supervisionEvent), MappingFactory::createSupervisionMapping);
+  }
+
+  private String getOrCreateIndex(String name, Supplier<String> mapping) {
+    IndexMetadata indexMetadata = IndexMetadata.builder().name(name).build();
+    if (!indexManager.exists(indexMetadata)) {
+      indexManager.create(indexMetadata, mapping.get());
+    }
+    return name;
+  }
+
+  /**
+   * Creates the indices of the period starting within the configured lead
+   * time, if they do not exist yet.
+   */
+  void createUpcomingIndices() {
+    long upcoming = indexNameManager.now() + TimeUnit.MINUTES.toMillis(properties.getIndexPrecreateLeadTime());
+    getOrCreateIndex(indexNameManager.upcomingIndexFor(IndexNameManager.TAG_INDEX, upcoming), MappingFactory::createTagMapping);
+    getOrCreateIndex(indexNameManager.upcomingIndexFor(IndexNameManager.ALARM_INDEX, upcoming), MappingFactory::createAlarmMapping);
+    getOrCreateIndex(indexNameManager.upcomingIndexFor(IndexNameManager.SUPERVISION_INDEX, upcoming), MappingFactory::createSupervisionMapping);
+  }
+
+  @Override
+  public boolean isAutoStartup() {
+    return true;
+  }
+
+  @Override
+  public void stop(Runnable callback) {
+    stop();
+    callback.run();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (properties.isEnabled() && properties.getIndexPrecreateLeadTime() > 0) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "IndexLifecycleManager");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(() -> {
+        try {
+          createUpcomingIndices();
+        } catch (Exception e) {
+          log.warn("Error creating the upcoming Elasticsearch indices", e);
+        }
+      }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MINUTES);
+    }
+    running = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    running = false;
+  }
+
+  @Override
+  public int getPhase() {
+    return ServerConstants.PHASE_START_LAST - 1;
+  }
+}
@@ -18,9 +18,11 @@ package cern.c2mon.server.elasticsearch;
 
 import java.text.SimpleDateFormat;
 import java.time.Clock;
-import java.time.Instant;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,15 +36,29 @@ import cern.c2mon.server.elasticsearch.tag.config.TagConfigDocument;
 
 /**
  * Manages index name definitions.
+ * <p>
+ * Time series documents are routed to the index of the period (day, week or
+ * month) of their event timestamp, so that late data lands in the right
+ * index. The name of the latest period of each index prefix is computed once
+ * and reused for all documents of that period.
  */
 @Component
 public class IndexNameManager {
 
+  static final String TAG_INDEX = "-tag_";
+  static final String ALARM_INDEX = "-alarm_";
+  static final String SUPERVISION_INDEX = "-supervision_";
+
   private Clock clock;
 
   @Getter
   private final ElasticsearchProperties properties;
 
+  /**
+   * Latest period for which an index name was computed, by index prefix.
+   */
+  private final Map<String, Period> periods = new ConcurrentHashMap<>();
+
   /**
    * @param properties of Elasticsearch server the application is communicating with.
    */
@@ -60,8 +76,7 @@ public class IndexNameManager {
    * @return the generated index name
    */
   public String indexFor(TagDocument tag) {
-    String prefix = properties.getIndexPrefix() + "-tag_";
-    return getIndexName(prefix, Instant.now(clock));
+    return indexFor(TAG_INDEX, timestampOf(tag.get("timestamp")));
   }
 
   /**
@@ -82,8 +97,7 @@ public class IndexNameManager {
    * @return the generated index name
    */
   public String indexFor(AlarmDocument alarm) {
-    String prefix = properties.getIndexPrefix() + "-alarm_";
-    return getIndexName(prefix, Instant.now(clock));
+    return indexFor(ALARM_INDEX, timestampOf(alarm.get("timestamp")));
   }
 
   /**
@@ -94,36 +108,52 @@ public class IndexNameManager {
    * @return the generated index name
    */
   public String indexFor(SupervisionEventDocument supervisionEvent) {
-    String prefix = properties.getIndexPrefix() + "-supervision_";
-    return getIndexName(prefix, Instant.now(clock));
+    return indexFor(SUPERVISION_INDEX, timestampOf(supervisionEvent.get("timestamp")));
   }
 
   /**
-   * Generate an index for the given prefix and timestamp, based on the current
-   * time series indexing strategy.
+   * Generate the index name of the given index type for a point in time.
    *
-   * @param prefix  the index prefix
-   * @param instant the instant which will be used to generate the index
+   * @param index     one of the index types, e.g. {@link #TAG_INDEX}
+   * @param timestamp the time in milliseconds since epoch
    * @return the generated index name
    */
-  private String getIndexName(String prefix, Instant instant) {
+  String indexFor(String index, long timestamp) {
     String indexType = properties.getIndexType();
-    String dateFormat;
-
-    switch (indexType.toLowerCase(Locale.getDefault())) {
-      case "d":
-        dateFormat = "yyyy-MM-dd";
-        break;
-      case "w":
-        dateFormat = "yyyy-'W'ww";
-        break;
-      case "m":
-      default:
-        dateFormat = "yyyy-MM";
-        break;
+    String prefix = properties.getIndexPrefix() + index;
+    Period period = periods.get(prefix);
+    if (period != null && period.contains(indexType, timestamp)) {
+      return period.name;
     }
+    Period computed = new Period(prefix, indexType, timestamp);
+    if (period == null || computed.start >= period.start || !indexType.equals(period.indexType)) {
+      periods.put(prefix, computed);
+    }
+    return computed.name;
+  }
 
-    return prefix + new SimpleDateFormat(dateFormat, Locale.getDefault()).format(Date.from(instant));
+  /**
+   * Generate the index name of the given index type for a point in time,
+   * without changing the latest period of the index type. Used to compute
+   * the names of upcoming indices.
+   *
+   * @param index     one of the index types, e.g. {@link #TAG_INDEX}
+   * @param timestamp the time in milliseconds since epoch
+   * @return the generated index name
+   */
+  String upcomingIndexFor(String index, long timestamp) {
+    return new Period(properties.getIndexPrefix() + index, properties.getIndexType(), timestamp).name;
+  }
+
+  /**
+   * @return the current time in milliseconds since epoch
+   */
+  long now() {
+    return clock.millis();
+  }
+
+  private long timestampOf(Object timestamp) {
+    return timestamp instanceof Number ? ((Number) timestamp).longValue() : now();
   }
 
   /**
@@ -134,4 +164,66 @@ public class IndexNameManager {
   protected void setClock(Clock clock) {
     this.clock = clock;
   }
+
+  /**
+   * A time range of the current time series indexing strategy, within which
+   * all timestamps map to the same index name.
+   */
+  private static final class Period {
+
+    private final String indexType;
+    private final long start;
+    private final long end;
+    private final String name;
+
+    Period(String prefix, String indexType, long timestamp) {
+      this.indexType = indexType;
+      String dateFormat;
+      Calendar calendar = Calendar.getInstance(Locale.getDefault());
+      calendar.setTimeInMillis(timestamp);
+      calendar.set(Calendar.HOUR_OF_DAY, 0);
+      calendar.set(Calendar.MINUTE, 0);
+      calendar.set(Calendar.SECOND, 0);
+      calendar.set(Calendar.MILLISECOND, 0);
+      Calendar next = (Calendar) calendar.clone();
+
+      switch (indexType.toLowerCase(Locale.getDefault())) {
+        case "d":
+          dateFormat = "yyyy-MM-dd";
+          next.add(Calendar.DAY_OF_MONTH, 1);
+          break;
+        case "w":
+          dateFormat = "yyyy-'W'ww";
+          // the year of the name changes on January 1st, also within a week
+          int year = calendar.get(Calendar.YEAR);
+          calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+          if (calendar.getTimeInMillis() > timestamp) {
+            calendar.add(Calendar.WEEK_OF_YEAR, -1);
+          }
+          next = (Calendar) calendar.clone();
+          next.add(Calendar.WEEK_OF_YEAR, 1);
+          if (calendar.get(Calendar.YEAR) < year) {
+            calendar.set(year, Calendar.JANUARY, 1);
+          } else if (next.get(Calendar.YEAR) > year) {
+            next.set(year + 1, Calendar.JANUARY, 1);
+          }
+          break;
+        case "m":
+        default:
+          dateFormat = "yyyy-MM";
+          calendar.set(Calendar.DAY_OF_MONTH, 1);
+          next = (Calendar) calendar.clone();
+          next.add(Calendar.MONTH, 1);
+          break;
+      }
+
+      this.start = calendar.getTimeInMillis();
+      this.end = next.getTimeInMillis();
+      this.name = prefix + new SimpleDateFormat(dateFormat, Locale.getDefault()).format(new Date(timestamp));
+    }
+
+    boolean contains(String indexType, long timestamp) {
+      return this.indexType.equals(indexType) && timestamp >= start && timestamp < end;
+    }
+  }
 }
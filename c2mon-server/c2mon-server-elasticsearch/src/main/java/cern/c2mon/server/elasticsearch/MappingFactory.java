@@ -41,6 +41,7 @@ public final class MappingFactory {
   private static final String TAG_CONFIG_MAPPING = "mappings/tag-config.json";
   private static final String ALARM_MAPPING = "mappings/alarm.json";
   private static final String SUPERVISION_MAPPING = "mappings/supervision.json";
+  private static final String ROLLUP_MAPPING = "mappings/rollup.json";
 
   private MappingFactory() {
     // only static methods below
@@ -82,6 +83,15 @@ public final class MappingFactory {
     return loadMapping(SUPERVISION_MAPPING);
   }
 
+  /**
+   * Create the Elasticsearch mapping for the tag value rollups.
+   *
+   * @return the JSON mapping source
+   */
+  public static String createRollupMapping() {
+    return loadMapping(ROLLUP_MAPPING);
+  }
+
   private static String loadMapping(String location) {
     return new BufferedReader(new InputStreamReader(loadResource(location)))
         .lines()
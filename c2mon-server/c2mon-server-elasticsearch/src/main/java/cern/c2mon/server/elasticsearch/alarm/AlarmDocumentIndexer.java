@@ -25,9 +25,8 @@ import org.springframework.stereotype.Component;
 
 import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
+import cern.c2mon.server.elasticsearch.IndexLifecycleManager;
 import cern.c2mon.server.elasticsearch.IndexManager;
-import cern.c2mon.server.elasticsearch.IndexNameManager;
-import cern.c2mon.server.elasticsearch.MappingFactory;
 import cern.c2mon.server.elasticsearch.domain.IndexMetadata;
 
 /**
@@ -43,7 +42,7 @@ import cern.c2mon.server.elasticsearch.domain.IndexMetadata;
 public class AlarmDocumentIndexer implements IDBPersistenceHandler<AlarmDocument> {
 
   @Autowired
-  private IndexNameManager indexNameManager;
+  private IndexLifecycleManager indexLifecycleManager;
 
   @Autowired
   private IndexManager indexManager;
@@ -67,24 +66,13 @@ public class AlarmDocumentIndexer implements IDBPersistenceHandler<AlarmDocument
   }
 
   private boolean indexAlarm(AlarmDocument alarm) {
-    String indexName = getOrCreateIndex(alarm);
+    String indexName = indexLifecycleManager.getOrCreateIndex(alarm);
 
     log.debug("Indexing alarm #{} to index {}", alarm.getId(), indexName);
 
     IndexMetadata indexMetadata = IndexMetadata.builder().name(indexName).routing(alarm.getId()).build();
 
-    return indexManager.index(indexMetadata, alarm.toString());
-  }
-
-  private String getOrCreateIndex(AlarmDocument alarm) {
-    IndexMetadata indexMetadata = IndexMetadata.builder().name(indexNameManager.indexFor(alarm)).build();
-
-    if (!indexManager.exists(indexMetadata)) {
-      indexManager.create(indexMetadata, MappingFactory.createAlarmMapping());
-    }
-
-    return indexMetadata.getName();
-
+    return indexManager.index(indexMetadata, alarm.toJson());
   }
 
   @Override
@@ -0,0 +1,394 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.bulk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.util.Assert;
+
+import cern.c2mon.server.elasticsearch.client.ElasticsearchClient;
+import cern.c2mon.server.elasticsearch.config.ElasticsearchProperties;
+
+/**
+ * Asynchronous bulk indexing pipeline on top of a {@link BulkProcessor}.
+ * <p>
+ * The bulks are cut by the {@link BulkProcessor} according to the configured
+ * number of actions, size in bytes and flush interval, and up to the
+ * configured number of concurrent requests are in flight. The outcome of each
+ * bulk is checked item by item: documents rejected by an overloaded cluster
+ * (HTTP 429) are added again after an exponential backoff, all other failures
+ * and the documents that exhausted their retries are handed to the failure
+ * handler, usually the fallback file of the persistence manager.
+ * <p>
+ * When a whole bulk cannot be sent, the indexer reports itself as unhealthy
+ * until the client can reach the cluster again, so that the callers can fall
+ * back without waiting for the bulks to fail.
+ */
+@Slf4j
+public class BulkIndexer implements BulkProcessor.Listener {
+
+  private final ElasticsearchClient client;
+
+  private final BulkProcessor bulkProcessor;
+
+  private final int maxRetries;
+
+  private final long retryBackoff;
+
+  private final long probeInterval;
+
+  private final ScheduledExecutorService scheduler;
+
+  /** Number of retries already done for the documents being retried. */
+  private final Map<DocWriteRequest<?>, Integer> attempts = Collections.synchronizedMap(new IdentityHashMap<>());
+
+  /** Start time of the bulks in flight, per execution id. */
+  private final Map<Long, Long> startTimes = new ConcurrentHashMap<>();
+
+  private volatile Consumer<List<DocWriteRequest<?>>> failureHandler =
+      requests -> log.error("Dropping {} documents which could not be indexed", requests.size());
+
+  private volatile Consumer<List<DocWriteRequest<?>>> successHandler;
+
+  private volatile boolean healthy = true;
+
+  private volatile boolean closed;
+
+  private final AtomicLong bulks = new AtomicLong();
+
+  private final AtomicLong indexedDocuments = new AtomicLong();
+
+  private final AtomicLong rejectedDocuments = new AtomicLong();
+
+  private final AtomicLong failedDocuments = new AtomicLong();
+
+  private volatile long lastBulkLatency;
+
+  private volatile int lastBulkSize;
+
+  private volatile long lastBulkBytes;
+
+  /**
+   * @param client to be used to communicate with Elasticsearch cluster.
+   * @param properties with the retry settings.
+   */
+  public BulkIndexer(ElasticsearchClient client, ElasticsearchProperties properties) {
+    this.client = client;
+    this.maxRetries = properties.getBulkRetries();
+    this.retryBackoff = Math.max(1, properties.getBulkRetryBackoff());
+    this.probeInterval = TimeUnit.SECONDS.toMillis(Math.max(1, properties.getBulkFlushInterval()));
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "BulkIndexer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.bulkProcessor = client.getBulkProcessor(this);
+  }
+
+  /**
+   * @param failureHandler to which the documents that could not be indexed
+   *                       are handed. It is called from the threads completing
+   *                       the bulk requests.
+   */
+  public void setFailureHandler(Consumer<List<DocWriteRequest<?>>> failureHandler) {
+    Assert.notNull(failureHandler, "Failure handler must not be null!");
+    this.failureHandler = failureHandler;
+  }
+
+  /**
+   * @param successHandler to which the documents successfully indexed are
+   *                       handed. It is called from the threads completing
+   *                       the bulk requests.
+   */
+  public void setSuccessHandler(Consumer<List<DocWriteRequest<?>>> successHandler) {
+    this.successHandler = successHandler;
+  }
+
+  /**
+   * Adds a document to the next bulk.
+   *
+   * @param request to be executed in bulk action.
+   */
+  public void add(DocWriteRequest<?> request) {
+    Assert.notNull(request, "Request must not be null!");
+    bulkProcessor.add(request);
+  }
+
+  /**
+   * @return false if the last bulk could not be sent to the cluster and the
+   * client has not yet been able to reach it again.
+   */
+  public boolean isHealthy() {
+    return healthy;
+  }
+
+  /**
+   * Sends the pending documents and waits for the bulks in flight, then hands
+   * the documents still waiting for a retry to the failure handler.
+   */
+  public void close() {
+    closed = true;
+    try {
+      bulkProcessor.awaitClose(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    scheduler.shutdownNow();
+    List<DocWriteRequest<?>> pending;
+    synchronized (attempts) {
+      pending = new ArrayList<>(attempts.keySet());
+      attempts.clear();
+    }
+    fail(pending);
+  }
+
+  @Override
+  public void beforeBulk(long executionId, BulkRequest request) {
+    startTimes.put(executionId, System.currentTimeMillis());
+    log.debug("Going to execute new bulk operation composed of {} actions", request.numberOfActions());
+  }
+
+  @Override
+  public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+    recordBulk(executionId, request);
+    healthy = true;
+
+    List<DocWriteRequest<?>> succeeded = new ArrayList<>();
+    List<DocWriteRequest<?>> rejected = new ArrayList<>();
+    List<DocWriteRequest<?>> failed = new ArrayList<>();
+    List<DocWriteRequest<?>> requests = requestsOf(request);
+    for (BulkItemResponse item : response.getItems()) {
+      DocWriteRequest<?> itemRequest = requests.get(item.getItemId());
+      if (!item.isFailed()) {
+        attempts.remove(itemRequest);
+        succeeded.add(itemRequest);
+      } else if (item.status() == RestStatus.TOO_MANY_REQUESTS) {
+        rejected.add(itemRequest);
+      } else {
+        log.warn("Document could not be indexed in {}: {}", item.getIndex(), item.getFailureMessage());
+        attempts.remove(itemRequest);
+        failed.add(itemRequest);
+      }
+    }
+    indexedDocuments.addAndGet(requests.size() - rejected.size() - failed.size());
+
+    log.debug("Executed bulk operation composed of {} actions in {}ms ({} rejected, {} failed)",
+        request.numberOfActions(), lastBulkLatency, rejected.size(), failed.size());
+    succeed(succeeded);
+    retry(rejected);
+    fail(failed);
+  }
+
+  @Override
+  public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+    recordBulk(executionId, request);
+
+    if (ExceptionsHelper.status(ExceptionsHelper.unwrapCause(failure)) == RestStatus.TOO_MANY_REQUESTS) {
+      log.debug("Bulk operation composed of {} actions rejected by the cluster", request.numberOfActions());
+      retry(requestsOf(request));
+      return;
+    }
+
+    log.warn("Error executing bulk operation composed of {} actions", request.numberOfActions(), failure);
+    List<DocWriteRequest<?>> requests = requestsOf(request);
+    requests.forEach(attempts::remove);
+    fail(requests);
+    if (healthy) {
+      healthy = false;
+      scheduleProbe();
+    }
+  }
+
+  /**
+   * Adds the rejected documents again after a backoff growing exponentially
+   * with the number of attempts, or fails them once the retries are
+   * exhausted.
+   */
+  private void retry(List<DocWriteRequest<?>> requests) {
+    if (requests.isEmpty()) {
+      return;
+    }
+    rejectedDocuments.addAndGet(requests.size());
+
+    Map<Integer, List<DocWriteRequest<?>>> byAttempt = new TreeMap<>();
+    List<DocWriteRequest<?>> exhausted = new ArrayList<>();
+    for (DocWriteRequest<?> request : requests) {
+      int attempt = attempts.getOrDefault(request, 0);
+      if (closed || attempt >= maxRetries) {
+        attempts.remove(request);
+        exhausted.add(request);
+      } else {
+        attempts.put(request, attempt + 1);
+        byAttempt.computeIfAbsent(attempt, key -> new ArrayList<>()).add(request);
+      }
+    }
+
+    byAttempt.forEach((attempt, retried) -> {
+      long delay = retryBackoff << Math.min(attempt, 16);
+      log.debug("Retrying {} rejected documents in {}ms", retried.size(), delay);
+      scheduler.schedule(() -> retried.forEach(bulkProcessor::add), delay, TimeUnit.MILLISECONDS);
+    });
+    if (!exhausted.isEmpty()) {
+      log.warn("Giving up on {} documents rejected by the cluster", exhausted.size());
+      fail(exhausted);
+    }
+  }
+
+  /**
+   * Checks periodically whether the cluster can be reached again after a
+   * failed bulk.
+   */
+  private void scheduleProbe() {
+    scheduler.schedule(() -> {
+      if (client.isClientHealthy()) {
+        log.info("Elasticsearch cluster reachable again, resuming bulk indexing");
+        healthy = true;
+      } else if (!closed) {
+        scheduleProbe();
+      }
+    }, probeInterval, TimeUnit.MILLISECONDS);
+  }
+
+  private void succeed(List<DocWriteRequest<?>> requests) {
+    Consumer<List<DocWriteRequest<?>>> handler = successHandler;
+    if (handler == null || requests.isEmpty()) {
+      return;
+    }
+    try {
+      handler.accept(requests);
+    } catch (RuntimeException e) {
+      log.error("Error handing {} indexed documents to the success handler", requests.size(), e);
+    }
+  }
+
+  private void fail(List<DocWriteRequest<?>> requests) {
+    if (requests.isEmpty()) {
+      return;
+    }
+    failedDocuments.addAndGet(requests.size());
+    try {
+      failureHandler.accept(requests);
+    } catch (RuntimeException e) {
+      log.error("Error handing {} failed documents to the failure handler", requests.size(), e);
+    }
+  }
+
+  private void recordBulk(long executionId, BulkRequest request) {
+    Long start = startTimes.remove(executionId);
+    if (start != null) {
+      lastBulkLatency = System.currentTimeMillis() - start;
+    }
+    lastBulkSize = request.numberOfActions();
+    lastBulkBytes = request.estimatedSizeInBytes();
+    bulks.incrementAndGet();
+  }
+
+  private static List<DocWriteRequest<?>> requestsOf(BulkRequest request) {
+    List<DocWriteRequest<?>> requests = new ArrayList<>(request.numberOfActions());
+    for (DocWriteRequest<?> itemRequest : request.requests()) {
+      requests.add(itemRequest);
+    }
+    return requests;
+  }
+
+  /**
+   * @return the number of bulk requests executed.
+   */
+  public long getBulks() {
+    return bulks.get();
+  }
+
+  /**
+   * @return the number of documents successfully indexed.
+   */
+  public long getIndexedDocuments() {
+    return indexedDocuments.get();
+  }
+
+  /**
+   * @return the number of document rejections (HTTP 429) by the cluster,
+   * including the rejections of retried documents.
+   */
+  public long getRejectedDocuments() {
+    return rejectedDocuments.get();
+  }
+
+  /**
+   * @return the number of documents handed to the failure handler, or
+   * dropped if no failure handler is set.
+   */
+  public long getFailedDocuments() {
+    return failedDocuments.get();
+  }
+
+  /**
+   * @return the share of the attempts to index a document which were
+   * rejected by the cluster, between 0 and 1.
+   */
+  public double getRejectionRate() {
+    long rejected = rejectedDocuments.get();
+    long total = rejected + indexedDocuments.get() + failedDocuments.get();
+    return total == 0 ? 0 : (double) rejected / total;
+  }
+
+  /**
+   * @return the number of documents waiting for a retry.
+   */
+  public int getRetryingDocuments() {
+    return attempts.size();
+  }
+
+  /**
+   * @return the duration in milliseconds of the last bulk request.
+   */
+  public long getLastBulkLatency() {
+    return lastBulkLatency;
+  }
+
+  /**
+   * @return the number of actions of the last bulk request.
+   */
+  public int getLastBulkSize() {
+    return lastBulkSize;
+  }
+
+  /**
+   * @return the estimated size in bytes of the last bulk request.
+   */
+  public long getLastBulkBytes() {
+    return lastBulkBytes;
+  }
+}
@@ -52,6 +52,15 @@ public interface ElasticsearchClient {
    */
   boolean indexData(IndexMetadata indexMetadata, String data);
 
+  /**
+   * Write data to the provided index
+   *
+   * @param indexMetadata with details for index to write the data
+   * @param data UTF-8 encoded JSON document to be written to the index
+   * @return true if index was written, false otherwise
+   */
+  boolean indexData(IndexMetadata indexMetadata, byte[] data);
+
   /**
    * Check if index exists
    *
@@ -36,6 +36,7 @@ import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
+import org.elasticsearch.action.bulk.BackoffPolicy;
 import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
@@ -52,6 +53,8 @@ import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
@@ -102,6 +105,7 @@ public final class ElasticsearchClientRest implements ElasticsearchClient {
         .setBulkSize(new ByteSizeValue(properties.getBulkSize(), ByteSizeUnit.MB))
         .setFlushInterval(TimeValue.timeValueSeconds(properties.getBulkFlushInterval()))
         .setConcurrentRequests(properties.getConcurrentRequests())
+        .setBackoffPolicy(BackoffPolicy.noBackoff())
         .build();
   }
 
@@ -130,6 +134,15 @@ public final class ElasticsearchClientRest implements ElasticsearchClient {
 
   @Override
   public boolean indexData(IndexMetadata indexMetadata, String data) {
+    return indexData(indexMetadata, new BytesArray(data));
+  }
+
+  @Override
+  public boolean indexData(IndexMetadata indexMetadata, byte[] data) {
+    return indexData(indexMetadata, new BytesArray(data));
+  }
+
+  private boolean indexData(IndexMetadata indexMetadata, BytesReference data) {
     IndexRequest indexRequest = new IndexRequest(indexMetadata.getName(), TYPE);
     if (indexMetadata.getId() != null && !indexMetadata.getId().isEmpty()) {
       indexRequest.id(indexMetadata.getId());
@@ -44,6 +44,11 @@ public class ElasticsearchClientStub implements ElasticsearchClient {
     throw new UnsupportedOperationException(STUB_CLIENT_ERROR_MESSAGE);
   }
 
+  @Override
+  public boolean indexData(IndexMetadata indexMetadata, byte[] data) {
+    throw new UnsupportedOperationException(STUB_CLIENT_ERROR_MESSAGE);
+  }
+
   @Override
   public boolean isIndexExisting(IndexMetadata indexMetadata) {
     throw new UnsupportedOperationException(STUB_CLIENT_ERROR_MESSAGE);
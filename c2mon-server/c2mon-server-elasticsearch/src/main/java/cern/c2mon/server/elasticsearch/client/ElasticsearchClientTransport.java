@@ -28,6 +28,7 @@ import org.elasticsearch.ResourceAlreadyExistsException;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
+import org.elasticsearch.action.bulk.BackoffPolicy;
 import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
@@ -41,6 +42,8 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.NoNodeAvailableException;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
 import org.elasticsearch.common.unit.ByteSizeUnit;
@@ -93,6 +96,7 @@ public final class ElasticsearchClientTransport implements ElasticsearchClient {
         .setBulkSize(new ByteSizeValue(properties.getBulkSize(), ByteSizeUnit.MB))
         .setFlushInterval(TimeValue.timeValueSeconds(properties.getBulkFlushInterval()))
         .setConcurrentRequests(properties.getConcurrentRequests())
+        .setBackoffPolicy(BackoffPolicy.noBackoff())
         .build();
   }
 
@@ -122,6 +126,15 @@ public final class ElasticsearchClientTransport implements ElasticsearchClient {
 
   @Override
   public boolean indexData(IndexMetadata indexMetadata, String data) {
+    return indexData(indexMetadata, new BytesArray(data));
+  }
+
+  @Override
+  public boolean indexData(IndexMetadata indexMetadata, byte[] data) {
+    return indexData(indexMetadata, new BytesArray(data));
+  }
+
+  private boolean indexData(IndexMetadata indexMetadata, BytesReference data) {
     IndexRequest indexRequest = new IndexRequest(indexMetadata.getName(), TYPE);
     if (indexMetadata.getId() != null && !indexMetadata.getId().isEmpty()) {
       indexRequest.id(indexMetadata.getId());
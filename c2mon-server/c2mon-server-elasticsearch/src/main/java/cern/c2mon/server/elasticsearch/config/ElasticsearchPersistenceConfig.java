@@ -26,6 +26,7 @@ import cern.c2mon.pmanager.persistence.impl.PersistenceManager;
 import cern.c2mon.server.elasticsearch.alarm.AlarmDocument;
 import cern.c2mon.server.elasticsearch.supervision.SupervisionEventDocument;
 import cern.c2mon.server.elasticsearch.tag.TagDocument;
+import cern.c2mon.server.elasticsearch.tag.TagDocumentIndexer;
 
 /**
  * Beans needed for fallback-aware persistence.
@@ -39,9 +40,17 @@ public class ElasticsearchPersistenceConfig {
 
   @Bean
   public IPersistenceManager<TagDocument> tagDocumentPersistenceManager(
-      final IDBPersistenceHandler<TagDocument> esTagIndexer, final IAlarmListener fallbackActivationListener) {
+      final TagDocumentIndexer esTagIndexer, final IAlarmListener fallbackActivationListener) {
     String fallbackFile = properties.getTagFallbackFile();
-    return new PersistenceManager<>(esTagIndexer, fallbackFile, fallbackActivationListener, new TagDocument());
+    PersistenceManager<TagDocument> persistenceManager =
+        new PersistenceManager<>(esTagIndexer, fallbackFile, fallbackActivationListener, new TagDocument());
+    persistenceManager.setQueueCapacity(properties.getTagQueueCapacity());
+    persistenceManager.setHighWatermark(properties.getTagQueueHighWatermark());
+    persistenceManager.setSpillLatency(properties.getTagQueueSpillLatency());
+    persistenceManager.setWriterThreads(properties.getTagQueueWriterThreads());
+    persistenceManager.setWriteBatchSize(properties.getBulkActions());
+    esTagIndexer.setFallback(persistenceManager::storeInFallback);
+    return persistenceManager;
   }
 
   @Bean
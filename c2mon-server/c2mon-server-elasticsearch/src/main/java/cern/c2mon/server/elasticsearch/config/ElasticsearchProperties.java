@@ -124,6 +124,27 @@ public class ElasticsearchProperties {
    */
   private int replicasPerShard = 1;
 
+  /**
+   * Time in minutes before the start of the next period (day, week or month)
+   * at which its tag, alarm and supervision indices are created, 0 to create
+   * them only when the first document is written
+   */
+  private int indexPrecreateLeadTime = 60;
+
+  /**
+   * Enable/disable the per-minute and per-hour rollups (min, max, avg, count
+   * and last value) of the numeric tag values, indexed in the
+   * indexPrefix + "-rollup-1m_" + month and indexPrefix + "-rollup-1h_" + year
+   * indices
+   */
+  private boolean rollupEnabled = true;
+
+  /**
+   * Interval in seconds at which the rollups aggregated in memory are merged
+   * into the rollup indices
+   */
+  private int rollupFlushInterval = 10;
+
   /**
    * Maximum number of actions to accumulate before sending a batch of tags
    */
@@ -145,6 +166,18 @@ public class ElasticsearchProperties {
    */
   private int concurrentRequests = 1;
 
+  /**
+   * Number of times a document rejected by the cluster (HTTP 429) is retried
+   * before being written to the fallback file
+   */
+  private int bulkRetries = 3;
+
+  /**
+   * Delay in milliseconds before the first retry of a rejected document,
+   * doubled at each further retry
+   */
+  private long bulkRetryBackoff = 100;
+
   /**
    * Absolute path the file to which tag updates will be written in the
    * event of Elasticsearch communication failure
@@ -163,6 +196,30 @@ public class ElasticsearchProperties {
    */
   private String supervisionFallbackFile = "/tmp/es-supervision-fallback.txt";
 
+  /**
+   * Capacity of the in-memory queue in front of the tag indexer. With 0 the
+   * tags are indexed synchronously by the cache listener threads, otherwise
+   * they are indexed in batches by dedicated writer threads
+   */
+  private int tagQueueCapacity = 0;
+
+  /**
+   * Number of queued tags above which new tags are written directly to the
+   * fallback file (0 = 80% of the queue capacity)
+   */
+  private int tagQueueHighWatermark = 0;
+
+  /**
+   * Indexing time in milliseconds above which new tags are written directly
+   * to the fallback file while the queue is not empty (0 = disabled)
+   */
+  private long tagQueueSpillLatency = 0;
+
+  /**
+   * Number of threads draining the tag queue
+   */
+  private int tagQueueWriterThreads = 1;
+
   /**
    * Defines the client to be used to communicate with Elasticsearch (possible values: [rest, transport])
    */
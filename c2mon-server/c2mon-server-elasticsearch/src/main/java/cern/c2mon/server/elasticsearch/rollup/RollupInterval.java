@@ -0,0 +1,66 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.rollup;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import lombok.Getter;
+
+/**
+ * Bucket sizes of the tag value rollups, with the time span of the indices
+ * holding them.
+ */
+public enum RollupInterval {
+
+  MINUTE("1m", 60_000L, "yyyy-MM"),
+
+  HOUR("1h", 3_600_000L, "yyyy");
+
+  /** Name of the interval, as used in the index names. */
+  @Getter
+  private final String name;
+
+  /** Length of a bucket in milliseconds. */
+  @Getter
+  private final long length;
+
+  private final String indexDateFormat;
+
+  RollupInterval(String name, long length, String indexDateFormat) {
+    this.name = name;
+    this.length = length;
+    this.indexDateFormat = indexDateFormat;
+  }
+
+  /**
+   * @param timestamp in ms since epoch
+   * @return the start of the bucket containing the timestamp
+   */
+  public long bucketStart(long timestamp) {
+    return timestamp - Math.floorMod(timestamp, length);
+  }
+
+  /**
+   * @param indexPrefix prefix of the C2MON indices
+   * @param bucketStart start of the bucket
+   * @return the name of the index holding the bucket, e.g. c2mon-rollup-1m_2019-01
+   */
+  public String indexFor(String indexPrefix, long bucketStart) {
+    return indexPrefix + "-rollup-" + name + "_" + new SimpleDateFormat(indexDateFormat).format(new Date(bucketStart));
+  }
+}
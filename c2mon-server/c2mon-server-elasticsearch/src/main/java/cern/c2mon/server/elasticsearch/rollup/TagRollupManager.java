@@ -0,0 +1,337 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.rollup;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.server.common.config.ServerConstants;
+import cern.c2mon.server.elasticsearch.IndexManager;
+import cern.c2mon.server.elasticsearch.MappingFactory;
+import cern.c2mon.server.elasticsearch.bulk.BulkIndexer;
+import cern.c2mon.server.elasticsearch.client.ElasticsearchClient;
+import cern.c2mon.server.elasticsearch.config.ElasticsearchProperties;
+import cern.c2mon.server.elasticsearch.domain.IndexMetadata;
+import cern.c2mon.server.elasticsearch.tag.TagDocument;
+
+/**
+ * Maintains the per-minute and per-hour rollups (min, max, sum, avg, count
+ * and last value) of the numeric tag values.
+ * <p>
+ * The values of the indexed tags are aggregated in memory, and the partial
+ * buckets are merged into the rollup documents at the configured flush
+ * interval with scripted upserts. The rollups are therefore built
+ * incrementally: documents arriving late, or after a restart, are merged into
+ * the existing buckets instead of replacing them. The buckets which could not
+ * be merged are added back to the buckets of the next flush.
+ */
+@Slf4j
+@Component
+public class TagRollupManager implements SmartLifecycle {
+
+  /** Merges a partial bucket into the stored one. */
+  static final String MERGE_SCRIPT = "ctx._source.min = Math.min(ctx._source.min, params.min);"
+      + "ctx._source.max = Math.max(ctx._source.max, params.max);"
+      + "ctx._source.sum += params.sum;"
+      + "ctx._source.count += params.count;"
+      + "ctx._source.avg = ctx._source.sum / ctx._source.count;"
+      + "if (params.lastTimestamp >= ctx._source.lastTimestamp) {"
+      + "ctx._source.last = params.last; ctx._source.lastTimestamp = params.lastTimestamp; }";
+
+  private final ElasticsearchClient client;
+
+  private final ElasticsearchProperties properties;
+
+  private final IndexManager indexManager;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private Map<BucketKey, Bucket> buckets = new ConcurrentHashMap<>();
+
+  /** Buckets being merged, by update request. */
+  private final Map<DocWriteRequest<?>, Map.Entry<BucketKey, Bucket>> inFlight =
+      Collections.synchronizedMap(new IdentityHashMap<>());
+
+  private BulkIndexer bulkIndexer;
+
+  private ScheduledExecutorService scheduler;
+
+  private volatile boolean running = false;
+
+  /**
+   * @param client Elasticsearch client instance
+   * @param properties Elasticsearch properties
+   * @param indexManager to create the rollup indices
+   */
+  @Autowired
+  public TagRollupManager(ElasticsearchClient client, ElasticsearchProperties properties, IndexManager indexManager) {
+    this.client = client;
+    this.properties = properties;
+    this.indexManager = indexManager;
+  }
+
+  /**
+   * @return true if the rollups are maintained
+   */
+  public boolean isEnabled() {
+    return properties.isEnabled() && properties.isRollupEnabled();
+  }
+
+  /**
+   * Adds the value of an indexed tag to its rollup buckets. Tags without a
+   * numeric value are ignored.
+   *
+   * @param tag the indexed tag
+   */
+  public void add(TagDocument tag) {
+    Object value = tag.get("value");
+    Object timestamp = tag.get("timestamp");
+    Object id = tag.get("id");
+    if (value instanceof Number && timestamp instanceof Number && id instanceof Number) {
+      add(((Number) id).longValue(), ((Number) timestamp).longValue(), ((Number) value).doubleValue());
+    }
+  }
+
+  /**
+   * @param tagId id of the tag
+   * @param timestamp of the value, in ms since epoch
+   * @param value the tag value
+   */
+  void add(long tagId, long timestamp, double value) {
+    lock.readLock().lock();
+    try {
+      for (RollupInterval interval : RollupInterval.values()) {
+        BucketKey key = new BucketKey(tagId, interval, interval.bucketStart(timestamp));
+        buckets.computeIfAbsent(key, k -> new Bucket()).add(timestamp, value);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Merges the buckets aggregated since the last flush into the rollup
+   * indices.
+   */
+  void flush() {
+    Map<BucketKey, Bucket> flushed;
+    lock.writeLock().lock();
+    try {
+      if (buckets.isEmpty()) {
+        return;
+      }
+      flushed = buckets;
+      buckets = new ConcurrentHashMap<>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    log.debug("Merging {} rollup buckets", flushed.size());
+    flushed.forEach((key, bucket) -> {
+      String index = getOrCreateIndex(key.getInterval().indexFor(properties.getIndexPrefix(), key.getStart()));
+      UpdateRequest request = toUpdateRequest(index, key, bucket);
+      inFlight.put(request, new AbstractMap.SimpleImmutableEntry<>(key, bucket));
+      bulkIndexer.add(request);
+    });
+  }
+
+  /**
+   * Adds the buckets of the failed updates back to the buckets of the next
+   * flush.
+   */
+  private void requeue(List<DocWriteRequest<?>> requests) {
+    int requeued = 0;
+    lock.readLock().lock();
+    try {
+      for (DocWriteRequest<?> request : requests) {
+        Map.Entry<BucketKey, Bucket> failed = inFlight.remove(request);
+        if (failed != null) {
+          buckets.computeIfAbsent(failed.getKey(), k -> new Bucket()).merge(failed.getValue());
+          requeued++;
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    log.warn("Could not merge {} rollup buckets, retrying with the next flush", requeued);
+  }
+
+  /**
+   * @return the scripted upsert merging the bucket into its rollup document
+   */
+  static UpdateRequest toUpdateRequest(String index, BucketKey key, Bucket bucket) {
+    Map<String, Object> params = new HashMap<>();
+    params.put("min", bucket.getMin());
+    params.put("max", bucket.getMax());
+    params.put("sum", bucket.getSum());
+    params.put("count", bucket.getCount());
+    params.put("last", bucket.getLast());
+    params.put("lastTimestamp", bucket.getLastTimestamp());
+
+    Map<String, Object> upsert = new HashMap<>(params);
+    upsert.put("id", key.getTagId());
+    upsert.put("timestamp", key.getStart());
+    upsert.put("avg", bucket.getSum() / bucket.getCount());
+
+    return new UpdateRequest(index, ElasticsearchProperties.TYPE, key.getTagId() + "_" + key.getStart())
+        .routing(String.valueOf(key.getTagId()))
+        .script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, MERGE_SCRIPT, Collections.unmodifiableMap(params)))
+        .upsert(upsert)
+        .retryOnConflict(3);
+  }
+
+  private String getOrCreateIndex(String name) {
+    IndexMetadata indexMetadata = IndexMetadata.builder().name(name).build();
+    if (!indexManager.exists(indexMetadata)) {
+      indexManager.create(indexMetadata, MappingFactory.createRollupMapping());
+    }
+    return name;
+  }
+
+  @Override
+  public boolean isAutoStartup() {
+    return true;
+  }
+
+  @Override
+  public void stop(Runnable callback) {
+    stop();
+    callback.run();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (isEnabled()) {
+      bulkIndexer = new BulkIndexer(client, properties);
+      bulkIndexer.setFailureHandler(this::requeue);
+      bulkIndexer.setSuccessHandler(requests -> requests.forEach(inFlight::remove));
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "TagRollupManager");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long interval = Math.max(1, properties.getRollupFlushInterval());
+      scheduler.scheduleWithFixedDelay(() -> {
+        try {
+          flush();
+        } catch (Exception e) {
+          log.warn("Error merging the tag rollups", e);
+        }
+      }, interval, interval, TimeUnit.SECONDS);
+    }
+    running = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+      try {
+        flush();
+      } catch (Exception e) {
+        log.warn("Error merging the tag rollups", e);
+      }
+      bulkIndexer.close();
+      if (!buckets.isEmpty()) {
+        log.warn("Dropping {} rollup buckets which could not be merged", buckets.size());
+        buckets = new ConcurrentHashMap<>();
+      }
+      inFlight.clear();
+    }
+    running = false;
+  }
+
+  /**
+   * Stops after the {@link cern.c2mon.server.elasticsearch.tag.TagDocumentIndexer},
+   * which adds the last indexed values to the rollups when it stops.
+   */
+  @Override
+  public int getPhase() {
+    return ServerConstants.PHASE_STOP_LAST - 2;
+  }
+
+  /**
+   * Identifies a rollup bucket of a tag.
+   */
+  @Data
+  static final class BucketKey {
+    private final long tagId;
+    private final RollupInterval interval;
+    private final long start;
+  }
+
+  /**
+   * Values of a tag aggregated over a bucket since the last flush.
+   */
+  @Data
+  static final class Bucket {
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double sum;
+    private long count;
+    private double last;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    synchronized void add(long timestamp, double value) {
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+      sum += value;
+      count++;
+      if (timestamp >= lastTimestamp) {
+        last = value;
+        lastTimestamp = timestamp;
+      }
+    }
+
+    synchronized void merge(Bucket other) {
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+      sum += other.sum;
+      count += other.count;
+      if (other.lastTimestamp >= lastTimestamp) {
+        last = other.last;
+        lastTimestamp = other.lastTimestamp;
+      }
+    }
+  }
+}
@@ -17,13 +17,14 @@
 package cern.c2mon.server.elasticsearch.supervision;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import cern.c2mon.pmanager.IFallback;
 import cern.c2mon.server.elasticsearch.exception.ProcessingException;
+import cern.c2mon.server.elasticsearch.util.JsonDocumentWriter;
 import cern.c2mon.shared.client.supervision.SupervisionEvent;
 
 /**
@@ -60,12 +61,15 @@ public class SupervisionEventDocument extends HashMap<String, Object> implements
     }
   }
 
+  /**
+   * @return the UTF-8 encoded JSON representation of the document
+   */
+  public byte[] toJson() {
+    return JsonDocumentWriter.toJson(this);
+  }
+
   @Override
   public String toString() {
-    try {
-      return mapper.writeValueAsString(this);
-    } catch (JsonProcessingException e) {
-      throw new ProcessingException("Error serializing document", e);
-    }
+    return new String(toJson(), StandardCharsets.UTF_8);
   }
 }
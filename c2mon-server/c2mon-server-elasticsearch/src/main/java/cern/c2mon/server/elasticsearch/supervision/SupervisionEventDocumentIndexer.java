@@ -25,9 +25,8 @@ import org.springframework.stereotype.Component;
 
 import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
+import cern.c2mon.server.elasticsearch.IndexLifecycleManager;
 import cern.c2mon.server.elasticsearch.IndexManager;
-import cern.c2mon.server.elasticsearch.IndexNameManager;
-import cern.c2mon.server.elasticsearch.MappingFactory;
 import cern.c2mon.server.elasticsearch.domain.IndexMetadata;
 
 /**
@@ -43,7 +42,7 @@ import cern.c2mon.server.elasticsearch.domain.IndexMetadata;
 public class SupervisionEventDocumentIndexer implements IDBPersistenceHandler<SupervisionEventDocument> {
 
   @Autowired
-  private IndexNameManager indexNameManager;
+  private IndexLifecycleManager indexLifecycleManager;
 
   @Autowired
   private IndexManager indexManager;
@@ -67,22 +66,12 @@ public class SupervisionEventDocumentIndexer implements IDBPersistenceHandler<Su
   }
 
   private boolean indexSupervisionEvent(final SupervisionEventDocument supervisionEvent) {
-    String indexName = getOrCreateIndex(supervisionEvent);
+    String indexName = indexLifecycleManager.getOrCreateIndex(supervisionEvent);
 
     log.debug("Adding new supervision event to index {}", indexName);
 
     return indexManager.index(IndexMetadata.builder().name(indexName).routing( supervisionEvent.getId()).build(),
-        supervisionEvent.toString());
-  }
-
-  private String getOrCreateIndex(SupervisionEventDocument supervisionEvent) {
-    IndexMetadata indexMetadata = IndexMetadata.builder().name(indexNameManager.indexFor(supervisionEvent)).build();
-
-    if (!indexManager.exists(indexMetadata)) {
-      indexManager.create(indexMetadata, MappingFactory.createSupervisionMapping());
-    }
-
-    return indexMetadata.getName();
+        supervisionEvent.toJson());
   }
 
   @Override
@@ -17,14 +17,15 @@
 package cern.c2mon.server.elasticsearch.tag;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import cern.c2mon.pmanager.IFallback;
 import cern.c2mon.server.common.tag.Tag;
 import cern.c2mon.server.elasticsearch.exception.ProcessingException;
+import cern.c2mon.server.elasticsearch.util.JsonDocumentWriter;
 
 /**
  * Intermediate object (created from {@link Tag} instances) used for direct
@@ -64,12 +65,15 @@ public class TagDocument extends HashMap<String, Object> implements IFallback {
     }
   }
 
+  /**
+   * @return the UTF-8 encoded JSON representation of the document
+   */
+  public byte[] toJson() {
+    return JsonDocumentWriter.toJson(this);
+  }
+
   @Override
   public String toString() {
-    try {
-      return mapper.writeValueAsString(this);
-    } catch (JsonProcessingException e) {
-      throw new ProcessingException("Error serializing document", e);
-    }
+    return new String(toJson(), StandardCharsets.UTF_8);
   }
 }
@@ -16,24 +16,32 @@
  *****************************************************************************/
 package cern.c2mon.server.elasticsearch.tag;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
 
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 
 import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
-import cern.c2mon.server.elasticsearch.IndexManager;
-import cern.c2mon.server.elasticsearch.IndexNameManager;
-import cern.c2mon.server.elasticsearch.MappingFactory;
-import cern.c2mon.server.elasticsearch.bulk.BulkProcessorProxy;
+import cern.c2mon.server.common.config.ServerConstants;
+import cern.c2mon.server.elasticsearch.IndexLifecycleManager;
+import cern.c2mon.server.elasticsearch.bulk.BulkIndexer;
 import cern.c2mon.server.elasticsearch.client.ElasticsearchClient;
 import cern.c2mon.server.elasticsearch.config.ElasticsearchProperties;
-import cern.c2mon.server.elasticsearch.domain.IndexMetadata;
+import cern.c2mon.server.elasticsearch.rollup.TagRollupManager;
 
 /**
  * This class manages the fallback-aware indexing of {@link TagDocument}
@@ -45,40 +53,80 @@ import cern.c2mon.server.elasticsearch.domain.IndexMetadata;
  */
 @Slf4j
 @Component
-public class TagDocumentIndexer implements IDBPersistenceHandler<TagDocument> {
+@ManagedResource(description = "Bean indexing tag updates in bulks to Elasticsearch")
+public class TagDocumentIndexer implements IDBPersistenceHandler<TagDocument>, SmartLifecycle {
 
-  private final IndexManager indexManager;
-  private final IndexNameManager indexNameManager;
+  private final IndexLifecycleManager indexLifecycleManager;
 
-  private BulkProcessorProxy bulkProcessor;
+  private final TagRollupManager tagRollupManager;
+
+  /**
+   * Tags with a numeric value being indexed, added to the rollups once
+   * indexed. Index requests do not override equals, so they are compared by
+   * identity.
+   */
+  private final Map<IndexRequest, TagDocument> pendingRollups = new ConcurrentHashMap<>();
+
+  private volatile Consumer<List<TagDocument>> fallback =
+      tags -> log.error("Dropping {} tags which could not be indexed", tags.size());
+
+  private BulkIndexer bulkIndexer;
+
+  private volatile boolean running = false;
+
+  private volatile boolean closed = false;
 
   /**
    * @param client Elasticsearch client instance
    * @param properties Elasticsearch properties
-   * @param indexNameManager to determine index names.
-   * @param indexManager to execute index-related operations.
+   * @param indexLifecycleManager to determine and create the indices.
+   * @param tagRollupManager to which the indexed tag values are added
    */
   @Autowired
-  public TagDocumentIndexer(ElasticsearchClient client, ElasticsearchProperties properties, IndexNameManager indexNameManager, IndexManager indexManager) {
-    this.indexNameManager = indexNameManager;
-    this.indexManager = indexManager;
+  public TagDocumentIndexer(ElasticsearchClient client, ElasticsearchProperties properties,
+                            IndexLifecycleManager indexLifecycleManager, TagRollupManager tagRollupManager) {
+    this.indexLifecycleManager = indexLifecycleManager;
+    this.tagRollupManager = tagRollupManager;
     if (properties.isEnabled()) {
-      bulkProcessor = new BulkProcessorProxy(client);
+      bulkIndexer = new BulkIndexer(client, properties);
+      bulkIndexer.setFailureHandler(requests -> {
+        requests.forEach(pendingRollups::remove);
+        fallback.accept(toTagDocuments(requests));
+      });
+      if (tagRollupManager.isEnabled()) {
+        bulkIndexer.setSuccessHandler(this::addToRollups);
+      }
     }
   }
 
+  /**
+   * Sets where the tags that could not be indexed are written to, typically
+   * the fallback file of the tag persistence manager.
+   *
+   * @param fallback consumer of the tags that could not be indexed
+   */
+  public void setFallback(Consumer<List<TagDocument>> fallback) {
+    this.fallback = fallback;
+  }
+
   @Override
   public void storeData(TagDocument tag) throws IDBPersistenceException {
     storeData(Collections.singletonList(tag));
   }
 
+  /**
+   * Hands the tags to the bulk indexer, which sends them asynchronously.
+   * Tags which cannot be indexed are written to the fallback afterwards, and
+   * the tags are rejected right away while the cluster cannot be reached.
+   */
   @Override
   public void storeData(List<TagDocument> tags) throws IDBPersistenceException {
+    if (bulkIndexer == null || closed || !bulkIndexer.isHealthy()) {
+      throw new IDBPersistenceException("Elasticsearch cluster not reachable");
+    }
     try {
       log.debug("Trying to send a batch of size {}", tags.size());
       tags.forEach(this::indexTag);
-
-      bulkProcessor.flush();
     } catch (Exception e) {
       log.warn("Error indexing batch", e);
       throw new IDBPersistenceException(e);
@@ -86,30 +134,130 @@ public class TagDocumentIndexer implements IDBPersistenceHandler<TagDocument> {
   }
 
   private void indexTag(TagDocument tag) {
-    String index = getOrCreateIndex(tag);
+    String index = indexLifecycleManager.getOrCreateIndex(tag);
 
     log.trace("Indexing tag (#{}, index={}, type={})", tag.getId(), index, ElasticsearchProperties.TYPE);
 
     IndexRequest indexNewTag = new IndexRequest(index, ElasticsearchProperties.TYPE)
-        .source(tag.toString(), XContentType.JSON)
+        .source(tag.toJson(), XContentType.JSON)
         .routing(tag.getId());
 
-    bulkProcessor.add(indexNewTag);
+    if (tagRollupManager.isEnabled() && tag.get("value") instanceof Number) {
+      pendingRollups.put(indexNewTag, tag);
+    }
+    bulkIndexer.add(indexNewTag);
   }
 
-  private String getOrCreateIndex(TagDocument tag) {
-    IndexMetadata indexMetadata = IndexMetadata.builder().name(indexNameManager.indexFor(tag)).build();
+  private void addToRollups(List<DocWriteRequest<?>> requests) {
+    for (DocWriteRequest<?> request : requests) {
+      TagDocument tag = pendingRollups.remove(request);
+      if (tag != null) {
+        tagRollupManager.add(tag);
+      }
+    }
+  }
 
-    if (!indexManager.exists(indexMetadata)) {
-      indexManager.create(indexMetadata, MappingFactory.createTagMapping());
+  private static List<TagDocument> toTagDocuments(List<DocWriteRequest<?>> requests) {
+    List<TagDocument> tags = new ArrayList<>(requests.size());
+    TagDocument reader = new TagDocument();
+    for (DocWriteRequest<?> request : requests) {
+      tags.add((TagDocument) reader.getObject(((IndexRequest) request).source().utf8ToString()));
+    }
+    return tags;
+  }
+
+  /**
+   * Sends the pending tags before shutdown. Called when the bean stops, i.e.
+   * before the rollups are stopped, so that the last indexed values are
+   * still added to them.
+   */
+  @PreDestroy
+  public synchronized void close() {
+    if (bulkIndexer != null && !closed) {
+      closed = true;
+      bulkIndexer.close();
     }
+  }
 
-    return indexMetadata.getName();
+  @Override
+  public boolean isAutoStartup() {
+    return true;
+  }
 
+  @Override
+  public void stop(Runnable callback) {
+    stop();
+    callback.run();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    close();
+    running = false;
+  }
+
+  @Override
+  public int getPhase() {
+    return ServerConstants.PHASE_STOP_LAST - 1;
   }
 
   @Override
   public String getDBInfo() {
     return "elasticsearch/tag";
   }
+
+  @ManagedAttribute(description = "Number of bulk requests sent to Elasticsearch")
+  public long getBulks() {
+    return bulkIndexer == null ? 0 : bulkIndexer.getBulks();
+  }
+
+  @ManagedAttribute(description = "Number of tags successfully indexed")
+  public long getIndexedDocuments() {
+    return bulkIndexer == null ? 0 : bulkIndexer.getIndexedDocuments();
+  }
+
+  @ManagedAttribute(description = "Number of tag rejections (HTTP 429) by the cluster, retries included")
+  public long getRejectedDocuments() {
+    return bulkIndexer == null ? 0 : bulkIndexer.getRejectedDocuments();
+  }
+
+  @ManagedAttribute(description = "Share of the indexing attempts rejected by the cluster")
+  public double getRejectionRate() {
+    return bulkIndexer == null ? 0 : bulkIndexer.getRejectionRate();
+  }
+
+  @ManagedAttribute(description = "Number of tags written to the fallback after a bulk failure")
+  public long getFailedDocuments() {
+    return bulkIndexer == null ? 0 : bulkIndexer.getFailedDocuments();
+  }
+
+  @ManagedAttribute(description = "Number of rejected tags waiting for a retry")
+  public int getRetryingDocuments() {
+    return bulkIndexer == null ? 0 : bulkIndexer.getRetryingDocuments();
+  }
+
+  @ManagedAttribute(description = "Duration in ms of the last bulk request")
+  public long getLastBulkLatency() {
+    return bulkIndexer == null ? 0 : bulkIndexer.getLastBulkLatency();
+  }
+
+  @ManagedAttribute(description = "Number of tags in the last bulk request")
+  public int getLastBulkSize() {
+    return bulkIndexer == null ? 0 : bulkIndexer.getLastBulkSize();
+  }
+
+  @ManagedAttribute(description = "Estimated size in bytes of the last bulk request")
+  public long getLastBulkBytes() {
+    return bulkIndexer == null ? 0 : bulkIndexer.getLastBulkBytes();
+  }
 }
@@ -0,0 +1,154 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cern.c2mon.server.elasticsearch.exception.ProcessingException;
+
+/**
+ * Serializes the documents sent to Elasticsearch straight to UTF-8 JSON
+ * bytes with a streaming generator.
+ * <p>
+ * Compared to {@link ObjectMapper#writeValueAsString(Object)} followed by
+ * the UTF-8 encoding done by the index request, no intermediate String is
+ * built: each thread writes into its own reusable buffer, the field names
+ * are written from cached pre-encoded tokens and the only allocation per
+ * document is the returned array. The output is the same as the one of the
+ * {@link ObjectMapper}, values of types other than maps, collections, strings,
+ * numbers and booleans are delegated to it.
+ */
+public final class JsonDocumentWriter {
+
+  /** Number of distinct field names kept as pre-encoded tokens. */
+  private static final int MAX_CACHED_FIELD_NAMES = 10_000;
+
+  /** Capacity above which a thread does not keep its buffer. */
+  private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+  private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+
+  private static final ConcurrentMap<String, SerializableString> FIELD_NAMES = new ConcurrentHashMap<>();
+
+  private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+  private JsonDocumentWriter() {
+    /* Only static methods below. */
+  }
+
+  /**
+   * @param document to serialize
+   * @return the UTF-8 encoded JSON representation of the document
+   */
+  public static byte[] toJson(Map<String, ?> document) {
+    Buffer buffer = BUFFERS.get();
+    buffer.reset();
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(buffer)) {
+      writeValue(generator, document);
+    } catch (IOException e) {
+      throw new ProcessingException("Error serializing document", e);
+    }
+    byte[] json = buffer.toByteArray();
+    if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+      BUFFERS.remove();
+    }
+    return json;
+  }
+
+  private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+    } else if (value instanceof String) {
+      generator.writeString((String) value);
+    } else if (value instanceof Map) {
+      generator.writeStartObject();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        generator.writeFieldName(fieldName(String.valueOf(entry.getKey())));
+        writeValue(generator, entry.getValue());
+      }
+      generator.writeEndObject();
+    } else if (value instanceof Collection) {
+      generator.writeStartArray();
+      for (Object element : (Collection<?>) value) {
+        writeValue(generator, element);
+      }
+      generator.writeEndArray();
+    } else if (value instanceof Boolean) {
+      generator.writeBoolean((Boolean) value);
+    } else if (value instanceof Number) {
+      writeNumber(generator, (Number) value);
+    } else {
+      generator.writeObject(value);
+    }
+  }
+
+  private static void writeNumber(JsonGenerator generator, Number value) throws IOException {
+    if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      generator.writeNumber(value.intValue());
+    } else if (value instanceof Long) {
+      generator.writeNumber(value.longValue());
+    } else if (value instanceof Double) {
+      generator.writeNumber(value.doubleValue());
+    } else if (value instanceof Float) {
+      generator.writeNumber(value.floatValue());
+    } else if (value instanceof BigDecimal) {
+      generator.writeNumber((BigDecimal) value);
+    } else if (value instanceof BigInteger) {
+      generator.writeNumber((BigInteger) value);
+    } else {
+      generator.writeObject(value);
+    }
+  }
+
+  private static SerializableString fieldName(String name) {
+    SerializableString token = FIELD_NAMES.get(name);
+    if (token == null) {
+      token = new SerializedString(name);
+      if (FIELD_NAMES.size() < MAX_CACHED_FIELD_NAMES) {
+        FIELD_NAMES.putIfAbsent(name, token);
+      }
+    }
+    return token;
+  }
+
+  /**
+   * Output stream giving access to the capacity of its buffer.
+   */
+  private static final class Buffer extends ByteArrayOutputStream {
+
+    Buffer() {
+      super(4096);
+    }
+
+    int capacity() {
+      return buf.length;
+    }
+  }
+}
@@ -79,4 +79,35 @@ public class IndexNameManagerTestSuite {
     String index = indexNameManager.indexFor(document);
     assertEquals("Daily index name should contain day definition", "c2mon-tag_2015-12-01", index);
   }
+
+  @Test
+  public void indexOfEventTimestamp() {
+    indexNameManager.getProperties().setIndexType("D");
+
+    TagDocument current = new TagDocument();
+    current.put(TIMESTAMP_PROPERTY, 1448928000000L);
+    TagDocument late = new TagDocument();
+    late.put(TIMESTAMP_PROPERTY, 1448928000000L - 86400000L);
+
+    assertEquals("c2mon-tag_2015-12-01", indexNameManager.indexFor(current));
+    assertEquals("Late data should be routed to the index of its own day", "c2mon-tag_2015-11-30", indexNameManager.indexFor(late));
+    assertEquals("c2mon-tag_2015-12-01", indexNameManager.indexFor(current));
+  }
+
+  @Test
+  public void indexWithoutTimestamp() {
+    indexNameManager.getProperties().setIndexType("M");
+
+    assertEquals("Documents without timestamp should be routed by the current time", "c2mon-tag_2015-12", indexNameManager.indexFor(new TagDocument()));
+  }
+
+  @Test
+  public void upcomingIndex() {
+    indexNameManager.getProperties().setIndexType("M");
+
+    assertEquals("c2mon-tag_2016-01", indexNameManager.upcomingIndexFor(IndexNameManager.TAG_INDEX, 1451606400000L));
+    TagDocument document = new TagDocument();
+    document.put(TIMESTAMP_PROPERTY, 1448928000000L);
+    assertEquals("c2mon-tag_2015-12", indexNameManager.indexFor(document));
+  }
 }
@@ -0,0 +1,175 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.bulk;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.awaitility.Awaitility;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.elasticsearch.client.ElasticsearchClient;
+import cern.c2mon.server.elasticsearch.config.ElasticsearchProperties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the per-item outcome handling of {@link BulkIndexer}, against a bulk
+ * consumer answering in place of the cluster.
+ */
+public class BulkIndexerTest {
+
+  private final ElasticsearchClient client = mock(ElasticsearchClient.class);
+
+  private final ElasticsearchProperties properties = new ElasticsearchProperties();
+
+  private final List<DocWriteRequest<?>> failed = new CopyOnWriteArrayList<>();
+
+  /** Answers the outcome of each document sent to the "cluster", null for success. */
+  private volatile Function<DocWriteRequest<?>, Exception> cluster = request -> null;
+
+  private BulkIndexer indexer;
+
+  @Before
+  public void setUp() {
+    properties.setBulkRetries(3);
+    properties.setBulkRetryBackoff(1);
+    when(client.getBulkProcessor(any(BulkProcessor.Listener.class))).thenAnswer(invocation ->
+        BulkProcessor.builder((request, listener) -> {
+          List<BulkItemResponse> items = new ArrayList<>();
+          int i = 0;
+          for (DocWriteRequest<?> itemRequest : request.requests()) {
+            Exception failure = cluster.apply(itemRequest);
+            if (failure == null) {
+              IndexResponse response = new IndexResponse(new ShardId(itemRequest.index(), "_na_", 0),
+                  itemRequest.type(), itemRequest.id(), 1, 1, 1, true);
+              items.add(new BulkItemResponse(i++, DocWriteRequest.OpType.INDEX, response));
+            } else {
+              items.add(new BulkItemResponse(i++, itemRequest.opType(),
+                  new BulkItemResponse.Failure(itemRequest.index(), itemRequest.type(), itemRequest.id(), failure)));
+            }
+          }
+          listener.onResponse(new BulkResponse(items.toArray(new BulkItemResponse[0]), 1));
+        }, (BulkProcessor.Listener) invocation.getArguments()[0])
+            .setBulkActions(1)
+            .setConcurrentRequests(0)
+            .setBackoffPolicy(BackoffPolicy.noBackoff())
+            .build());
+
+    indexer = new BulkIndexer(client, properties);
+    indexer.setFailureHandler(failed::addAll);
+  }
+
+  @Test
+  public void rejectedDocumentsAreRetried() {
+    Set<String> rejectedOnce = new HashSet<>();
+    cluster = request -> rejectedOnce.add(request.id()) ? new EsRejectedExecutionException("queue full") : null;
+
+    indexer.add(request("1"));
+    indexer.add(request("2"));
+
+    Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> indexer.getIndexedDocuments() == 2);
+    assertEquals(2, indexer.getRejectedDocuments());
+    assertEquals(0.5, indexer.getRejectionRate(), 0.001);
+    assertEquals(0, indexer.getRetryingDocuments());
+    assertTrue(failed.isEmpty());
+  }
+
+  @Test
+  public void exhaustedRetriesAreHandedToFailureHandler() {
+    cluster = request -> new EsRejectedExecutionException("queue full");
+
+    indexer.add(request("1"));
+
+    Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> failed.size() == 1);
+    assertEquals(4, indexer.getRejectedDocuments());
+    assertEquals(0, indexer.getIndexedDocuments());
+    assertEquals("1", failed.get(0).id());
+  }
+
+  @Test
+  public void failedDocumentsAreHandedToFailureHandler() {
+    cluster = request -> "2".equals(request.id()) ? new MapperParsingException("bad document") : null;
+
+    indexer.add(request("1"));
+    indexer.add(request("2"));
+
+    assertEquals(1, indexer.getIndexedDocuments());
+    assertEquals(1, failed.size());
+    assertEquals("2", failed.get(0).id());
+    assertTrue(indexer.isHealthy());
+  }
+
+  @Test
+  public void failedUpdatesAreHandedToFailureHandler() {
+    cluster = request -> request instanceof UpdateRequest ? new DocumentMissingException(null, "type", "2") : null;
+
+    UpdateRequest update = new UpdateRequest("c2mon-rollup-minute_2019-01", ElasticsearchProperties.TYPE, "2")
+        .doc("{\"count\":1}", XContentType.JSON);
+    indexer.add(request("1"));
+    indexer.add(update);
+
+    assertEquals(1, indexer.getIndexedDocuments());
+    assertEquals(1, indexer.getFailedDocuments());
+    assertEquals(1, failed.size());
+    assertSame(update, failed.get(0));
+  }
+
+  @Test
+  public void failedBulkMarksIndexerUnhealthy() {
+    when(client.isClientHealthy()).thenReturn(false);
+    cluster = request -> {
+      throw new IllegalStateException(new ConnectException("Connection refused"));
+    };
+
+    indexer.add(request("1"));
+
+    assertFalse(indexer.isHealthy());
+    assertEquals(1, failed.size());
+  }
+
+  private static IndexRequest request(String id) {
+    return new IndexRequest("c2mon-tag_2019-01", ElasticsearchProperties.TYPE, id)
+        .source("{\"id\":" + id + "}", XContentType.JSON);
+  }
+}
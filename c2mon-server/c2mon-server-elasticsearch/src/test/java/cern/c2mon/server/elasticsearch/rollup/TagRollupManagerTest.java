@@ -0,0 +1,193 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.rollup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.elasticsearch.IndexManager;
+import cern.c2mon.server.elasticsearch.client.ElasticsearchClient;
+import cern.c2mon.server.elasticsearch.config.ElasticsearchProperties;
+import cern.c2mon.server.elasticsearch.domain.IndexMetadata;
+import cern.c2mon.server.elasticsearch.tag.TagDocument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link TagRollupManager}, against a bulk consumer capturing the
+ * rollup updates.
+ */
+public class TagRollupManagerTest {
+
+  private static final long HOUR = 1546300800000L;
+
+  private final ElasticsearchClient client = mock(ElasticsearchClient.class);
+
+  private final IndexManager indexManager = mock(IndexManager.class);
+
+  private final ElasticsearchProperties properties = new ElasticsearchProperties();
+
+  private final List<UpdateRequest> updates = new CopyOnWriteArrayList<>();
+
+  /** Whether the "cluster" fails the updates. */
+  private volatile boolean failing = false;
+
+  private TagRollupManager manager;
+
+  @Before
+  public void setUp() {
+    properties.setRollupFlushInterval(3600);
+    when(client.getBulkProcessor(any(BulkProcessor.Listener.class))).thenAnswer(invocation ->
+        BulkProcessor.builder((request, listener) -> {
+          List<BulkItemResponse> items = new ArrayList<>();
+          int i = 0;
+          for (DocWriteRequest<?> itemRequest : request.requests()) {
+            if (failing) {
+              items.add(new BulkItemResponse(i++, DocWriteRequest.OpType.UPDATE, new BulkItemResponse.Failure(
+                  itemRequest.index(), itemRequest.type(), itemRequest.id(), new IllegalStateException("script failed"))));
+            } else {
+              updates.add((UpdateRequest) itemRequest);
+              items.add(new BulkItemResponse(i++, DocWriteRequest.OpType.UPDATE, new UpdateResponse(
+                  new ShardId(itemRequest.index(), "_na_", 0), itemRequest.type(), itemRequest.id(), 1, DocWriteResponse.Result.UPDATED)));
+            }
+          }
+          listener.onResponse(new BulkResponse(items.toArray(new BulkItemResponse[0]), 1));
+        }, (BulkProcessor.Listener) invocation.getArguments()[0])
+            .setBulkActions(1)
+            .setConcurrentRequests(0)
+            .setBackoffPolicy(BackoffPolicy.noBackoff())
+            .build());
+
+    manager = new TagRollupManager(client, properties, indexManager);
+    manager.start();
+  }
+
+  @After
+  public void tearDown() {
+    manager.stop();
+  }
+
+  @Test
+  public void bucketsPerMinuteAndHour() {
+    manager.add(document(1L, HOUR + 1_000, 4.0));
+    manager.add(document(1L, HOUR + 2_000, 2.0));
+    manager.add(document(1L, HOUR + 61_000, 6.0));
+    manager.flush();
+
+    Map<String, UpdateRequest> byId = updates.stream().collect(Collectors.toMap(
+        update -> update.index() + "/" + update.id(), update -> update));
+    assertEquals(3, byId.size());
+
+    Map<String, Object> firstMinute = byId.get(RollupInterval.MINUTE.indexFor("c2mon", HOUR) + "/1_" + HOUR)
+        .upsertRequest().sourceAsMap();
+    assertEquals(2.0, firstMinute.get("min"));
+    assertEquals(4.0, firstMinute.get("max"));
+    assertEquals(3.0, firstMinute.get("avg"));
+    assertEquals(2, ((Number) firstMinute.get("count")).intValue());
+    assertEquals(2.0, firstMinute.get("last"));
+
+    Map<String, Object> hour = byId.get(RollupInterval.HOUR.indexFor("c2mon", HOUR) + "/1_" + HOUR)
+        .upsertRequest().sourceAsMap();
+    assertEquals(3, ((Number) hour.get("count")).intValue());
+    assertEquals(12.0, hour.get("sum"));
+    assertEquals(6.0, hour.get("last"));
+    assertEquals(HOUR + 61_000, ((Number) hour.get("lastTimestamp")).longValue());
+
+    UpdateRequest update = byId.get(RollupInterval.HOUR.indexFor("c2mon", HOUR) + "/1_" + HOUR);
+    assertEquals(TagRollupManager.MERGE_SCRIPT, update.script().getIdOrCode());
+    assertEquals("1", update.routing());
+
+    verify(indexManager, times(3)).create(any(IndexMetadata.class), anyString());
+  }
+
+  @Test
+  public void onlyChangesSinceLastFlushAreMerged() {
+    manager.add(document(1L, HOUR, 1.0));
+    manager.flush();
+    updates.clear();
+
+    manager.flush();
+    assertTrue(updates.isEmpty());
+
+    manager.add(document(1L, HOUR + 10, 5.0));
+    manager.flush();
+    assertEquals(2, updates.size());
+    for (UpdateRequest update : updates) {
+      assertEquals(1, ((Number) update.upsertRequest().sourceAsMap().get("count")).intValue());
+      assertEquals(5.0, update.script().getParams().get("sum"));
+    }
+  }
+
+  @Test
+  public void failedBucketsAreMergedWithTheNextFlush() {
+    failing = true;
+    manager.add(document(1L, HOUR, 1.0));
+    manager.flush();
+    assertTrue(updates.isEmpty());
+
+    failing = false;
+    manager.add(document(1L, HOUR + 10, 5.0));
+    manager.flush();
+    assertEquals(2, updates.size());
+    for (UpdateRequest update : updates) {
+      assertEquals(2, ((Number) update.upsertRequest().sourceAsMap().get("count")).intValue());
+      assertEquals(6.0, update.script().getParams().get("sum"));
+      assertEquals(5.0, update.script().getParams().get("last"));
+    }
+  }
+
+  @Test
+  public void nonNumericValuesAreIgnored() {
+    TagDocument document = document(1L, HOUR, 1.0);
+    document.put("value", "text");
+    manager.add(document);
+    manager.flush();
+
+    assertTrue(updates.isEmpty());
+  }
+
+  private static TagDocument document(long id, long timestamp, double value) {
+    TagDocument document = new TagDocument();
+    document.put("id", id);
+    document.put("timestamp", timestamp);
+    document.put("value", value);
+    return document;
+  }
+}
@@ -0,0 +1,87 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.junit.Assume;
+import org.junit.Test;
+
+import cern.c2mon.server.elasticsearch.tag.TagDocument;
+
+import static cern.c2mon.server.elasticsearch.util.JsonDocumentWriterTest.createDocuments;
+
+/**
+ * Compares the bytes allocated and the time spent to serialize
+ * metadata-heavy tag documents into the source of an index request,
+ * through a String (previous implementation) and with the streaming
+ * {@link JsonDocumentWriter}, and logs the results.
+ *
+ * <p>Not part of the unit tests, as its name does not match the test
+ * class patterns. Run it with
+ * <code>mvn test -Dtest=JsonDocumentWriterBenchmark</code>.
+ */
+@Slf4j
+public class JsonDocumentWriterBenchmark {
+
+  private static final int DOCUMENTS = 20_000;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void serialization() {
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadBean;
+    Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+    List<TagDocument> documents = createDocuments(DOCUMENTS);
+    Consumer<TagDocument> viaString = document -> {
+      try {
+        new BytesArray(mapper.writeValueAsString(document));
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    };
+    Consumer<TagDocument> streaming = document -> new BytesArray(JsonDocumentWriter.toJson(document));
+
+    // warm-up
+    documents.forEach(viaString);
+    documents.forEach(streaming);
+
+    long threadId = Thread.currentThread().getId();
+    long start = allocations.getThreadAllocatedBytes(threadId);
+    long time = System.nanoTime();
+    documents.forEach(viaString);
+    long stringTime = System.nanoTime() - time;
+    long stringBytes = allocations.getThreadAllocatedBytes(threadId) - start;
+
+    start = allocations.getThreadAllocatedBytes(threadId);
+    time = System.nanoTime();
+    documents.forEach(streaming);
+    long streamingTime = System.nanoTime() - time;
+    long streamingBytes = allocations.getThreadAllocatedBytes(threadId) - start;
+
+    log.info("String:    {} bytes/document, {} documents/s", stringBytes / DOCUMENTS, DOCUMENTS * 1_000_000_000L / stringTime);
+    log.info("Streaming: {} bytes/document, {} documents/s", streamingBytes / DOCUMENTS, DOCUMENTS * 1_000_000_000L / streamingTime);
+  }
+}
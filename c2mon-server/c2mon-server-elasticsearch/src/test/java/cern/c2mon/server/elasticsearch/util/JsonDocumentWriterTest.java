@@ -0,0 +1,155 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.elasticsearch.util;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.junit.Assume;
+import org.junit.Test;
+
+import cern.c2mon.server.elasticsearch.tag.TagDocument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link JsonDocumentWriter}.
+ */
+public class JsonDocumentWriterTest {
+
+  private static final int DOCUMENTS = 1_000;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void sameJsonAsObjectMapper() throws Exception {
+    for (TagDocument document : createDocuments(10)) {
+      String expected = mapper.writeValueAsString(document);
+      byte[] json = JsonDocumentWriter.toJson(document);
+
+      assertEquals(expected, new String(json, StandardCharsets.UTF_8));
+      assertEquals(mapper.readTree(expected), mapper.readTree(json));
+    }
+  }
+
+  @Test
+  public void nonAsciiAndSpecialValues() throws Exception {
+    TagDocument document = new TagDocument();
+    document.put("id", 1L);
+    document.put("name", "température \"sonde\" – Genève");
+    document.put("valueObject", Arrays.asList(1.5f, null, true, new int[]{1, 2}));
+    document.put("description", null);
+
+    assertEquals(mapper.writeValueAsString(document), document.toString());
+    assertEquals(mapper.readTree(mapper.writeValueAsString(document)), mapper.readTree(document.toJson()));
+  }
+
+  /**
+   * Checks that serializing into the source of an index request allocates
+   * less with the streaming writer than through a String (previous
+   * implementation). The throughput is compared by
+   * {@link JsonDocumentWriterBenchmark}.
+   */
+  @Test
+  public void streamingAllocatesLess() {
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadBean;
+    Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+    List<TagDocument> documents = createDocuments(DOCUMENTS);
+    Consumer<TagDocument> viaString = document -> {
+      try {
+        new BytesArray(mapper.writeValueAsString(document));
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    };
+    Consumer<TagDocument> streaming = document -> new BytesArray(JsonDocumentWriter.toJson(document));
+
+    // warm-up
+    documents.forEach(viaString);
+    documents.forEach(streaming);
+
+    long threadId = Thread.currentThread().getId();
+    long start = allocations.getThreadAllocatedBytes(threadId);
+    documents.forEach(viaString);
+    long stringBytes = allocations.getThreadAllocatedBytes(threadId) - start;
+
+    start = allocations.getThreadAllocatedBytes(threadId);
+    documents.forEach(streaming);
+    long streamingBytes = allocations.getThreadAllocatedBytes(threadId) - start;
+
+    assertTrue(streamingBytes < stringBytes);
+  }
+
+  /**
+   * @return documents shaped like the output of the tag converter, with
+   * tag metadata
+   */
+  static List<TagDocument> createDocuments(int count) {
+    List<TagDocument> documents = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      TagDocument document = new TagDocument();
+      document.put("id", 100_000L + i);
+      document.put("name", "CV.PLANT.SECTOR" + (i % 50) + ".PUMP" + i + ":PRESSURE");
+      document.put("description", "Outlet pressure of pump " + i + " in the cooling plant");
+      document.put("unit", "bar");
+      document.put("mode", (short) 0);
+      document.put("timestamp", 1546300800000L + i);
+      document.put("value", 1.2345 * i);
+      document.put("valueDescription", "ok");
+
+      Map<String, Object> metadata = new HashMap<>();
+      metadata.put("building", "864");
+      metadata.put("responsible", "operator-" + (i % 7));
+      metadata.put("location", "Point " + (i % 8));
+      metadata.put("system", "cooling");
+      metadata.put("priority", i % 3);
+      metadata.put("criticalComponent", i % 2 == 0);
+      metadata.put("alarmThreshold", 4.5);
+      metadata.put("cabinet", "CAB-" + (i % 120));
+      document.put("metadata", metadata);
+
+      Map<String, Object> c2mon = new HashMap<>();
+      c2mon.put("dataType", "Double");
+      c2mon.put("process", "P_CV_PLANT" + (i % 5));
+      c2mon.put("equipment", "E_CV_SECTOR" + (i % 50));
+      c2mon.put("serverTimestamp", 1546300800100L + i);
+      c2mon.put("daqTimestamp", 1546300800050L + i);
+      c2mon.put("sourceTimestamp", 1546300800000L + i);
+      document.put("c2mon", c2mon);
+
+      Map<String, Object> quality = new HashMap<>();
+      quality.put("valid", true);
+      quality.put("status", 0);
+      quality.put("statusInfo", Arrays.asList("OK"));
+      document.put("quality", quality);
+      documents.add(document);
+    }
+    return documents;
+  }
+}
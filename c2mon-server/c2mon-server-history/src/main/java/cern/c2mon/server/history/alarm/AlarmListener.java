@@ -32,6 +32,11 @@ import org.springframework.stereotype.Component;
 @Component
 public class AlarmListener implements IAlarmListener {
 
+  /**
+   * Class logger.
+   */
+  private final static Logger LOGGER = LoggerFactory.getLogger(AlarmListener.class);
+
   /**
    * Mail logger.
    */
@@ -89,4 +94,9 @@ public class AlarmListener implements IAlarmListener {
     }
   }
 
+  @Override
+  public void recoveryProgress(File file, long recovered, long remaining, long etaSeconds) {
+    LOGGER.info("History fallback recovery of {}: {} records recovered, {} remaining, estimated time left {} s",
+        file.getName(), recovered, remaining, etaSeconds);
+  }
 }
@@ -0,0 +1,87 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.compression;
+
+/**
+ * Compression state of a single tag. Only primitive values are kept: the
+ * last update which was received but not (yet) logged is rebuilt from its
+ * value and timestamps when it needs logging.
+ */
+class CompressionState {
+
+  /** Marks a timestamp which was not set */
+  static final long NO_TIME = Long.MIN_VALUE;
+
+  /** Value of the last logged update */
+  double archivedValue;
+
+  /** Time of the last logged update */
+  long archivedTime;
+
+  /** Invalid quality states of the last received update, one bit per ordinal */
+  int quality;
+
+  /** Mode of the last received update */
+  short mode;
+
+  /** Smallest upper slope of the swinging door since the last logged update */
+  double upperSlope = Double.POSITIVE_INFINITY;
+
+  /** Largest lower slope of the swinging door since the last logged update */
+  double lowerSlope = Double.NEGATIVE_INFINITY;
+
+  /** Whether an update was received but not logged */
+  boolean holding;
+
+  /** Time of the held update */
+  long heldTime;
+
+  /** Value of the held update */
+  double heldValue;
+
+  /** Source timestamp of the held update, or {@link #NO_TIME} */
+  long heldSourceTime;
+
+  /** DAQ timestamp of the held update, or {@link #NO_TIME} */
+  long heldDaqTime;
+
+  /** Cache timestamp of the held update, or {@link #NO_TIME} */
+  long heldCacheTime;
+
+  /**
+   * Marks the given update as the last logged one.
+   */
+  void archive(final double value, final long time) {
+    archivedValue = value;
+    archivedTime = time;
+    upperSlope = Double.POSITIVE_INFINITY;
+    lowerSlope = Double.NEGATIVE_INFINITY;
+    holding = false;
+  }
+
+  /**
+   * Keeps the given update as last received, but not logged update.
+   */
+  void hold(final double value, final long time, final long sourceTime, final long daqTime, final long cacheTime) {
+    holding = true;
+    heldValue = value;
+    heldTime = time;
+    heldSourceTime = sourceTime;
+    heldDaqTime = daqTime;
+    heldCacheTime = cacheTime;
+  }
+}
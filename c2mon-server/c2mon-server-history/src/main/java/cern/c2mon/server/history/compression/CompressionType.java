@@ -0,0 +1,56 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.compression;
+
+/**
+ * History compression algorithms applied to numeric tags before they are
+ * logged.
+ */
+public enum CompressionType {
+
+  /** Every update is logged */
+  NONE,
+
+  /** An update is logged if it differs by more than the deadband from the last logged value */
+  ABSOLUTE_DEADBAND,
+
+  /**
+   * An update is logged if it differs by more than the deadband (in percent of
+   * the last logged value) from the last logged value
+   */
+  RELATIVE_DEADBAND,
+
+  /**
+   * Swinging door compression: a point is logged when the straight line from
+   * the last logged point can no longer represent all intermediate values
+   * within the deadband (compression deviation)
+   */
+  SWINGING_DOOR;
+
+  /**
+   * @param name the name of the compression type (case insensitive)
+   * @return the matching type, or <code>null</code> if the name is unknown
+   */
+  public static CompressionType fromString(final String name) {
+    for (CompressionType type : values()) {
+      if (type.name().equalsIgnoreCase(name)) {
+        return type;
+      }
+    }
+    return null;
+  }
+}
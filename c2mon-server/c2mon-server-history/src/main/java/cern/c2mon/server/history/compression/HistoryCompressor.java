@@ -0,0 +1,418 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.compression;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.server.common.datatag.DataTag;
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.metadata.Metadata;
+import cern.c2mon.server.common.tag.AbstractTagCacheObject;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.server.history.config.HistoryProperties;
+import cern.c2mon.shared.common.datatag.DataTagQuality;
+import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+import cern.c2mon.shared.common.type.TypeConverter;
+
+/**
+ * Filters the tag updates that need to be logged to the history, applying
+ * deadband or swinging door compression to numeric tags.
+ *
+ * <p>The compression settings are taken from the {@link HistoryProperties}
+ * and can be overridden per tag with the metadata keys
+ * {@value #COMPRESSION_METADATA}, {@value #DEADBAND_METADATA} and
+ * {@value #MAX_GAP_METADATA}.
+ *
+ * <p>Independently of the compression, an update is always logged if the
+ * quality or the mode of the tag changed, or if the last logged update
+ * is older than the maximum gap. In these cases the last update received
+ * before, if not yet logged, is logged as well.
+ *
+ * <p>Only the value, timestamps, quality and mode of the update held back
+ * are kept. When it needs logging, it is rebuilt from these and the other
+ * fields of a later update of the tag.
+ */
+@Slf4j
+@Component
+@ManagedResource(objectName = "cern.c2mon:name=historyCompressor", description = "Compression of the tag history")
+public class HistoryCompressor {
+
+  /** Metadata key overriding the compression type of a tag */
+  public static final String COMPRESSION_METADATA = "historyCompression";
+
+  /** Metadata key overriding the compression deadband of a tag */
+  public static final String DEADBAND_METADATA = "historyDeadband";
+
+  /** Metadata key overriding the maximum gap (in milliseconds) between two logged updates of a tag */
+  public static final String MAX_GAP_METADATA = "historyMaxGap";
+
+  private final HistoryProperties properties;
+
+  /** Compression state per tag id */
+  private final Map<Long, CompressionState> states = new ConcurrentHashMap<>();
+
+  private final AtomicLong receivedUpdates = new AtomicLong();
+
+  private final AtomicLong loggedUpdates = new AtomicLong();
+
+  @Autowired
+  public HistoryCompressor(final HistoryProperties properties) {
+    this.properties = properties;
+  }
+
+  /**
+   * Applies the compression to a tag update.
+   *
+   * @param tag the tag update
+   * @return the updates to log, in chronological order (empty if the update is compressed)
+   */
+  public List<Tag> filter(final Tag tag) {
+    receivedUpdates.incrementAndGet();
+    List<Tag> toLog = doFilter(tag);
+    loggedUpdates.addAndGet(toLog.size());
+    return toLog;
+  }
+
+  private List<Tag> doFilter(final Tag tag) {
+    CompressionType type = getCompressionType(tag);
+    if (type == CompressionType.NONE || !(tag.getValue() instanceof Number)) {
+      CompressionState state = states.remove(tag.getId());
+      List<Tag> toLog = new ArrayList<>(2);
+      if (state != null && state.holding) {
+        addHeld(state, tag, toLog);
+      }
+      toLog.add(tag);
+      return toLog;
+    }
+
+    double value = ((Number) tag.getValue()).doubleValue();
+    long time = getTime(tag);
+    int quality = getQuality(tag);
+
+    CompressionState state = states.get(tag.getId());
+    if (state == null) {
+      state = new CompressionState();
+      state.archive(value, time);
+      state.quality = quality;
+      state.mode = tag.getMode();
+      states.put(tag.getId(), state);
+      return Collections.singletonList(tag);
+    }
+
+    List<Tag> toLog = new ArrayList<>(2);
+    double deadband = getDeadband(tag);
+    long maxGap = getMaxGap(tag);
+
+    if (quality != state.quality || tag.getMode() != state.mode
+        || (maxGap > 0 && time - state.archivedTime >= maxGap)) {
+      if (state.holding) {
+        addHeld(state, tag, toLog);
+      }
+      state.archive(value, time);
+      toLog.add(tag);
+    } else if (type == CompressionType.SWINGING_DOOR) {
+      applySwingingDoor(state, tag, value, time, deadband, toLog);
+    } else {
+      double threshold = type == CompressionType.RELATIVE_DEADBAND ? Math.abs(state.archivedValue) * deadband / 100 : deadband;
+      if (Math.abs(value - state.archivedValue) > threshold) {
+        state.archive(value, time);
+        toLog.add(tag);
+      } else {
+        hold(state, tag, value, time);
+      }
+    }
+    state.quality = quality;
+    state.mode = tag.getMode();
+    return toLog;
+  }
+
+  /**
+   * Swinging door compression: the doors are the smallest upper and largest
+   * lower slope from the archived point through all following values,
+   * widened by the deadband. Once the doors open (lower slope above upper
+   * slope), the previous update is logged and becomes the new pivot.
+   */
+  private void applySwingingDoor(final CompressionState state, final Tag tag, final double value, final long time,
+                                 final double deadband, final List<Tag> toLog) {
+    long dt = time - state.archivedTime;
+    if (dt <= 0) {
+      hold(state, tag, value, time);
+      return;
+    }
+    double upperSlope = Math.min(state.upperSlope, (value + deadband - state.archivedValue) / dt);
+    double lowerSlope = Math.max(state.lowerSlope, (value - deadband - state.archivedValue) / dt);
+
+    if (lowerSlope > upperSlope && state.holding) {
+      addHeld(state, tag, toLog);
+      state.archive(state.heldValue, state.heldTime);
+      dt = time - state.archivedTime;
+      if (dt > 0) {
+        state.upperSlope = (value + deadband - state.archivedValue) / dt;
+        state.lowerSlope = (value - deadband - state.archivedValue) / dt;
+      }
+    } else {
+      state.upperSlope = upperSlope;
+      state.lowerSlope = lowerSlope;
+    }
+    hold(state, tag, value, time);
+  }
+
+  private static void hold(final CompressionState state, final Tag tag, final double value, final long time) {
+    long sourceTime = CompressionState.NO_TIME;
+    long daqTime = CompressionState.NO_TIME;
+    if (tag instanceof DataTag) {
+      sourceTime = toTime(((DataTag) tag).getSourceTimestamp());
+      daqTime = toTime(((DataTag) tag).getDaqTimestamp());
+    }
+    state.hold(value, time, sourceTime, daqTime, toTime(tag.getCacheTimestamp()));
+  }
+
+  /**
+   * Rebuilds the held update of a tag and adds it to the updates to log.
+   *
+   * @param state the compression state, with the quality and mode of the held update
+   * @param current a later update of the tag, from which the other fields are taken
+   * @param toLog the updates to log
+   */
+  private static void addHeld(final CompressionState state, final Tag current, final List<Tag> toLog) {
+    if (!(current instanceof AbstractTagCacheObject)) {
+      log.warn("Cannot rebuild the held update of tag #{} from a {}", current.getId(), current.getClass().getSimpleName());
+      return;
+    }
+    AbstractTagCacheObject held;
+    try {
+      held = (AbstractTagCacheObject) current.clone();
+    } catch (CloneNotSupportedException e) {
+      log.error("Cannot rebuild the held update of tag #{}", current.getId(), e);
+      return;
+    }
+    Object value = TypeConverter.cast(state.heldValue, current.getDataType());
+    held.setValue(value != null ? value : state.heldValue);
+    held.setMode(state.mode);
+    if (getQuality(current) != state.quality) {
+      held.setDataTagQuality(toQuality(state.quality));
+    }
+    // set to null first, so that the timestamps shared with the current update are not modified
+    held.setCacheTimestamp(null);
+    held.setCacheTimestamp(toTimestamp(state.heldCacheTime));
+    if (held instanceof DataTagCacheObject) {
+      DataTagCacheObject dataTag = (DataTagCacheObject) held;
+      dataTag.setSourceTimestamp(null);
+      dataTag.setSourceTimestamp(toTimestamp(state.heldSourceTime));
+      dataTag.setDaqTimestamp(null);
+      dataTag.setDaqTimestamp(toTimestamp(state.heldDaqTime));
+    }
+    toLog.add((Tag) held);
+  }
+
+  /**
+   * Returns all updates which were received but not logged and forgets them.
+   * Used for logging the latest values on shutdown.
+   *
+   * @param tags returns the current tag of an id, from which the fields of the
+   *             held updates which are not kept are taken
+   * @return the held updates
+   */
+  public List<Tag> flush(final Function<Long, Tag> tags) {
+    List<Tag> held = new ArrayList<>();
+    for (Map.Entry<Long, CompressionState> entry : states.entrySet()) {
+      CompressionState state = entry.getValue();
+      if (state.holding) {
+        try {
+          Tag current = tags.apply(entry.getKey());
+          if (current != null) {
+            addHeld(state, current, held);
+          }
+        } catch (RuntimeException e) {
+          log.warn("Cannot log the held update of tag #{}", entry.getKey(), e);
+        }
+        state.archive(state.heldValue, state.heldTime);
+      }
+    }
+    loggedUpdates.addAndGet(held.size());
+    return held;
+  }
+
+  /**
+   * Forgets the compression state of a tag, e.g. because it was removed or
+   * is no longer logged. An update held back for the tag is discarded.
+   *
+   * @param tagId id of the tag
+   */
+  public void remove(final Long tagId) {
+    states.remove(tagId);
+  }
+
+  /**
+   * Forgets the compression state of the tags which no longer exist.
+   *
+   * @param exists tells whether a tag id still exists
+   * @return the number of tags forgotten
+   */
+  public int retainTags(final Predicate<Long> exists) {
+    int removed = 0;
+    for (Long tagId : states.keySet()) {
+      if (!exists.test(tagId) && states.remove(tagId) != null) {
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  private CompressionType getCompressionType(final Tag tag) {
+    Object override = getMetadata(tag, COMPRESSION_METADATA);
+    if (override != null) {
+      CompressionType type = CompressionType.fromString(override.toString());
+      if (type != null) {
+        return type;
+      }
+      log.warn("Unknown history compression type '{}' for tag #{} - using default", override, tag.getId());
+    }
+    return properties.getCompression().getType();
+  }
+
+  private double getDeadband(final Tag tag) {
+    Object override = getMetadata(tag, DEADBAND_METADATA);
+    if (override != null) {
+      try {
+        return Double.parseDouble(override.toString());
+      } catch (NumberFormatException e) {
+        log.warn("Invalid history deadband '{}' for tag #{} - using default", override, tag.getId());
+      }
+    }
+    return properties.getCompression().getDeadband();
+  }
+
+  private long getMaxGap(final Tag tag) {
+    Object override = getMetadata(tag, MAX_GAP_METADATA);
+    if (override != null) {
+      try {
+        return Long.parseLong(override.toString());
+      } catch (NumberFormatException e) {
+        log.warn("Invalid history maximum gap '{}' for tag #{} - using default", override, tag.getId());
+      }
+    }
+    return properties.getCompression().getMaxGap();
+  }
+
+  private static Object getMetadata(final Tag tag, final String key) {
+    Metadata metadata = tag.getMetadata();
+    if (metadata == null || metadata.getMetadata() == null) {
+      return null;
+    }
+    return metadata.getMetadata().get(key);
+  }
+
+  private static long getTime(final Tag tag) {
+    if (tag.getTimestamp() != null) {
+      return tag.getTimestamp().getTime();
+    } else if (tag.getCacheTimestamp() != null) {
+      return tag.getCacheTimestamp().getTime();
+    }
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * @return the invalid quality states of the tag, one bit per ordinal
+   */
+  private static int getQuality(final Tag tag) {
+    int quality = 0;
+    if (tag.getDataTagQuality() != null) {
+      for (TagQualityStatus status : tag.getDataTagQuality().getInvalidQualityStates().keySet()) {
+        quality |= 1 << status.ordinal();
+      }
+    }
+    return quality;
+  }
+
+  private static DataTagQuality toQuality(final int quality) {
+    DataTagQuality dataTagQuality = new DataTagQualityImpl();
+    dataTagQuality.validate();
+    for (TagQualityStatus status : TagQualityStatus.values()) {
+      if ((quality & 1 << status.ordinal()) != 0) {
+        dataTagQuality.addInvalidStatus(status);
+      }
+    }
+    return dataTagQuality;
+  }
+
+  private static long toTime(final Timestamp timestamp) {
+    return timestamp == null ? CompressionState.NO_TIME : timestamp.getTime();
+  }
+
+  private static Timestamp toTimestamp(final long time) {
+    return time == CompressionState.NO_TIME ? null : new Timestamp(time);
+  }
+
+  /**
+   * @return the number of tag updates received since startup
+   */
+  @ManagedAttribute(description = "Number of tag updates received by the history compression")
+  public long getReceivedUpdates() {
+    return receivedUpdates.get();
+  }
+
+  /**
+   * @return the number of tag updates passed on for logging since startup
+   */
+  @ManagedAttribute(description = "Number of tag updates passed on to the history")
+  public long getLoggedUpdates() {
+    return loggedUpdates.get();
+  }
+
+  /**
+   * @return the ratio between received and logged updates
+   */
+  @ManagedAttribute(description = "Ratio between received and logged tag updates")
+  public double getCompressionRatio() {
+    long logged = loggedUpdates.get();
+    return logged == 0 ? 0 : (double) receivedUpdates.get() / logged;
+  }
+
+  /**
+   * @return the number of tags with compression state
+   */
+  @ManagedAttribute(description = "Number of tags for which a compression state is kept")
+  public int getCompressedTags() {
+    return states.size();
+  }
+
+  /**
+   * Resets the compression statistics.
+   */
+  @ManagedOperation(description = "Resets the history compression statistics")
+  public void resetStatistics() {
+    receivedUpdates.set(0);
+    loggedUpdates.set(0);
+  }
+}
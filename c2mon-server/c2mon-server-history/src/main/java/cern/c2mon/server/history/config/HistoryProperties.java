@@ -1,8 +1,14 @@
 package cern.c2mon.server.history.config;
 
+import java.util.Arrays;
+import java.util.List;
+
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import cern.c2mon.server.history.compression.CompressionType;
+import cern.c2mon.server.history.partition.PartitionGranularity;
+
 /**
  * @author Justin Lewis Salmon
  */
@@ -30,8 +36,52 @@ public class HistoryProperties {
    */
   private String commandFallbackFile = "/tmp/command-fallback.txt";
 
+  /**
+   * Maximum number of Tag history records written and committed in a single JDBC batch.
+   * On MySQL, add <code>rewriteBatchedStatements=true</code> to the JDBC URL to have
+   * the driver send each batch as a multi-row insert.
+   */
+  private int tagBatchSize = 500;
+
+  /**
+   * Number of parallel connections used for writing the Tag history. Records are
+   * partitioned by tag id, so that the updates of a tag are always written in order
+   * by the same connection.
+   */
+  private int tagWriterThreads = 1;
+
+  /**
+   * Write the Tag history to the compact schema (TAGHISTORY and TAGVALUEDESC tables)
+   * instead of SHORTTERMLOG. The compact schema stores numeric and boolean values in
+   * typed columns and every distinct value description only once.
+   */
+  private boolean compactTagHistory = false;
+
+  /**
+   * Capacity of the in-memory queue in front of the Tag history database. With 0
+   * the Tag history is written synchronously by the cache listener threads,
+   * otherwise it is written in batches by a dedicated writer thread.
+   */
+  private int tagQueueCapacity = 0;
+
+  /**
+   * Number of queued Tag updates above which new updates are written directly to
+   * the fallback file (0 = 80% of the queue capacity).
+   */
+  private int tagQueueHighWatermark = 0;
+
+  /**
+   * Commit time in milliseconds above which new Tag updates are written directly
+   * to the fallback file while the queue is not empty (0 = disabled).
+   */
+  private long tagQueueSpillLatency = 0;
+
   private Jdbc jdbc = new Jdbc();
 
+  private Compression compression = new Compression();
+
+  private Partitioning partitioning = new Partitioning();
+
   @Data
   public class Jdbc {
 
@@ -44,4 +94,53 @@ public class HistoryProperties {
     /** History database account password */
     private String password = "";
   }
+
+  @Data
+  public class Compression {
+
+    /**
+     * Default compression applied to numeric tags before logging them to the
+     * history (NONE, ABSOLUTE_DEADBAND, RELATIVE_DEADBAND or SWINGING_DOOR).
+     * Can be overridden per tag with the "historyCompression" metadata.
+     */
+    private CompressionType type = CompressionType.NONE;
+
+    /**
+     * Default compression deadband: absolute value for ABSOLUTE_DEADBAND and
+     * SWINGING_DOOR, percentage of the last logged value for RELATIVE_DEADBAND.
+     * Can be overridden per tag with the "historyDeadband" metadata.
+     */
+    private double deadband = 0;
+
+    /**
+     * Maximum time in milliseconds between two logged updates of a compressed tag
+     * (0 = no limit). Can be overridden per tag with the "historyMaxGap" metadata.
+     */
+    private long maxGap = 3600000;
+  }
+
+  @Data
+  public class Partitioning {
+
+    /**
+     * Enable the management of the history table partitions. The tables must first
+     * be partitioned with the sql/history-partitioning-*.sql scripts (emulated on HSQLDB).
+     */
+    private boolean enabled = false;
+
+    /** Time range covered by one partition (DAY or WEEK) */
+    private PartitionGranularity granularity = PartitionGranularity.DAY;
+
+    /** Number of partitions created ahead of the current one */
+    private int precreate = 7;
+
+    /** Number of days of history to keep (0 = keep everything) */
+    private int retentionDays = 0;
+
+    /** Interval in milliseconds between two partition maintenance runs */
+    private long checkInterval = 3600000;
+
+    /** Partitioned history tables to manage */
+    private List<String> tables = Arrays.asList("SHORTTERMLOG", "TAGHISTORY");
+  }
 }
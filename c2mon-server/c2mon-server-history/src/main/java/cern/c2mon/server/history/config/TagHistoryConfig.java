@@ -1,11 +1,14 @@
 package cern.c2mon.server.history.config;
 
+import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.persistence.impl.PersistenceManager;
 import cern.c2mon.server.common.tag.Tag;
 import cern.c2mon.server.history.alarm.AlarmListener;
+import cern.c2mon.server.history.dao.CompactTagHistoryDAO;
 import cern.c2mon.server.history.dao.LoggerDAO;
 import cern.c2mon.server.history.logger.BatchLogger;
 import cern.c2mon.server.history.logger.DefaultLogger;
+import cern.c2mon.server.history.mapper.CompactTagRecordMapper;
 import cern.c2mon.server.history.mapper.TagRecordMapper;
 import cern.c2mon.server.history.structure.TagRecord;
 import cern.c2mon.server.history.structure.TagRecordConverter;
@@ -34,12 +37,27 @@ public class TagHistoryConfig {
   @Bean
   public PersistenceManager<TagRecord> tagHistoryPersistenceManager(AlarmListener alarmListener) throws Exception {
     String fallbackFile = properties.getTagFallbackFile();
-    return new PersistenceManager<>(tagLoggerDAO(), fallbackFile, alarmListener, new TagRecord());
+    IDBPersistenceHandler<TagRecord> dbHandler = properties.isCompactTagHistory() ? compactTagHistoryDAO() : tagLoggerDAO();
+    PersistenceManager<TagRecord> persistenceManager =
+        new PersistenceManager<>(dbHandler, fallbackFile, alarmListener, new TagRecord());
+    persistenceManager.setQueueCapacity(properties.getTagQueueCapacity());
+    persistenceManager.setHighWatermark(properties.getTagQueueHighWatermark());
+    persistenceManager.setSpillLatency(properties.getTagQueueSpillLatency());
+    persistenceManager.setWriteBatchSize(properties.getTagBatchSize() * properties.getTagWriterThreads());
+    return persistenceManager;
   }
 
   @Bean
   public LoggerDAO<TagRecord> tagLoggerDAO() throws Exception {
     return new LoggerDAO<>(historySqlSessionFactory.getObject(), TagRecordMapper.class.getCanonicalName(),
-        properties.getJdbc().getUrl());
+        properties.getJdbc().getUrl(), properties.getTagBatchSize(), properties.getTagWriterThreads());
+  }
+
+  @Bean
+  public CompactTagHistoryDAO compactTagHistoryDAO() throws Exception {
+    LoggerDAO<TagRecord> loggerDAO = new LoggerDAO<>(historySqlSessionFactory.getObject(),
+        CompactTagRecordMapper.class.getCanonicalName(), properties.getJdbc().getUrl(),
+        properties.getTagBatchSize(), properties.getTagWriterThreads());
+    return new CompactTagHistoryDAO(historySqlSessionFactory.getObject(), loggerDAO);
   }
 }
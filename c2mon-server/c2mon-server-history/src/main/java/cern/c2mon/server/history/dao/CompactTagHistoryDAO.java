@@ -0,0 +1,145 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.dao;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cern.c2mon.pmanager.IDBPersistenceHandler;
+import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
+import cern.c2mon.server.history.mapper.CompactTagRecordMapper;
+import cern.c2mon.server.history.structure.TagRecord;
+
+/**
+ * DAO writing tags to the compact history schema. The records are
+ * written by a {@link LoggerDAO} using the {@link CompactTagRecordMapper};
+ * before that, any value description not yet known by this DAO is stored
+ * in the <code>TAGVALUEDESC</code> table.
+ *
+ * <p>As the descriptions are stored as part of {@link #storeData(List)},
+ * records recovered from the fallback file get their descriptions stored
+ * as well.
+ */
+public class CompactTagHistoryDAO implements IDBPersistenceHandler<TagRecord> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CompactTagHistoryDAO.class);
+
+  /**
+   * Maximum number of description ids remembered, before the set is cleared
+   * (the descriptions are then simply merged again).
+   */
+  private static final int MAX_KNOWN_DESCRIPTIONS = 100000;
+
+  private final SqlSessionFactory sqlSessionFactory;
+
+  /** DAO writing the history records */
+  private final LoggerDAO<TagRecord> loggerDAO;
+
+  /** Ids of the descriptions known to be in the TAGVALUEDESC table */
+  private final Set<Long> knownDescriptionIds = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param sqlSessionFactory the history session factory
+   * @param loggerDAO the DAO writing the records, using the {@link CompactTagRecordMapper}
+   */
+  public CompactTagHistoryDAO(final SqlSessionFactory sqlSessionFactory, final LoggerDAO<TagRecord> loggerDAO) {
+    this.sqlSessionFactory = sqlSessionFactory;
+    this.loggerDAO = loggerDAO;
+  }
+
+  @Override
+  public String getDBInfo() {
+    return loggerDAO.getDBInfo();
+  }
+
+  @Override
+  public void storeData(final TagRecord object) throws IDBPersistenceException {
+    storeValueDescriptions(Collections.singletonList(object));
+    loggerDAO.storeData(object);
+  }
+
+  @Override
+  public void storeData(final List<TagRecord> data) throws IDBPersistenceException {
+    storeValueDescriptions(data);
+    loggerDAO.storeData(data);
+  }
+
+  /**
+   * Stops the parallel writer threads of the underlying DAO, if any.
+   */
+  public void shutdown() {
+    loggerDAO.shutdown();
+  }
+
+  /**
+   * Stores the value descriptions of the records which are not yet known.
+   *
+   * @param data the records about to be logged
+   * @throws IDBPersistenceException if the descriptions could not be stored; no record
+   *                                 is committed in this case
+   */
+  private void storeValueDescriptions(final List<TagRecord> data) throws IDBPersistenceException {
+    Map<Long, String> newDescriptions = new LinkedHashMap<>();
+    for (TagRecord record : data) {
+      if (record != null) {
+        Long id = record.getTagValueDescId();
+        if (id != null && !knownDescriptionIds.contains(id)) {
+          newDescriptions.put(id, record.getTagValueDesc());
+        }
+      }
+    }
+    if (newDescriptions.isEmpty()) {
+      return;
+    }
+
+    SqlSession session = null;
+    try {
+      session = sqlSessionFactory.openSession(ExecutorType.BATCH, false);
+      CompactTagRecordMapper mapper = session.getMapper(CompactTagRecordMapper.class);
+      for (Map.Entry<Long, String> description : newDescriptions.entrySet()) {
+        mapper.insertValueDescription(description.getKey(), description.getValue());
+      }
+      session.commit();
+    } catch (PersistenceException e) {
+      LOGGER.error("storeValueDescriptions() : Error storing {} value descriptions", newDescriptions.size(), e);
+      if (session != null) {
+        session.rollback();
+      }
+      throw new IDBPersistenceException(e.getMessage(), 0);
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+
+    if (knownDescriptionIds.size() + newDescriptions.size() > MAX_KNOWN_DESCRIPTIONS) {
+      knownDescriptionIds.clear();
+    }
+    knownDescriptionIds.addAll(newDescriptions.keySet());
+  }
+}
@@ -16,7 +16,13 @@
  *****************************************************************************/
 package cern.c2mon.server.history.dao;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.session.ExecutorType;
@@ -24,6 +30,9 @@ import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.IFallback;
@@ -39,6 +48,7 @@ import cern.c2mon.server.history.mapper.LoggerMapper;
  * @param <T>
  *          the object that is being logged in the history table
  */
+@ManagedResource(description = "DAO writing records to a history table")
 public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T> {
 
   /**
@@ -47,10 +57,37 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
   private static final Logger LOGGER = LoggerFactory.getLogger(LoggerDAO.class);
 
   /**
-   * Maximum number of statements that will be executed in each SQL batch
+   * Default maximum number of statements that will be executed in each SQL batch
    **/
   private static final int RECORDS_PER_BATCH = 500;
 
+  /**
+   * Maximum number of statements that will be executed and committed in each SQL batch
+   */
+  private final int batchSize;
+
+  /**
+   * Number of parallel writer connections
+   */
+  private final int writerThreads;
+
+  /**
+   * Executor running the parallel writers, or <code>null</code> if a single writer is used.
+   */
+  private ThreadPoolTaskExecutor writerExecutor;
+
+  private final AtomicLong storedRecords = new AtomicLong();
+
+  private final AtomicLong committedBatches = new AtomicLong();
+
+  private final AtomicLong failedBatches = new AtomicLong();
+
+  private final AtomicLong totalBatchLatency = new AtomicLong();
+
+  private final AtomicLong maxBatchLatency = new AtomicLong();
+
+  private volatile long lastThroughput;
+
   /**
    * The iBatis factory used to acquire database sessions.
    */
@@ -82,7 +119,35 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
    * @throws ClassNotFoundException
    */
   public LoggerDAO(SqlSessionFactory sqlSessionFactory, String mapperInterface, String dbUrl) throws ClassNotFoundException {
+    this(sqlSessionFactory, mapperInterface, dbUrl, RECORDS_PER_BATCH, 1);
+  }
+
+  /**
+   *
+   * @param sqlSessionFactory
+   * @param mapperInterface
+   *          the mapper used for the inserts
+   * @param dbUrl
+   *          only used for logging error messages
+   * @param batchSize
+   *          maximum number of statements executed and committed in one JDBC batch
+   * @param writerThreads
+   *          number of parallel writer connections; records are partitioned by id
+   * @throws ClassNotFoundException
+   */
+  public LoggerDAO(SqlSessionFactory sqlSessionFactory, String mapperInterface, String dbUrl,
+                   int batchSize, int writerThreads) throws ClassNotFoundException {
     super();
+    this.batchSize = Math.max(1, batchSize);
+    this.writerThreads = Math.max(1, writerThreads);
+    if (this.writerThreads > 1) {
+      writerExecutor = new ThreadPoolTaskExecutor();
+      writerExecutor.setCorePoolSize(this.writerThreads);
+      writerExecutor.setMaxPoolSize(this.writerThreads);
+      writerExecutor.setThreadNamePrefix("HistoryWriter-");
+      writerExecutor.setDaemon(true);
+      writerExecutor.initialize();
+    }
     this.sqlSessionFactory = sqlSessionFactory;
     Class<?> tmpInterface = Class.forName(mapperInterface);
     if (LoggerMapper.class.isAssignableFrom(tmpInterface)) {
@@ -98,7 +163,13 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
 
   /**
    * Inserts into the database a set of rows containing the data coming in
-   * several IFallback objects
+   * several IFallback objects.
+   *
+   * <p>If more than one writer is configured, the records are partitioned by
+   * id and every partition is written in parallel on its own connection. On
+   * failure the list is re-ordered so that all committed records precede the
+   * uncommitted ones, which lets the persistence manager send exactly the
+   * uncommitted records to the fallback file.
    *
    * @param data
    *          List of IFallback object whose data has to be inserted in the DB
@@ -110,7 +181,108 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
   @SuppressWarnings("unchecked")
   // add generics to persistence manager
   public final void storeData(final List data) throws IDBPersistenceException {
+    long start = System.currentTimeMillis();
+    if (writerExecutor == null || data.size() <= batchSize) {
+      BatchResult result = writeBatches((List<T>) data);
+      recordStatistics(result.committed, start);
+      if (result.exception != null) {
+        throw new IDBPersistenceException(result.exception.getMessage(), result.committed);
+      }
+    } else {
+      storeDataInParallel((List<T>) data, start);
+    }
+  }
+
+  /**
+   * Partitions the data by id and writes each partition on a separate writer
+   * thread. Null records have nothing to write and are left out of the
+   * partitions, so that they are never counted as written or failed records.
+   *
+   * @param data the records to store
+   * @param start the time at which the store operation started
+   * @throws IDBPersistenceException if one of the partitions could not be fully committed
+   */
+  private void storeDataInParallel(final List<T> data, final long start) throws IDBPersistenceException {
+    List<List<T>> partitions = new ArrayList<>(writerThreads);
+    for (int i = 0; i < writerThreads; i++) {
+      partitions.add(new ArrayList<>(data.size() / writerThreads + 1));
+    }
+    int nullRecords = 0;
+    for (T record : data) {
+      if (record != null) {
+        partitions.get(Math.floorMod(record.getId().hashCode(), writerThreads)).add(record);
+      } else {
+        nullRecords++;
+      }
+    }
+
+    List<Future<BatchResult>> futures = new ArrayList<>(writerThreads);
+    for (List<T> partition : partitions) {
+      futures.add(writerExecutor.submit(() -> writeBatches(partition)));
+    }
+
+    List<T> committedRecords = new ArrayList<>(data.size());
+    List<T> failedRecords = new ArrayList<>();
+    Exception failure = null;
+    for (int i = 0; i < writerThreads; i++) {
+      List<T> partition = partitions.get(i);
+      BatchResult result;
+      try {
+        result = futures.get(i).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        result = new BatchResult(0, e);
+      } catch (ExecutionException e) {
+        result = new BatchResult(0, e);
+      }
+      committedRecords.addAll(partition.subList(0, result.committed));
+      failedRecords.addAll(partition.subList(result.committed, partition.size()));
+      if (result.exception != null) {
+        LOGGER.error("storeData([Collection]) : Writer {} committed {} of its {} records before failing: {}",
+            i, result.committed, partition.size(), result.exception.getMessage());
+        if (failure == null) {
+          failure = result.exception;
+        }
+      }
+    }
+    recordStatistics(committedRecords.size(), start);
+
+    if (failure != null) {
+      LOGGER.error("storeData([Collection]) : {} of {} records could not be committed by the parallel writers",
+          failedRecords.size(), data.size());
+      int committed = 0;
+      try {
+        // committed and null records first, as expected by the persistence manager
+        int index = 0;
+        for (T record : committedRecords) {
+          data.set(index++, record);
+        }
+        for (int i = 0; i < nullRecords; i++) {
+          data.set(index++, null);
+        }
+        for (T record : failedRecords) {
+          data.set(index++, record);
+        }
+        committed = committedRecords.size() + nullRecords;
+      } catch (UnsupportedOperationException e) {
+        LOGGER.warn("storeData([Collection]) : Unable to re-order an unmodifiable list - reporting no committed records");
+      }
+      throw new IDBPersistenceException(failure.getMessage(), committed);
+    }
+  }
+
+  /**
+   * Writes the given records as JDBC batches on a single connection,
+   * committing after every batch.
+   *
+   * @param data the records to write
+   * @return the number of committed records and the exception that stopped
+   *         the writing, if any
+   */
+  private BatchResult writeBatches(final List<T> data) {
     SqlSession session = null;
+    Connection connection = null;
+    boolean autoCommit = false;
     int size = data.size();
     int commited = 0;
     T tag;
@@ -121,21 +293,30 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Obtained batch transacted SQL session (session: " + session.toString() + ")");
       }
+      // the pooled connections are in auto-commit mode, which would keep the
+      // statements executed before a failure within a batch
+      connection = session.getConnection();
+      autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
       LoggerMapper<T> persistenceMapper = session.getMapper(mapperInterface);
 
       // Iterate through the list of DataTagCacheObjects to insert
       // them one by one
+      long batchStart = System.currentTimeMillis();
       for (int i = 0; i != size; i++) {
-        if ((0 == i % RECORDS_PER_BATCH) && i > 0) {
+        if ((0 == i % batchSize) && i > 0) {
           if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("storeData([Collection]) : Commiting rows for i=" + i);
           }
           session.commit();
+          connection.commit();
+          recordBatch(batchStart);
+          batchStart = System.currentTimeMillis();
           commited = i;
         }
 
         if (data.get(i) != null) {
-          tag = (T) data.get(i);
+          tag = data.get(i);
           if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Logging object with ID: " + tag.getId());
           }
@@ -144,18 +325,31 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
       }
       // Commit the transaction
       session.commit();
+      connection.commit();
+      recordBatch(batchStart);
       commited = size;
-    } catch (PersistenceException e) {
+    } catch (PersistenceException | SQLException e) {
       LOGGER.error("storeData([Collection]) : Error executing/closing prepared statement for " + data.size() + " dataTags", e);
+      failedBatches.incrementAndGet();
       try {
         if (session != null) {
           session.rollback();
         }
+        if (connection != null) {
+          connection.rollback();
+        }
       } catch (Exception sql) {
         LOGGER.error("storeData([Collection]) : Error rolling back transaction.", sql);
       }
-      throw new IDBPersistenceException(e.getMessage(), commited);
+      return new BatchResult(commited, e);
     } finally {
+      try {
+        if (connection != null) {
+          connection.setAutoCommit(autoCommit);
+        }
+      } catch (Exception e) {
+        LOGGER.error("storeData([Collection]) : Error restoring the auto-commit mode.", e);
+      }
       try {
         if (session != null) {
           session.close();
@@ -164,6 +358,96 @@ public class LoggerDAO<T extends IFallback> implements IDBPersistenceHandler<T>
         LOGGER.error("storeData([Collection]) : Error closing session.", e);
       }
     }
+    return new BatchResult(commited, null);
+  }
+
+  private void recordBatch(final long batchStart) {
+    long latency = System.currentTimeMillis() - batchStart;
+    committedBatches.incrementAndGet();
+    totalBatchLatency.addAndGet(latency);
+    maxBatchLatency.accumulateAndGet(latency, Math::max);
+  }
+
+  private void recordStatistics(final int committed, final long start) {
+    long duration = System.currentTimeMillis() - start;
+    storedRecords.addAndGet(committed);
+    if (duration > 0) {
+      lastThroughput = committed * 1000L / duration;
+    }
+  }
+
+  /**
+   * Stops the parallel writer threads, if any.
+   */
+  public void shutdown() {
+    if (writerExecutor != null) {
+      writerExecutor.shutdown();
+    }
+  }
+
+  /**
+   * @return the total number of records committed to the history since startup
+   */
+  @ManagedAttribute(description = "Total number of records committed to the history table")
+  public long getStoredRecords() {
+    return storedRecords.get();
+  }
+
+  /**
+   * @return the number of committed JDBC batches since startup
+   */
+  @ManagedAttribute(description = "Number of JDBC batches committed to the history table")
+  public long getCommittedBatches() {
+    return committedBatches.get();
+  }
+
+  /**
+   * @return the number of JDBC batches that failed since startup
+   */
+  @ManagedAttribute(description = "Number of JDBC batches which failed and were rolled back")
+  public long getFailedBatches() {
+    return failedBatches.get();
+  }
+
+  /**
+   * @return the average time in milliseconds for writing and committing one batch
+   */
+  @ManagedAttribute(description = "Average time (ms) for writing and committing one batch")
+  public double getAverageBatchLatency() {
+    long batches = committedBatches.get();
+    return batches == 0 ? 0 : (double) totalBatchLatency.get() / batches;
+  }
+
+  /**
+   * @return the longest time in milliseconds for writing and committing one batch
+   */
+  @ManagedAttribute(description = "Longest time (ms) for writing and committing one batch")
+  public long getMaxBatchLatency() {
+    return maxBatchLatency.get();
+  }
+
+  /**
+   * @return the number of records per second committed during the last store operation
+   */
+  @ManagedAttribute(description = "Records per second committed during the last store operation")
+  public long getLastThroughput() {
+    return lastThroughput;
+  }
+
+  /**
+   * Number of committed records of a batch write and the exception
+   * that interrupted it, if any.
+   */
+  private static final class BatchResult {
+
+    private final int committed;
+
+    private final Exception exception;
+
+    private BatchResult(final int committed, final Exception exception) {
+      this.committed = committed;
+      this.exception = exception;
+    }
   }
 
   @Override
@@ -30,9 +30,11 @@ import org.springframework.stereotype.Service;
 
 import cern.c2mon.server.cache.C2monBufferedCacheListener;
 import cern.c2mon.server.cache.CacheRegistrationService;
+import cern.c2mon.server.cache.TagLocationService;
 import cern.c2mon.server.common.component.Lifecycle;
 import cern.c2mon.server.common.config.ServerConstants;
 import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.server.history.compression.HistoryCompressor;
 import cern.c2mon.server.history.logger.BatchLogger;
 
 /**
@@ -50,6 +52,11 @@ public class TagRecordListener implements C2monBufferedCacheListener<Tag>, Smart
    */
   private static final Logger LOGGER = LoggerFactory.getLogger(TagRecordListener.class);
 
+  /**
+   * Interval at which the compression state of removed tags is forgotten.
+   */
+  private static final long PURGE_INTERVAL = 10 * 60 * 1000L;
+
   /**
    * Reference to registration service.
    */
@@ -60,6 +67,21 @@ public class TagRecordListener implements C2monBufferedCacheListener<Tag>, Smart
    */
   private BatchLogger<Tag> tagLogger;
 
+  /**
+   * Compression applied before logging.
+   */
+  private HistoryCompressor historyCompressor;
+
+  /**
+   * Used to find the removed tags.
+   */
+  private TagLocationService tagLocationService;
+
+  /**
+   * Time of the last purge of the compression state.
+   */
+  private volatile long lastPurge = System.currentTimeMillis();
+
   /**
    * Listener container lifecycle hook.
    */
@@ -75,12 +97,17 @@ public class TagRecordListener implements C2monBufferedCacheListener<Tag>, Smart
    *
    * @param cacheRegistrationService for registering cache listeners
    * @param tagLogger for logging cache objects to the STL
+   * @param historyCompressor filters the updates that need logging
+   * @param tagLocationService used to forget the compression state of removed tags
    */
   @Autowired
-  public TagRecordListener(final CacheRegistrationService cacheRegistrationService, @Qualifier("tagLogger") final BatchLogger<Tag> tagLogger) {
+  public TagRecordListener(final CacheRegistrationService cacheRegistrationService, @Qualifier("tagLogger") final BatchLogger<Tag> tagLogger,
+                           final HistoryCompressor historyCompressor, final TagLocationService tagLocationService) {
     super();
     this.cacheRegistrationService = cacheRegistrationService;
     this.tagLogger = tagLogger;
+    this.historyCompressor = historyCompressor;
+    this.tagLocationService = tagLocationService;
   }
 
   /**
@@ -106,9 +133,25 @@ public class TagRecordListener implements C2monBufferedCacheListener<Tag>, Smart
     ArrayList<Tag> tagsToLog = new ArrayList<>(tagCollection.size());
     for (Tag tag : tagCollection) {
       if (tag.isLogged())
-        tagsToLog.add(tag);
+        tagsToLog.addAll(historyCompressor.filter(tag));
+      else
+        historyCompressor.remove(tag.getId());
     }
     tagLogger.log(tagsToLog);
+    purgeRemovedTags();
+  }
+
+  /**
+   * Forgets from time to time the compression state of the tags which were
+   * removed from the configuration.
+   */
+  private void purgeRemovedTags() {
+    long now = System.currentTimeMillis();
+    if (now - lastPurge >= PURGE_INTERVAL) {
+      lastPurge = now;
+      int removed = historyCompressor.retainTags(tagId -> tagLocationService.isInTagCache(tagId));
+      LOGGER.debug("Removed the history compression state of {} tags no longer configured", removed);
+    }
   }
 
   @Override
@@ -138,6 +181,8 @@ public class TagRecordListener implements C2monBufferedCacheListener<Tag>, Smart
   public void stop() {
     LOGGER.debug("Stopping Tag logger (history)");
     listenerContainer.stop();
+    // log the latest updates held back by the compression
+    tagLogger.log(historyCompressor.flush(tagLocationService::getCopy));
     running = false;
   }
 
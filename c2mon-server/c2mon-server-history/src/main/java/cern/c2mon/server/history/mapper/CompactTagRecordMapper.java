@@ -0,0 +1,47 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.mapper;
+
+import org.apache.ibatis.annotations.Param;
+
+import cern.c2mon.server.history.structure.TagRecord;
+
+/**
+ * Mapper interface for writing tags to the compact history
+ * schema (<code>TAGHISTORY</code> and <code>TAGVALUEDESC</code> tables),
+ * which stores values in typed columns and every distinct value
+ * description only once.
+ */
+public interface CompactTagRecordMapper extends LoggerMapper<TagRecord> {
+
+  /**
+   * Inserts a value description, unless a description with
+   * the same id already exists.
+   *
+   * @param id the id of the description
+   * @param description the value description
+   */
+  void insertValueDescription(@Param("id") Long id, @Param("description") String description);
+
+  /**
+   * Removes all rows for a given tag from the table.
+   * Only used for removing data inserted during testing.
+   *
+   * @param tagId remove all logs for a tag with this id
+   */
+  void deleteDataTagLog(Long tagId);
+}
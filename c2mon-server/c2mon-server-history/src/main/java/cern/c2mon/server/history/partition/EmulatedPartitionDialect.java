@@ -0,0 +1,61 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.partition;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Emulated partitioning for databases without range partitioning support
+ * (HSQLDB). The partitions are only recorded in the
+ * <code>HISTORY_PARTITION</code> table and dropping a partition deletes
+ * the rows below its upper bound, so that partition management and
+ * retention can be tested locally.
+ */
+class EmulatedPartitionDialect implements PartitionDialect {
+
+  private final JdbcTemplate jdbcTemplate;
+
+  EmulatedPartitionDialect(final JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public boolean isPartitioned(final String table) {
+    return true;
+  }
+
+  @Override
+  public List<String> getPartitionNames(final String table) {
+    return jdbcTemplate.queryForList("SELECT partitionname FROM HISTORY_PARTITION WHERE tablename = ?", String.class, table);
+  }
+
+  @Override
+  public void addPartition(final String table, final String name, final LocalDate upperBound) {
+    jdbcTemplate.update("INSERT INTO HISTORY_PARTITION (tablename, partitionname, upperbound) VALUES (?, ?, ?)",
+        table, name, Date.valueOf(upperBound));
+  }
+
+  @Override
+  public void dropPartition(final String table, final String name, final LocalDate upperBound) {
+    jdbcTemplate.update("DELETE FROM " + table + " WHERE logdate < ?", Date.valueOf(upperBound));
+    jdbcTemplate.update("DELETE FROM HISTORY_PARTITION WHERE tablename = ? AND partitionname = ?", table, name);
+  }
+}
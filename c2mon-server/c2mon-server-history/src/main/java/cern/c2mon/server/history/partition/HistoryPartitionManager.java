@@ -0,0 +1,252 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.partition;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import cern.c2mon.server.common.config.ServerConstants;
+import cern.c2mon.server.history.config.HistoryProperties;
+
+/**
+ * Manages the daily or weekly range partitions of the history tables.
+ *
+ * <p>At startup and then periodically, partitions are created ahead of time
+ * for the configured number of periods, and partitions whose data is older
+ * than the retention period are dropped. Dropping a partition is much cheaper
+ * than deleting the rows and leaves no fragmented indexes behind.
+ *
+ * <p>The tables must be range partitioned on <code>LOGDATE</code> (see the
+ * <code>sql/history-partitioning-*.sql</code> scripts); tables which are not
+ * partitioned are skipped. Partitions are named <code>PyyyyMMdd</code> after
+ * their exclusive upper bound. On HSQLDB the partitioning is emulated.
+ */
+@Slf4j
+@Component
+@ManagedResource(objectName = "cern.c2mon:name=historyPartitionManager", description = "History table partition management")
+public class HistoryPartitionManager implements SmartLifecycle {
+
+  private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'P'yyyyMMdd");
+
+  private final HistoryProperties.Partitioning properties;
+
+  private final PartitionDialect dialect;
+
+  private ScheduledExecutorService scheduler;
+
+  private volatile boolean running = false;
+
+  private final AtomicLong createdPartitions = new AtomicLong();
+
+  private final AtomicLong droppedPartitions = new AtomicLong();
+
+  private volatile long lastMaintenance;
+
+  @Autowired
+  public HistoryPartitionManager(final HistoryProperties properties, @Qualifier("historyDataSource") final DataSource historyDataSource) {
+    this(properties.getPartitioning(), createDialect(properties.getJdbc().getUrl(), new JdbcTemplate(historyDataSource)));
+  }
+
+  HistoryPartitionManager(final HistoryProperties.Partitioning properties, final PartitionDialect dialect) {
+    this.properties = properties;
+    this.dialect = dialect;
+  }
+
+  private static PartitionDialect createDialect(final String url, final JdbcTemplate jdbcTemplate) {
+    if (url.contains("mysql")) {
+      return new MysqlPartitionDialect(jdbcTemplate);
+    } else if (url.contains("oracle")) {
+      return new OraclePartitionDialect(jdbcTemplate);
+    } else if (url.contains("hsql")) {
+      return new EmulatedPartitionDialect(jdbcTemplate);
+    }
+    return null;
+  }
+
+  /**
+   * @param upperBound the exclusive upper bound of a partition
+   * @return the name of the partition
+   */
+  static String partitionName(final LocalDate upperBound) {
+    return upperBound.format(NAME_FORMAT);
+  }
+
+  /**
+   * Creates the missing partitions and drops the expired ones for all
+   * managed tables.
+   */
+  @ManagedOperation(description = "Creates missing and drops expired history partitions")
+  public void maintainPartitions() {
+    maintainPartitions(LocalDate.now(ZoneOffset.UTC));
+  }
+
+  /**
+   * @param today the current date (UTC, like the <code>LOGDATE</code> column)
+   */
+  synchronized void maintainPartitions(final LocalDate today) {
+    for (String table : properties.getTables()) {
+      String tableName = table.trim().toUpperCase(Locale.ROOT);
+      try {
+        maintainTable(tableName, today);
+      } catch (Exception e) {
+        log.error("Error caught when maintaining the partitions of table {}", tableName, e);
+      }
+    }
+    lastMaintenance = System.currentTimeMillis();
+  }
+
+  private void maintainTable(final String table, final LocalDate today) {
+    if (!dialect.isPartitioned(table)) {
+      log.warn("Table {} is not range partitioned - skipping partition management", table);
+      return;
+    }
+    TreeMap<LocalDate, String> partitions = new TreeMap<>();
+    for (String name : dialect.getPartitionNames(table)) {
+      try {
+        partitions.put(LocalDate.parse(name.toUpperCase(Locale.ROOT), NAME_FORMAT), name);
+      } catch (DateTimeParseException e) {
+        log.debug("Ignoring partition {} of table {}", name, table);
+      }
+    }
+
+    PartitionGranularity granularity = properties.getGranularity();
+    LocalDate target = granularity.next(granularity.start(today));
+    for (int i = 0; i < properties.getPrecreate(); i++) {
+      target = granularity.next(target);
+    }
+    LocalDate bound = granularity.next(granularity.start(today));
+    if (!partitions.isEmpty() && !bound.isAfter(partitions.lastKey())) {
+      bound = granularity.next(granularity.start(partitions.lastKey()));
+    }
+    // the first partition created after a gap also covers the missing periods
+    for (; !bound.isAfter(target); bound = granularity.next(bound)) {
+      String name = partitionName(bound);
+      dialect.addPartition(table, name, bound);
+      partitions.put(bound, name);
+      createdPartitions.incrementAndGet();
+      log.info("Created partition {} of table {}", name, table);
+    }
+
+    if (properties.getRetentionDays() > 0) {
+      LocalDate cutoff = today.minusDays(properties.getRetentionDays());
+      // never drop the last partition, as this is not allowed by all databases
+      for (LocalDate upperBound : partitions.headMap(partitions.lastKey()).keySet()) {
+        if (upperBound.isAfter(cutoff)) {
+          break;
+        }
+        String name = partitions.get(upperBound);
+        dialect.dropPartition(table, name, upperBound);
+        droppedPartitions.incrementAndGet();
+        log.info("Dropped expired partition {} of table {}", name, table);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void start() {
+    if (properties.isEnabled()) {
+      if (dialect == null) {
+        log.warn("History partition management is not supported for this database");
+      } else {
+        log.info("Starting history partition management");
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread thread = new Thread(r, "HistoryPartitionManager");
+          thread.setDaemon(true);
+          return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::maintainPartitions, 0, properties.getCheckInterval(), TimeUnit.MILLISECONDS);
+      }
+    }
+    running = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (scheduler != null) {
+      log.debug("Stopping history partition management");
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    running = false;
+  }
+
+  @Override
+  public boolean isAutoStartup() {
+    return true;
+  }
+
+  @Override
+  public void stop(final Runnable callback) {
+    stop();
+    callback.run();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return ServerConstants.PHASE_STOP_LAST;
+  }
+
+  /**
+   * @return the number of partitions created since startup
+   */
+  @ManagedAttribute(description = "Number of history partitions created since startup")
+  public long getCreatedPartitions() {
+    return createdPartitions.get();
+  }
+
+  /**
+   * @return the number of partitions dropped since startup
+   */
+  @ManagedAttribute(description = "Number of expired history partitions dropped since startup")
+  public long getDroppedPartitions() {
+    return droppedPartitions.get();
+  }
+
+  /**
+   * @return the time of the last partition maintenance (ms since epoch), or 0
+   */
+  @ManagedAttribute(description = "Time of the last partition maintenance (ms since epoch)")
+  public long getLastMaintenance() {
+    return lastMaintenance;
+  }
+}
@@ -0,0 +1,57 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.partition;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Native range partitioning on Oracle.
+ */
+class OraclePartitionDialect implements PartitionDialect {
+
+  private final JdbcTemplate jdbcTemplate;
+
+  OraclePartitionDialect(final JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public boolean isPartitioned(final String table) {
+    Integer count = jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM USER_PART_TABLES WHERE TABLE_NAME = ? AND PARTITIONING_TYPE = 'RANGE'", Integer.class, table);
+    return count != null && count > 0;
+  }
+
+  @Override
+  public List<String> getPartitionNames(final String table) {
+    return jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM USER_TAB_PARTITIONS WHERE TABLE_NAME = ?", String.class, table);
+  }
+
+  @Override
+  public void addPartition(final String table, final String name, final LocalDate upperBound) {
+    jdbcTemplate.execute("ALTER TABLE " + table + " ADD PARTITION " + name
+        + " VALUES LESS THAN (DATE '" + upperBound + "')");
+  }
+
+  @Override
+  public void dropPartition(final String table, final String name, final LocalDate upperBound) {
+    jdbcTemplate.execute("ALTER TABLE " + table + " DROP PARTITION " + name + " UPDATE GLOBAL INDEXES");
+  }
+}
@@ -0,0 +1,58 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.partition;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Database specific partition operations. Partitions are range partitions
+ * on the <code>LOGDATE</code> column and are named after their exclusive
+ * upper bound (see {@link HistoryPartitionManager#partitionName(LocalDate)}).
+ */
+interface PartitionDialect {
+
+  /**
+   * @param table the table name
+   * @return <code>true</code> if the table is range partitioned and can be managed
+   */
+  boolean isPartitioned(String table);
+
+  /**
+   * @param table the table name
+   * @return the names of all partitions of the table
+   */
+  List<String> getPartitionNames(String table);
+
+  /**
+   * Adds a partition above the existing ones.
+   *
+   * @param table the table name
+   * @param name the partition name
+   * @param upperBound the exclusive upper bound of the partition
+   */
+  void addPartition(String table, String name, LocalDate upperBound);
+
+  /**
+   * Drops a partition with all its data.
+   *
+   * @param table the table name
+   * @param name the partition name
+   * @param upperBound the exclusive upper bound of the partition
+   */
+  void dropPartition(String table, String name, LocalDate upperBound);
+}
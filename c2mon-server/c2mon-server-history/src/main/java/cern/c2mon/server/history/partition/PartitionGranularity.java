@@ -0,0 +1,65 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.partition;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Time range covered by a single history table partition.
+ */
+public enum PartitionGranularity {
+
+  /** One partition per day */
+  DAY {
+    @Override
+    LocalDate start(LocalDate date) {
+      return date;
+    }
+
+    @Override
+    LocalDate next(LocalDate start) {
+      return start.plusDays(1);
+    }
+  },
+
+  /** One partition per week, starting on Monday */
+  WEEK {
+    @Override
+    LocalDate start(LocalDate date) {
+      return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    @Override
+    LocalDate next(LocalDate start) {
+      return start.plusWeeks(1);
+    }
+  };
+
+  /**
+   * @param date any date
+   * @return the first day of the period containing the date
+   */
+  abstract LocalDate start(LocalDate date);
+
+  /**
+   * @param start the first day of a period
+   * @return the first day of the following period
+   */
+  abstract LocalDate next(LocalDate start);
+}
@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 
 import cern.c2mon.pmanager.IFallback;
 import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.shared.common.type.TypeConverter;
 
 /**
  * JavaBean that represents a row from the history database table
@@ -428,6 +429,101 @@ public class TagRecord implements IFallback, Loggable {
     return tagValueDesc;
   }
 
+  /**
+   * Used by the compact history schema.
+   *
+   * @return the value of an integral tag (Integer, Long, Short, Byte),
+   * or <code>null</code> for other data types
+   */
+  public Long getTagValueLong() {
+    if (tagValue != null && isValueOfType(Long.class, Integer.class, Short.class, Byte.class)) {
+      try {
+        return Long.valueOf(tagValue);
+      } catch (NumberFormatException e) {
+        LOG.warn("Unable to convert value {} of tag {} to a long", tagValue, tagId);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Used by the compact history schema.
+   *
+   * @return the value of a floating point tag (Float, Double),
+   * or <code>null</code> for other data types
+   */
+  public Double getTagValueDouble() {
+    if (tagValue != null && isValueOfType(Double.class, Float.class)) {
+      try {
+        return Double.valueOf(tagValue);
+      } catch (NumberFormatException e) {
+        LOG.warn("Unable to convert value {} of tag {} to a double", tagValue, tagId);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Used by the compact history schema.
+   *
+   * @return 1 or 0 for a Boolean tag, <code>null</code> for other data types
+   */
+  public Integer getTagValueBoolean() {
+    if (tagValue != null && isValueOfType(Boolean.class)) {
+      return Boolean.parseBoolean(tagValue) ? 1 : 0;
+    }
+    return null;
+  }
+
+  /**
+   * Used by the compact history schema.
+   *
+   * @return the (JSON) value of all tags which are neither numeric nor
+   * boolean, <code>null</code> otherwise
+   */
+  public String getTagValueString() {
+    if (tagValue != null && getTagValueLong() == null && getTagValueDouble() == null && getTagValueBoolean() == null) {
+      return tagValue;
+    }
+    return null;
+  }
+
+  /**
+   * Used by the compact history schema, which stores every distinct value
+   * description only once.
+   *
+   * @return the id of the value description, or <code>null</code> if the
+   * tag has no value description
+   * @see ValueDescriptions#idOf(String)
+   */
+  public Long getTagValueDescId() {
+    return ValueDescriptions.idOf(tagValueDesc);
+  }
+
+  /**
+   * Used by the compact history schema, which does not store the
+   * quality description of valid tags.
+   *
+   * @return the quality description, or <code>null</code> if the tag is valid
+   */
+  public String getTagQualityDescIfInvalid() {
+    return tagQualityCode == 0 ? null : tagQualityDesc;
+  }
+
+  /**
+   * @param types the data types to check
+   * @return true if the data type of this record is one of the given types
+   */
+  private boolean isValueOfType(Class<?>... types) {
+    Class<?> type = TypeConverter.getType(tagDataType);
+    for (Class<?> candidate : types) {
+      if (candidate.equals(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /* (non-Javadoc)
    * @see java.lang.Object#hashCode()
    */
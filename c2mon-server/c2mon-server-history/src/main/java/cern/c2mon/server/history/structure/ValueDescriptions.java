@@ -0,0 +1,57 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.structure;
+
+/**
+ * Computes the ids under which value descriptions are stored in the
+ * <code>TAGVALUEDESC</code> table of the compact history schema.
+ *
+ * <p>The id is a 64 bit FNV-1a hash of the description, so every server
+ * computes the same id for the same description without a round-trip to
+ * the database. Hash ids are always positive; negative ids are reserved
+ * for descriptions created by the migration scripts.
+ */
+public final class ValueDescriptions {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private ValueDescriptions() {
+    // static utility class
+  }
+
+  /**
+   * @param description the value description
+   * @return the id of the description, or <code>null</code> if the
+   * description is null or empty
+   */
+  public static Long idOf(final String description) {
+    if (description == null || description.isEmpty()) {
+      return null;
+    }
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < description.length(); i++) {
+      char c = description.charAt(i);
+      hash ^= (c & 0xff);
+      hash *= FNV_PRIME;
+      hash ^= (c >>> 8);
+      hash *= FNV_PRIME;
+    }
+    return hash & Long.MAX_VALUE;
+  }
+}
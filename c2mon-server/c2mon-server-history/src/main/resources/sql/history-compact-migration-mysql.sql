@@ -0,0 +1,42 @@
+-- Migrates the tag history from SHORTTERMLOG to the compact history schema.
+-- The script must only be run once.
+--
+-- The TAGHISTORY and TAGVALUEDESC tables must have been created beforehand
+-- (see history-schema-mysql.sql). Descriptions migrated by this script get
+-- negative ids, the ids computed by the server are always positive, so both
+-- can coexist in TAGVALUEDESC.
+--
+-- SHORTTERMLOG is left untouched and can be dropped once the migration has
+-- been verified and c2mon.server.history.compactTagHistory is enabled.
+
+SET @descid := 0;
+
+INSERT INTO TAGVALUEDESC (descid, description)
+SELECT (@descid := @descid - 1), t.description
+  FROM (SELECT DISTINCT tagvaluedesc AS description FROM SHORTTERMLOG WHERE tagvaluedesc IS NOT NULL) t;
+
+INSERT INTO TAGHISTORY (logdate, tagid, tagvaluelong, tagvaluedouble, tagvaluebool, tagvaluestr,
+                        tagvaluedescid, tagtime, tagservertime, tagdaqtime, tagstatus, tagstatusdesc, tagmode)
+SELECT s.logdate,
+       s.tagid,
+       CASE WHEN s.tagdatatype IN ('Integer', 'Long', 'Short', 'Byte', 'java.lang.Integer', 'java.lang.Long', 'java.lang.Short', 'java.lang.Byte')
+            THEN CAST(s.tagvalue AS SIGNED) END,
+       CASE WHEN s.tagdatatype IN ('Double', 'Float', 'java.lang.Double', 'java.lang.Float')
+            THEN s.tagvalue + 0E0 END,
+       CASE WHEN s.tagdatatype IN ('Boolean', 'java.lang.Boolean')
+            THEN CASE WHEN s.tagvalue = 'true' THEN 1 WHEN s.tagvalue = 'false' THEN 0 END END,
+       CASE WHEN s.tagdatatype IS NULL OR s.tagdatatype NOT IN ('Integer', 'Long', 'Short', 'Byte', 'java.lang.Integer', 'java.lang.Long', 'java.lang.Short', 'java.lang.Byte',
+                                                               'Double', 'Float', 'java.lang.Double', 'java.lang.Float',
+                                                               'Boolean', 'java.lang.Boolean')
+            THEN s.tagvalue END,
+       d.descid,
+       s.tagtime,
+       s.tagservertime,
+       s.tagdaqtime,
+       s.tagstatus,
+       CASE WHEN s.tagstatus = 0 THEN NULL ELSE s.tagstatusdesc END,
+       s.tagmode
+  FROM SHORTTERMLOG s
+  LEFT OUTER JOIN TAGVALUEDESC d ON d.description = s.tagvaluedesc AND d.descid < 0;
+
+COMMIT;
@@ -0,0 +1,19 @@
+-- Converts the tag history tables to range partitioned tables on LOGDATE, so
+-- that c2mon.server.history.partitioning.enabled can be switched on.
+--
+-- All existing rows are moved into one initial partition. Its upper bound must
+-- lie after the newest LOGDATE of the table: replace 2000-01-01 below by the
+-- date of tomorrow (UTC) before running the script, and keep the partition name
+-- in the form PyyyyMMdd of the bound. The server then creates the following
+-- partitions ahead of time and drops the expired ones.
+--
+-- Rebuilding a large table takes time: run the script during a maintenance
+-- window, with the server stopped.
+
+ALTER TABLE SHORTTERMLOG PARTITION BY RANGE COLUMNS(logdate) (
+  PARTITION P20000101 VALUES LESS THAN ('2000-01-01')
+);
+
+ALTER TABLE TAGHISTORY PARTITION BY RANGE COLUMNS(logdate) (
+  PARTITION P20000101 VALUES LESS THAN ('2000-01-01')
+);
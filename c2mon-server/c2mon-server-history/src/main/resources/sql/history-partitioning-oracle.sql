@@ -0,0 +1,17 @@
+-- Converts the tag history tables to range partitioned tables on LOGDATE, so
+-- that c2mon.server.history.partitioning.enabled can be switched on. Requires
+-- Oracle 12.2 or later for the online conversion.
+--
+-- All existing rows are moved into one initial partition. Its upper bound must
+-- lie after the newest LOGDATE of the table: replace 2000-01-01 below by the
+-- date of tomorrow (UTC) before running the script, and keep the partition name
+-- in the form PyyyyMMdd of the bound. The server then creates the following
+-- partitions ahead of time and drops the expired ones.
+
+ALTER TABLE SHORTTERMLOG MODIFY PARTITION BY RANGE (logdate) (
+  PARTITION P20000101 VALUES LESS THAN (DATE '2000-01-01')
+) ONLINE;
+
+ALTER TABLE TAGHISTORY MODIFY PARTITION BY RANGE (logdate) (
+  PARTITION P20000101 VALUES LESS THAN (DATE '2000-01-01')
+) ONLINE;
@@ -77,4 +77,36 @@ CREATE TABLE IF NOT EXISTS ALARMLOG (
   oscillating     VARCHAR(1)
 );
 
+-- Compact tag history: values are stored in typed columns (only one of
+-- tagvaluelong, tagvaluedouble, tagvaluebool and tagvaluestr is set per row)
+-- and value descriptions are referenced by id from TAGVALUEDESC.
+CREATE TABLE IF NOT EXISTS TAGHISTORY (
+  logdate           DATE         NOT NULL,
+  tagid             INTEGER      NOT NULL,
+  tagvaluelong      BIGINT,
+  tagvaluedouble    DOUBLE,
+  tagvaluebool      SMALLINT,
+  tagvaluestr       VARCHAR(4000),
+  tagvaluedescid    BIGINT,
+  tagtime           TIMESTAMP(6),
+  tagservertime     TIMESTAMP(6) NOT NULL,
+  tagdaqtime        TIMESTAMP(6),
+  tagstatus         INTEGER,
+  tagstatusdesc     VARCHAR(1000),
+  tagmode           SMALLINT
+);
+
+--create index th_tagid_ix on TAGHISTORY(tagid);
 
+CREATE TABLE IF NOT EXISTS TAGVALUEDESC (
+  descid            BIGINT        NOT NULL PRIMARY KEY,
+  description       VARCHAR(1000) NOT NULL
+);
+
+-- Partitions of the history tables when partition management is emulated
+CREATE TABLE IF NOT EXISTS HISTORY_PARTITION (
+  tablename         VARCHAR(30)   NOT NULL,
+  partitionname     VARCHAR(30)   NOT NULL,
+  upperbound        DATE          NOT NULL,
+  PRIMARY KEY (tablename, partitionname)
+);
@@ -74,4 +74,28 @@ CREATE TABLE IF NOT EXISTS ALARMLOG (
   oscillating     VARCHAR(1)
 );
 
+-- Compact tag history: values are stored in typed columns (only one of
+-- tagvaluelong, tagvaluedouble, tagvaluebool and tagvaluestr is set per row)
+-- and value descriptions are referenced by id from TAGVALUEDESC.
+CREATE TABLE IF NOT EXISTS TAGHISTORY (
+  logdate           DATE         NOT NULL,
+  tagid             INTEGER      NOT NULL,
+  tagvaluelong      BIGINT,
+  tagvaluedouble    DOUBLE,
+  tagvaluebool      TINYINT,
+  tagvaluestr       VARCHAR(4000),
+  tagvaluedescid    BIGINT,
+  tagtime           TIMESTAMP DEFAULT '1970-01-02 00:00:01',
+  tagservertime     TIMESTAMP NOT NULL DEFAULT '1970-01-02 00:00:01',
+  tagdaqtime        TIMESTAMP DEFAULT '1970-01-02 00:00:01',
+  tagstatus         INTEGER,
+  tagstatusdesc     VARCHAR(1000),
+  tagmode           SMALLINT
+);
 
+ALTER TABLE TAGHISTORY ADD INDEX th_servertime_tagid_idx (tagservertime, tagid);
+
+CREATE TABLE IF NOT EXISTS TAGVALUEDESC (
+  descid            BIGINT        NOT NULL PRIMARY KEY,
+  description       VARCHAR(1000) NOT NULL
+);
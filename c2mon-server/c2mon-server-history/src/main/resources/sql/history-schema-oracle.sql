@@ -75,4 +75,28 @@ CREATE TABLE ALARMLOG (
   oscillating     VARCHAR(1)
 );
 
+-- Compact tag history: values are stored in typed columns (only one of
+-- tagvaluelong, tagvaluedouble, tagvaluebool and tagvaluestr is set per row)
+-- and value descriptions are referenced by id from TAGVALUEDESC.
+CREATE TABLE TAGHISTORY (
+  logdate           DATE         NOT NULL,
+  tagid             INTEGER      NOT NULL,
+  tagvaluelong      NUMBER(19),
+  tagvaluedouble    BINARY_DOUBLE,
+  tagvaluebool      NUMBER(1),
+  tagvaluestr       VARCHAR(4000),
+  tagvaluedescid    NUMBER(19),
+  tagtime           TIMESTAMP(6),
+  tagservertime     TIMESTAMP(6) NOT NULL,
+  tagdaqtime        TIMESTAMP(6),
+  tagstatus         INTEGER,
+  tagstatusdesc     VARCHAR(1000),
+  tagmode           NUMBER(5)
+);
 
+CREATE INDEX th_servertime_tagid_ix ON TAGHISTORY(tagservertime, tagid);
+
+CREATE TABLE TAGVALUEDESC (
+  descid            NUMBER(19)    NOT NULL PRIMARY KEY,
+  description       VARCHAR(1000) NOT NULL
+);
@@ -0,0 +1,227 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.compression;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.server.common.datatag.DataTagCacheObject;
+import cern.c2mon.server.common.metadata.Metadata;
+import cern.c2mon.server.common.tag.Tag;
+import cern.c2mon.server.history.config.HistoryProperties;
+import cern.c2mon.shared.common.datatag.DataTagQualityImpl;
+import cern.c2mon.shared.common.datatag.TagQualityStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryCompressorTest {
+
+  private HistoryProperties properties;
+
+  private HistoryCompressor compressor;
+
+  @Before
+  public void setUp() {
+    properties = new HistoryProperties();
+    properties.getCompression().setMaxGap(0);
+    compressor = new HistoryCompressor(properties);
+  }
+
+  private static DataTagCacheObject update(double value, long time) {
+    DataTagCacheObject tag = new DataTagCacheObject(1L, "test", "Double", (short) 0);
+    tag.setValue(value);
+    tag.setSourceTimestamp(new Timestamp(time));
+    tag.setCacheTimestamp(new Timestamp(time));
+    tag.setDataTagQuality(new DataTagQualityImpl());
+    return tag;
+  }
+
+  @Test
+  public void testNoCompression() {
+    for (int i = 0; i < 10; i++) {
+      assertEquals(1, compressor.filter(update(1.0, i * 1000L)).size());
+    }
+    assertEquals(0, compressor.flush(tagId -> update(1.0, 10000)).size());
+  }
+
+  @Test
+  public void testAbsoluteDeadband() {
+    properties.getCompression().setType(CompressionType.ABSOLUTE_DEADBAND);
+    properties.getCompression().setDeadband(1.0);
+
+    assertEquals(1, compressor.filter(update(10.0, 0)).size());
+    assertEquals(0, compressor.filter(update(10.5, 1000)).size());
+    assertEquals(0, compressor.filter(update(10.9, 2000)).size());
+    assertEquals(1, compressor.filter(update(11.5, 3000)).size());
+    assertEquals(0, compressor.filter(update(11.0, 4000)).size());
+
+    List<Tag> flushed = compressor.flush(tagId -> update(11.2, 5000));
+    assertEquals(1, flushed.size());
+    assertEquals(11.0, flushed.get(0).getValue());
+    assertEquals(4000, flushed.get(0).getTimestamp().getTime());
+  }
+
+  @Test
+  public void testRelativeDeadbandFromMetadata() {
+    Metadata metadata = new Metadata();
+    metadata.addMetadata(HistoryCompressor.COMPRESSION_METADATA, "relative_deadband");
+    metadata.addMetadata(HistoryCompressor.DEADBAND_METADATA, "10");
+
+    DataTagCacheObject tag = update(100.0, 0);
+    tag.setMetadata(metadata);
+    assertEquals(1, compressor.filter(tag).size());
+    tag = update(109.0, 1000);
+    tag.setMetadata(metadata);
+    assertEquals(0, compressor.filter(tag).size());
+    tag = update(111.0, 2000);
+    tag.setMetadata(metadata);
+    assertEquals(1, compressor.filter(tag).size());
+  }
+
+  @Test
+  public void testQualityChangeLogsHeldAndCurrent() {
+    properties.getCompression().setType(CompressionType.ABSOLUTE_DEADBAND);
+    properties.getCompression().setDeadband(5.0);
+
+    compressor.filter(update(1.0, 0));
+    assertEquals(0, compressor.filter(update(2.0, 1000)).size());
+
+    DataTagCacheObject invalid = update(3.0, 2000);
+    invalid.getDataTagQuality().addInvalidStatus(TagQualityStatus.VALUE_OUT_OF_BOUNDS, "out of bounds");
+    List<Tag> logged = compressor.filter(invalid);
+    assertEquals(2, logged.size());
+    assertEquals(2.0, logged.get(0).getValue());
+    assertEquals(1000, logged.get(0).getTimestamp().getTime());
+    assertEquals(1000, logged.get(0).getCacheTimestamp().getTime());
+    assertFalse(logged.get(0).getDataTagQuality().isInvalidStatusSet(TagQualityStatus.VALUE_OUT_OF_BOUNDS));
+    assertSame(invalid, logged.get(1));
+    assertEquals(2000, invalid.getTimestamp().getTime());
+    assertTrue(invalid.getDataTagQuality().isInvalidStatusSet(TagQualityStatus.VALUE_OUT_OF_BOUNDS));
+  }
+
+  @Test
+  public void testHeldUpdateIsRebuiltWithItsType() {
+    properties.getCompression().setType(CompressionType.ABSOLUTE_DEADBAND);
+    properties.getCompression().setDeadband(5.0);
+
+    DataTagCacheObject tag = new DataTagCacheObject(1L, "test", "Integer", (short) 0);
+    tag.setValue(1);
+    tag.setSourceTimestamp(new Timestamp(0));
+    tag.setDataTagQuality(new DataTagQualityImpl());
+    compressor.filter(tag);
+
+    tag = new DataTagCacheObject(1L, "test", "Integer", (short) 0);
+    tag.setValue(2);
+    tag.setSourceTimestamp(new Timestamp(1000));
+    tag.setDataTagQuality(new DataTagQualityImpl());
+    assertEquals(0, compressor.filter(tag).size());
+
+    tag = new DataTagCacheObject(1L, "test", "Integer", (short) 1);
+    tag.setValue(3);
+    tag.setSourceTimestamp(new Timestamp(2000));
+    tag.setDataTagQuality(new DataTagQualityImpl());
+    List<Tag> logged = compressor.filter(tag);
+    assertEquals(2, logged.size());
+    assertEquals(2, logged.get(0).getValue());
+    assertEquals(0, logged.get(0).getMode());
+    assertEquals(1000, logged.get(0).getTimestamp().getTime());
+    assertEquals(1, logged.get(1).getMode());
+  }
+
+  @Test
+  public void testChangeBetweenInvalidStatesIsLogged() {
+    properties.getCompression().setType(CompressionType.ABSOLUTE_DEADBAND);
+    properties.getCompression().setDeadband(5.0);
+
+    DataTagCacheObject processDown = update(1.0, 0);
+    processDown.getDataTagQuality().addInvalidStatus(TagQualityStatus.PROCESS_DOWN);
+    assertEquals(1, compressor.filter(processDown).size());
+
+    DataTagCacheObject equipmentDown = update(1.0, 1000);
+    equipmentDown.getDataTagQuality().addInvalidStatus(TagQualityStatus.EQUIPMENT_DOWN);
+    List<Tag> logged = compressor.filter(equipmentDown);
+    assertEquals(1, logged.size());
+    assertSame(equipmentDown, logged.get(0));
+  }
+
+  @Test
+  public void testRemovedTagsAreForgotten() {
+    properties.getCompression().setType(CompressionType.ABSOLUTE_DEADBAND);
+    properties.getCompression().setDeadband(5.0);
+
+    compressor.filter(update(1.0, 0));
+    assertEquals(1, compressor.getCompressedTags());
+    assertEquals(0, compressor.retainTags(tagId -> true));
+    assertEquals(1, compressor.retainTags(tagId -> false));
+    assertEquals(0, compressor.getCompressedTags());
+
+    compressor.filter(update(1.0, 1000));
+    compressor.remove(1L);
+    assertEquals(0, compressor.getCompressedTags());
+  }
+
+  @Test
+  public void testMaxGap() {
+    properties.getCompression().setType(CompressionType.ABSOLUTE_DEADBAND);
+    properties.getCompression().setDeadband(5.0);
+    properties.getCompression().setMaxGap(10000);
+
+    compressor.filter(update(1.0, 0));
+    assertEquals(0, compressor.filter(update(1.0, 5000)).size());
+    assertEquals(2, compressor.filter(update(1.0, 10000)).size());
+  }
+
+  @Test
+  public void testSwingingDoorOnRamp() {
+    properties.getCompression().setType(CompressionType.SWINGING_DOOR);
+    properties.getCompression().setDeadband(0.5);
+
+    List<Tag> logged = new ArrayList<>();
+    // linear ramp followed by a constant value: only the corners need logging
+    for (int i = 0; i <= 100; i++) {
+      logged.addAll(compressor.filter(update(i, i * 1000L)));
+    }
+    for (int i = 101; i <= 200; i++) {
+      logged.addAll(compressor.filter(update(100, i * 1000L)));
+    }
+    logged.addAll(compressor.flush(tagId -> update(100, 200000L)));
+
+    assertEquals(3, logged.size());
+    assertEquals(0.0, logged.get(0).getValue());
+    assertEquals(100.0, logged.get(1).getValue());
+    assertEquals(100.0, logged.get(2).getValue());
+    assertTrue(compressor.getCompressionRatio() > 60);
+  }
+
+  @Test
+  public void testNonNumericNotCompressed() {
+    properties.getCompression().setType(CompressionType.ABSOLUTE_DEADBAND);
+    properties.getCompression().setDeadband(5.0);
+
+    DataTagCacheObject tag = new DataTagCacheObject(2L, "string", "String", (short) 0);
+    tag.setValue("a");
+    assertEquals(1, compressor.filter(tag).size());
+    assertEquals(1, compressor.filter(tag).size());
+  }
+}
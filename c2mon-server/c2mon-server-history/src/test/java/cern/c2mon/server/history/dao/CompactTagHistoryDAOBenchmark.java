@@ -0,0 +1,129 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.dao;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import cern.c2mon.server.cache.config.CacheModule;
+import cern.c2mon.server.cache.dbaccess.config.CacheDbAccessModule;
+import cern.c2mon.server.cache.loading.config.CacheLoadingModule;
+import cern.c2mon.server.command.config.CommandModule;
+import cern.c2mon.server.common.config.CommonModule;
+import cern.c2mon.server.daq.config.DaqModule;
+import cern.c2mon.server.history.config.HistoryModule;
+import cern.c2mon.server.history.mapper.CompactTagRecordMapper;
+import cern.c2mon.server.history.mapper.TagRecordMapper;
+import cern.c2mon.server.history.structure.TagRecord;
+import cern.c2mon.server.supervision.config.SupervisionModule;
+
+import static cern.c2mon.server.history.dao.CompactTagHistoryDAOTest.COMPACT_ROW_SIZE;
+import static cern.c2mon.server.history.dao.CompactTagHistoryDAOTest.DEFAULT_ROW_SIZE;
+import static cern.c2mon.server.history.dao.CompactTagHistoryDAOTest.FIRST_ID;
+import static cern.c2mon.server.history.dao.CompactTagHistoryDAOTest.NUM_TAGS;
+import static cern.c2mon.server.history.dao.CompactTagHistoryDAOTest.createRecords;
+
+/**
+ * Compares the insert throughput and estimated storage per row of the
+ * default and the compact history schema, and logs the results.
+ *
+ * <p>Not part of the unit tests, as its name does not match the test
+ * class patterns. Run it with
+ * <code>mvn test -Dtest=CompactTagHistoryDAOBenchmark</code>.
+ */
+@Slf4j
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {
+    CommonModule.class,
+    CacheModule.class,
+    CacheDbAccessModule.class,
+    CacheLoadingModule.class,
+    SupervisionModule.class,
+    CommandModule.class,
+    DaqModule.class,
+    HistoryModule.class
+})
+public class CompactTagHistoryDAOBenchmark {
+
+  @Autowired
+  @Qualifier("historySqlSessionFactory")
+  private SqlSessionFactoryBean historySqlSessionFactory;
+
+  @Autowired
+  @Qualifier("historyDataSource")
+  private DataSource historyDataSource;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Before
+  public void beforeTest() {
+    jdbcTemplate = new JdbcTemplate(historyDataSource);
+    removeTestData();
+  }
+
+  @After
+  public void afterTest() {
+    removeTestData();
+  }
+
+  private void removeTestData() {
+    jdbcTemplate.update("DELETE FROM SHORTTERMLOG WHERE tagid >= ? AND tagid < ?", FIRST_ID, FIRST_ID + NUM_TAGS);
+    jdbcTemplate.update("DELETE FROM TAGHISTORY WHERE tagid >= ? AND tagid < ?", FIRST_ID, FIRST_ID + NUM_TAGS);
+    jdbcTemplate.update("DELETE FROM TAGVALUEDESC");
+  }
+
+  @Test
+  public void insertThroughput() throws Exception {
+    List<TagRecord> records = createRecords(100);
+    LoggerDAO<TagRecord> defaultDAO = new LoggerDAO<>(historySqlSessionFactory.getObject(),
+        TagRecordMapper.class.getCanonicalName(), "test");
+    CompactTagHistoryDAO compactDAO = new CompactTagHistoryDAO(historySqlSessionFactory.getObject(),
+        new LoggerDAO<>(historySqlSessionFactory.getObject(), CompactTagRecordMapper.class.getCanonicalName(), "test"));
+
+    // warm-up
+    defaultDAO.storeData(createRecords(10));
+    compactDAO.storeData(createRecords(10));
+    removeTestData();
+
+    long start = System.nanoTime();
+    defaultDAO.storeData(records);
+    long defaultTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    compactDAO.storeData(records);
+    long compactTime = System.nanoTime() - start;
+
+    double defaultRowSize = jdbcTemplate.queryForObject(DEFAULT_ROW_SIZE, Double.class, FIRST_ID, FIRST_ID + NUM_TAGS);
+    double compactRowSize = jdbcTemplate.queryForObject(COMPACT_ROW_SIZE, Double.class, FIRST_ID, FIRST_ID + NUM_TAGS);
+
+    log.info("SHORTTERMLOG: {} rows/s, ~{} bytes/row", records.size() * 1_000_000_000L / defaultTime, (long) defaultRowSize);
+    log.info("TAGHISTORY:   {} rows/s, ~{} bytes/row", records.size() * 1_000_000_000L / compactTime, (long) compactRowSize);
+  }
+}
@@ -0,0 +1,234 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import cern.c2mon.server.cache.config.CacheModule;
+import cern.c2mon.server.cache.dbaccess.config.CacheDbAccessModule;
+import cern.c2mon.server.cache.loading.config.CacheLoadingModule;
+import cern.c2mon.server.command.config.CommandModule;
+import cern.c2mon.server.common.config.CommonModule;
+import cern.c2mon.server.daq.config.DaqModule;
+import cern.c2mon.server.history.config.HistoryModule;
+import cern.c2mon.server.history.mapper.CompactTagRecordMapper;
+import cern.c2mon.server.history.mapper.TagRecordMapper;
+import cern.c2mon.server.history.structure.TagRecord;
+import cern.c2mon.server.history.structure.ValueDescriptions;
+import cern.c2mon.server.supervision.config.SupervisionModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the compact history schema: typed value columns, normalized
+ * value descriptions and the HSQLDB migration script. Also compares the
+ * estimated storage per row of both schemas; the insert throughput is
+ * compared by {@link CompactTagHistoryDAOBenchmark}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {
+    CommonModule.class,
+    CacheModule.class,
+    CacheDbAccessModule.class,
+    CacheLoadingModule.class,
+    SupervisionModule.class,
+    CommandModule.class,
+    DaqModule.class,
+    HistoryModule.class
+})
+public class CompactTagHistoryDAOTest {
+
+  static final long FIRST_ID = 9100L;
+
+  static final int NUM_TAGS = 50;
+
+  private static final String[] DESCRIPTIONS = {"Temperature in degC", "Pressure in mbar", "Valve state", "Interlock status"};
+
+  /** Rough storage estimate per row of SHORTTERMLOG (fixed size columns + variable length content) */
+  static final String DEFAULT_ROW_SIZE = "SELECT AVG(7 + 4 + 3 * 11 + 4 + 4 + 1"
+      + " + COALESCE(LENGTH(tagname), 0) + COALESCE(LENGTH(tagvalue), 0) + COALESCE(LENGTH(tagvaluedesc), 0)"
+      + " + COALESCE(LENGTH(tagdatatype), 0) + COALESCE(LENGTH(tagstatusdesc), 0))"
+      + " FROM SHORTTERMLOG WHERE tagid >= ? AND tagid < ?";
+
+  /** Rough storage estimate per row of TAGHISTORY (fixed size columns + variable length content) */
+  static final String COMPACT_ROW_SIZE = "SELECT AVG(7 + 4 + 3 * 11 + 4 + 2"
+      + " + CASE WHEN tagvaluelong IS NULL THEN 0 ELSE 8 END + CASE WHEN tagvaluedouble IS NULL THEN 0 ELSE 8 END"
+      + " + CASE WHEN tagvaluebool IS NULL THEN 0 ELSE 2 END + CASE WHEN tagvaluedescid IS NULL THEN 0 ELSE 8 END"
+      + " + COALESCE(LENGTH(tagvaluestr), 0) + COALESCE(LENGTH(tagstatusdesc), 0))"
+      + " FROM TAGHISTORY WHERE tagid >= ? AND tagid < ?";
+
+  @Autowired
+  @Qualifier("historySqlSessionFactory")
+  private SqlSessionFactoryBean historySqlSessionFactory;
+
+  @Autowired
+  @Qualifier("historyDataSource")
+  private DataSource historyDataSource;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Before
+  public void beforeTest() {
+    jdbcTemplate = new JdbcTemplate(historyDataSource);
+    removeTestData();
+  }
+
+  @After
+  public void afterTest() {
+    removeTestData();
+  }
+
+  private void removeTestData() {
+    jdbcTemplate.update("DELETE FROM SHORTTERMLOG WHERE tagid >= ? AND tagid < ?", FIRST_ID, FIRST_ID + NUM_TAGS);
+    jdbcTemplate.update("DELETE FROM TAGHISTORY WHERE tagid >= ? AND tagid < ?", FIRST_ID, FIRST_ID + NUM_TAGS);
+    jdbcTemplate.update("DELETE FROM TAGVALUEDESC");
+  }
+
+  @Test
+  public void testStoreTypedValues() throws Exception {
+    CompactTagHistoryDAO dao = createCompactDAO();
+    List<TagRecord> records = createRecords(2);
+    dao.storeData(records);
+
+    assertEquals(records.size(), countRows("TAGHISTORY"));
+    assertEquals(DESCRIPTIONS.length, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TAGVALUEDESC", Integer.class));
+
+    Map<String, Object> doubleRow = jdbcTemplate.queryForMap("SELECT * FROM TAGHISTORY WHERE tagid = ? AND ROWNUM() = 1", FIRST_ID);
+    assertEquals(20.0, ((Number) doubleRow.get("TAGVALUEDOUBLE")).doubleValue(), 0.001);
+    assertNull(doubleRow.get("TAGVALUELONG"));
+    assertNull(doubleRow.get("TAGVALUESTR"));
+    assertNull(doubleRow.get("TAGSTATUSDESC"));
+    assertEquals(ValueDescriptions.idOf(DESCRIPTIONS[0]), Long.valueOf(((Number) doubleRow.get("TAGVALUEDESCID")).longValue()));
+
+    Map<String, Object> stringRow = jdbcTemplate.queryForMap("SELECT * FROM TAGHISTORY WHERE tagid = ? AND ROWNUM() = 1", FIRST_ID + 9);
+    assertEquals("\"state 0\"", stringRow.get("TAGVALUESTR"));
+
+    // descriptions are only stored once, even by a new DAO
+    createCompactDAO().storeData(createRecords(1));
+    assertEquals(DESCRIPTIONS.length, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM TAGVALUEDESC", Integer.class));
+  }
+
+  @Test
+  public void testHsqldbMigration() throws Exception {
+    List<TagRecord> records = createRecords(2);
+    createDefaultDAO().storeData(records);
+
+    ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("sql/history-compact-migration-hsqldb.sql"));
+    populator.execute(historyDataSource);
+
+    assertEquals(records.size(), countRows("TAGHISTORY"));
+    assertEquals(0, (int) jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM TAGHISTORY h JOIN TAGVALUEDESC d ON d.descid = h.tagvaluedescid "
+            + "WHERE h.tagid >= ? AND h.tagid < ? AND h.tagvaluedescid >= 0", Integer.class, FIRST_ID, FIRST_ID + NUM_TAGS));
+    assertEquals(records.size(), (int) jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM TAGHISTORY h JOIN TAGVALUEDESC d ON d.descid = h.tagvaluedescid "
+            + "WHERE h.tagid >= ? AND h.tagid < ?", Integer.class, FIRST_ID, FIRST_ID + NUM_TAGS));
+    assertEquals(20.0, jdbcTemplate.queryForObject(
+        "SELECT MIN(tagvaluedouble) FROM TAGHISTORY WHERE tagid = ?", Double.class, FIRST_ID), 0.001);
+  }
+
+  @Test
+  public void testCompactRowsAreSmaller() throws Exception {
+    List<TagRecord> records = createRecords(10);
+    createDefaultDAO().storeData(records);
+    createCompactDAO().storeData(records);
+
+    assertEquals(records.size(), countRows("SHORTTERMLOG"));
+    assertEquals(records.size(), countRows("TAGHISTORY"));
+    double defaultRowSize = jdbcTemplate.queryForObject(DEFAULT_ROW_SIZE, Double.class, FIRST_ID, FIRST_ID + NUM_TAGS);
+    double compactRowSize = jdbcTemplate.queryForObject(COMPACT_ROW_SIZE, Double.class, FIRST_ID, FIRST_ID + NUM_TAGS);
+    assertTrue(compactRowSize < defaultRowSize);
+  }
+
+  private CompactTagHistoryDAO createCompactDAO() throws Exception {
+    LoggerDAO<TagRecord> loggerDAO = new LoggerDAO<>(historySqlSessionFactory.getObject(),
+        CompactTagRecordMapper.class.getCanonicalName(), "test");
+    return new CompactTagHistoryDAO(historySqlSessionFactory.getObject(), loggerDAO);
+  }
+
+  private LoggerDAO<TagRecord> createDefaultDAO() throws Exception {
+    return new LoggerDAO<>(historySqlSessionFactory.getObject(), TagRecordMapper.class.getCanonicalName(), "test");
+  }
+
+  private int countRows(String table) {
+    return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE tagid >= ? AND tagid < ?",
+        Integer.class, FIRST_ID, FIRST_ID + NUM_TAGS);
+  }
+
+  /**
+   * Creates updates for a realistic tag mix: 60% Double, 20% Integer,
+   * 10% Boolean and 10% String tags.
+   */
+  static List<TagRecord> createRecords(int updatesPerTag) {
+    List<TagRecord> records = new ArrayList<>();
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    for (int i = 0; i < updatesPerTag; i++) {
+      for (int t = 0; t < NUM_TAGS; t++) {
+        TagRecord record = new TagRecord();
+        record.setTagId(FIRST_ID + t);
+        record.setTagName("CERN.SECTOR" + (t % 8) + ".COOLING.SENSOR_" + t + ".VALUE");
+        int kind = t % 10;
+        if (kind < 6) {
+          record.setTagDataType("Double");
+          record.setTagValue(Double.toString(20.0 + i * 0.25 + t));
+          record.setTagValueDesc(DESCRIPTIONS[kind % 2]);
+        } else if (kind < 8) {
+          record.setTagDataType("Integer");
+          record.setTagValue(Integer.toString(i * 10 + t));
+          record.setTagValueDesc(DESCRIPTIONS[1]);
+        } else if (kind < 9) {
+          record.setTagDataType("Boolean");
+          record.setTagValue(Boolean.toString(i % 2 == 0));
+          record.setTagValueDesc(DESCRIPTIONS[2]);
+        } else {
+          record.setTagDataType("String");
+          record.setTagValue("\"state " + (i % 3) + "\"");
+          record.setTagValueDesc(DESCRIPTIONS[3]);
+        }
+        record.setTagQualityCode(0);
+        record.setTagQualityDesc("{}");
+        record.setTagMode((short) 0);
+        record.setTagDir("I");
+        record.setSourceTimestamp(now);
+        record.setDaqTimestamp(now);
+        record.setServerTimestamp(now);
+        records.add(record);
+      }
+    }
+    return records;
+  }
+}
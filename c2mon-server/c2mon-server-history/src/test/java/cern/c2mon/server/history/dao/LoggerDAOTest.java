@@ -0,0 +1,181 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
+import cern.c2mon.server.cache.config.CacheModule;
+import cern.c2mon.server.cache.dbaccess.config.CacheDbAccessModule;
+import cern.c2mon.server.cache.loading.config.CacheLoadingModule;
+import cern.c2mon.server.command.config.CommandModule;
+import cern.c2mon.server.common.config.CommonModule;
+import cern.c2mon.server.daq.config.DaqModule;
+import cern.c2mon.server.history.config.HistoryModule;
+import cern.c2mon.server.history.mapper.TagRecordMapper;
+import cern.c2mon.server.history.structure.TagRecord;
+import cern.c2mon.server.supervision.config.SupervisionModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the batched and parallel writing of the {@link LoggerDAO}
+ * against the in-memory history database.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {
+    CommonModule.class,
+    CacheModule.class,
+    CacheDbAccessModule.class,
+    CacheLoadingModule.class,
+    SupervisionModule.class,
+    CommandModule.class,
+    DaqModule.class,
+    HistoryModule.class
+})
+public class LoggerDAOTest {
+
+  private static final long FIRST_ID = 9000L;
+
+  private static final int NUM_TAGS = 20;
+
+  @Autowired
+  @Qualifier("historySqlSessionFactory")
+  private SqlSessionFactoryBean historySqlSessionFactory;
+
+  @Autowired
+  @Qualifier("historyDataSource")
+  private DataSource historyDataSource;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Before
+  public void beforeTest() {
+    jdbcTemplate = new JdbcTemplate(historyDataSource);
+    removeTestData();
+  }
+
+  @After
+  public void afterTest() {
+    removeTestData();
+  }
+
+  private void removeTestData() {
+    jdbcTemplate.update("DELETE FROM SHORTTERMLOG WHERE TAGID >= ? AND TAGID < ?", FIRST_ID, FIRST_ID + NUM_TAGS);
+  }
+
+  @Test
+  public void testParallelBatchedStore() throws Exception {
+    LoggerDAO<TagRecord> loggerDAO = new LoggerDAO<>(historySqlSessionFactory.getObject(),
+        TagRecordMapper.class.getCanonicalName(), "test", 7, 4);
+    try {
+      List<TagRecord> records = createRecords(10);
+      loggerDAO.storeData(records);
+
+      assertEquals(records.size(), countTestRecords());
+      assertEquals(records.size(), loggerDAO.getStoredRecords());
+      assertEquals(0, loggerDAO.getFailedBatches());
+    } finally {
+      loggerDAO.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelStoreFailureReportsOnlyUncommittedRecords() throws Exception {
+    LoggerDAO<TagRecord> loggerDAO = new LoggerDAO<>(historySqlSessionFactory.getObject(),
+        TagRecordMapper.class.getCanonicalName(), "test", 7, 4);
+    try {
+      List<TagRecord> records = createRecords(10);
+      // the server timestamp is mandatory, so that the partition of this tag fails
+      records.get(150).setServerTimestamp(null);
+      for (int i = 0; i < 10; i++) {
+        records.add(i * 20, null);
+      }
+      int nonNullRecords = records.size() - 10;
+
+      try {
+        loggerDAO.storeData(records);
+        fail("The invalid record should have failed the store operation");
+      } catch (IDBPersistenceException e) {
+        List<TagRecord> uncommitted = records.subList(e.getCommited(), records.size());
+        assertFalse(uncommitted.contains(null));
+        assertEquals(nonNullRecords, countTestRecords() + uncommitted.size());
+        // every record is still in the list exactly once
+        Set<TagRecord> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(records);
+        assertEquals(records.size(), distinct.size() + 9);
+      }
+    } finally {
+      loggerDAO.shutdown();
+    }
+  }
+
+  @Test
+  public void testSingleWriterBatchedStore() throws Exception {
+    LoggerDAO<TagRecord> loggerDAO = new LoggerDAO<>(historySqlSessionFactory.getObject(),
+        TagRecordMapper.class.getCanonicalName(), "test", 7, 1);
+    List<TagRecord> records = createRecords(5);
+    loggerDAO.storeData(records);
+
+    assertEquals(records.size(), countTestRecords());
+    // 100 records in batches of 7
+    assertEquals(15, loggerDAO.getCommittedBatches());
+  }
+
+  private int countTestRecords() {
+    return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM SHORTTERMLOG WHERE TAGID >= ? AND TAGID < ?",
+        Integer.class, FIRST_ID, FIRST_ID + NUM_TAGS);
+  }
+
+  private List<TagRecord> createRecords(int updatesPerTag) {
+    List<TagRecord> records = new ArrayList<>();
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    for (int i = 0; i < updatesPerTag; i++) {
+      for (long id = FIRST_ID; id < FIRST_ID + NUM_TAGS; id++) {
+        TagRecord record = new TagRecord();
+        record.setTagId(id);
+        record.setTagDataType("Integer");
+        record.setTagValue(Integer.toString(i));
+        record.setSourceTimestamp(now);
+        record.setDaqTimestamp(now);
+        record.setServerTimestamp(now);
+        records.add(record);
+      }
+    }
+    return records;
+  }
+}
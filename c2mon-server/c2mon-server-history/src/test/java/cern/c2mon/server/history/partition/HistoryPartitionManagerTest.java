@@ -0,0 +1,158 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.history.partition;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import cern.c2mon.server.cache.config.CacheModule;
+import cern.c2mon.server.cache.dbaccess.config.CacheDbAccessModule;
+import cern.c2mon.server.cache.loading.config.CacheLoadingModule;
+import cern.c2mon.server.command.config.CommandModule;
+import cern.c2mon.server.common.config.CommonModule;
+import cern.c2mon.server.daq.config.DaqModule;
+import cern.c2mon.server.history.config.HistoryModule;
+import cern.c2mon.server.history.config.HistoryProperties;
+import cern.c2mon.server.supervision.config.SupervisionModule;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the partition management against the in-memory history database,
+ * where the partitioning is emulated.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {
+    CommonModule.class,
+    CacheModule.class,
+    CacheDbAccessModule.class,
+    CacheLoadingModule.class,
+    SupervisionModule.class,
+    CommandModule.class,
+    DaqModule.class,
+    HistoryModule.class
+})
+public class HistoryPartitionManagerTest {
+
+  private static final long TAG_ID = 9500L;
+
+  @Autowired
+  @Qualifier("historyDataSource")
+  private DataSource historyDataSource;
+
+  private JdbcTemplate jdbcTemplate;
+
+  private HistoryProperties.Partitioning partitioning;
+
+  private HistoryPartitionManager manager;
+
+  @Before
+  public void setUp() {
+    jdbcTemplate = new JdbcTemplate(historyDataSource);
+    cleanUp();
+    partitioning = new HistoryProperties().getPartitioning();
+    partitioning.setTables(Collections.singletonList("SHORTTERMLOG"));
+    manager = new HistoryPartitionManager(partitioning, new EmulatedPartitionDialect(jdbcTemplate));
+  }
+
+  @After
+  public void cleanUp() {
+    jdbcTemplate.update("DELETE FROM SHORTTERMLOG WHERE tagid = ?", TAG_ID);
+    jdbcTemplate.update("DELETE FROM HISTORY_PARTITION");
+  }
+
+  private List<String> partitions() {
+    return jdbcTemplate.queryForList("SELECT partitionname FROM HISTORY_PARTITION ORDER BY upperbound", String.class);
+  }
+
+  private void insert(LocalDate logDate) {
+    jdbcTemplate.update("INSERT INTO SHORTTERMLOG (logdate, tagid, tagservertime) VALUES (?, ?, CURRENT_TIMESTAMP)",
+        Date.valueOf(logDate), TAG_ID);
+  }
+
+  @Test
+  public void testDailyPartitionsCreatedAhead() {
+    partitioning.setPrecreate(2);
+    LocalDate today = LocalDate.of(2026, 10, 19);
+
+    manager.maintainPartitions(today);
+    assertEquals(3, partitions().size());
+    assertEquals("P20261020", partitions().get(0));
+    assertEquals("P20261022", partitions().get(2));
+
+    // nothing to do on the same day, one partition more on the next day
+    manager.maintainPartitions(today);
+    assertEquals(3, partitions().size());
+    manager.maintainPartitions(today.plusDays(1));
+    assertEquals(4, partitions().size());
+    assertEquals(4, manager.getCreatedPartitions());
+  }
+
+  @Test
+  public void testWeeklyPartitionsAfterGap() {
+    partitioning.setGranularity(PartitionGranularity.WEEK);
+    partitioning.setPrecreate(1);
+
+    // Monday 2026-10-19
+    manager.maintainPartitions(LocalDate.of(2026, 10, 21));
+    assertEquals("P20261026", partitions().get(0));
+    assertEquals("P20261102", partitions().get(1));
+
+    // a month later, the first new partition covers the whole gap
+    manager.maintainPartitions(LocalDate.of(2026, 11, 25));
+    List<String> partitions = partitions();
+    assertEquals(4, partitions.size());
+    assertEquals("P20261130", partitions.get(2));
+    assertEquals("P20261207", partitions.get(3));
+  }
+
+  @Test
+  public void testRetentionDropsExpiredPartitions() {
+    partitioning.setPrecreate(1);
+    LocalDate start = LocalDate.of(2026, 10, 1);
+
+    for (int i = 0; i < 10; i++) {
+      manager.maintainPartitions(start.plusDays(i));
+      insert(start.plusDays(i));
+    }
+    assertEquals(10, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM SHORTTERMLOG WHERE tagid = ?", Integer.class, TAG_ID));
+
+    partitioning.setRetentionDays(3);
+    LocalDate today = start.plusDays(10);
+    manager.maintainPartitions(today);
+
+    // only the partitions with data from 2026-10-08 on are kept
+    assertEquals("P20261009", partitions().get(0));
+    assertEquals(3, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM SHORTTERMLOG WHERE tagid = ?", Integer.class, TAG_ID));
+    assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM SHORTTERMLOG WHERE tagid = ? AND logdate < ?",
+        Integer.class, TAG_ID, Date.valueOf(today.minusDays(3))));
+  }
+}
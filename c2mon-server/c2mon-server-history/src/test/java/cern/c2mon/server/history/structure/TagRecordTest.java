@@ -122,4 +122,44 @@ public class TagRecordTest {
     assertEquals(log.getTagMode(), retrievedLog.getTagMode());
   }
 
+  @Test
+  public void testTypedValues() {
+    TagRecord tag = getTag();
+    assertEquals(Long.valueOf(1223), tag.getTagValueLong());
+    assertNull(tag.getTagValueDouble());
+    assertNull(tag.getTagValueBoolean());
+    assertNull(tag.getTagValueString());
+
+    tag.setTagDataType("java.lang.Double");
+    tag.setTagValue("12.5");
+    assertNull(tag.getTagValueLong());
+    assertEquals(Double.valueOf(12.5), tag.getTagValueDouble());
+
+    tag.setTagDataType("Boolean");
+    tag.setTagValue("true");
+    assertEquals(Integer.valueOf(1), tag.getTagValueBoolean());
+    assertNull(tag.getTagValueString());
+
+    tag.setTagDataType("String");
+    tag.setTagValue("\"text\"");
+    assertNull(tag.getTagValueLong());
+    assertEquals("\"text\"", tag.getTagValueString());
+  }
+
+  @Test
+  public void testValueDescriptionId() {
+    TagRecord tag = getTag();
+    assertEquals(ValueDescriptions.idOf("value desc"), tag.getTagValueDescId());
+    assertTrue(tag.getTagValueDescId() >= 0);
+    tag.setTagValueDesc(null);
+    assertNull(tag.getTagValueDescId());
+  }
+
+  @Test
+  public void testQualityDescriptionOnlyForInvalidTags() {
+    TagRecord tag = getTag();
+    assertEquals(tag.getTagQualityDesc(), tag.getTagQualityDescIfInvalid());
+    tag.setTagQualityCode(0);
+    assertNull(tag.getTagQualityDescIfInvalid());
+  }
 }
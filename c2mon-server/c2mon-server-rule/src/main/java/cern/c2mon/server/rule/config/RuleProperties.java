@@ -14,4 +14,24 @@ public class RuleProperties {
    * Number of threads that the rule evaluation engine will use
    */
   private int numEvaluationThreads = 1;
+
+  /**
+   * Minimum number of dependent rules a tag must have before they are
+   * evaluated in parallel on the dedicated fork/join pool. A value of 0
+   * disables parallel evaluation (all rules are evaluated sequentially on
+   * the listener thread).
+   */
+  private int parallelEvaluationThreshold = 0;
+
+  /**
+   * Maximum number of threads used for parallel rule evaluation. This bounds
+   * the total concurrency across all listener threads.
+   */
+  private int parallelEvaluationThreads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Number of rules evaluated sequentially by a single fork/join task before
+   * the fan-out is split further
+   */
+  private int parallelEvaluationBatchSize = 50;
 }
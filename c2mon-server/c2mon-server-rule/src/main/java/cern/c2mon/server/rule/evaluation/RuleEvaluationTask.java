@@ -0,0 +1,72 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.server.rule.RuleEvaluator;
+
+/**
+ * Fork/join task evaluating a slice of the dependent rules of a tag.
+ * The slice is split in two halves until it is no larger than the
+ * configured batch size, at which point the rules are evaluated
+ * sequentially. Each rule evaluation still acquires the rule write
+ * lock, so the locking behaviour is the same as for a sequential
+ * evaluation.
+ */
+@Slf4j
+class RuleEvaluationTask extends RecursiveAction {
+
+  private static final long serialVersionUID = -4393717045186429215L;
+
+  private final transient RuleEvaluator ruleEvaluator;
+
+  private final List<Long> ruleIds;
+
+  private final int batchSize;
+
+  /**
+   * @param ruleEvaluator evaluator to which the single rule evaluations are delegated
+   * @param ruleIds the rule ids to evaluate
+   * @param batchSize maximum number of rules evaluated without further splitting
+   */
+  RuleEvaluationTask(final RuleEvaluator ruleEvaluator, final List<Long> ruleIds, final int batchSize) {
+    this.ruleEvaluator = ruleEvaluator;
+    this.ruleIds = ruleIds;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  @Override
+  protected void compute() {
+    if (ruleIds.size() <= batchSize) {
+      for (Long ruleId : ruleIds) {
+        try {
+          ruleEvaluator.evaluateRule(ruleId);
+        } catch (Exception e) {
+          log.error("Error caught when evaluating rule #{}", ruleId, e);
+        }
+      }
+    } else {
+      int middle = ruleIds.size() / 2;
+      invokeAll(new RuleEvaluationTask(ruleEvaluator, ruleIds.subList(0, middle), batchSize),
+                new RuleEvaluationTask(ruleEvaluator, ruleIds.subList(middle, ruleIds.size()), batchSize));
+    }
+  }
+}
@@ -17,15 +17,24 @@
 package cern.c2mon.server.rule.evaluation;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
 import cern.c2mon.server.cache.C2monCacheListener;
@@ -51,11 +60,17 @@ import static cern.c2mon.shared.common.type.TypeConverter.getType;
  * to the RuleUpdateBuffer where rapid successive updates are
  * clustered into a single update.
  *
+ * <p>If a parallel evaluation threshold is configured, the dependent
+ * rules of tags with a large fan-out are split across a dedicated
+ * {@link ForkJoinPool}, so that the listener thread is not blocked for
+ * the time of a full sequential evaluation.
+ *
  * @author mbrightw
  *
  */
 @Slf4j
 @Service
+@ManagedResource(objectName = "cern.c2mon:name=ruleEvaluator", description = "Bean evaluating the rules depending on a tag update")
 public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycle, RuleEvaluator {
 
   private final RuleTagCache ruleTagCache;
@@ -79,6 +94,27 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
    */
   private volatile boolean running = false;
 
+  /**
+   * Pool used for evaluating large rule fan-outs in parallel,
+   * or <code>null</code> if parallel evaluation is disabled.
+   */
+  private ForkJoinPool evaluationPool;
+
+  /** Number of tag updates whose dependent rules were evaluated in parallel */
+  private final AtomicLong parallelEvaluations = new AtomicLong();
+
+  /** Total number of rules evaluated on the fork/join pool */
+  private final AtomicLong parallelRuleEvaluations = new AtomicLong();
+
+  /** Total time in milliseconds spent in parallel fan-out evaluations */
+  private final AtomicLong parallelEvaluationTime = new AtomicLong();
+
+  /** Largest rule fan-out seen since startup */
+  private final AtomicLong maxFanOut = new AtomicLong();
+
+  /** Longest time in milliseconds spent on the evaluation of a single fan-out */
+  private final AtomicLong maxFanOutEvaluationTime = new AtomicLong();
+
   @Autowired
   public RuleEvaluatorImpl(RuleTagCache ruleTagCache,
                            RuleUpdateBuffer ruleUpdateBuffer,
@@ -99,6 +135,27 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
   @PostConstruct
   public void init() {
     listenerContainer = cacheRegistrationService.registerToAllTags(this, properties.getNumEvaluationThreads());
+
+    if (properties.getParallelEvaluationThreshold() > 0) {
+      log.info("Rules of tags with at least {} dependent rules will be evaluated on {} parallel threads",
+          properties.getParallelEvaluationThreshold(), properties.getParallelEvaluationThreads());
+      evaluationPool = new ForkJoinPool(Math.max(1, properties.getParallelEvaluationThreads()),
+          pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("RuleEvaluator-" + thread.getPoolIndex());
+            return thread;
+          }, null, false);
+    }
+  }
+
+  /**
+   * Shuts down the parallel evaluation pool, if any.
+   */
+  @PreDestroy
+  public void shutdown() {
+    if (evaluationPool != null) {
+      evaluationPool.shutdown();
+    }
   }
 
   @Override
@@ -121,18 +178,47 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
    * to be ensured by the DataTagCacheObject
    * </UL>
    *
-   * evaluates rules that depend on tag
+   * evaluates rules that depend on tag. If the number of rules exceeds
+   * the configured parallel evaluation threshold, the rules are evaluated
+   * on the fork/join pool and this method returns once all of them have
+   * been evaluated.
    */
   public void evaluateRules(final Tag tag) {
     // For each rule id related to the tag
-    if (!tag.getRuleIds().isEmpty()) {
-      log.trace("For rule #{} triggering re-evaluation of {} rules : {}", tag.getId(), tag.getRuleIds().size(), tag.getRuleIds());
-      for (Long ruleId : tag.getRuleIds()) {
-         evaluateRule(ruleId);
+    Collection<Long> ruleIds = tag.getRuleIds();
+    if (!ruleIds.isEmpty()) {
+      log.trace("For rule #{} triggering re-evaluation of {} rules : {}", tag.getId(), ruleIds.size(), ruleIds);
+      int fanOut = ruleIds.size();
+      maxFanOut.accumulateAndGet(fanOut, Math::max);
+
+      if (evaluationPool != null && fanOut >= properties.getParallelEvaluationThreshold()) {
+        evaluateRulesInParallel(new ArrayList<>(ruleIds));
+      } else {
+        for (Long ruleId : ruleIds) {
+           evaluateRule(ruleId);
+        }
       }
     }
   }
 
+  /**
+   * Splits the rule evaluation across the fork/join pool and waits for
+   * all evaluations to terminate.
+   *
+   * @param ruleIds the rules to evaluate
+   */
+  private void evaluateRulesInParallel(final List<Long> ruleIds) {
+    long start = System.currentTimeMillis();
+    evaluationPool.invoke(new RuleEvaluationTask(this, ruleIds, properties.getParallelEvaluationBatchSize()));
+    long duration = System.currentTimeMillis() - start;
+
+    parallelEvaluations.incrementAndGet();
+    parallelRuleEvaluations.addAndGet(ruleIds.size());
+    parallelEvaluationTime.addAndGet(duration);
+    maxFanOutEvaluationTime.accumulateAndGet(duration, Math::max);
+    log.trace("Evaluated {} rules in parallel in {}ms", ruleIds.size(), duration);
+  }
+
   /**
    * Performs the rule evaluation for a given tag id. In case that
    * the id does not belong to a rule a warning message is logged to
@@ -251,6 +337,67 @@ public class RuleEvaluatorImpl implements C2monCacheListener<Tag>, SmartLifecycl
     running = false;
   }
 
+  /**
+   * @return the largest number of rules depending on a single tag seen since startup
+   */
+  @ManagedAttribute(description = "Largest rule fan-out of a single tag update since startup")
+  public long getMaxFanOut() {
+    return maxFanOut.get();
+  }
+
+  /**
+   * @return the number of tag updates whose rules were evaluated in parallel
+   */
+  @ManagedAttribute(description = "Number of tag updates whose dependent rules were evaluated in parallel")
+  public long getParallelEvaluations() {
+    return parallelEvaluations.get();
+  }
+
+  /**
+   * @return the total number of rules evaluated on the fork/join pool
+   */
+  @ManagedAttribute(description = "Total number of rules evaluated on the parallel evaluation pool")
+  public long getParallelRuleEvaluations() {
+    return parallelRuleEvaluations.get();
+  }
+
+  /**
+   * @return the average time in milliseconds spent evaluating a parallel fan-out
+   */
+  @ManagedAttribute(description = "Average time (ms) spent evaluating the rules of a parallel fan-out")
+  public double getAverageParallelEvaluationTime() {
+    long count = parallelEvaluations.get();
+    return count == 0 ? 0 : (double) parallelEvaluationTime.get() / count;
+  }
+
+  /**
+   * @return the longest time in milliseconds spent evaluating a parallel fan-out
+   */
+  @ManagedAttribute(description = "Longest time (ms) spent evaluating the rules of a parallel fan-out")
+  public long getMaxParallelEvaluationTime() {
+    return maxFanOutEvaluationTime.get();
+  }
+
+  /**
+   * @return the number of currently active threads of the parallel evaluation pool
+   */
+  @ManagedAttribute(description = "Number of currently active threads of the parallel evaluation pool")
+  public int getActiveParallelEvaluationThreads() {
+    return evaluationPool == null ? 0 : evaluationPool.getActiveThreadCount();
+  }
+
+  /**
+   * Resets the fan-out statistics.
+   */
+  @ManagedOperation(description = "Resets the rule fan-out statistics")
+  public void resetFanOutStatistics() {
+    maxFanOut.set(0);
+    parallelEvaluations.set(0);
+    parallelRuleEvaluations.set(0);
+    parallelEvaluationTime.set(0);
+    maxFanOutEvaluationTime.set(0);
+  }
+
   @Override
   public int getPhase() {
     return ServerConstants.PHASE_INTERMEDIATE;
@@ -0,0 +1,79 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.server.rule.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RuleEvaluationTaskTest {
+
+  @Test
+  public void testAllRulesEvaluatedOnce() {
+    List<Long> ruleIds = new ArrayList<>();
+    for (long i = 0; i < 1000; i++) {
+      ruleIds.add(i);
+    }
+    Set<Long> evaluated = ConcurrentHashMap.newKeySet();
+    AtomicInteger evaluations = new AtomicInteger();
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      pool.invoke(new RuleEvaluationTask(ruleId -> {
+        evaluations.incrementAndGet();
+        evaluated.add(ruleId);
+      }, ruleIds, 10));
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals(1000, evaluations.get());
+    assertEquals(1000, evaluated.size());
+  }
+
+  @Test
+  public void testFailingRuleDoesNotStopOthers() {
+    List<Long> ruleIds = new ArrayList<>();
+    for (long i = 0; i < 100; i++) {
+      ruleIds.add(i);
+    }
+    Set<Long> evaluated = ConcurrentHashMap.newKeySet();
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      pool.invoke(new RuleEvaluationTask(ruleId -> {
+        if (ruleId == 42L) {
+          throw new IllegalStateException("test exception");
+        }
+        evaluated.add(ruleId);
+      }, ruleIds, 7));
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals(99, evaluated.size());
+    assertTrue(!evaluated.contains(42L));
+  }
+}
@@ -0,0 +1,146 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.client.alarm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+/**
+ * Filter of an alarm subscription. The server sets the filtered attributes
+ * of every alarm update as message properties, and the filter is translated
+ * into a JMS selector on them. The broker therefore only delivers the
+ * matching alarms to the subscriber.
+ * <p>
+ * The priority of an alarm is taken from the "priority" entry of its metadata.
+ * Alarms without a numeric priority never match a priority filter.
+ */
+@Builder
+@Getter
+public class AlarmFilter {
+
+  /** Message property with the fault family of the alarm */
+  public static final String FAULT_FAMILY_PROPERTY = "faultFamily";
+
+  /** Message property with the fault member of the alarm */
+  public static final String FAULT_MEMBER_PROPERTY = "faultMember";
+
+  /** Message property with the fault code of the alarm */
+  public static final String FAULT_CODE_PROPERTY = "faultCode";
+
+  /** Message property with the priority of the alarm, if it has one */
+  public static final String PRIORITY_PROPERTY = "priority";
+
+  /** Message property set to true if the alarm is active */
+  public static final String ACTIVE_PROPERTY = "active";
+
+  /** Message property set to true if the alarm is oscillating */
+  public static final String OSCILLATING_PROPERTY = "oscillating";
+
+  /** Metadata key of the alarm priority */
+  public static final String PRIORITY_METADATA_KEY = "priority";
+
+  /** Fault families of the alarms to receive, all families if empty */
+  @Singular
+  private final Set<String> faultFamilies;
+
+  /** Lowest priority of the alarms to receive, all alarms if null */
+  private final Integer minPriority;
+
+  /** If true only the active alarms are received, and not their terminations */
+  private final boolean activeOnly;
+
+  /** If not null only the alarms with this oscillation state are received */
+  private final Boolean oscillating;
+
+  /**
+   * @return the JMS selector matching the filter, or null if the filter
+   *         accepts all alarms
+   */
+  public String toSelector() {
+    StringJoiner selector = new StringJoiner(" AND ");
+    selector.setEmptyValue("");
+
+    if (faultFamilies != null && !faultFamilies.isEmpty()) {
+      StringJoiner families = new StringJoiner(", ", FAULT_FAMILY_PROPERTY + " IN (", ")");
+      faultFamilies.forEach(family -> families.add(quote(family)));
+      selector.add(families.toString());
+    }
+    if (minPriority != null) {
+      selector.add(PRIORITY_PROPERTY + " >= " + minPriority);
+    }
+    if (activeOnly) {
+      selector.add(ACTIVE_PROPERTY + " = TRUE");
+    }
+    if (oscillating != null) {
+      selector.add(OSCILLATING_PROPERTY + " = " + (oscillating ? "TRUE" : "FALSE"));
+    }
+
+    String result = selector.toString();
+    return result.isEmpty() ? null : result;
+  }
+
+  /**
+   * @param alarm an alarm update
+   * @return the message properties the filters are evaluated on
+   */
+  public static Map<String, Object> toMessageProperties(AlarmValue alarm) {
+    Map<String, Object> properties = new HashMap<>();
+    if (alarm.getFaultFamily() != null) {
+      properties.put(FAULT_FAMILY_PROPERTY, alarm.getFaultFamily());
+    }
+    if (alarm.getFaultMember() != null) {
+      properties.put(FAULT_MEMBER_PROPERTY, alarm.getFaultMember());
+    }
+    properties.put(FAULT_CODE_PROPERTY, alarm.getFaultCode());
+    properties.put(ACTIVE_PROPERTY, alarm.isActive());
+    properties.put(OSCILLATING_PROPERTY, alarm.isOscillating());
+    Integer priority = getPriority(alarm);
+    if (priority != null) {
+      properties.put(PRIORITY_PROPERTY, priority);
+    }
+    return properties;
+  }
+
+  /**
+   * @param alarm an alarm
+   * @return the priority set in the alarm metadata, or null if it has none
+   */
+  static Integer getPriority(AlarmValue alarm) {
+    Object priority = alarm.getMetadata() != null ? alarm.getMetadata().get(PRIORITY_METADATA_KEY) : null;
+    if (priority instanceof Number) {
+      return ((Number) priority).intValue();
+    }
+    if (priority instanceof String) {
+      try {
+        return Integer.valueOf(((String) priority).trim());
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  private static String quote(String value) {
+    return "'" + value.replace("'", "''") + "'";
+  }
+}
@@ -38,6 +38,19 @@ import cern.c2mon.shared.client.configuration.ConfigurationReportHeader;
  */
 public interface ClientRequest {
 
+  /**
+   * JMS property of the request message with the maximum number of results
+   * the client accepts per reply message. Servers supporting it split larger
+   * replies into several messages, older servers ignore it.
+   */
+  String MAX_CHUNK_SIZE_PROPERTY = "c2monMaxChunkSize";
+
+  /** JMS property of a reply message with its index, starting at 0, in a chunked reply. */
+  String CHUNK_INDEX_PROPERTY = "c2monChunk";
+
+  /** JMS property of a reply message with the number of messages of a chunked reply. */
+  String CHUNK_COUNT_PROPERTY = "c2monChunkCount";
+
   /**
    * Enumeration for specifying the request type:
    *
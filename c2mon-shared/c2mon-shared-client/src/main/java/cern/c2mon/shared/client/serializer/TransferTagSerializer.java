@@ -27,8 +27,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import static cern.c2mon.shared.common.type.TypeConverter.cast;
 import static cern.c2mon.shared.common.type.TypeConverter.getType;
@@ -43,6 +45,15 @@ import static cern.c2mon.shared.common.type.TypeConverter.isKnownClass;
 @Slf4j
 public class TransferTagSerializer {
 
+  /**
+   * JMS property holding the format version of a message. It is only set on
+   * the messages holding a batch of tag updates.
+   */
+  public static final String FORMAT_VERSION_PROPERTY = "c2monFormatVersion";
+
+  /** Format version of the messages holding a JSON array of tag updates */
+  public static final int BATCH_FORMAT_VERSION = 2;
+
   private static ObjectMapper mapper = new ObjectMapper();
 
   static {
@@ -72,6 +83,24 @@ public class TransferTagSerializer {
     return result;
   }
 
+  /**
+   * Converts a batch of TagValues into a json array. Jackson is used to do this.
+   * @param tagUpdates The tags which need to be serialized into a json array.
+   * @param <T>
+   * @return The json String
+   */
+  public static <T extends TagValueUpdate> String toJsonArray(Collection<T> tagUpdates) {
+    String result = null;
+
+    try {
+      result = mapper.writeValueAsString(tagUpdates);
+    } catch (JsonProcessingException e) {
+      log.error("Serializing of tagUpdates failed: " + e.getMessage());
+    }
+
+    return result;
+  }
+
   /**
    *
    * @param tagUpdateJson Converts the json String into a TagValueUpdate instance. By doing this the embedded Tag value will be casted into the given
@@ -93,6 +122,29 @@ public class TransferTagSerializer {
     return tag;
   }
 
+  /**
+   *
+   * @param tagUpdatesJson Converts the json array into TagValueUpdate instances. By doing this the embedded Tag values
+   *                       will be casted into the given class type of the tags.
+   * @param dataType The data type of the tags in which the json array shall be serialized.
+   * @param <T>
+   * @return The instances of the TagValueUpdate with converted TagValues, an empty list if the array could not be read.
+   */
+  public static <T extends TagValueUpdate> List<T> fromJsonArray(String tagUpdatesJson, Class<T> dataType) {
+    List<T> tags = new ArrayList<>();
+
+    try {
+      tags = mapper.readValue(tagUpdatesJson, mapper.getTypeFactory().constructCollectionType(List.class, dataType));
+      for (T tag : tags) {
+        tag.setValue(convertTagValue(tag));
+      }
+    } catch (IOException e) {
+      log.warn("Error occurred while converting the json array back to objects: "+e.getMessage());
+    }
+
+    return tags;
+  }
+
   /**
    *
    * @param tagUpdateJson Converts the json String into a collection of TagValueUpdate instances. By doing this the embedded TagValue of the tags
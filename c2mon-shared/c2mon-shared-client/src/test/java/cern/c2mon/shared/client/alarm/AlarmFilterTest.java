@@ -0,0 +1,66 @@
+/******************************************************************************
+ * Copyright (C) 2010-2019 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.shared.client.alarm;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class AlarmFilterTest {
+
+  @Test
+  public void testEmptyFilter() {
+    assertNull(AlarmFilter.builder().build().toSelector());
+  }
+
+  @Test
+  public void testSelector() {
+    AlarmFilter filter = AlarmFilter.builder()
+        .faultFamily("PS")
+        .faultFamily("O'CLOCK")
+        .minPriority(2)
+        .activeOnly(true)
+        .oscillating(false)
+        .build();
+
+    assertEquals("faultFamily IN ('PS', 'O''CLOCK') AND priority >= 2 AND active = TRUE AND oscillating = FALSE",
+        filter.toSelector());
+  }
+
+  @Test
+  public void testMessageProperties() {
+    AlarmValueImpl alarm = new AlarmValueImpl(12342L, 1, "FaultMember1", "FaultFamily1", "Info1", 1234L,
+        new Timestamp(System.currentTimeMillis()), new Timestamp(System.currentTimeMillis()), true);
+
+    Map<String, Object> properties = AlarmFilter.toMessageProperties(alarm);
+    assertEquals("FaultFamily1", properties.get(AlarmFilter.FAULT_FAMILY_PROPERTY));
+    assertEquals("FaultMember1", properties.get(AlarmFilter.FAULT_MEMBER_PROPERTY));
+    assertEquals(1, properties.get(AlarmFilter.FAULT_CODE_PROPERTY));
+    assertEquals(true, properties.get(AlarmFilter.ACTIVE_PROPERTY));
+    assertEquals(false, properties.get(AlarmFilter.OSCILLATING_PROPERTY));
+    assertFalse(properties.containsKey(AlarmFilter.PRIORITY_PROPERTY));
+
+    alarm.setMetadata(Collections.singletonMap(AlarmFilter.PRIORITY_METADATA_KEY, "3"));
+    assertEquals(3, AlarmFilter.toMessageProperties(alarm).get(AlarmFilter.PRIORITY_PROPERTY));
+  }
+}
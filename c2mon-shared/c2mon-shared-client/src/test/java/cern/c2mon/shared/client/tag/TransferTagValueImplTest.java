@@ -17,6 +17,8 @@
 package cern.c2mon.shared.client.tag;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -65,6 +67,17 @@ public class TransferTagValueImplTest {
   }
 
 
+  @Test
+  public void testJsonArrayMsg() {
+    List<TransferTagValueImpl> tags = Arrays.asList(createTagForValue(Float.valueOf(3.34535f)), createTagForValue(Long.valueOf(3L)));
+    String jacksonString = TransferTagSerializer.toJsonArray(tags);
+    List<TransferTagValueImpl> receivedTags = TransferTagSerializer.fromJsonArray(jacksonString, TransferTagValueImpl.class);
+    assertEquals(2, receivedTags.size());
+    assertEquals(Float.valueOf(3.34535f), receivedTags.get(0).getValue());
+    assertEquals(Long.valueOf(3L), receivedTags.get(1).getValue());
+    assertEquals(tags.get(1).getServerTimestamp(), receivedTags.get(1).getServerTimestamp());
+  }
+
   @Test
   public void testIntegerJsonMsg() {
     Integer value = Integer.valueOf(3);
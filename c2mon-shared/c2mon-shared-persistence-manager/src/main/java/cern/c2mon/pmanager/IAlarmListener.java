@@ -57,5 +57,16 @@ public interface IAlarmListener extends FallbackAlarmsInterface {
      * @param file The name of the file that was access when the problem arose
      */
     void fileNotReachable(boolean alarmUp, File file);    
+
+    /**
+     * Notifies about the progress of committing the fallback data back to the DB. Called periodically
+     * while the recovery is running and once when it stops. Does nothing by default.
+     * @param file The fallback file being recovered
+     * @param recovered The number of objects committed back since the recovery started
+     * @param remaining The number of objects still in the fallback file
+     * @param etaSeconds The estimated time in seconds until the recovery is complete, or -1 if unknown
+     */
+    default void recoveryProgress(File file, long recovered, long remaining, long etaSeconds) {
+    }
     
 }
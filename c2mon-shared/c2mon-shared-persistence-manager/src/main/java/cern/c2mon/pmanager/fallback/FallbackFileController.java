@@ -16,26 +16,54 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.fallback;
 
-import cern.c2mon.pmanager.IFallback;
-import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
-
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
-import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cern.c2mon.pmanager.IFallback;
+import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
+import cern.c2mon.pmanager.fallback.util.SystemResourcesParameters;
+
 /**
- * Abstract class that holds all the common functionality to the different
- * fallback files that may exists
+ * Append-only fallback log, split into memory-mapped segment files.
+ *
+ * <p>Every {@link IFallback} object is stored as a binary record made of a
+ * one byte marker, the length of the record and the UTF-8 bytes of its string
+ * representation. Segment files are preallocated with the configured size and
+ * a zero marker indicates the end of the data in a segment.
+ *
+ * <p>The position of the first record which has not yet been committed back to
+ * the database is stored as (segment, offset) in a checkpoint file, so that the
+ * reading can resume in constant time after a restart. Segments are deleted as
+ * a whole once all their records have been committed back.
+ *
+ * <p>Each open segment is mapped once, the reading and the writing sharing
+ * the mapping of the same segment. A mapping is released explicitly as soon
+ * as the segment is neither read nor written, and always before the segment
+ * is deleted, since a mapped file holds its disk space and cannot be deleted
+ * on Windows.
+ *
+ * <p>For a fallback path <code>/tmp/tag-fallback.txt</code>, the segments are
+ * named <code>/tmp/tag-fallback.txt.0000000001.seg</code> and the checkpoint
+ * <code>/tmp/tag-fallback.txt.checkpoint</code>. A fallback file left in the
+ * former text format is imported into the log at startup.
  *
  * @author mruizgar
  *
@@ -45,56 +73,112 @@ public class FallbackFileController {
     /** Log4j Logger for tags that cannot be logged to the database */
     public static final Logger LOG = LoggerFactory.getLogger("HistoryFallbackLogger");
 
-    /** The file storing the datatags */
-    private File dataFile;
+    /** Marker of a record */
+    private static final byte RECORD = 1;
+
+    /** Marker of the end of the data in a segment */
+    private static final byte END = 0;
+
+    /** Size of the record header: marker and length */
+    private static final int HEADER_SIZE = 5;
+
+    /** Suffix of the segment files */
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /** The configured fallback path, used as prefix for the segment files */
+    private final File dataFile;
+
+    /** The file storing the checkpoint */
+    private final File checkpointFile;
+
+    /** Preallocated size of a segment in bytes */
+    private final int segmentSize;
+
+    /** Checkpoint file mapping: segment (long) and offset (int) */
+    private MappedByteBuffer checkpoint;
+
+    /** Segment and offset of the first record not yet committed back */
+    private long checkpointSegment;
+
+    private int checkpointOffset;
+
+    /** Segment and offset at which the next record will be written */
+    private long writeSegment;
+
+    private int writeOffset;
 
-    /** The file storing the line counter */
-    private File counterFile;
+    /** Mapping of the segment being written, or null if closed */
+    private MappedByteBuffer output;
 
-    /** Stream file output for the fallback log */
-    private BufferedWriter output;
+    /** Segment and offset of the next record to read */
+    private long readSegment;
 
-    /** Stream file output for the file storing the line counter */
-    private BufferedWriter dOutput;
+    private int readOffset;
 
-    /** Stream file input for the file storing the line counter */
-    private BufferedReader dInput;
+    /** Mapping of the segment being read, or null if closed */
+    private MappedByteBuffer input;
 
-    /** Stream file input for the fallback log file */
-    private BufferedReader inputBuf;
+    /** The mappings of the open segments, by segment number */
+    private final Map<Long, MappedByteBuffer> mappings = new HashMap<>();
 
     /**
-     * Counter for the file, that shows the number of lines that are still in
-     * the file but has been already read back and commited to the database
+     * Counter for the log, that shows the number of records that are still in
+     * the log but have been already read back and committed to the database
      */
     private int readBackLines;
 
     /**
-     * The numberOfLines that has the file are stored in the object attribute in
-     * order to avoid its recalculation all the time
+     * The number of records written to the log since it was last emptied
+     * (including the ones which have been read back)
      */
     private int numberOfLines;
 
     /**
-     * @param tFile
-     *            the tagsFile to set
+     * Constructor for the class, using the segment size of the fallback properties.
+     *
+     * @param fallbackPath
+     *            path of the fallback file
+     */
+    public FallbackFileController(final String fallbackPath) {
+        this(fallbackPath, FallbackProperties.getInstance().getSegmentSize());
+    }
+
+    /**
+     * Constructor for the class
+     *
+     * @param fallbackPath
+     *            path of the fallback file, used as prefix of the segment files
+     * @param segmentSize
+     *            the size of a segment in bytes
      */
-    protected final void setTagsFile(final File tFile) {
-        this.dataFile = tFile;
+    public FallbackFileController(final String fallbackPath, final int segmentSize) {
+        this.dataFile = new File(fallbackPath);
+        this.checkpointFile = new File(fallbackPath + ".checkpoint");
+        this.segmentSize = segmentSize;
+
+        try {
+            readCheckpoint();
+            recover();
+            importTextFile();
+            LOG.info("FallbackFileController() - The number of records of the "
+                    + dataFile.getName() + " fallback log is " + getNumberOfLines());
+        } catch (Exception e) {
+            LOG.error("Error while trying to initialize the fallback log " + dataFile.getAbsolutePath(), e);
+        }
     }
 
     /**
-     * @return the tagsFile
+     * @return the configured fallback file path
      */
     public final File getDataFile() {
         return dataFile;
     }
 
     /**
-     * @return the counterFile
+     * @return the checkpoint file
      */
-    public final File getCounterFile() {
-        return counterFile;
+    public final File getCheckpointFile() {
+        return checkpointFile;
     }
 
     /**
@@ -113,593 +197,582 @@ public class FallbackFileController {
     }
 
     /**
-     * @return the output
-     */
-    public final BufferedWriter getOutput() {
-        return output;
-    }
-
-    /**
-     * @param out
-     *            the output to set
+     * @return the readBackLines
      */
-    public final void setOutput(final BufferedWriter out) {
-        this.output = out;
+    public final int getReadBackLines() {
+        return readBackLines;
     }
 
     /**
-     * @return the input
+     * @param readLines
+     *            the readBackLines to set
      */
-    public final BufferedReader getInput() {
-        return inputBuf;
+    public final void setReadBackLines(final int readLines) {
+        this.readBackLines = readLines;
     }
 
     /**
-     * @param in
-     *            the input to set
+     * @return whether the segment being written is mapped
      */
-    public final void setInput(final BufferedReader in) {
-        this.inputBuf = in;
+    public final boolean isOutputOpen() {
+        return output != null;
     }
 
     /**
-     * @return the dInput
+     * @return whether the segment being read is mapped
      */
-    public final BufferedReader getDInput() {
-        return dInput;
+    public final boolean isInputOpen() {
+        return input != null;
     }
 
     /**
-     * @param in
-     *            the dInput to set
+     * @return the number of segments currently mapped
      */
-    public final void setDInput(final BufferedReader in) {
-        dInput = in;
+    final int getMappedSegments() {
+        return mappings.size();
     }
 
     /**
-     * @return the dOutput
+     * Gets the file of a segment
+     *
+     * @param segment
+     *            the segment number
+     * @return the segment file
      */
-    public final BufferedWriter getDOutput() {
-        return dOutput;
+    final File getSegmentFile(final long segment) {
+        return new File(dataFile.getPath() + "." + String.format("%010d", segment) + SEGMENT_SUFFIX);
     }
 
     /**
-     * @param out
-     *            the dOutput to set
+     * @return the numbers of the segment files present on disk, in ascending order
      */
-    public final void setDOutput(final BufferedWriter out) {
-        dOutput = out;
+    final TreeSet<Long> listSegments() {
+        TreeSet<Long> segments = new TreeSet<>();
+        File dir = dataFile.getAbsoluteFile().getParentFile();
+        String prefix = dataFile.getName() + ".";
+        String[] names = dir == null ? null : dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(prefix) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(name.substring(prefix.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        LOG.warn("Ignoring file " + name + " which is not a fallback segment");
+                    }
+                }
+            }
+        }
+        return segments;
     }
 
     /**
-     * @return the readBackLines
+     * Maps the checkpoint file and reads the last checkpoint from it
+     *
+     * @throws IOException
+     *             An exception is thrown when the checkpoint cannot be read
      */
-    public final int getReadBackLines() {
-        return readBackLines;
+    private void readCheckpoint() throws IOException {
+        boolean exists = checkpointFile.exists() && checkpointFile.length() >= 12;
+        try (RandomAccessFile file = new RandomAccessFile(checkpointFile, "rw")) {
+            checkpoint = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 12);
+        }
+        if (exists) {
+            checkpointSegment = checkpoint.getLong(0);
+            checkpointOffset = checkpoint.getInt(8);
+        } else {
+            TreeSet<Long> segments = listSegments();
+            checkpointSegment = segments.isEmpty() ? 1 : segments.first();
+            checkpointOffset = 0;
+            writeCheckpoint();
+        }
     }
 
     /**
-     * @param readLines
-     *            the readBackLines to set
+     * Stores the current checkpoint
      */
-    public final void setReadBackLines(final int readLines) {
-        this.readBackLines = readLines;
+    private void writeCheckpoint() {
+        checkpoint.putLong(0, checkpointSegment);
+        checkpoint.putInt(8, checkpointOffset);
+        checkpoint.force();
     }
 
     /**
-     * Gets the absolute path of the counter file, given the absolute path of
-     * its corresponding fallback file
-     *
-     * @param filePath
-     *            The absolute path of its corresponding fallback file
-     * @return The absolute path of the counter file
+     * Determines the write position and the number of records not yet
+     * committed back, by skipping the record headers from the checkpoint on.
+     * A partially written record at the end of the log is discarded.
      */
-    private String getCounterPath(final String filePath) {
-        int index = filePath.lastIndexOf('/');
-        String counterPath = filePath.substring(0, index + 1) + ".Counter"
-                + filePath.substring(index + 1, filePath.length());
-        return counterPath;
+    private void recover() {
+        TreeSet<Long> segments = listSegments();
+        // segments before the checkpoint have been fully committed back
+        for (Long segment : segments.headSet(checkpointSegment)) {
+            deleteSegment(segment);
+        }
+        numberOfLines = 0;
+        readBackLines = 0;
+        writeSegment = checkpointSegment;
+        writeOffset = checkpointOffset;
+        for (Long segment : segments.tailSet(checkpointSegment)) {
+            MappedByteBuffer buffer = map(segment);
+            if (buffer == null) {
+                continue;
+            }
+            int offset = segment == checkpointSegment ? checkpointOffset : 0;
+            while (hasRecord(buffer, offset)) {
+                offset += HEADER_SIZE + buffer.getInt(offset + 1);
+                numberOfLines++;
+            }
+            release(segment);
+            writeSegment = segment;
+            writeOffset = offset;
+        }
+        readSegment = checkpointSegment;
+        readOffset = checkpointOffset;
     }
 
     /**
-     * Constructor for the class
+     * Imports the unread lines of a fallback file written in the former text
+     * format, with its line counter file, and deletes both files.
      *
-     * @param fallbackPath
-     *            path of the fallback file
+     * @throws DataFallbackException
+     *             An exception is thrown if the lines cannot be written to the log
      */
-    public FallbackFileController(final String fallbackPath) {
-        // Set the paths for the fallback files
-        this.dataFile = new File(fallbackPath);
-        this.counterFile = new File(getCounterPath(fallbackPath));
-
-        // Initialize the fallback log file
-        if (!dataFile.exists()) {
-            try {
-                if (dataFile.createNewFile()) {
-                    LOG.info("constructor() : The file " + dataFile.getName()
-                            + " has been created");
-                }
-            } catch (IOException e) {
-                LOG.error("constructor() - Error while creating the logfile", e);
+    private void importTextFile() throws DataFallbackException, IOException {
+        if (!dataFile.isFile()) {
+            return;
+        }
+        int index = dataFile.getPath().lastIndexOf(File.separatorChar);
+        File counterFile = new File(dataFile.getPath().substring(0, index + 1) + ".Counter" + dataFile.getName());
+        int skip = 0;
+        if (counterFile.isFile()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(counterFile))) {
+                String line = reader.readLine();
+                skip = line == null ? 0 : Integer.parseInt(line.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("importTextFile() - Invalid counter in " + counterFile.getName() + ", importing all lines");
             }
         }
-
-        // Initialize the counter holder file
-        if (!counterFile.exists()) {
-            try {
-                if (counterFile.createNewFile()) {
-                    LOG.info("constructor() : The file " + counterFile.getName()
-                            + " has been created");
+        int imported = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(dataFile))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                if (lineNumber++ >= skip) {
+                    append(line.getBytes(StandardCharsets.UTF_8));
+                    imported++;
                 }
-                initializeCounterFile();
-            } catch (IOException e) {
-                LOG.error("constructor() - Error while creating the counterfile", e);
             }
         }
-
-        // There is a counter in the file and must be read
-        try {
-            // initialize the lines counter
-            setNumberOfLines(calcNumberOfLines());
-            // Initialize the counter for the number of lines already proccessed
-            // and prepared the
-            // file descriptor to point to the next line to read
-            setReadBackLines(readCounter());
-            LOG.info("FallbackFileController() - The number of lines of the "
-                    + dataFile.getName() + " file is " + getNumberOfLines());
-        } catch (Exception e) {
-            LOG
-                    .error("Error while trying to initialize the lines counter for the fallback file", e);
+        numberOfLines += imported;
+        closeFallbackOutputStream();
+        if (!dataFile.delete() || (counterFile.exists() && !counterFile.delete())) {
+            LOG.warn("importTextFile() - The text fallback file " + dataFile.getAbsolutePath() + " could not be deleted");
         }
+        LOG.info("importTextFile() - " + imported + " lines imported from the text fallback file " + dataFile.getAbsolutePath());
     }
 
     /**
-     * Reads the number that is stored in the counter file and which represents
-     * the already committed data
+     * Gets the mapping of a segment file, mapping it if it is not yet open
      *
-     * @return The counter stored in the counter file
-     * @throws DataFallbackException
-     *             An exception is thrown when the counter cannot be read from
-     *             the file
+     * @param segment the segment number
+     * @return the mapping, or null if the segment does not exist
      */
-    private int readCounter() throws DataFallbackException {
-        final int counter;
-        openCounterDataInputStream();
-        try {
-            String line;
-            line = dInput.readLine();
-            if (line != null) {
-                counter = new Integer(line).intValue();
-                // Put the reading descriptor in the first line that has not
-                // been yet processed
-                goToLine(counter);
-                if (LOG.isDebugEnabled())
-                    LOG.debug("The counter file " + counterFile.getName() + " has been read");
-            } else {
-                throw new DataFallbackException(
-                        "readCounter() - The counter could not be read, the counter file is empty");
-            }
+    private MappedByteBuffer map(final long segment) {
+        MappedByteBuffer buffer = mappings.get(segment);
+        if (buffer != null) {
+            return buffer;
+        }
+        File file = getSegmentFile(segment);
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            mappings.put(segment, buffer);
+            return buffer;
         } catch (IOException e) {
-            LOG.error("Exception is: " + e.getMessage());
-            throw new DataFallbackException("readCounter() - The counter could not be read "
-                    + e.getMessage());
-        } finally {
-            closeCounterDataInputStream();
+            LOG.error("map() - The segment " + file.getName() + " could not be mapped", e);
+            return null;
         }
-        return counter;
     }
 
     /**
-     * It prepares the file descriptor to read from a certain number of lines
+     * Releases the mapping of a segment, unless it is being read or written
      *
-     * @param lineNumber
-     *            The number of lines to be read to prepare the file descriptor
-     * @throws DataFallbackException
-     *             An exception is thrown if there was any problems while
-     *             reading the file
+     * @param segment the segment number
      */
-    public final void goToLine(final int lineNumber) throws DataFallbackException {
-        boolean moreLines = true;
-        int readlines = 0;
+    private void release(final long segment) {
+        if ((input != null && segment == readSegment) || (output != null && segment == writeSegment)) {
+            return;
+        }
+        MappedByteBuffer buffer = mappings.remove(segment);
+        if (buffer != null) {
+            unmap(buffer);
+        }
+    }
 
-        openFallbackInputStream();
-        if (lineNumber != 0) {
+    /**
+     * Unmaps a buffer immediately instead of waiting for its garbage
+     * collection. The buffer must not be accessed anymore afterwards.
+     *
+     * @param buffer the mapping to release
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
             try {
-                while (moreLines && readlines < lineNumber) {
-                    if (getInput().readLine() == null)
-                        moreLines = false;
-                    else
-                        readlines++;
+                // Java 9 and later
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
                 }
-            } catch (IOException e) {
-                throw new DataFallbackException(e.getMessage());
             }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("unmap() - A fallback segment could not be unmapped, it will be released by the garbage collector", e);
         }
     }
 
     /**
-     * Create a stream to read from the counter file
+     * Creates and maps a new segment file
      *
+     * @param segment the segment number
+     * @param size the size of the segment
+     * @return the mapping
      * @throws DataFallbackException
-     *             An exception is thrown when the input stream cannot be opened
+     *             An exception is thrown if the segment cannot be created
      */
-    private void openCounterDataInputStream() throws DataFallbackException {
-        if (dInput == null) {
+    private MappedByteBuffer createSegment(final long segment, final int size) throws DataFallbackException {
+        long freeSpace = SystemResourcesParameters.getFreeSpace();
+        if (freeSpace != FallbackProperties.CMD_FREE_SPACE_ERROR && freeSpace < size) {
+            throw new DataFallbackException("createSegment() - Not enough free disk space to create a new fallback segment of "
+                    + size + " bytes");
+        }
+        File file = getSegmentFile(segment);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
             if (LOG.isDebugEnabled())
-                LOG.debug("openDataInputStream() ; Opening the reader for the "
-                        + counterFile.getName() + " file");
-            try {
-                dInput = new BufferedReader(new FileReader(counterFile));
-            } catch (IOException e) {
-                throw new DataFallbackException(e.getMessage());
-            }
+                LOG.debug("createSegment() - The segment " + file.getName() + " has been created");
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mappings.put(segment, buffer);
+            return buffer;
+        } catch (IOException e) {
+            throw new DataFallbackException("createSegment() - The segment " + file.getName()
+                    + " could not be created " + e.getMessage());
         }
     }
 
     /**
-     * Close the input stream opened for the counter file
+     * Releases the mapping of a segment file and deletes it
      *
-     * @throws DataFallbackException
-     *             An exception is thrown if the stream could not be closed
+     * @param segment the segment number
      */
-    private void closeCounterDataInputStream() throws DataFallbackException {
-        if (LOG.isDebugEnabled())
-            LOG.debug("Closing the counter file reader for the file " + counterFile.getName());
-        if (dInput != null) {
-            try {
-                dInput.close();
-            } catch (IOException e) {
-                throw new DataFallbackException(e.getMessage());
-            } finally {
-                dInput = null;
-            }
+    private void deleteSegment(final long segment) {
+        if (input != null && segment == readSegment) {
+            input = null;
+        }
+        if (output != null && segment == writeSegment) {
+            output = null;
+        }
+        release(segment);
+        File file = getSegmentFile(segment);
+        if (file.exists() && !file.delete()) {
+            LOG.error("deleteSegment() - The segment " + file.getName() + " could not be deleted");
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("deleteSegment() - The segment " + file.getName() + " has been deleted");
         }
     }
 
     /**
-     * It opens the counter binary file for writing
+     * @return whether a complete record starts at the given offset
+     */
+    private static boolean hasRecord(final MappedByteBuffer buffer, final int offset) {
+        return offset + HEADER_SIZE <= buffer.limit() && buffer.get(offset) == RECORD
+                && buffer.getInt(offset + 1) >= 0 && offset + HEADER_SIZE + buffer.getInt(offset + 1) <= buffer.limit();
+    }
+
+    /**
+     * Moves the read position to the next record, going to the following
+     * segment at the end of a segment
      *
-     * @throws DataFallbackException
-     *             An exception is thrown if the file can not be opened for
-     *             wrtiting
+     * @return whether there is a record at the read position
      */
-    private void openCounterDataOutputStream() throws DataFallbackException {
-        if (dOutput == null) {
-            if (LOG.isDebugEnabled())
-                LOG.debug("openDataOutputStream() ; Opening the writer for the "
-                        + counterFile.getName() + " file");
-            try {
-                dOutput = new BufferedWriter(new FileWriter(counterFile));
-            } catch (IOException e) {
-                throw new DataFallbackException(e.getMessage());
+    private boolean seekRecord() {
+        while (true) {
+            if (input == null) {
+                input = map(readSegment);
+            }
+            if (input != null && hasRecord(input, readOffset)) {
+                return true;
+            }
+            if (readSegment >= writeSegment) {
+                return false;
             }
+            input = null;
+            release(readSegment);
+            readSegment++;
+            readOffset = 0;
         }
     }
 
     /**
-     * The output stream for the counter file is closed
+     * Positions the reading at a given number of records after the checkpoint
      *
+     * @param lineNumber
+     *            The number of records to skip after the checkpoint
      * @throws DataFallbackException
-     *             An exception is thrown if the descriptor cannot be closed
+     *             An exception is thrown if there was any problems while
+     *             reading the log
      */
-    private void closeCounterDataOutputStream() throws DataFallbackException {
-        if (LOG.isDebugEnabled())
-            LOG.debug("Closing the counter file writer for the file " + counterFile.getName());
-        if (dOutput != null) {
-            try {
-                dOutput.close();
-            } catch (IOException e) {
-                throw new DataFallbackException(e.getMessage());
-            } finally {
-                dOutput = null;
-            }
+    public final void goToLine(final int lineNumber) throws DataFallbackException {
+        closeFallbackInputStream();
+        readSegment = checkpointSegment;
+        readOffset = checkpointOffset;
+        for (int i = 0; i < lineNumber && seekRecord(); i++) {
+            readOffset += HEADER_SIZE + input.getInt(readOffset + 1);
         }
     }
 
     /**
-     * It opens a file output stream
+     * Maps the segment being written
      *
      * @throws DataFallbackException
-     *             An exception is thrown if the output stream cannot be opened.
+     *             An exception is thrown if the segment cannot be mapped
      */
     public final void openFallbackOutputStream() throws DataFallbackException {
         if (output == null) {
             if (LOG.isDebugEnabled())
-                LOG.debug("openOutputStream() : Opening the writer for the "
-                        + dataFile.getName() + " file");
-            try {
-                output = new BufferedWriter(new FileWriter(dataFile, true));
-            } catch (IOException e) {
-                throw new DataFallbackException(e.getMessage());
+                LOG.debug("openFallbackOutputStream() : Mapping the segment " + writeSegment
+                        + " of the " + dataFile.getName() + " fallback log");
+            output = map(writeSegment);
+            if (output == null) {
+                output = createSegment(writeSegment, segmentSize);
             }
         }
     }
 
     /**
-     * It opens a file input stream
+     * Maps the segment being read
      *
      * @throws DataFallbackException
-     *             An exception is thrown if the input stream cannot be opened
+     *             An exception is thrown if the segment cannot be mapped
      */
     public final void openFallbackInputStream() throws DataFallbackException {
-        if (inputBuf == null) {
+        if (input == null) {
             if (LOG.isDebugEnabled())
-                LOG.debug("openFallbackInputStream() : Opening the reader for the "
-                        + dataFile.getName() + "file");
-            try {
-                setInput(new BufferedReader(new FileReader(dataFile)));
-            } catch (IOException e) {
-                throw new DataFallbackException(e.getMessage());
-            }
+                LOG.debug("openFallbackInputStream() : Mapping the segment " + readSegment
+                        + " of the " + dataFile.getName() + " fallback log");
+            input = map(readSegment);
         }
     }
 
     /**
-     * It closes the input stream
+     * Releases the mapping of the segment being read
      *
      * @throws DataFallbackException
-     *             An exception is thrown if the input stream cannot be closed
+     *             never thrown, kept for compatibility
      */
     public final void closeFallbackInputStream() throws DataFallbackException {
-        if (getInput() != null) {
-            try {
-                if (LOG.isDebugEnabled())
-                    LOG.debug("closeInputStream() : Closing the file reader for the file "
-                            + dataFile.getName());
-                getInput().close();
-            } catch (IOException e) {
-                throw new DataFallbackException(e.getMessage());
-            } finally {
-                setInput(null);
-            }
+        if (input != null) {
+            input = null;
+            release(readSegment);
         }
     }
 
     /**
-     * It closes the output stream
+     * Flushes and releases the mapping of the segment being written
      *
      * @throws DataFallbackException
-     *             An exception is thrown if the output stream cannot be closed
+     *             never thrown, kept for compatibility
      */
     public final void closeFallbackOutputStream() throws DataFallbackException {
-
         if (output != null) {
-            if (LOG.isDebugEnabled())
-                LOG.debug("Closing the file writer for the file " + dataFile.getName());
-            try {
-                output.close();
-            } catch (IOException e) {
-                throw new DataFallbackException(e.getMessage());
-            } finally {
-                output = null;
-            }
+            output.force();
+            output = null;
+            release(writeSegment);
         }
     }
 
     /**
-     * It sets the file counter to zero
-     */
-    private void initializeCounterFile() {
-        try {
-            openCounterDataOutputStream();
-            dOutput.write("0");
-            dOutput.newLine();
-            dOutput.flush();
-            if (LOG.isDebugEnabled())
-                LOG
-                        .debug("initializeCounterFile() - The counter file has been updated with zero");
-        } catch (IOException e) {
-            LOG
-                    .error("initializeCounterFile() - Error while trying to write in the counter file");
-        } catch (DataFallbackException e) {
-            LOG.error("initializeCounterFile() - The counter file could not be opened");
-        } finally {
-            try {
-                closeCounterDataOutputStream();
-            } catch (DataFallbackException ex) {
-                LOG.error("initializeCounterFile() - The counter file could not be closed");
-            }
+     * Appends a record to the log, rolling over to a new segment if the
+     * record does not fit in the current one
+     *
+     * @param bytes the record data
+     * @throws DataFallbackException
+     *             An exception is thrown if the record cannot be written
+     */
+    private void append(final byte[] bytes) throws DataFallbackException {
+        openFallbackOutputStream();
+        int size = HEADER_SIZE + bytes.length;
+        if (writeOffset + size > output.limit()) {
+            output.force();
+            output = createSegment(writeSegment + 1, Math.max(segmentSize, size + 1));
+            writeSegment++;
+            writeOffset = 0;
+            release(writeSegment - 1);
+        }
+        output.putInt(writeOffset + 1, bytes.length);
+        ByteBuffer data = output.duplicate();
+        data.position(writeOffset + HEADER_SIZE);
+        data.put(bytes);
+        // terminate the data explicitly, in case of leftovers of a partially written record
+        if (writeOffset + size < output.limit()) {
+            output.put(writeOffset + size, END);
         }
+        // the marker is written last, so that incomplete records are never read
+        output.put(writeOffset, RECORD);
+        writeOffset += size;
     }
 
     /**
-     * It writes an object into one of the fallback files
+     * It writes an object into the fallback log
      *
      * @param object
-     *            The IFallback object to be written to the fallback file
+     *            The IFallback object to be written to the fallback log
      * @throws DataFallbackException
-     *             An exception is thrown if the tag cannot be written to the
-     *             fallback file
+     *             An exception is thrown if the object cannot be written to the
+     *             fallback log
      */
-
     public final void writeLine(final IFallback object) throws DataFallbackException {
-
-        String str = object.toString();
-        try {
-            output.write(str);
-            output.newLine();
-            output.flush();
-        } catch (IOException e) {
-            throw new DataFallbackException(
-                    "writeLine() : An error has ocurred while trying to write in the "
-                            + getDataFile().getName() + " file " + e.getMessage());
-        }
+        append(object.toString().getBytes(StandardCharsets.UTF_8));
         if (LOG.isDebugEnabled()) {
             LOG.debug("writeLine() - The object with id " + object.getId() + " has been logged to the " + dataFile.getPath()
-                    + " file");
+                    + " fallback log");
         }
     }
 
     /**
-     * It reads a list of objects from a fallback file
+     * It reads a list of objects from the fallback log
      *
      * @param numOfLines
-     *            The number of lines to be read from the fallback file
+     *            The number of records to be read from the fallback log
      * @param fallbackObj
      *            An IFallback object to which type (IFallback implementation)
-     *            the read lines will be transformed
-     * @return A List of objects representing, each of it, a line from the
-     *         fallback file
+     *            the read records will be transformed
+     * @return A List of objects representing, each of it, a record from the
+     *         fallback log
      * @throws DataFallbackException
-     *             An exception is thrown if tags cannot be read from the
-     *             fallback file
+     *             An exception is thrown if objects cannot be read from the
+     *             fallback log
      */
     public final FallbackObjectContainer readLines(final int numOfLines, final IFallback fallbackObj)
             throws DataFallbackException {
-        // line counter
         int readlines = 0;
         List<IFallback> objects = new ArrayList<>();
-        String line = null;
-        IFallback obj;
+        byte[] bytes = new byte[0];
 
-        // Process each line until we reach the specified number of lines or the
-        // end of file
-        boolean moreLines = true;
-        try {
-            while (moreLines && readlines < numOfLines) {
-                line = getInput().readLine();
-                if (line == null) {
-                    moreLines = false;
-                } else {
-                    try {
-                        // Parse the line to get the datatags values
-                        obj = fallbackObj.getObject(line);
-                        objects.add(obj);
-                    } catch (DataFallbackException e) {
-                         LOG.error("readLines() - " + e.getMessage() + "" + line);
-                    }
-                    readlines++;
-                }
+        while (readlines < numOfLines && seekRecord()) {
+            int length = input.getInt(readOffset + 1);
+            if (bytes.length < length) {
+                bytes = new byte[length];
             }
-        } catch (IOException e) {
-            throw new DataFallbackException(e.getMessage());
+            ByteBuffer data = input.duplicate();
+            data.position(readOffset + HEADER_SIZE);
+            data.get(bytes, 0, length);
+            readOffset += HEADER_SIZE + length;
+            String line = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            try {
+                objects.add(fallbackObj.getObject(line));
+            } catch (DataFallbackException e) {
+                LOG.error("readLines() - " + e.getMessage() + "" + line);
+            }
+            readlines++;
         }
         if (LOG.isDebugEnabled()) {
             LOG.debug("readLines() - " + objects.size()
-                    + " lines has been read from the log file");
+                    + " records have been read from the fallback log");
         }
         return new FallbackObjectContainer(objects, readlines);
     }
 
     /**
-     * Checks whether the fallback log file has any contents or not
+     * Checks whether the fallback log has any records which have not been
+     * committed back
      *
-     * @return A boolean indicating whether the file is empty (true) or not
+     * @return A boolean indicating whether the log is empty (true) or not
      *         (false)
      */
     public final boolean isFallBackFileEmpty() {
-        boolean isEmpty = false;
-        try {
-            openFallbackInputStream();
-            if (!getInput().ready()) {
-                isEmpty = true;
-            }
-        } catch (IOException e) {
-            LOG
-                    .error(
-                            "isFallBackFileEmpty() : A problem has ocurred while trying to determine if the file was empty",
-                            e);
-        } catch (Exception ex) {
-            LOG.error("isFallBackFileEmpty() : " + ex.getMessage());
-        } finally {
-            try {
-                closeFallbackInputStream();
-            } catch (Exception ex) {
-                LOG.error("isFallBackFileEmpty() : " + ex.getMessage());
-            }
-        }
+        boolean isEmpty = checkpointSegment == writeSegment && checkpointOffset == writeOffset;
         if (LOG.isDebugEnabled())
-            LOG
-                    .debug("isFallBackFileEmpty() : The result of checking whether the file is empty or not is "
+            LOG.debug("isFallBackFileEmpty() : The result of checking whether the log is empty or not is "
                             + isEmpty);
         return isEmpty;
     }
 
     /**
-     * It checks the number of lines that the fallback log file has
+     * Moves the checkpoint the given number of records forward and stores it,
+     * so that the records won't be treated next time. Segments which have been
+     * fully committed back are deleted.
      *
-     * @return Number of lines of the file
+     * @param lines
+     *            the number of records which have been committed back
      * @throws DataFallbackException
-     *             An exception is thrown if something wrong happens while
-     *             trying to read the file
-     */
-    private int calcNumberOfLines() throws DataFallbackException {
-        int lines = 0;
-        openFallbackInputStream();
-        try {
-            while (getInput().readLine() != null) {
-                lines++;
+     *             An exception is thrown if the log cannot be read
+     */
+    public final void updateNumberOfProcessedLines(final int lines) throws DataFallbackException {
+        long segment = checkpointSegment;
+        int offset = checkpointOffset;
+        MappedByteBuffer buffer = map(segment);
+        for (int i = 0; i < lines; i++) {
+            while (buffer == null || !hasRecord(buffer, offset)) {
+                if (segment >= writeSegment) {
+                    release(segment);
+                    throw new DataFallbackException("updateNumberOfProcessedLines() - Only " + i
+                            + " of " + lines + " records found after the checkpoint");
+                }
+                release(segment);
+                segment++;
+                offset = 0;
+                buffer = map(segment);
             }
-        } catch (IOException e) {
-            throw new DataFallbackException();
-        } finally {
-            closeFallbackInputStream();
+            offset += HEADER_SIZE + buffer.getInt(offset + 1);
         }
-        return lines;
-    }
-
-    /**
-     * It stores the current file counter (indicating the number of lines
-     * already processed from the file), so they won't be treated next time
-     *
-     * @throws DataFallbackException
-     *             An exception is thrown if the counter could not be written to
-     *             the file
-     */
-    public final void updateNumberOfProcessedLines() throws DataFallbackException {
-
-        // Write the counter into the fallback counter file
-        openCounterDataOutputStream();
-        try {
-            this.getDOutput().write(new Integer(getReadBackLines()).toString());
-            getDOutput().newLine();
-            if (LOG.isDebugEnabled())
-                LOG.debug("removeLines() - The counter file has been updated with the value "
-                        + getReadBackLines());
-        } catch (IOException e) {
-            throw new DataFallbackException(e.getMessage());
+        release(segment);
+        for (long consumed = checkpointSegment; consumed < segment; consumed++) {
+            deleteSegment(consumed);
         }
-        closeCounterDataOutputStream();
+        checkpointSegment = segment;
+        checkpointOffset = offset;
+        writeCheckpoint();
+        if (LOG.isDebugEnabled())
+            LOG.debug("updateNumberOfProcessedLines() - The checkpoint has been moved to segment " + segment
+                    + ", offset " + offset);
     }
 
     /**
-     * Removes the contents of the fallback log file by deleting the file and
-     * creating it again and it also updates the counter stored in the
-     * counterfile
+     * Removes the contents of the fallback log by deleting all segments. The
+     * numbering of the segments continues, so that a stale checkpoint can
+     * never point into a new segment.
      *
      * @throws DataFallbackException
-     *             An exception is thrown if the fallback file cannot be deleted
+     *             never thrown, kept for compatibility
      */
     public final void clearFileContents() throws DataFallbackException {
-
-        // Delete the original file
-        if (!dataFile.delete()) {
-            LOG.error("clearFileContents() - The original file could not be deleted");
-            throw new DataFallbackException("The file " + dataFile.getAbsolutePath()
-                    + " could not be deleted");
-        } else {
-            LOG.info("clearFileContents() - The " + dataFile.getAbsolutePath()
-                    + " has been deleted");
-            try {
-                // Create again the fallback log file
-                if (dataFile.createNewFile()) {
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("clearFileContents() - The " + dataFile.getAbsolutePath()
-                                + " has been created");
-                }
-            } catch (IOException e) {
-                LOG.error("clearFileContents() : Error while creating the fallback file "
-                        + e.getMessage());
-            }
-            // Reset the fallback counters
-            initializeCounterFile();
-
+        closeFallbackInputStream();
+        closeFallbackOutputStream();
+        long next = writeSegment + 1;
+        for (Long segment : listSegments()) {
+            deleteSegment(segment);
         }
+        checkpointSegment = next;
+        checkpointOffset = 0;
+        writeCheckpoint();
+        writeSegment = next;
+        writeOffset = 0;
+        readSegment = next;
+        readOffset = 0;
+        LOG.info("clearFileContents() - The segments of the " + dataFile.getAbsolutePath() + " fallback log have been deleted");
     }
 
     /**
-     * This method closes all the file descriptors that could be still opened
+     * This method releases all the mappings that could be still opened
      * before destroying the object
      *
      */
@@ -707,10 +780,11 @@ public class FallbackFileController {
         try {
             closeFallbackInputStream();
             closeFallbackOutputStream();
-            closeCounterDataInputStream();
-            closeCounterDataOutputStream();
+            for (Long segment : new ArrayList<>(mappings.keySet())) {
+                release(segment);
+            }
         } catch (Exception e) {
-            LOG.error("finalize() - The opened streams to the files could not be closed");
+            LOG.error("finalize() - The fallback log segments could not be released");
         }
     }
 }
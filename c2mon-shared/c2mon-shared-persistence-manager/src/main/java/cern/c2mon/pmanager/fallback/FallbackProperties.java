@@ -44,6 +44,21 @@ public final class FallbackProperties {
     /** It indicates the number of lines that can be read from the fallback file at each time*/
     public static final String NUMBER_LINES_FROM_FILE = "2000";
 
+    /** It indicates the size in megabytes of a fallback log segment*/
+    public static final String SEGMENT_SIZE = "16";
+
+    /** It indicates the number of parallel writers committing the fallback data back to the DB*/
+    public static final String RECOVERY_THREADS = "4";
+
+    /** It indicates the maximum number of lines committed back to the DB in one batch*/
+    public static final String RECOVERY_MAX_BATCH = "50000";
+
+    /** It indicates the time in milliseconds a batch should take to be committed back to the DB*/
+    public static final String RECOVERY_TARGET_LATENCY = "2000";
+
+    /** It indicates the capacity of the in-memory write queue, 0 for synchronous writes*/
+    public static final String QUEUE_CAPACITY = "0";
+
     /** It indicates with which frequency (each number of lines) the check for the disc size should be done*/
     private int freeSpaceCheckFrequency = Integer.parseInt(FREE_SPACE_CHECK_FREQUENCY);
 
@@ -53,6 +68,21 @@ public final class FallbackProperties {
     /** Number of lines that will be read in each go from the fallback file */
     private int numberLinesToReadFromFile = Integer.parseInt(NUMBER_LINES_FROM_FILE);
 
+    /** Size of a fallback log segment in megabytes */
+    private int segmentSize = Integer.parseInt(SEGMENT_SIZE);
+
+    /** Number of parallel writers used for the recovery */
+    private int recoveryThreads = Integer.parseInt(RECOVERY_THREADS);
+
+    /** Maximum number of lines committed back in one batch */
+    private int recoveryMaxBatch = Integer.parseInt(RECOVERY_MAX_BATCH);
+
+    /** Time in milliseconds a recovery batch should take */
+    private int recoveryTargetLatency = Integer.parseInt(RECOVERY_TARGET_LATENCY);
+
+    /** Default capacity of the in-memory write queue */
+    private int queueCapacity = Integer.parseInt(QUEUE_CAPACITY);
+
     /** It indicates that an error while getting the free space in the system's disc has occurred*/
     public static final int CMD_FREE_SPACE_ERROR = -1;
 
@@ -89,6 +119,11 @@ public final class FallbackProperties {
             this.minimunDiscFreeSpace = Integer.parseInt(fallbackProperties.getProperty("fallback.minimum.freespace", FREE_SPACE_CHECK_FREQUENCY));
             this.freeSpaceCheckFrequency = Integer.parseInt(fallbackProperties.getProperty("fallback.discsize.check", DISC_SIZE_CHECK));
             this.numberLinesToReadFromFile = Integer.parseInt(fallbackProperties.getProperty("fallback.read.lines.per.iteration", NUMBER_LINES_FROM_FILE));
+            this.segmentSize = Integer.parseInt(fallbackProperties.getProperty("fallback.segment.size", SEGMENT_SIZE));
+            this.recoveryThreads = Integer.parseInt(fallbackProperties.getProperty("fallback.recovery.threads", RECOVERY_THREADS));
+            this.recoveryMaxBatch = Integer.parseInt(fallbackProperties.getProperty("fallback.recovery.max.batch", RECOVERY_MAX_BATCH));
+            this.recoveryTargetLatency = Integer.parseInt(fallbackProperties.getProperty("fallback.recovery.target.latency", RECOVERY_TARGET_LATENCY));
+            this.queueCapacity = Integer.parseInt(fallbackProperties.getProperty("fallback.queue.capacity", QUEUE_CAPACITY));
           } else {
               LOG.warn(new StringBuffer("init() : Unable to find/read properties file ").append(PROPERTY_FILE_NAME).toString());
               LOG.info("init() : Using default values for the fallback parameters");
@@ -131,4 +166,39 @@ public final class FallbackProperties {
     public int getNumberLinesToReadFromFile() {
         return numberLinesToReadFromFile;
     }
+
+    /**
+     * @return the size of a fallback log segment in bytes
+     */
+    public int getSegmentSize() {
+        return segmentSize * 1024 * 1024;
+    }
+
+    /**
+     * @return the number of parallel writers used for the recovery
+     */
+    public int getRecoveryThreads() {
+        return recoveryThreads;
+    }
+
+    /**
+     * @return the maximum number of lines committed back in one batch
+     */
+    public int getRecoveryMaxBatch() {
+        return recoveryMaxBatch;
+    }
+
+    /**
+     * @return the time in milliseconds a recovery batch should take
+     */
+    public int getRecoveryTargetLatency() {
+        return recoveryTargetLatency;
+    }
+
+    /**
+     * @return the default capacity of the in-memory write queue, 0 for synchronous writes
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
 }
@@ -99,11 +99,7 @@ public class FallbackFileManager {
      */
     public final void fallback(final List data) throws DataFallbackException {
 
-        // If the file is empty we close the reading descriptor since it means
-        // that a new file is going to be created
-        if (isFallbackFileEmpty())
-            fFileController.closeFallbackInputStream();
-        // open the fallback log file output stream
+        // map the segment of the fallback log being written
         fFileController.openFallbackOutputStream();
         final int size = data.size();
         // Iterate through all the datatags and logged all the info that
@@ -126,12 +122,7 @@ public class FallbackFileManager {
     public final void fallback(final IFallback fallbackObj) throws DataFallbackException {
 
         try {
-            // If the file is empty we close the reading descriptor since it
-            // means that
-            // a new file is going to be created
-            if (isFallbackFileEmpty())
-                fFileController.closeFallbackInputStream();
-            // open the fallback log file output stream
+            // map the segment of the fallback log being written
             fFileController.openFallbackOutputStream();
             fFileController.writeLine(fallbackObj);
             fFileController.setNumberOfLines(fFileController.getNumberOfLines() + 1);
@@ -203,8 +194,8 @@ public class FallbackFileManager {
      *             reading the file
      */
     public final FallbackObjectContainer readDataBack(final int numberOfLines) throws DataFallbackException {
-        // close the outputstream if it was still opened
-        fFileController.closeFallbackOutputStream();
+        // the segments are memory-mapped, so the records written so far are
+        // visible to the reader without closing the writer
         fFileController.openFallbackInputStream();
         // read from the fallback log mechanism the indicated number of lines
         final FallbackObjectContainer data = fFileController.readLines(numberOfLines, fallbackObj);
@@ -232,11 +223,12 @@ public class FallbackFileManager {
 
         // Update the number of already committed datatags
         fFileController.setReadBackLines(numberOfLines + fFileController.getReadBackLines());
-        // Virtually remove those datatags from the file
+        // Move the checkpoint after those datatags, deleting consumed segments
         try {
-            fFileController.updateNumberOfProcessedLines();
+            fFileController.updateNumberOfProcessedLines(numberOfLines);
         } catch (DataFallbackException e) {
             removed = false;
+            LOG.error("Exception caught while attempting to move the checkpoint of the Fallback log", e);
         }
         try {
             // Physically remove all the contents from the file once all the
@@ -248,7 +240,7 @@ public class FallbackFileManager {
                                 + " and the file's lines is "
                                 + fFileController.getNumberOfLines());
             }
-            if (fFileController.getReadBackLines() == fFileController.getNumberOfLines()) {
+            if (fFileController.isFallBackFileEmpty()) {
                 // Close the reading descriptor
                 fFileController.closeFallbackInputStream();
                 fFileController.clearFileContents();
@@ -282,9 +274,9 @@ public class FallbackFileManager {
      */
     public final void goToLastProcessedLine(final int lastCommited)
             throws DataFallbackException {
-        fFileController.closeFallbackInputStream();
-        int readLines = fFileController.getReadBackLines();
-        fFileController.goToLine(readLines + lastCommited);
+        // the reading is positioned relative to the checkpoint, which already
+        // excludes the records read back before
+        fFileController.goToLine(lastCommited);
     }
 
     /**
@@ -293,7 +285,7 @@ public class FallbackFileManager {
      * @return The value indicating the status of the log
      */
     public final boolean isFallbackFileEmpty() {
-        return !((fFileController.getNumberOfLines()) > 0);
+        return fFileController.isFallBackFileEmpty();
     }
 
     /**
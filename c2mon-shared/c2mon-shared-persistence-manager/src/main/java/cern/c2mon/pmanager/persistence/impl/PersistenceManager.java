@@ -17,7 +17,12 @@
 package cern.c2mon.pmanager.persistence.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,10 +49,20 @@ import cern.c2mon.pmanager.persistence.util.DataRecoveryThread;
  * activated and deactivated. The deactivation will take place as soon as it is
  * detected that the DB issues have been sorted out. At that same time the data
  * stored in the file will be committed back to the DB.
+ * <p/>
+ * By default the data is committed to the DB synchronously by the calling
+ * thread. Setting a queue capacity greater than zero before the first call
+ * to {@link #storeData(List)} switches to an asynchronous pipeline: the data
+ * is put into bounded in-memory queues, partitioned by object id, which are
+ * drained in batches by dedicated writer threads. The incoming data beyond
+ * the high watermark of the queues, or all of it while the last commit took
+ * longer than the spill latency, is written directly to the fallback file
+ * instead, from which it is recovered as usual.
  *
  * @author mruizgar
  */
-public class PersistenceManager<T extends IFallback> implements IPersistenceManager<T>, FallbackAlarmsInterface {
+public class PersistenceManager<T extends IFallback> implements IPersistenceManager<T>, FallbackAlarmsInterface,
+    PersistenceManagerMBean {
 
   /**
    * Implementation of the IDBPersistenceHandler interface that will be used
@@ -83,6 +98,59 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
    */
   private DataRecoveryThread dataRecovery = new DataRecoveryThread(this);
 
+  /**
+   * Time in milliseconds taken by the last commit of live data
+   */
+  private volatile long lastLiveLatency;
+
+  /**
+   * Time of the last commit of live data, in ms since epoch
+   */
+  private volatile long lastLiveStore;
+
+  /**
+   * Capacity of the in-memory queues of the asynchronous pipeline, 0 for
+   * synchronous commits
+   */
+  private int queueCapacity = FallbackProperties.getInstance().getQueueCapacity();
+
+  /**
+   * Number of queued objects above which incoming data is spilled to the
+   * fallback file, 0 for 80% of the queue capacity
+   */
+  private int highWatermark = 0;
+
+  /**
+   * Number of writer threads draining the queues
+   */
+  private int writerThreads = 1;
+
+  /**
+   * Maximum number of objects committed by a writer thread at once
+   */
+  private int writeBatchSize = 500;
+
+  /**
+   * Commit latency in ms above which queued data is spilled to the fallback
+   * file, 0 to disable
+   */
+  private long spillLatency = 0;
+
+  /**
+   * One queue per writer thread, created with the first call to storeData
+   */
+  private volatile List<BlockingQueue<T>> queues;
+
+  private final List<Thread> writers = new ArrayList<>();
+
+  private volatile boolean shutdown = false;
+
+  private final AtomicLong queuedObjects = new AtomicLong();
+
+  private final AtomicLong spilledObjects = new AtomicLong();
+
+  private volatile int peakQueueDepth;
+
   /**
    * Log4j Logger for this class
    */
@@ -135,6 +203,130 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
     this.sleepTime = sleepTime;
   }
 
+  /**
+   * @return the dataRecovery thread
+   */
+  public final DataRecoveryThread getDataRecovery() {
+    return dataRecovery;
+  }
+
+  /**
+   * @return the time of the last commit of live data, in ms since epoch
+   */
+  public final long getLastLiveStore() {
+    return lastLiveStore;
+  }
+
+  @Override
+  public final long getLastLiveLatency() {
+    return lastLiveLatency;
+  }
+
+  @Override
+  public final boolean isRecoveryRunning() {
+    return dataRecovery.isRunning();
+  }
+
+  @Override
+  public final long getRecoveredLines() {
+    return dataRecovery.getRecoveredLines();
+  }
+
+  @Override
+  public final long getRemainingLines() {
+    return Math.max(0, fallbackManager.getFallbackFileController().getNumberOfLines()
+        - fallbackManager.getFallbackFileController().getReadBackLines());
+  }
+
+  @Override
+  public final double getRecoveryRate() {
+    return dataRecovery.getRecoveryRate();
+  }
+
+  @Override
+  public final long getRecoveryEtaSeconds() {
+    return dataRecovery.getEstimatedSecondsLeft(getRemainingLines());
+  }
+
+  @Override
+  public final int getRecoveryBatchSize() {
+    return dataRecovery.getBatchSize();
+  }
+
+  @Override
+  public final int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  @Override
+  public final int getQueueDepth() {
+    List<BlockingQueue<T>> current = queues;
+    if (current == null) {
+      return 0;
+    }
+    int depth = 0;
+    for (BlockingQueue<T> queue : current) {
+      depth += queue.size();
+    }
+    return depth;
+  }
+
+  @Override
+  public final int getPeakQueueDepth() {
+    return peakQueueDepth;
+  }
+
+  @Override
+  public final long getQueuedObjects() {
+    return queuedObjects.get();
+  }
+
+  @Override
+  public final long getSpilledObjects() {
+    return spilledObjects.get();
+  }
+
+  /**
+   * @param queueCapacity the total capacity of the in-memory queues, 0 for
+   *                      synchronous commits. Must be set before the first
+   *                      call to storeData.
+   */
+  public final void setQueueCapacity(final int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * @param highWatermark the number of queued objects above which incoming
+   *                      data is spilled to the fallback file, 0 for 80% of
+   *                      the queue capacity
+   */
+  public final void setHighWatermark(final int highWatermark) {
+    this.highWatermark = highWatermark;
+  }
+
+  /**
+   * @param writerThreads the number of threads committing the queued data.
+   *                      Must be set before the first call to storeData.
+   */
+  public final void setWriterThreads(final int writerThreads) {
+    this.writerThreads = Math.max(1, writerThreads);
+  }
+
+  /**
+   * @param writeBatchSize the maximum number of objects committed at once
+   */
+  public final void setWriteBatchSize(final int writeBatchSize) {
+    this.writeBatchSize = Math.max(1, writeBatchSize);
+  }
+
+  /**
+   * @param spillLatency the commit latency in ms above which queued data is
+   *                     spilled to the fallback file, 0 to disable
+   */
+  public final void setSpillLatency(final long spillLatency) {
+    this.spillLatency = spillLatency;
+  }
+
   /**
    * @param minFreeDiscSpace the minFreeDiscSpace to set
    */
@@ -176,11 +368,10 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
    */
   @Override
   public final void storeData(final List<T> data) {
-    if (log(data) && !fallbackManager.isFallbackFileEmpty()) {
-      if (!this.dataRecovery.isRunning()) {
-        dataRecovery.setPersistenceManager(this);
-        new Thread(dataRecovery).start();
-      }
+    if (queueCapacity > 0) {
+      enqueue(data);
+    } else if (log(data)) {
+      startRecoveryIfNeeded();
     }
   }
 
@@ -195,10 +386,175 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
    */
   @Override
   public final void storeData(final T object) {
-    if (log(object) && !fallbackManager.isFallbackFileEmpty()) {
-      if (!this.dataRecovery.isRunning()) {
-        dataRecovery.setPersistenceManager(this);
-        new Thread(dataRecovery).start();
+    if (queueCapacity > 0) {
+      if (object != null) {
+        enqueue(Collections.singletonList(object));
+      }
+    } else if (log(object)) {
+      startRecoveryIfNeeded();
+    }
+  }
+
+  /**
+   * Writes data directly to the fallback file, from which it is committed
+   * again by the recovery thread. Meant for DB handlers committing the data
+   * asynchronously, which only learn about failed objects after
+   * {@link IDBPersistenceHandler#storeData(List)} returned.
+   *
+   * @param data the objects which could not be committed
+   */
+  public final void storeInFallback(final List<T> data) {
+    if (data != null && !data.isEmpty()) {
+      spill(data);
+    }
+  }
+
+  /**
+   * Starts the thread reading back the fallback file, unless it is empty or
+   * the thread is already running.
+   */
+  private void startRecoveryIfNeeded() {
+    if (!fallbackManager.isFallbackFileEmpty() && !this.dataRecovery.isRunning()) {
+      dataRecovery.setPersistenceManager(this);
+      new Thread(dataRecovery).start();
+    }
+  }
+
+  /**
+   * Puts the data into the queues of the asynchronous pipeline, up to the
+   * high watermark, and writes the excess directly to the fallback file. All
+   * data is written to the fallback file if the DB is slow.
+   *
+   * @param data the objects to store
+   */
+  private void enqueue(final List<T> data) {
+    if (data == null || data.isEmpty()) {
+      return;
+    }
+    List<BlockingQueue<T>> current = startWriters();
+    int depth = getQueueDepth();
+    int watermark = highWatermark > 0 ? highWatermark : Math.max(1, queueCapacity * 4 / 5);
+    boolean slow = spillLatency > 0 && lastLiveLatency > spillLatency && depth > 0;
+    int room = shutdown || slow ? 0 : Math.max(0, Math.min(data.size(), watermark - depth));
+    List<T> rejected = null;
+    if (room < data.size()) {
+      rejected = new ArrayList<>(data.subList(room, data.size()));
+    }
+    for (T object : data.subList(0, room)) {
+      BlockingQueue<T> queue = current.get(Math.floorMod(object.getId().hashCode(), current.size()));
+      if (!queue.offer(object)) {
+        if (rejected == null) {
+          rejected = new ArrayList<>();
+        }
+        rejected.add(object);
+      }
+    }
+    if (rejected != null) {
+      spill(rejected);
+    }
+    queuedObjects.addAndGet(data.size() - (rejected == null ? 0 : rejected.size()));
+    peakQueueDepth = Math.max(peakQueueDepth, getQueueDepth());
+  }
+
+  /**
+   * Writes the data to the fallback file without trying the DB first.
+   *
+   * @param data the objects to spill
+   */
+  private void spill(final List<T> data) {
+    synchronized (fallbackManager.getFallbackFileController()) {
+      if (!writeToFallback(data)) {
+        for (T object : data) {
+          FALLBACK_LOG.info(object.toString());
+        }
+      }
+    }
+    spilledObjects.addAndGet(data.size());
+  }
+
+  /**
+   * Creates the queues and starts the writer threads on first use.
+   *
+   * @return the queues of the writer threads
+   */
+  private List<BlockingQueue<T>> startWriters() {
+    List<BlockingQueue<T>> current = queues;
+    if (current != null) {
+      return current;
+    }
+    synchronized (writers) {
+      if (queues == null) {
+        int capacity = Math.max(1, queueCapacity / writerThreads);
+        List<BlockingQueue<T>> created = new ArrayList<>(writerThreads);
+        String name = fallbackManager.getFallbackFileController().getDataFile().getName();
+        for (int i = 0; i < writerThreads; i++) {
+          BlockingQueue<T> queue = new ArrayBlockingQueue<>(capacity);
+          created.add(queue);
+          Thread writer = new Thread(() -> drain(queue), "PersistenceWriter-" + name + "-" + i);
+          writer.setDaemon(true);
+          writers.add(writer);
+        }
+        queues = created;
+        writers.forEach(Thread::start);
+      }
+      return queues;
+    }
+  }
+
+  /**
+   * Loop of a writer thread, committing the queued objects in batches until
+   * the manager is shut down and the queue is empty.
+   *
+   * @param queue the queue of the writer thread
+   */
+  private void drain(final BlockingQueue<T> queue) {
+    List<T> batch = new ArrayList<>(writeBatchSize);
+    while (!shutdown || !queue.isEmpty()) {
+      try {
+        T first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, writeBatchSize - 1);
+        if (log(batch)) {
+          startRecoveryIfNeeded();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (RuntimeException e) {
+        LOG.error("Unexpected exception while committing " + batch.size() + " queued objects", e);
+      } finally {
+        batch = new ArrayList<>(writeBatchSize);
+      }
+    }
+  }
+
+  /**
+   * Stops the writer threads of the asynchronous pipeline, once they have
+   * committed the queued data. Data still queued after the timeout is written
+   * to the fallback file.
+   */
+  public final void shutdown() {
+    shutdown = true;
+    synchronized (writers) {
+      for (Thread writer : writers) {
+        try {
+          writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (queues != null) {
+        for (BlockingQueue<T> queue : queues) {
+          List<T> remaining = new ArrayList<>();
+          queue.drainTo(remaining);
+          if (!remaining.isEmpty()) {
+            LOG.warn("Writing " + remaining.size() + " queued objects to the fallback file at shutdown");
+            spill(remaining);
+          }
+        }
       }
     }
   }
@@ -243,8 +599,10 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
       LOG.debug(str.toString());
     }
 
+    long start = System.currentTimeMillis();
     try {
       dbHandler.storeData(data);
+      recordLiveLatency(start);
       LOG.info(+size + " tags have been successfully logged into the DB");
       alarmSender.dbUnavailable(DOWN, null, dbHandler.getDBInfo());
     } catch (IDBPersistenceException e) {
@@ -288,8 +646,10 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
       return dbConnectionUp;
     }
 
+    long start = System.currentTimeMillis();
     try {
       dbHandler.storeData(object);
+      recordLiveLatency(start);
       alarmSender.dbUnavailable(DOWN, null, dbHandler.getDBInfo());
     } catch (IDBPersistenceException e) {
       dbConnectionUp = false;
@@ -307,6 +667,17 @@ public class PersistenceManager<T extends IFallback> implements IPersistenceMana
     return dbConnectionUp;
   }
 
+  /**
+   * Records the time taken by a commit of live data, which slows down the
+   * recovery of the fallback data when the DB is under load.
+   *
+   * @param start the start of the commit, in ms since epoch
+   */
+  private void recordLiveLatency(final long start) {
+    lastLiveStore = System.currentTimeMillis();
+    lastLiveLatency = lastLiveStore - start;
+  }
+
   /**
    * Stores a collection of IFallback objects into the fallback file. In case
    * the disk space is close to get full not data will be written to the file
@@ -0,0 +1,85 @@
+/******************************************************************************
+ * Copyright (C) 2010-2016 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.pmanager.persistence.impl;
+
+/**
+ * JMX view of a {@link PersistenceManager}, exposing the progress of the
+ * recovery of its fallback file and the state of its write queues.
+ */
+public interface PersistenceManagerMBean {
+
+  /**
+   * @return whether the fallback data is being committed back to the DB
+   */
+  boolean isRecoveryRunning();
+
+  /**
+   * @return the number of objects committed back since the recovery started
+   */
+  long getRecoveredLines();
+
+  /**
+   * @return the number of objects in the fallback file still to be committed back
+   */
+  long getRemainingLines();
+
+  /**
+   * @return the recovery rate in objects per second
+   */
+  double getRecoveryRate();
+
+  /**
+   * @return the estimated time in seconds until the recovery is complete, or -1 if unknown
+   */
+  long getRecoveryEtaSeconds();
+
+  /**
+   * @return the current number of objects committed back per batch
+   */
+  int getRecoveryBatchSize();
+
+  /**
+   * @return the time in milliseconds taken by the last commit of live data
+   */
+  long getLastLiveLatency();
+
+  /**
+   * @return the total capacity of the write queues, 0 for synchronous commits
+   */
+  int getQueueCapacity();
+
+  /**
+   * @return the number of objects waiting in the write queues
+   */
+  int getQueueDepth();
+
+  /**
+   * @return the highest number of objects seen in the write queues
+   */
+  int getPeakQueueDepth();
+
+  /**
+   * @return the number of objects put into the write queues
+   */
+  long getQueuedObjects();
+
+  /**
+   * @return the number of objects written directly to the fallback file
+   *         because the queues were full or the DB was slow
+   */
+  long getSpilledObjects();
+}
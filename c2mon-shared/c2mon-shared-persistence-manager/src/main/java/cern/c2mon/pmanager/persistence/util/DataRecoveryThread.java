@@ -16,32 +16,51 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.persistence.util;
 
-import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cern.c2mon.pmanager.IFallback;
 import cern.c2mon.pmanager.alarm.FallbackAlarmsInterface;
+import cern.c2mon.pmanager.fallback.FallbackFileController;
 import cern.c2mon.pmanager.fallback.FallbackProperties;
 import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
 import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
 import cern.c2mon.pmanager.persistence.impl.PersistenceManager;
 
 /**
  * This class implements the Runnable interface. It runs as a separate thread
  * that takes care of committing back to the DB that data stored in a fallback
- * file
+ * file.
+ *
+ * <p>The data is read back in batches, which are split by object id over a
+ * number of parallel writers, so that the objects with the same id are always
+ * committed in order. The batch size adapts to the time the DB takes for
+ * committing a batch, and the recovery pauses while the live data is
+ * committed slower than the target time. The fallback file lock is only held
+ * while reading a batch and moving the checkpoint, so that live data can be
+ * written to the fallback file meanwhile.
+ *
+ * <p>If a batch is only partially committed, the objects not committed are
+ * kept in memory and committed first at the next run, before the checkpoint
+ * is moved. After a restart, such a batch is read again from the file.
  *
  * @author mruizgar
  *
  */
 public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
 
-    /**
-     * It indicates whether a thread of this class has been already started and
-     * it is running
-     */
-    private boolean stopped = true;
-
     /** Log4j Logger for this class (debug and error messages) */
     private static final Logger LOG = LoggerFactory.getLogger(DataRecoveryThread.class);
 
@@ -49,17 +68,62 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
     private static final Logger FALLBACK_LOG = LoggerFactory.getLogger("HistoryFallbackLogger");
 
     /**
-     * Number of miliseconds that the thread will sleep after each iteration by
-     * default
+     * Number of miliseconds that the thread will sleep while the live data is
+     * committed slowly, by default
      */
     private static final int DEFAULT_SLEEP_TIME = 500;
 
+    /** Interval in milliseconds between two progress notifications */
+    private static final long PROGRESS_INTERVAL = 10000;
+
+    /** Counter for naming the writer threads */
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
     /**
      * Instance to the PersistenceManager object that created this object.
      * This way the thread will be able to access its fields knowing from which
      * file it has to read back, etc.
      */
-    private PersistenceManager persistenceManager = null;
+    private volatile PersistenceManager persistenceManager = null;
+
+    /** It indicates whether a thread of this class is running */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /** It indicates that the thread has been asked to stop */
+    private volatile boolean stopped = true;
+
+    /** Number of parallel writers */
+    private int writers = FallbackProperties.getInstance().getRecoveryThreads();
+
+    /** Smallest batch size */
+    private int minBatchSize = FallbackProperties.getInstance().getNumberLinesToReadFromFile();
+
+    /** Largest batch size */
+    private int maxBatchSize = FallbackProperties.getInstance().getRecoveryMaxBatch();
+
+    /** Target time in milliseconds for committing one batch */
+    private long targetLatency = FallbackProperties.getInstance().getRecoveryTargetLatency();
+
+    /** Current batch size */
+    private volatile int batchSize = minBatchSize;
+
+    /** Objects of the current batch not yet committed, per writer */
+    private List<List<IFallback>> pending;
+
+    /** Number of lines of the current batch */
+    private int pendingLines;
+
+    /** Number of objects committed back since the recovery started */
+    private final AtomicLong recoveredLines = new AtomicLong();
+
+    /** Start of the current (or last) recovery, in ms since epoch */
+    private volatile long recoveryStart;
+
+    /** Duration of the last batch commit in milliseconds */
+    private volatile long lastBatchLatency;
+
+    /** Time of the last progress notification */
+    private long lastProgress;
 
     /**
      * @param persistenceManager
@@ -71,11 +135,12 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
     }
 
     /**
-     * Creates a new DataRecoveryThread object specifying the time it will sleep
-     * between each commit to the DB
+     * Creates a new DataRecoveryThread object. The sleep time of the
+     * persistence manager is used as pause between two batches while the
+     * live data is committed slowly.
      *
      * @param persistence
-     *            Indicates the number of miliseconds the thread has to sleep
+     *            The PersistenceManager whose fallback file is recovered
      */
     public DataRecoveryThread(final PersistenceManager persistence) {
         if (persistence.getSleepTime() == -1) { // The sleeptime has not been
@@ -86,138 +151,263 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
     }
 
     /**
-     * @return the stopRunning
+     * @return whether the recovery is running
      */
     public final boolean isRunning() {
-        return !stopped;
+        return running.get();
     }
 
     /**
-     * It stops the thread and removes the reference to the
-     * PersistenceManager object so its memory can be released by the garbage
-     * collector
+     * @param writers the number of parallel writers
      */
-    public final void stop() {
-        if (!isRunning()) {
-            resetPersistenceManager();
-        }
-        stopped = true;
+    public final void setWriters(final int writers) {
+        this.writers = Math.max(1, writers);
     }
 
     /**
-     * Removes the reference to the PersistenceManager object
+     * @param minBatchSize the smallest batch size
+     * @param maxBatchSize the largest batch size
      */
-    private void resetPersistenceManager() {
-        persistenceManager = null;
+    public final void setBatchSizes(final int minBatchSize, final int maxBatchSize) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.batchSize = this.minBatchSize;
     }
 
     /**
-     * This method calls the functionality defined in the FallbackHelper class
-     * to achieve the process of committing back into the DB those tags that
-     * have been stored in the fallback files while the DB connection was broken
+     * @param targetLatency the target time in milliseconds for committing one batch
      */
-    public final void run() {
-        boolean committed = true;
+    public final void setTargetLatency(final long targetLatency) {
+        this.targetLatency = targetLatency;
+    }
 
+    /**
+     * @return the current batch size
+     */
+    public final int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the number of objects committed back since the recovery started
+     */
+    public final long getRecoveredLines() {
+        return recoveredLines.get();
+    }
+
+    /**
+     * @return the duration of the last batch commit in milliseconds
+     */
+    public final long getLastBatchLatency() {
+        return lastBatchLatency;
+    }
+
+    /**
+     * @return the recovery rate in objects per second since the recovery started
+     */
+    public final double getRecoveryRate() {
+        long elapsed = System.currentTimeMillis() - recoveryStart;
+        return recoveryStart == 0 || elapsed <= 0 ? 0 : recoveredLines.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * @param remaining the number of objects still to recover
+     * @return the estimated time in seconds until the recovery is complete, or -1 if unknown
+     */
+    public final long getEstimatedSecondsLeft(final long remaining) {
+        double rate = getRecoveryRate();
+        return rate <= 0 ? -1 : (long) Math.ceil(remaining / rate);
+    }
+
+    /**
+     * It stops the thread after the current batch
+     */
+    public final void stop() {
+        stopped = true;
+    }
+
+    /**
+     * This method commits back into the DB the data stored in the fallback
+     * file while the DB connection was broken, until the file is empty or
+     * the DB becomes unavailable again
+     */
+    public final void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
         stopped = false;
+        PersistenceManager manager = persistenceManager;
         if (FALLBACK_LOG.isDebugEnabled())
             FALLBACK_LOG.debug("Thread of instance " + this.hashCode() + " beginning");
-        synchronized (persistenceManager.getFallbackManager().getFallbackFileController()) {
-            while (!persistenceManager.getFallbackManager().isFallbackFileEmpty() && committed
-                    && isRunning()) {
-                int numberOfTags;
-                // The data from the log file will be read from the file and
-                // committed in the database in bunches of a defined size
-                numberOfTags = commitFallbackData();
-                if (numberOfTags > 0) {
-                    // Remove the dataTags that have been committed back from
-                    // the fallback file
-                    removeReadData(numberOfTags);
+        recoveryStart = System.currentTimeMillis();
+        recoveredLines.set(0);
+        ExecutorService executor = Executors.newFixedThreadPool(writers, r -> {
+            Thread thread = new Thread(r, "FallbackRecovery-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            while (!stopped && (pending != null || !manager.getFallbackManager().isFallbackFileEmpty())) {
+                if (pending == null && !readBatch(manager)) {
+                    break;
                 }
-                if (numberOfTags == 0) {
-                    committed = false;
+                long start = System.currentTimeMillis();
+                boolean committed = commitBatch(manager, executor);
+                lastBatchLatency = System.currentTimeMillis() - start;
+                if (!committed) {
+                    break;
                 }
-                try {
-                    Thread.sleep(persistenceManager.getSleepTime());
-                } catch (InterruptedException e) {
-                    FALLBACK_LOG.error("An error occurred while trying to make the thread to sleep");
+                synchronized (manager.getFallbackManager().getFallbackFileController()) {
+                    removeReadData(manager, pendingLines);
                 }
+                recoveredLines.addAndGet(pendingLines);
+                pending = null;
+                adaptBatchSize();
+                reportProgress(manager, false);
+                pauseWhileLiveDataIsSlow(manager);
             }
+        } finally {
+            executor.shutdownNow();
+            reportProgress(manager, true);
+            stopped = true;
+            running.set(false);
+            if (FALLBACK_LOG.isDebugEnabled())
+                FALLBACK_LOG.debug("Thread of instance " + this.hashCode() + " terminated");
         }
-        /*
-         * if (!isRunning()) { // The thread was externally stopped by
-         * persistenceManager who needs to be destroyed and therefore // we need
-         * to remove the reference to it, so the garbage collector can done its
-         * work persistenceManager = null;
-         */
-        stopped = true;
-        persistenceManager = null;
-        if (FALLBACK_LOG.isDebugEnabled()) {
-            FALLBACK_LOG.debug("Removing the reference to the persistenceManager");
-        }
-
-        if (LOG.isDebugEnabled())
-            FALLBACK_LOG.debug("Thread of instance " + this.hashCode() + " terminated");
     }
 
     /**
-     * Reads back data from a fallback file and commits it to the DB.
-     *
-     * @return An integer value indicating the number of fallback lines that
-     *         were read from the fallback log file and successfully committed
-     *         to the DB
+     * Reads the next batch from the fallback file and splits it by object id
      *
+     * @return whether a batch could be read
      */
-    private int commitFallbackData() {
-
-        FallbackObjectContainer data = null;
-        int committed = 0;
-
-        if (FALLBACK_LOG.isDebugEnabled())
-            FALLBACK_LOG
-                    .debug("commitFallbackData() : Committing the tags stored in the logfile back into the database");
-        try {
-            // Get all the datatags stored in the log file
-            data = persistenceManager.getFallbackManager().readDataBack(
-                    FallbackProperties.getInstance().getNumberLinesToReadFromFile());
-            // Insert the datatags into the database
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("commitFallBackData() - Inserting " + data.getReadLines()
-                        + " tags from the fallback file into the database");
+    private boolean readBatch(final PersistenceManager manager) {
+        FallbackObjectContainer data;
+        FallbackFileController controller = manager.getFallbackManager().getFallbackFileController();
+        synchronized (controller) {
+            try {
+                // always start reading at the checkpoint
+                manager.getFallbackManager().goToLastProcessedLine(0);
+                data = manager.getFallbackManager().readDataBack(batchSize);
+            } catch (DataFallbackException ex) {
+                FALLBACK_LOG.error("readBatch() : Unable to read the data from the log file ", ex);
+                manager.getAlarmSender().fileNotReachable(ACTIVATED, controller.getDataFile());
+                return false;
             }
+        }
+        if (data.getReadLines() == 0) {
+            return false;
+        }
+        pending = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++) {
+            pending.add(new ArrayList<>(data.getObjects().size() / writers + 1));
+        }
+        for (IFallback object : data.getObjects()) {
+            String id = object.getId();
+            pending.get(id == null ? 0 : Math.floorMod(id.hashCode(), writers)).add(object);
+        }
+        pendingLines = data.getReadLines();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("readBatch() - " + pendingLines + " lines read from the fallback file");
+        }
+        return true;
+    }
 
-            persistenceManager.getDbHandler().storeData(data.getObjects());
-            committed = data.getReadLines();
-        } catch (IDBPersistenceException e) {
-            FALLBACK_LOG.error(
-                    "CommitFallBackData : Error executing/committing prepared statement.", e);
-            try {
-                // We reset the file descriptor to the last committed line,
-                // ignoring those last ones
-                // that have been already read, but not committed
-                committed = e.getCommited();
-                persistenceManager.getFallbackManager().goToLastProcessedLine(e.getCommited());
-            } catch (DataFallbackException fe) {
-                FALLBACK_LOG
-                        .error("CommitFallBackData : The file desciptor could not be placed in the right place,"
-                                + " some tags will be ignored" + fe);
+    /**
+     * Commits the pending objects to the DB with the parallel writers. The
+     * committed objects are removed from the pending lists.
+     *
+     * @return whether all pending objects have been committed
+     */
+    private boolean commitBatch(final PersistenceManager manager, final ExecutorService executor) {
+        List<Future<?>> futures = new ArrayList<>(pending.size());
+        for (List<IFallback> objects : pending) {
+            if (!objects.isEmpty()) {
+                futures.add(executor.submit(() -> commit(manager, objects)));
             }
-        } catch (DataFallbackException ex) {
-            FALLBACK_LOG.error(
-                    "commitFallBackData() : Unable to read the data from the log file ", ex);
+        }
+        boolean committed = true;
+        for (Future<?> future : futures) {
             try {
-                // Place the cursor in the last processed line, as if this
-                // called had never been made
-                persistenceManager.getFallbackManager().goToLastProcessedLine(committed);
-            } catch (DataFallbackException fe) {
-                FALLBACK_LOG
-                        .error("CommitFallBackLogs : The file desciptor could not be placed in the right place,"
-                                + " some tags will be ignored" + fe);
+                future.get();
+            } catch (ExecutionException e) {
+                committed = false;
+                FALLBACK_LOG.error("commitBatch() : Error committing the fallback data back to the DB: "
+                        + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                committed = false;
             }
         }
         return committed;
     }
 
+    /**
+     * Commits a list of objects to the DB. On failure, the committed objects are
+     * removed from the list before the exception is rethrown.
+     */
+    @SuppressWarnings("unchecked")
+    private static Void commit(final PersistenceManager manager, final List<IFallback> objects) throws IDBPersistenceException {
+        try {
+            manager.getDbHandler().storeData(objects);
+            objects.clear();
+            return null;
+        } catch (IDBPersistenceException e) {
+            objects.subList(0, Math.min(e.getCommited(), objects.size())).clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Doubles the batch size while the batches are committed in less than half
+     * the target time, and halves it when they take longer than the target time
+     */
+    private void adaptBatchSize() {
+        if (lastBatchLatency < targetLatency / 2) {
+            batchSize = Math.min(maxBatchSize, batchSize * 2);
+        } else if (lastBatchLatency > targetLatency) {
+            batchSize = Math.max(minBatchSize, batchSize / 2);
+        }
+    }
+
+    /**
+     * Pauses the recovery while the live data takes longer than the target
+     * time to be committed, to leave the DB capacity to the live data
+     */
+    private void pauseWhileLiveDataIsSlow(final PersistenceManager manager) {
+        if (manager.getLastLiveLatency() > targetLatency
+                && System.currentTimeMillis() - manager.getLastLiveStore() < targetLatency) {
+            batchSize = Math.max(minBatchSize, batchSize / 2);
+            try {
+                Thread.sleep(manager.getSleepTime());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * Notifies the alarm listener about the recovery progress
+     *
+     * @param force notify even if the last notification is recent
+     */
+    private void reportProgress(final PersistenceManager manager, final boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - lastProgress < PROGRESS_INTERVAL) {
+            return;
+        }
+        lastProgress = now;
+        FallbackFileController controller = manager.getFallbackManager().getFallbackFileController();
+        long remaining = Math.max(0, controller.getNumberOfLines() - controller.getReadBackLines());
+        File file = controller.getDataFile();
+        manager.getAlarmSender().recoveryProgress(file, recoveredLines.get(), remaining, getEstimatedSecondsLeft(remaining));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("reportProgress() - " + recoveredLines.get() + " lines recovered from " + file.getName()
+                    + ", " + remaining + " remaining, batch size " + batchSize);
+        }
+    }
+
     /**
      * Marks the indicated number of lines as removed in the fallback file
      *
@@ -225,32 +415,21 @@ public class DataRecoveryThread implements Runnable, FallbackAlarmsInterface {
      *            The number of lines we want to mark as removed from the
      *            fallback file
      */
-    private void removeReadData(final int size) {
+    private void removeReadData(final PersistenceManager manager, final int size) {
 
-        if (!persistenceManager.getFallbackManager().removeReadData(size)) {
-            persistenceManager.getAlarmSender().fileNotReachable(
+        if (!manager.getFallbackManager().removeReadData(size)) {
+            manager.getAlarmSender().fileNotReachable(
                     ACTIVATED,
-                    persistenceManager.getFallbackManager().getFallbackFileController()
+                    manager.getFallbackManager().getFallbackFileController()
                             .getDataFile());
             FALLBACK_LOG
-                    .error("commitFallbackCommandLogs() - CommandTags cannot be removed from the fallback log file");
+                    .error("removeReadData() - Recovered data cannot be removed from the fallback log file");
         } else {
-            persistenceManager.getAlarmSender().fileNotReachable(
+            manager.getAlarmSender().fileNotReachable(
                     DOWN,
-                    persistenceManager.getFallbackManager().getFallbackFileController()
+                    manager.getFallbackManager().getFallbackFileController()
                             .getDataFile());
         }
 
     }
-
-    /**
-     * It sets the persistenceManager to null, so it could be released by the
-     * garbage collector if needed
-     */
-    public final void finalize() {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("finalize() - Removing the reference to the TimPersistenManager");
-        }
-        persistenceManager = null;
-    }
 }
@@ -18,12 +18,17 @@
 package cern.c2mon.pmanager.fallback;
 
 import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.fallback.manager.FallbackObjectContainer;
 import cern.c2mon.pmanager.mock.FallbackImpl;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.junit.Assert.*;
 
@@ -63,7 +68,7 @@ public class FallbackFileControllerTest {
     } catch (DataFallbackException e) {
       fail("The OutputStream could not be opened");
     }
-    assertNotNull(fFileController.getOutput());
+    assertTrue(fFileController.isOutputOpen());
   }
 
   /**
@@ -74,11 +79,12 @@ public class FallbackFileControllerTest {
   public final void testOpenInputStream() {
     FallbackFileController fFileController = new FallbackFileController(fallbackFile.getAbsolutePath());
     try {
+      fFileController.writeLine(new FallbackImpl());
       fFileController.openFallbackInputStream();
     } catch (DataFallbackException e) {
       fail("The InputStream could not be opened");
     }
-    assertNotNull(fFileController.getInput());
+    assertTrue(fFileController.isInputOpen());
   }
 
   /**
@@ -112,7 +118,7 @@ public class FallbackFileControllerTest {
     } catch (DataFallbackException e) {
       fail("The InputStream could not be closed");
     }
-    assertNull(fFileController.getInput());
+    assertFalse(fFileController.isInputOpen());
   }
 
   /**
@@ -127,6 +133,116 @@ public class FallbackFileControllerTest {
     } catch (DataFallbackException e) {
       fail("The OutputStream could not be closed");
     }
-    assertNull(fFileController.getOutput());
+    assertFalse(fFileController.isOutputOpen());
+  }
+
+  /**
+   * Tests that the reading resumes at the checkpoint after a restart
+   */
+  @Test
+  public final void testResumeFromCheckpoint() throws IOException, DataFallbackException {
+    File file = File.createTempFile("ResumeFallback", ".log");
+    FallbackFileController fFileController = new FallbackFileController(file.getAbsolutePath());
+    for (int i = 0; i < 10; i++) {
+      fFileController.writeLine(fallback("line" + i));
+    }
+    assertEquals(3, fFileController.readLines(3, new FallbackImpl()).getReadLines());
+    fFileController.updateNumberOfProcessedLines(3);
+    fFileController.finalize();
+
+    FallbackFileController restarted = new FallbackFileController(file.getAbsolutePath());
+    assertEquals(7, restarted.getNumberOfLines());
+    FallbackObjectContainer container = restarted.readLines(100, new FallbackImpl());
+    assertEquals(7, container.getReadLines());
+    assertEquals("line3", container.getObjects().get(0).toString());
+    assertEquals("line9", container.getObjects().get(6).toString());
+
+    restarted.goToLine(2);
+    assertEquals("line5", restarted.readLines(1, new FallbackImpl()).getObjects().get(0).toString());
+    restarted.clearFileContents();
+    assertTrue(restarted.isFallBackFileEmpty());
+    assertTrue(restarted.listSegments().isEmpty());
+  }
+
+  /**
+   * Tests that records roll over to new segments, and that consumed segments
+   * are deleted
+   */
+  @Test
+  public final void testSegmentsDeletedOnceConsumed() throws IOException, DataFallbackException {
+    File file = File.createTempFile("SegmentFallback", ".log");
+    FallbackFileController fFileController = new FallbackFileController(file.getAbsolutePath(), 1024);
+    for (int i = 0; i < 100; i++) {
+      fFileController.writeLine(fallback(String.format("record %03d with some payload", i)));
+    }
+    int segments = fFileController.listSegments().size();
+    assertTrue(segments > 3);
+
+    FallbackObjectContainer container = fFileController.readLines(50, new FallbackImpl());
+    assertEquals("record 049 with some payload", container.getObjects().get(49).toString());
+    fFileController.updateNumberOfProcessedLines(50);
+    assertTrue(fFileController.listSegments().size() < segments);
+    assertFalse(fFileController.isFallBackFileEmpty());
+
+    assertEquals(50, fFileController.readLines(100, new FallbackImpl()).getReadLines());
+    fFileController.updateNumberOfProcessedLines(50);
+    assertTrue(fFileController.isFallBackFileEmpty());
+    assertEquals(1, fFileController.listSegments().size());
+    fFileController.clearFileContents();
+  }
+
+  /**
+   * Tests that only the segments being read and written stay mapped, and that
+   * no mapping is left once the segments are deleted
+   */
+  @Test
+  public final void testMappingsReleased() throws IOException, DataFallbackException {
+    File file = File.createTempFile("MappedFallback", ".log");
+    FallbackFileController fFileController = new FallbackFileController(file.getAbsolutePath(), 1024);
+    for (int i = 0; i < 100; i++) {
+      fFileController.writeLine(fallback(String.format("record %03d with some payload", i)));
+    }
+    assertEquals(1, fFileController.getMappedSegments());
+
+    fFileController.readLines(10, new FallbackImpl());
+    assertEquals(2, fFileController.getMappedSegments());
+    fFileController.updateNumberOfProcessedLines(10);
+    assertEquals(2, fFileController.getMappedSegments());
+
+    fFileController.readLines(90, new FallbackImpl());
+    fFileController.updateNumberOfProcessedLines(90);
+    assertEquals(1, fFileController.getMappedSegments());
+    assertEquals(1, fFileController.listSegments().size());
+
+    fFileController.clearFileContents();
+    assertEquals(0, fFileController.getMappedSegments());
+    assertTrue(fFileController.listSegments().isEmpty());
+  }
+
+  /**
+   * Tests that the unread lines of a fallback file in the former text format
+   * are imported at startup
+   */
+  @Test
+  public final void testImportTextFile() throws IOException, DataFallbackException {
+    File file = File.createTempFile("TextFallback", ".log");
+    File counter = new File(file.getParentFile(), ".Counter" + file.getName());
+    Files.write(file.toPath(), Arrays.asList("a", "b", "c"), StandardCharsets.UTF_8);
+    Files.write(counter.toPath(), Collections.singletonList("1"), StandardCharsets.UTF_8);
+
+    FallbackFileController fFileController = new FallbackFileController(file.getAbsolutePath());
+    assertFalse(file.exists());
+    assertFalse(counter.exists());
+    assertEquals(2, fFileController.getNumberOfLines());
+    FallbackObjectContainer container = fFileController.readLines(10, new FallbackImpl());
+    assertEquals("b", container.getObjects().get(0).toString());
+    assertEquals("c", container.getObjects().get(1).toString());
+    fFileController.clearFileContents();
+  }
+
+  private static FallbackImpl fallback(String data) {
+    FallbackImpl fallback = new FallbackImpl();
+    fallback.setObjectData(data);
+    return fallback;
   }
 }
@@ -16,7 +16,9 @@
  *****************************************************************************/
 package cern.c2mon.pmanager.persistence.impl;
 
+import cern.c2mon.pmanager.IDBPersistenceHandler;
 import cern.c2mon.pmanager.IFallback;
+import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
 import cern.c2mon.pmanager.mock.AlarmListenerImpl;
 import cern.c2mon.pmanager.mock.DBHandlerImpl;
 import cern.c2mon.pmanager.mock.FallbackImpl;
@@ -27,6 +29,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.assertEquals;
 
@@ -107,4 +110,110 @@ public class PersistenceManagerTest {
     persistenceManager.storeData(data);
     assertEquals(5, persistenceManager.getFallbackManager().getFallbackFileController().getNumberOfLines() - lines);
   }
+
+  /**
+   * Tests that queued data is committed by the writer threads and that
+   * shutdown waits for the queue to be drained
+   */
+  @Test
+  public final void testAsyncStoreData() throws IOException {
+    final File fallbackFile = File.createTempFile("AsyncFallback", ".log");
+    fallbackFile.deleteOnExit();
+    PersistenceManager<IFallback> asyncManager =
+        new PersistenceManager<>(new DBHandlerImpl(), fallbackFile.getAbsolutePath(), new AlarmListenerImpl(), new FallbackImpl());
+    asyncManager.setQueueCapacity(100);
+    asyncManager.setWriterThreads(2);
+
+    List<IFallback> data = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      data.add(new FallbackImpl());
+    }
+    asyncManager.storeData(data);
+    asyncManager.storeData(new FallbackImpl());
+    asyncManager.shutdown();
+
+    assertEquals(11, asyncManager.getQueuedObjects());
+    assertEquals(0, asyncManager.getSpilledObjects());
+    assertEquals(0, asyncManager.getQueueDepth());
+    assertEquals(0, asyncManager.getFallbackManager().getFallbackFileController().getNumberOfLines());
+  }
+
+  /**
+   * Tests that data is written to the fallback file once the queue reaches
+   * the high watermark
+   */
+  @Test
+  public final void testAsyncSpillAboveHighWatermark() throws IOException, InterruptedException, DataFallbackException {
+    final File fallbackFile = File.createTempFile("SpillFallback", ".log");
+    fallbackFile.deleteOnExit();
+    final CountDownLatch release = new CountDownLatch(1);
+    IDBPersistenceHandler<IFallback> blockingHandler = new IDBPersistenceHandler<IFallback>() {
+      @Override
+      public String getDBInfo() {
+        return "timdb@test";
+      }
+
+      @Override
+      public void storeData(final IFallback object) {
+      }
+
+      @Override
+      public void storeData(final List<IFallback> data) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    PersistenceManager<IFallback> asyncManager =
+        new PersistenceManager<>(blockingHandler, fallbackFile.getAbsolutePath(), new AlarmListenerImpl(), new FallbackImpl());
+    asyncManager.setQueueCapacity(10);
+    asyncManager.setHighWatermark(5);
+
+    // the writer takes the first object and blocks in the DB
+    asyncManager.storeData(new FallbackImpl());
+    while (asyncManager.getQueueDepth() > 0) {
+      Thread.sleep(10);
+    }
+    for (int i = 0; i < 6; i++) {
+      asyncManager.storeData(new FallbackImpl());
+    }
+
+    assertEquals(5, asyncManager.getQueueDepth());
+    assertEquals(5, asyncManager.getPeakQueueDepth());
+    assertEquals(1, asyncManager.getSpilledObjects());
+    assertEquals(1, asyncManager.getFallbackManager().getFallbackFileController().getNumberOfLines());
+
+    release.countDown();
+    asyncManager.shutdown();
+    assertEquals(0, asyncManager.getQueueDepth());
+    asyncManager.getFallbackManager().getFallbackFileController().clearFileContents();
+  }
+
+  /**
+   * Tests that a batch larger than the high watermark is queued up to the
+   * watermark, and only the excess is written to the fallback file
+   */
+  @Test
+  public final void testAsyncBatchAboveHighWatermark() throws IOException, DataFallbackException {
+    final File fallbackFile = File.createTempFile("LargeBatchFallback", ".log");
+    fallbackFile.deleteOnExit();
+    PersistenceManager<IFallback> asyncManager =
+        new PersistenceManager<>(new DBHandlerImpl(), fallbackFile.getAbsolutePath(), new AlarmListenerImpl(), new FallbackImpl());
+    asyncManager.setQueueCapacity(10);
+    asyncManager.setHighWatermark(5);
+
+    List<IFallback> data = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      data.add(new FallbackImpl());
+    }
+    asyncManager.storeData(data);
+    asyncManager.shutdown();
+
+    assertEquals(5, asyncManager.getQueuedObjects());
+    assertEquals(3, asyncManager.getSpilledObjects());
+    assertEquals(3, asyncManager.getFallbackManager().getFallbackFileController().getNumberOfLines());
+    asyncManager.getFallbackManager().getFallbackFileController().clearFileContents();
+  }
 }
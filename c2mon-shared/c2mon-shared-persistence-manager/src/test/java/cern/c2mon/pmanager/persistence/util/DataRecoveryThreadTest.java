@@ -0,0 +1,223 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ * <p/>
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ * <p/>
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.pmanager.persistence.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.pmanager.IAlarmListener;
+import cern.c2mon.pmanager.IDBPersistenceHandler;
+import cern.c2mon.pmanager.IFallback;
+import cern.c2mon.pmanager.fallback.exception.DataFallbackException;
+import cern.c2mon.pmanager.persistence.exception.IDBPersistenceException;
+import cern.c2mon.pmanager.persistence.impl.PersistenceManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JUnit test for the parallel recovery of the fallback data
+ */
+public class DataRecoveryThreadTest {
+
+  private static final int IDS = 50;
+
+  private static final int LINES = 5000;
+
+  private File fallbackFile;
+
+  private RecordingHandler handler;
+
+  private ProgressListener listener;
+
+  private PersistenceManager<Record> persistenceManager;
+
+  @Before
+  public void setUp() throws IOException, DataFallbackException {
+    fallbackFile = File.createTempFile("RecoveryFallback", ".log");
+    handler = new RecordingHandler();
+    listener = new ProgressListener();
+    persistenceManager = new PersistenceManager<>(handler, fallbackFile.getAbsolutePath(), listener, new Record());
+
+    List<Record> records = new ArrayList<>();
+    for (int i = 0; i < LINES; i++) {
+      records.add(new Record(i % IDS, i / IDS));
+    }
+    persistenceManager.getFallbackManager().fallback(records);
+
+    DataRecoveryThread recovery = persistenceManager.getDataRecovery();
+    recovery.setWriters(4);
+    recovery.setBatchSizes(100, 1000);
+    recovery.setTargetLatency(1000);
+  }
+
+  @After
+  public void cleanUp() throws DataFallbackException {
+    persistenceManager.getFallbackManager().getFallbackFileController().clearFileContents();
+  }
+
+  /**
+   * Tests that all data is recovered, in order per id, with growing batches
+   */
+  @Test
+  public void testParallelRecovery() {
+    persistenceManager.getDataRecovery().run();
+
+    assertTrue(persistenceManager.getFallbackManager().isFallbackFileEmpty());
+    assertEquals(LINES, handler.stored.size());
+    assertOrderedPerId(handler.stored);
+    assertEquals(LINES, persistenceManager.getRecoveredLines());
+    assertEquals(0, persistenceManager.getRemainingLines());
+    assertEquals(1000, persistenceManager.getRecoveryBatchSize());
+    assertEquals(0, listener.remaining);
+    assertEquals(LINES, listener.recovered);
+  }
+
+  /**
+   * Tests that a partially committed batch is completed at the next run,
+   * without storing anything twice
+   */
+  @Test
+  public void testRecoveryAfterFailure() {
+    handler.failAfter.set(2500);
+    persistenceManager.getDataRecovery().run();
+    assertFalse(persistenceManager.getDataRecovery().isRunning());
+    assertFalse(persistenceManager.getFallbackManager().isFallbackFileEmpty());
+    assertTrue(persistenceManager.getRemainingLines() > 0);
+
+    handler.failAfter.set(Integer.MAX_VALUE);
+    persistenceManager.getDataRecovery().run();
+
+    assertTrue(persistenceManager.getFallbackManager().isFallbackFileEmpty());
+    assertEquals(LINES, handler.stored.size());
+    assertOrderedPerId(handler.stored);
+  }
+
+  private static void assertOrderedPerId(List<Record> stored) {
+    Map<Integer, Integer> last = new HashMap<>();
+    for (Record record : stored) {
+      Integer previous = last.put(record.id, record.sequence);
+      assertEquals(previous == null ? 0 : previous + 1, record.sequence);
+    }
+    assertEquals(IDS, last.size());
+  }
+
+  /**
+   * Fallback object with an id and a sequence number per id
+   */
+  private static class Record implements IFallback {
+
+    private int id;
+
+    private int sequence;
+
+    Record() {
+    }
+
+    Record(int id, int sequence) {
+      this.id = id;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public IFallback getObject(String line) throws DataFallbackException {
+      String[] fields = line.split(" ");
+      return new Record(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]));
+    }
+
+    @Override
+    public String getId() {
+      return Integer.toString(id);
+    }
+
+    @Override
+    public String toString() {
+      return id + " " + sequence;
+    }
+  }
+
+  /**
+   * Stores the records in memory, and fails once a number of records has been stored
+   */
+  private static class RecordingHandler implements IDBPersistenceHandler<Record> {
+
+    private final List<Record> stored = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger failAfter = new AtomicInteger(Integer.MAX_VALUE);
+
+    @Override
+    public String getDBInfo() {
+      return "test";
+    }
+
+    @Override
+    public void storeData(Record object) throws IDBPersistenceException {
+      storeData(Collections.singletonList(object));
+    }
+
+    @Override
+    public void storeData(List<Record> data) throws IDBPersistenceException {
+      for (int i = 0; i < data.size(); i++) {
+        synchronized (stored) {
+          if (stored.size() >= failAfter.get()) {
+            throw new IDBPersistenceException("DB unavailable", i);
+          }
+          stored.add(data.get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps the last progress notification
+   */
+  private static class ProgressListener implements IAlarmListener {
+
+    private volatile long recovered = -1;
+
+    private volatile long remaining = -1;
+
+    @Override
+    public void dbUnavailable(boolean alarmUp, String exceptionMsg, String dbInfo) {
+    }
+
+    @Override
+    public void diskFull(boolean alarmUp, String directoryName) {
+    }
+
+    @Override
+    public void fileNotReachable(boolean alarmUp, File file) {
+    }
+
+    @Override
+    public void recoveryProgress(File file, long recovered, long remaining, long etaSeconds) {
+      this.recovered = recovered;
+      this.remaining = remaining;
+    }
+  }
+}
@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.shared.util.jms;
 
+import java.util.Map;
+
 import org.springframework.jms.JmsException;
 
 /**
@@ -52,6 +54,17 @@ public interface JmsSender {
    * @throws JmsException if problem encountered with JMS
    */
   void sendToTopic(String text, String jmsTopic);
+
+  /**
+   * Sends a text message with the given properties to the specified topic.
+   * Does not expect any response.
+   * @param text the message
+   * @param jmsTopic the topic name
+   * @param properties the properties set on the message
+   * @throws NullPointerException if either the text or the topic is null
+   * @throws JmsException if problem encountered with JMS
+   */
+  void sendToTopic(String text, String jmsTopic, Map<String, Object> properties);
   
   /**
    * Sends a text message to a default destination (the implementation must provide